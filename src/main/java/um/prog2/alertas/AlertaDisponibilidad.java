@@ -3,6 +3,7 @@ package um.prog2.alertas;
 import um.prog2.Enums.EstadoRecurso;
 import um.prog2.interfaces.RecursoDigital;
 import um.prog2.notificaciones.Notificacion;
+import um.prog2.notificaciones.PlantillaMensaje;
 import um.prog2.notificaciones.ServicioEnvioNotificaciones;
 import um.prog2.prestamos.SistemaPrestamos;
 import um.prog2.recursoDigital.GestorRecursos;
@@ -116,18 +117,13 @@ public class AlertaDisponibilidad {
      * @param usuario Usuario que reservó el recurso
      */
     private void enviarAlertaDisponibilidad(RecursoDigital recurso, Usuario usuario) {
-        String mensaje = String.format(
-            "✅ DISPONIBLE: El recurso '%s' que reservaste está ahora DISPONIBLE. " +
-            "Responde con 'PRESTAR %s' para tomarlo en préstamo inmediatamente.",
-            recurso.getIdentificador(),
-            recurso.getIdentificador()
-        );
-
         servicioNotificaciones.enviarNotificacionSistema(
-            mensaje,
+            PlantillaMensaje.RECURSO_DISPONIBLE,
             usuario,
             Notificacion.TipoNotificacion.SISTEMA,
-            "Sistema de Alertas"
+            "Sistema de Alertas",
+            Notificacion.NivelUrgencia.INFO,
+            recurso.getIdentificador()
         );
     }
 
@@ -1,14 +1,19 @@
 package um.prog2.alertas;
 
 import um.prog2.notificaciones.Notificacion;
+import um.prog2.notificaciones.PlantillaMensaje;
 import um.prog2.notificaciones.ServicioEnvioNotificaciones;
 import um.prog2.prestamos.Prestamo;
 import um.prog2.prestamos.SistemaPrestamos;
 
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -16,12 +21,17 @@ import java.util.concurrent.TimeUnit;
 /**
  * Clase que monitorea las fechas de devolución de préstamos y envía alertas
  * cuando están próximos a vencer o ya han vencido.
+ * Cada préstamo recibe una sola alerta por etapa (vence mañana, vence hoy,
+ * vencido) aunque la verificación corra cada pocos minutos. Si el préstamo se
+ * renueva, su fecha de devolución cambia y las etapas vuelven a empezar.
  */
 public class AlertaVencimiento {
     private final SistemaPrestamos sistemaPrestamos;
     private final ServicioEnvioNotificaciones servicioNotificaciones;
     private final ScheduledExecutorService scheduler;
-    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+    // ID de préstamo -> última etapa alertada (con la fecha de devolución de ese momento)
+    private final Map<String, EtapaEnviada> etapasEnviadas;
 
     /**
      * Constructor de la clase AlertaVencimiento.
@@ -33,6 +43,7 @@ public class AlertaVencimiento {
         this.sistemaPrestamos = sistemaPrestamos;
         this.servicioNotificaciones = servicioNotificaciones;
         this.scheduler = Executors.newScheduledThreadPool(1);
+        this.etapasEnviadas = new ConcurrentHashMap<>();
     }
 
     /**
@@ -54,26 +65,50 @@ public class AlertaVencimiento {
      * Verifica todos los préstamos activos y envía alertas para aquellos
      * que están próximos a vencer o ya han vencido.
      */
-    private void verificarPrestamos() {
+    void verificarPrestamos() {
         List<Prestamo> prestamosActivos = sistemaPrestamos.obtenerTodosPrestamosActivos();
         LocalDateTime ahora = LocalDateTime.now();
+        Set<String> idsActivos = new HashSet<>();
 
         for (Prestamo prestamo : prestamosActivos) {
             if (prestamo.isActivo()) {
+                idsActivos.add(prestamo.getId());
                 long diasHastaVencimiento = ChronoUnit.DAYS.between(ahora, prestamo.getFechaDevolucion());
 
                 if (diasHastaVencimiento == 1) {
                     // Alerta 1 día antes del vencimiento
-                    enviarAlertaProximoVencimiento(prestamo);
+                    if (marcarEtapa(prestamo, EtapaAlerta.PROXIMO_VENCIMIENTO)) {
+                        enviarAlertaProximoVencimiento(prestamo);
+                    }
                 } else if (diasHastaVencimiento == 0) {
                     // Alerta el día del vencimiento
-                    enviarAlertaVencimientoHoy(prestamo);
+                    if (marcarEtapa(prestamo, EtapaAlerta.VENCE_HOY)) {
+                        enviarAlertaVencimientoHoy(prestamo);
+                    }
                 } else if (diasHastaVencimiento < 0) {
                     // Alerta de préstamo vencido
-                    enviarAlertaVencido(prestamo);
+                    if (marcarEtapa(prestamo, EtapaAlerta.VENCIDO)) {
+                        enviarAlertaVencido(prestamo);
+                    }
                 }
             }
         }
+
+        // Olvidar los préstamos que ya fueron devueltos
+        etapasEnviadas.keySet().retainAll(idsActivos);
+    }
+
+    /**
+     * Registra que se alcanzó una etapa de alerta para un préstamo.
+     *
+     * @param prestamo Préstamo verificado
+     * @param etapa Etapa alcanzada
+     * @return true si la etapa no se había alertado todavía para la fecha de devolución actual
+     */
+    private boolean marcarEtapa(Prestamo prestamo, EtapaAlerta etapa) {
+        EtapaEnviada nueva = new EtapaEnviada(etapa, prestamo.getFechaDevolucion());
+        EtapaEnviada anterior = etapasEnviadas.put(prestamo.getId(), nueva);
+        return !nueva.equals(anterior);
     }
 
     /**
@@ -82,19 +117,15 @@ public class AlertaVencimiento {
      * @param prestamo Préstamo próximo a vencer
      */
     private void enviarAlertaProximoVencimiento(Prestamo prestamo) {
-        String mensaje = String.format(
-            "⚠️ ALERTA: Su préstamo del recurso '%s' vence MAÑANA (%s). " +
-            "Responda con 'RENOVAR %s' para extender el préstamo.",
-            prestamo.getRecurso().getIdentificador(),
-            prestamo.getFechaDevolucion().format(FORMATTER),
-            prestamo.getId()
-        );
-
         servicioNotificaciones.enviarNotificacionPrestamo(
-            mensaje,
+            PlantillaMensaje.PRESTAMO_VENCE_MANANA,
             prestamo.getUsuario(),
             Notificacion.TipoNotificacion.VENCIMIENTO,
             prestamo.getRecurso(),
+            prestamo.getId(),
+            Notificacion.NivelUrgencia.INFO,
+            prestamo.getRecurso().getIdentificador(),
+            prestamo.getFechaDevolucion(),
             prestamo.getId()
         );
     }
@@ -105,19 +136,15 @@ public class AlertaVencimiento {
      * @param prestamo Préstamo que vence hoy
      */
     private void enviarAlertaVencimientoHoy(Prestamo prestamo) {
-        String mensaje = String.format(
-            "🔔 ALERTA: Su préstamo del recurso '%s' vence HOY (%s). " +
-            "Responda con 'RENOVAR %s' para extender el préstamo o devuelva el recurso.",
-            prestamo.getRecurso().getIdentificador(),
-            prestamo.getFechaDevolucion().format(FORMATTER),
-            prestamo.getId()
-        );
-
         servicioNotificaciones.enviarNotificacionPrestamo(
-            mensaje,
+            PlantillaMensaje.PRESTAMO_VENCE_HOY,
             prestamo.getUsuario(),
             Notificacion.TipoNotificacion.VENCIMIENTO,
             prestamo.getRecurso(),
+            prestamo.getId(),
+            Notificacion.NivelUrgencia.INFO,
+            prestamo.getRecurso().getIdentificador(),
+            prestamo.getFechaDevolucion(),
             prestamo.getId()
         );
     }
@@ -128,19 +155,15 @@ public class AlertaVencimiento {
      * @param prestamo Préstamo vencido
      */
     private void enviarAlertaVencido(Prestamo prestamo) {
-        String mensaje = String.format(
-            "🚨 ALERTA: Su préstamo del recurso '%s' está VENCIDO desde el %s. " +
-            "Responda con 'RENOVAR %s' para extender el préstamo o devuelva el recurso inmediatamente.",
-            prestamo.getRecurso().getIdentificador(),
-            prestamo.getFechaDevolucion().format(FORMATTER),
-            prestamo.getId()
-        );
-
         servicioNotificaciones.enviarNotificacionPrestamo(
-            mensaje,
+            PlantillaMensaje.PRESTAMO_VENCIDO_ALERTA,
             prestamo.getUsuario(),
             Notificacion.TipoNotificacion.VENCIMIENTO,
             prestamo.getRecurso(),
+            prestamo.getId(),
+            Notificacion.NivelUrgencia.INFO,
+            prestamo.getRecurso().getIdentificador(),
+            prestamo.getFechaDevolucion(),
             prestamo.getId()
         );
     }
@@ -174,6 +197,42 @@ public class AlertaVencimiento {
         return false;
     }
 
+    /**
+     * Etapas de alerta de un préstamo, en el orden en que ocurren.
+     */
+    private enum EtapaAlerta {
+        PROXIMO_VENCIMIENTO,
+        VENCE_HOY,
+        VENCIDO
+    }
+
+    /**
+     * Etapa alertada junto con la fecha de devolución vigente al alertarla.
+     */
+    private static final class EtapaEnviada {
+        private final EtapaAlerta etapa;
+        private final LocalDateTime fechaDevolucion;
+
+        EtapaEnviada(EtapaAlerta etapa, LocalDateTime fechaDevolucion) {
+            this.etapa = etapa;
+            this.fechaDevolucion = fechaDevolucion;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof EtapaEnviada)) {
+                return false;
+            }
+            EtapaEnviada otra = (EtapaEnviada) o;
+            return etapa == otra.etapa && fechaDevolucion.equals(otra.fechaDevolucion);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(etapa, fechaDevolucion);
+        }
+    }
+
     /**
      * Detiene el monitoreo de préstamos.
      */
@@ -1,5 +1,6 @@
 package um.prog2.alertas;
 
+import um.prog2.notificaciones.HistorialNotificaciones;
 import um.prog2.notificaciones.Notificacion;
 import um.prog2.notificaciones.ServicioEnvioNotificaciones;
 import um.prog2.usuario.Usuario;
@@ -7,13 +8,13 @@ import um.prog2.usuario.Usuario;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
 
 /**
  * Clase que gestiona el historial de alertas y proporciona métodos para
- * visualizarlo en la consola con diferentes filtros.
+ * visualizarlo en la consola con diferentes filtros. Las consultas usan los
+ * índices del historial de notificaciones, que ya devuelven los resultados
+ * ordenados de la alerta más reciente a la más vieja.
  */
 public class HistorialAlertas {
     private final ServicioEnvioNotificaciones servicioNotificaciones;
@@ -32,8 +33,8 @@ public class HistorialAlertas {
      * Muestra el historial completo de alertas en la consola.
      */
     public void mostrarHistorialCompleto() {
-        List<Notificacion> historial = servicioNotificaciones.getHistorialNotificaciones();
-        mostrarHistorial(historial, "HISTORIAL COMPLETO DE ALERTAS");
+        HistorialNotificaciones historial = servicioNotificaciones.getHistorial();
+        mostrarHistorial(historial.obtenerRecientes(historial.tamanio()), "HISTORIAL COMPLETO DE ALERTAS");
     }
 
     /**
@@ -42,10 +43,7 @@ public class HistorialAlertas {
      * @param nivelUrgencia Nivel de urgencia para filtrar
      */
     public void mostrarHistorialPorNivelUrgencia(Notificacion.NivelUrgencia nivelUrgencia) {
-        List<Notificacion> historial = servicioNotificaciones.getHistorialNotificaciones();
-        List<Notificacion> filtrado = historial.stream()
-                .filter(n -> n.getNivelUrgencia() == nivelUrgencia)
-                .collect(Collectors.toList());
+        List<Notificacion> filtrado = servicioNotificaciones.getHistorial().obtenerPorNivelUrgencia(nivelUrgencia);
         
         mostrarHistorial(filtrado, "HISTORIAL DE ALERTAS - NIVEL: " + nivelUrgencia);
     }
@@ -56,10 +54,7 @@ public class HistorialAlertas {
      * @param tipo Tipo de notificación para filtrar
      */
     public void mostrarHistorialPorTipo(Notificacion.TipoNotificacion tipo) {
-        List<Notificacion> historial = servicioNotificaciones.getHistorialNotificaciones();
-        List<Notificacion> filtrado = historial.stream()
-                .filter(n -> n.getTipo() == tipo)
-                .collect(Collectors.toList());
+        List<Notificacion> filtrado = servicioNotificaciones.getHistorial().obtenerPorTipo(tipo);
         
         mostrarHistorial(filtrado, "HISTORIAL DE ALERTAS - TIPO: " + tipo);
     }
@@ -70,10 +65,7 @@ public class HistorialAlertas {
      * @param usuario Usuario para filtrar
      */
     public void mostrarHistorialPorUsuario(Usuario usuario) {
-        List<Notificacion> historial = servicioNotificaciones.getHistorialNotificaciones();
-        List<Notificacion> filtrado = historial.stream()
-                .filter(n -> n.getDestinatario().equals(usuario))
-                .collect(Collectors.toList());
+        List<Notificacion> filtrado = servicioNotificaciones.getHistorial().obtenerPorDestinatario(usuario);
         
         mostrarHistorial(filtrado, "HISTORIAL DE ALERTAS - USUARIO: " + usuario.getNombre());
     }
@@ -85,10 +77,7 @@ public class HistorialAlertas {
      * @param fechaFin Fecha de fin para filtrar
      */
     public void mostrarHistorialPorFecha(LocalDateTime fechaInicio, LocalDateTime fechaFin) {
-        List<Notificacion> historial = servicioNotificaciones.getHistorialNotificaciones();
-        List<Notificacion> filtrado = historial.stream()
-                .filter(n -> !n.getFechaCreacion().isBefore(fechaInicio) && !n.getFechaCreacion().isAfter(fechaFin))
-                .collect(Collectors.toList());
+        List<Notificacion> filtrado = servicioNotificaciones.getHistorial().obtenerEntre(fechaInicio, fechaFin);
         
         mostrarHistorial(filtrado, "HISTORIAL DE ALERTAS - PERIODO: " + 
                 fechaInicio.format(FORMATTER) + " a " + fechaFin.format(FORMATTER));
@@ -100,11 +89,7 @@ public class HistorialAlertas {
      * @param cantidad Cantidad de alertas a mostrar
      */
     public void mostrarAlertasRecientes(int cantidad) {
-        List<Notificacion> historial = servicioNotificaciones.getHistorialNotificaciones();
-        List<Notificacion> recientes = historial.stream()
-                .sorted(Comparator.comparing(Notificacion::getFechaCreacion).reversed())
-                .limit(cantidad)
-                .collect(Collectors.toList());
+        List<Notificacion> recientes = servicioNotificaciones.getHistorial().obtenerRecientes(cantidad);
         
         mostrarHistorial(recientes, "ALERTAS RECIENTES (" + cantidad + ")");
     }
@@ -112,7 +97,7 @@ public class HistorialAlertas {
     /**
      * Método auxiliar para mostrar un historial de alertas en la consola.
      *
-     * @param historial Lista de notificaciones a mostrar
+     * @param historial Lista de notificaciones a mostrar, de la más reciente a la más vieja
      * @param titulo Título para la sección
      */
     private void mostrarHistorial(List<Notificacion> historial, String titulo) {
@@ -123,9 +108,6 @@ public class HistorialAlertas {
             return;
         }
         
-        // Ordenar por fecha (más recientes primero)
-        historial.sort(Comparator.comparing(Notificacion::getFechaCreacion).reversed());
-        
         for (int i = 0; i < historial.size(); i++) {
             System.out.println((i + 1) + ". " + historial.get(i));
         }
@@ -1,6 +1,7 @@
 package um.prog2.alertas;
 
 import um.prog2.notificaciones.Notificacion;
+import um.prog2.notificaciones.PlantillaMensaje;
 import um.prog2.notificaciones.ServicioEnvioNotificaciones;
 import um.prog2.usuario.Usuario;
 
@@ -79,19 +80,15 @@ public class SistemaRecordatorios {
      * @param recordatorio Recordatorio a enviar
      */
     private void enviarRecordatorio(Recordatorio recordatorio) {
-        String mensajeCompleto = String.format(
-            "%s: %s [Recordatorio programado cada %d minutos]",
-            recordatorio.getTitulo(),
-            recordatorio.getMensaje(),
-            recordatorio.getIntervaloMinutos()
-        );
-        
         servicioNotificaciones.enviarNotificacionSistema(
-            mensajeCompleto,
+            PlantillaMensaje.RECORDATORIO,
             recordatorio.getUsuario(),
             Notificacion.TipoNotificacion.SISTEMA,
             "Sistema de Recordatorios",
-            recordatorio.getNivelUrgencia()
+            recordatorio.getNivelUrgencia(),
+            recordatorio.getTitulo(),
+            recordatorio.getMensaje(),
+            recordatorio.getIntervaloMinutos()
         );
         
         // Actualizar la última ejecución
@@ -8,6 +8,7 @@ import um.prog2.cliente.reservas.GestorReservasConsola;
 import um.prog2.cliente.utilsRecursosCLI.BuscadorRecursos;
 import um.prog2.interfaces.RecursoDigital;
 import um.prog2.interfaces.ServicioNotificaciones;
+import um.prog2.notificaciones.HistorialNotificaciones;
 import um.prog2.notificaciones.Notificacion;
 import um.prog2.notificaciones.ServicioEnvioNotificaciones;
 import um.prog2.notificaciones.ServicioNotificacionesEmail;
@@ -192,9 +193,9 @@ public class CLI2 {
             return;
         }
 
-        List<Notificacion> historial = servicioEnvioNotificaciones.getHistorialNotificaciones();
+        HistorialNotificaciones historial = servicioEnvioNotificaciones.getHistorial();
 
-        if (historial.isEmpty()) {
+        if (historial.tamanio() == 0) {
             System.out.println("No hay notificaciones para mostrar");
             return;
         }
@@ -0,0 +1,35 @@
+package um.prog2.excepciones;
+
+import um.prog2.notificaciones.Notificacion;
+
+import java.util.List;
+
+/**
+ * Excepción que lanza un canal cuando solo pudo entregar parte de un lote.
+ * Indica qué notificaciones quedaron sin enviar, para reintentar solo esas.
+ */
+public class EnvioParcialException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    // Las notificaciones no son serializables: solo sirven dentro del proceso que las envía
+    private final transient List<Notificacion> noEnviadas;
+
+    /**
+     * Constructor con mensaje de error, notificaciones pendientes y causa.
+     * 
+     * @param mensaje El mensaje de error
+     * @param noEnviadas Notificaciones del lote que no se entregaron
+     * @param causa La causa de la excepción
+     */
+    public EnvioParcialException(String mensaje, List<Notificacion> noEnviadas, Throwable causa) {
+        super(mensaje, causa);
+        this.noEnviadas = List.copyOf(noEnviadas);
+    }
+
+    /**
+     * @return Notificaciones del lote que no se entregaron (vacía si la excepción se deserializó)
+     */
+    public List<Notificacion> getNoEnviadas() {
+        return noEnviadas != null ? noEnviadas : List.of();
+    }
+}
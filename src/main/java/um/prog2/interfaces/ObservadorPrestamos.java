@@ -0,0 +1,25 @@
+package um.prog2.interfaces;
+
+import um.prog2.prestamos.Prestamo;
+
+/**
+ * Interfaz para los componentes que necesitan enterarse de los eventos
+ * de préstamo a medida que ocurren (por ejemplo, los reportes en tiempo real).
+ */
+public interface ObservadorPrestamos {
+    /**
+     * Se invoca cuando se realiza un nuevo préstamo.
+     *
+     * @param prestamo Préstamo recién creado
+     */
+    default void alPrestar(Prestamo prestamo) {
+    }
+
+    /**
+     * Se invoca cuando se devuelve un préstamo.
+     *
+     * @param prestamo Préstamo devuelto
+     */
+    default void alDevolver(Prestamo prestamo) {
+    }
+}
@@ -1,7 +1,40 @@
 package um.prog2.interfaces;
 
+import um.prog2.notificaciones.Notificacion;
+import um.prog2.notificaciones.PlantillaMensaje;
 import um.prog2.usuario.Usuario;
 
+import java.util.List;
+
 public interface ServicioNotificaciones {
     void enviarNotificacion(String mensaje, Usuario usuario);
+
+    /**
+     * Envía una notificación armada a partir de una plantilla.
+     * Por defecto el mensaje se arma en el momento; los servicios que pueden
+     * descartar la notificación deberían sobrescribirlo para armarlo solo al entregarla.
+     *
+     * @param plantilla Plantilla del mensaje
+     * @param usuario Usuario destinatario
+     * @param argumentos Argumentos de la plantilla
+     */
+    default void enviarNotificacion(PlantillaMensaje plantilla, Usuario usuario, Object... argumentos) {
+        enviarNotificacion(plantilla.renderizar(argumentos), usuario);
+    }
+
+    /**
+     * Envía un lote de notificaciones en una sola operación.
+     * Los canales con un costo fijo por llamada (una conexión SMTP, una API HTTP)
+     * deberían sobrescribirlo; por defecto se envían de a una.
+     * Si solo una parte del lote llega, conviene lanzar una
+     * {@link um.prog2.excepciones.EnvioParcialException} con las restantes para
+     * que no se repitan las ya entregadas.
+     *
+     * @param lote Notificaciones a enviar, en orden de llegada
+     */
+    default void enviarLote(List<Notificacion> lote) {
+        for (Notificacion notificacion : lote) {
+            enviarNotificacion(notificacion.getMensaje(), notificacion.getDestinatario());
+        }
+    }
 }
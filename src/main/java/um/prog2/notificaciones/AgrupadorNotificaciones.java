@@ -0,0 +1,110 @@
+package um.prog2.notificaciones;
+
+import um.prog2.interfaces.RecursoDigital;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Agrupa notificaciones idénticas sobre un mismo recurso dentro de una ventana
+ * de tiempo. Dos notificaciones son idénticas si tienen el mismo destinatario,
+ * recurso, tipo y mensaje: la primera se deja pasar y las repetidas dentro de
+ * la ventana se descartan y se cuentan como agrupadas. Las notificaciones sin
+ * recurso asociado (por ejemplo, las del sistema) nunca se agrupan.
+ */
+class AgrupadorNotificaciones {
+    // Cantidad mínima de claves para limpiar las vencidas
+    private static final int LIMPIAR_DESDE = 10_000;
+
+    private final long ventanaNanos;
+    private final Map<List<Object>, Long> ultimoEnvio;
+    private final AtomicLong agrupadas;
+
+    // Cantidad de claves que dispara la próxima limpieza: el doble de las que sobrevivieron
+    // a la anterior, así cada limpieza se paga con tantas claves nuevas como las que recorre
+    private final AtomicInteger proximaLimpieza;
+
+    /**
+     * Constructor del agrupador.
+     *
+     * @param ventana Ventana durante la que se descartan las notificaciones repetidas
+     */
+    AgrupadorNotificaciones(Duration ventana) {
+        this.ventanaNanos = ventana.toNanos();
+        this.ultimoEnvio = new ConcurrentHashMap<>();
+        this.agrupadas = new AtomicLong();
+        this.proximaLimpieza = new AtomicInteger(LIMPIAR_DESDE);
+    }
+
+    /**
+     * Decide si una notificación debe enviarse o si repite a una enviada dentro de la ventana.
+     *
+     * @param notificacion Notificación a evaluar
+     * @return true si debe enviarse, false si se agrupa con una anterior
+     */
+    boolean admitir(Notificacion notificacion) {
+        List<Object> clave = claveDe(notificacion);
+        if (clave == null || ventanaNanos <= 0) {
+            return true;
+        }
+
+        long ahora = System.nanoTime();
+        boolean[] admitida = new boolean[1];
+        ultimoEnvio.compute(clave, (k, anterior) -> {
+            if (anterior != null && ahora - anterior < ventanaNanos) {
+                return anterior;
+            }
+            admitida[0] = true;
+            return ahora;
+        });
+
+        if (!admitida[0]) {
+            agrupadas.incrementAndGet();
+        } else if (ultimoEnvio.size() > proximaLimpieza.get()) {
+            limpiar(ahora);
+        }
+        return admitida[0];
+    }
+
+    /**
+     * Descarta las claves cuya ventana ya venció. Si otro hilo está limpiando, no espera.
+     */
+    private void limpiar(long ahora) {
+        int umbral = proximaLimpieza.get();
+        if (!proximaLimpieza.compareAndSet(umbral, Integer.MAX_VALUE)) {
+            return;
+        }
+        ultimoEnvio.values().removeIf(envio -> ahora - envio >= ventanaNanos);
+        proximaLimpieza.set(Math.max(LIMPIAR_DESDE, ultimoEnvio.size() * 2));
+    }
+
+    /**
+     * @return Cantidad de notificaciones descartadas por repetidas
+     */
+    long getAgrupadas() {
+        return agrupadas.get();
+    }
+
+    /**
+     * La clave usa el contenido sin armar el mensaje: dos notificaciones con la misma
+     * plantilla y argumentos son idénticas aunque ninguna se haya formateado todavía.
+     */
+    private static List<Object> claveDe(Notificacion notificacion) {
+        RecursoDigital recurso = null;
+        if (notificacion instanceof NotificacionPrestamo) {
+            recurso = ((NotificacionPrestamo) notificacion).getRecurso();
+        } else if (notificacion instanceof NotificacionReserva) {
+            recurso = ((NotificacionReserva) notificacion).getRecurso();
+        }
+        if (recurso == null || notificacion.getDestinatario() == null) {
+            return null;
+        }
+        return Arrays.asList(notificacion.getDestinatario().getID(), recurso.getIdentificador(),
+                notificacion.getTipo(), notificacion.getContenido());
+    }
+}
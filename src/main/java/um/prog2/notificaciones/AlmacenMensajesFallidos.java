@@ -0,0 +1,105 @@
+package um.prog2.notificaciones;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Almacén de mensajes fallidos (dead letters): notificaciones que agotaron sus
+ * reintentos en un canal. Si se indica un archivo, cada mensaje se agrega como una
+ * línea separada por tabulaciones y se vuelca de inmediato, para que sobreviva a
+ * un reinicio; si no, se conservan en memoria. Lleva un contador por canal.
+ */
+public class AlmacenMensajesFallidos {
+    private final Path archivo;
+    private final List<String> registrosEnMemoria;
+    private final Map<ConfiguracionNotificaciones.CanalNotificacion, AtomicLong> contadores;
+
+    /**
+     * Constructor de un almacén en memoria.
+     */
+    public AlmacenMensajesFallidos() {
+        this(null);
+    }
+
+    /**
+     * Constructor de un almacén persistente.
+     *
+     * @param archivo Archivo donde se agregan los mensajes fallidos (null para guardarlos en memoria)
+     */
+    public AlmacenMensajesFallidos(Path archivo) {
+        this.archivo = archivo;
+        this.registrosEnMemoria = new ArrayList<>();
+        this.contadores = new EnumMap<>(ConfiguracionNotificaciones.CanalNotificacion.class);
+        for (ConfiguracionNotificaciones.CanalNotificacion canal : ConfiguracionNotificaciones.CanalNotificacion.values()) {
+            contadores.put(canal, new AtomicLong());
+        }
+    }
+
+    /**
+     * Registra una notificación que no pudo enviarse.
+     *
+     * @param notificacion Notificación fallida
+     * @param canal Canal por el que se intentó enviar
+     * @param intentos Cantidad de intentos realizados
+     * @param error Último error recibido
+     */
+    public synchronized void registrar(Notificacion notificacion, ConfiguracionNotificaciones.CanalNotificacion canal,
+                                       int intentos, Exception error) {
+        contadores.get(canal).incrementAndGet();
+        String linea = LocalDateTime.now() + "\t" + canal.name() + "\t" + intentos + "\t" +
+                (notificacion.getDestinatario() != null ? notificacion.getDestinatario().getID() : "") + "\t" +
+                notificacion.getTipo().name() + "\t" + escapar(notificacion.getMensaje()) + "\t" +
+                escapar(String.valueOf(error.getMessage()));
+
+        if (archivo == null) {
+            registrosEnMemoria.add(linea);
+            return;
+        }
+        try (BufferedWriter escritor = Files.newBufferedWriter(archivo, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            escritor.write(linea);
+            escritor.newLine();
+        } catch (IOException e) {
+            // No perder el mensaje si el disco falla
+            registrosEnMemoria.add(linea);
+            System.out.println("[NOTIFICACIONES] Error al guardar un mensaje fallido: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Obtiene los mensajes fallidos registrados, uno por línea en el orden en que se guardaron.
+     *
+     * @return Lista de registros
+     * @throws IOException Si no se puede leer el archivo
+     */
+    public synchronized List<String> obtenerRegistros() throws IOException {
+        List<String> registros = new ArrayList<>();
+        if (archivo != null && Files.exists(archivo)) {
+            registros.addAll(Files.readAllLines(archivo, StandardCharsets.UTF_8));
+        }
+        registros.addAll(registrosEnMemoria);
+        return registros;
+    }
+
+    /**
+     * @param canal Canal de notificación
+     * @return Cantidad de mensajes fallidos en ese canal
+     */
+    public long contarPorCanal(ConfiguracionNotificaciones.CanalNotificacion canal) {
+        return contadores.get(canal).get();
+    }
+
+    private static String escapar(String texto) {
+        return texto.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,569 @@
+package um.prog2.notificaciones;
+
+import um.prog2.interfaces.RecursoDigital;
+import um.prog2.usuario.Usuario;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Bandeja de salida persistente de notificaciones.
+ * Cada notificación se agrega a un log de solo agregado, dividido en segmentos,
+ * con un número de secuencia. Cuando todos sus canales la entregaron se confirma,
+ * y el desplazamiento del consumidor (la menor secuencia sin confirmar) se guarda
+ * en disco. Al abrir la bandeja se recuperan las notificaciones no confirmadas
+ * para volver a enviarlas; los segmentos ya consumidos se borran.
+ * <p>
+ * Las escrituras van a un buffer en memoria y un hilo en segundo plano las vuelca
+ * y sincroniza (fsync) en grupo cada {@link #INTERVALO_SINCRONIZACION_MS} ms, así
+ * que el costo de fsync se reparte entre miles de notificaciones. Una caída puede
+ * perder, como mucho, lo agregado en ese último intervalo. La entrega es "al
+ * menos una vez": una notificación confirmada después de otra más vieja aún
+ * pendiente puede volver a enviarse al recuperar.
+ */
+public class BandejaSalida {
+    // Intervalo entre sincronizaciones del log con el disco
+    public static final long INTERVALO_SINCRONIZACION_MS = 10;
+
+    // Tamaño a partir del cual se empieza un segmento nuevo
+    private static final long TAMANIO_MAXIMO_SEGMENTO = 64L * 1024 * 1024;
+    private static final int TAMANIO_BUFFER = 256 * 1024;
+    // Longitud + secuencia + CRC de cada registro
+    private static final int TAMANIO_ENCABEZADO = Integer.BYTES + Long.BYTES + Integer.BYTES;
+    private static final String EXTENSION_SEGMENTO = ".log";
+    private static final String ARCHIVO_DESPLAZAMIENTO = "consumidor.offset";
+
+    private static final byte CLASE_BASE = 0;
+    private static final byte CLASE_PRESTAMO = 1;
+    private static final byte CLASE_RESERVA = 2;
+    private static final byte CLASE_SISTEMA = 3;
+
+    private final Path directorio;
+    private final Function<String, RecursoDigital> resolverRecurso;
+    private final Object lockEscritura = new Object();
+    private final ByteBuffer buffer;
+    // Primera secuencia de cada segmento y su archivo
+    private final TreeMap<Long, Path> segmentos;
+    private final NavigableSet<Long> pendientes;
+    private final ScheduledExecutorService sincronizador;
+
+    private FileChannel segmentoActual;
+    private long tamanioSegmentoActual;
+    private long siguienteSecuencia;
+    private long desplazamientoGuardado;
+    private List<Registro> recuperados;
+    private volatile boolean cerrada;
+
+    /**
+     * Abre (o crea) una bandeja de salida. Las notificaciones de préstamo y reserva
+     * pendientes se recuperan sin su recurso, como notificaciones del sistema.
+     *
+     * @param directorio Directorio de los segmentos del log
+     * @throws IOException Si no se puede leer o crear el log
+     */
+    public BandejaSalida(Path directorio) throws IOException {
+        this(directorio, identificador -> null);
+    }
+
+    /**
+     * Abre (o crea) una bandeja de salida.
+     *
+     * @param directorio Directorio de los segmentos del log
+     * @param resolverRecurso Busca un recurso por su identificador al recuperar notificaciones
+     *                        de préstamo o reserva; si devuelve null se recuperan como
+     *                        notificaciones del sistema
+     * @throws IOException Si no se puede leer o crear el log
+     */
+    public BandejaSalida(Path directorio, Function<String, RecursoDigital> resolverRecurso) throws IOException {
+        this.directorio = directorio;
+        this.resolverRecurso = resolverRecurso;
+        this.buffer = ByteBuffer.allocate(TAMANIO_BUFFER);
+        this.segmentos = new TreeMap<>();
+        this.pendientes = new ConcurrentSkipListSet<>();
+        Files.createDirectories(directorio);
+
+        this.desplazamientoGuardado = leerDesplazamiento();
+        this.recuperados = recuperar();
+        if (segmentos.isEmpty()) {
+            siguienteSecuencia = Math.max(siguienteSecuencia, desplazamientoGuardado);
+            abrirSegmentoNuevo();
+        } else {
+            Map.Entry<Long, Path> ultimo = segmentos.lastEntry();
+            segmentoActual = FileChannel.open(ultimo.getValue(), StandardOpenOption.WRITE);
+            tamanioSegmentoActual = segmentoActual.size();
+            segmentoActual.position(tamanioSegmentoActual);
+        }
+
+        this.sincronizador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "bandeja-salida-sync");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        sincronizador.scheduleWithFixedDelay(this::sincronizarEnSegundoPlano,
+                INTERVALO_SINCRONIZACION_MS, INTERVALO_SINCRONIZACION_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Agrega una notificación al log.
+     *
+     * @param notificacion Notificación a guardar
+     * @return Secuencia asignada, o -1 si no se pudo guardar
+     */
+    public long agregar(Notificacion notificacion) {
+        byte[] contenido;
+        try {
+            contenido = codificar(notificacion);
+        } catch (IOException e) {
+            System.out.println("[NOTIFICACIONES] No se pudo codificar la notificación: " + e.getMessage());
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(contenido);
+
+        synchronized (lockEscritura) {
+            if (cerrada) {
+                return -1;
+            }
+            long secuencia = siguienteSecuencia;
+            try {
+                if (buffer.remaining() < TAMANIO_ENCABEZADO + contenido.length) {
+                    volcarBuffer();
+                }
+                if (buffer.remaining() < TAMANIO_ENCABEZADO + contenido.length) {
+                    // Registro más grande que el buffer: se escribe directo
+                    ByteBuffer grande = ByteBuffer.allocate(TAMANIO_ENCABEZADO + contenido.length);
+                    escribirRegistro(grande, secuencia, crc, contenido);
+                    grande.flip();
+                    while (grande.hasRemaining()) {
+                        segmentoActual.write(grande);
+                    }
+                } else {
+                    escribirRegistro(buffer, secuencia, crc, contenido);
+                }
+                tamanioSegmentoActual += TAMANIO_ENCABEZADO + contenido.length;
+                siguienteSecuencia++;
+                pendientes.add(secuencia);
+                if (tamanioSegmentoActual >= TAMANIO_MAXIMO_SEGMENTO) {
+                    rotarSegmento();
+                }
+                return secuencia;
+            } catch (IOException e) {
+                System.out.println("[NOTIFICACIONES] Error al escribir en la bandeja de salida: " + e.getMessage());
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Confirma que una notificación fue entregada por todos sus canales.
+     *
+     * @param secuencia Secuencia devuelta por {@link #agregar(Notificacion)}
+     */
+    public void confirmar(long secuencia) {
+        pendientes.remove(secuencia);
+    }
+
+    /**
+     * Entrega (una sola vez) las notificaciones sin confirmar encontradas al abrir la bandeja.
+     *
+     * @return Registros pendientes, de la secuencia más vieja a la más nueva
+     */
+    public synchronized List<Registro> tomarRecuperados() {
+        List<Registro> resultado = recuperados;
+        recuperados = new ArrayList<>();
+        return resultado;
+    }
+
+    /**
+     * @return Cantidad de notificaciones sin confirmar
+     */
+    public int getPendientes() {
+        return pendientes.size();
+    }
+
+    /**
+     * @return Menor secuencia sin confirmar (o la próxima a asignar si no hay pendientes)
+     */
+    public long getDesplazamientoConfirmado() {
+        synchronized (lockEscritura) {
+            return pendientes.isEmpty() ? siguienteSecuencia : pendientes.first();
+        }
+    }
+
+    /**
+     * Vuelca y sincroniza con el disco todo lo agregado hasta ahora, y guarda el desplazamiento.
+     *
+     * @throws IOException Si falla la escritura
+     */
+    public void sincronizar() throws IOException {
+        FileChannel canal;
+        synchronized (lockEscritura) {
+            volcarBuffer();
+            canal = segmentoActual;
+        }
+        try {
+            canal.force(false);
+        } catch (ClosedChannelException e) {
+            // Se rotó el segmento, y al rotar ya se sincronizó
+        }
+        guardarDesplazamiento();
+    }
+
+    /**
+     * Sincroniza lo pendiente y cierra el log. Las notificaciones sin confirmar
+     * se recuperan la próxima vez que se abra la bandeja.
+     */
+    public void cerrar() {
+        if (cerrada) {
+            return;
+        }
+        sincronizador.shutdown();
+        try {
+            sincronizador.awaitTermination(1, TimeUnit.SECONDS);
+            sincronizar();
+        } catch (IOException e) {
+            System.out.println("[NOTIFICACIONES] Error al cerrar la bandeja de salida: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lockEscritura) {
+            cerrada = true;
+            try {
+                segmentoActual.close();
+            } catch (IOException e) {
+                System.out.println("[NOTIFICACIONES] Error al cerrar la bandeja de salida: " + e.getMessage());
+            }
+        }
+    }
+
+    private void sincronizarEnSegundoPlano() {
+        try {
+            sincronizar();
+            borrarSegmentosConsumidos();
+        } catch (IOException e) {
+            System.out.println("[NOTIFICACIONES] Error al sincronizar la bandeja de salida: " + e.getMessage());
+        }
+    }
+
+    private void volcarBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            segmentoActual.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void rotarSegmento() throws IOException {
+        volcarBuffer();
+        segmentoActual.force(false);
+        segmentoActual.close();
+        abrirSegmentoNuevo();
+    }
+
+    private void abrirSegmentoNuevo() throws IOException {
+        Path archivo = directorio.resolve(String.format("%020d%s", siguienteSecuencia, EXTENSION_SEGMENTO));
+        segmentoActual = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        tamanioSegmentoActual = 0;
+        segmentos.put(siguienteSecuencia, archivo);
+    }
+
+    /**
+     * Borra los segmentos cuyas notificaciones ya fueron todas confirmadas.
+     */
+    private void borrarSegmentosConsumidos() throws IOException {
+        List<Path> consumidos = new ArrayList<>();
+        synchronized (lockEscritura) {
+            long desplazamiento = desplazamientoGuardado;
+            while (segmentos.size() > 1) {
+                Long segundo = segmentos.higherKey(segmentos.firstKey());
+                if (segundo > desplazamiento) {
+                    break;
+                }
+                consumidos.add(segmentos.pollFirstEntry().getValue());
+            }
+        }
+        for (Path archivo : consumidos) {
+            Files.deleteIfExists(archivo);
+        }
+    }
+
+    private long leerDesplazamiento() throws IOException {
+        Path archivo = directorio.resolve(ARCHIVO_DESPLAZAMIENTO);
+        if (!Files.exists(archivo)) {
+            return 0;
+        }
+        String contenido = Files.readString(archivo, StandardCharsets.UTF_8).trim();
+        return contenido.isEmpty() ? 0 : Long.parseLong(contenido);
+    }
+
+    private void guardarDesplazamiento() throws IOException {
+        long desplazamiento = getDesplazamientoConfirmado();
+        if (desplazamiento == desplazamientoGuardado) {
+            return;
+        }
+        // Se escribe aparte y se reemplaza de forma atómica para no dejar un archivo a medias
+        Path temporal = directorio.resolve(ARCHIVO_DESPLAZAMIENTO + ".tmp");
+        Files.writeString(temporal, Long.toString(desplazamiento), StandardCharsets.UTF_8);
+        Files.move(temporal, directorio.resolve(ARCHIVO_DESPLAZAMIENTO),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        desplazamientoGuardado = desplazamiento;
+    }
+
+    /**
+     * Lee todos los segmentos, registra los pendientes a partir del desplazamiento
+     * guardado y recorta un posible registro incompleto al final del último segmento.
+     */
+    private List<Registro> recuperar() throws IOException {
+        List<Path> archivos;
+        try (Stream<Path> listado = Files.list(directorio)) {
+            archivos = listado.filter(archivo -> archivo.getFileName().toString().endsWith(EXTENSION_SEGMENTO))
+                    .sorted()
+                    .toList();
+        }
+
+        List<Registro> registros = new ArrayList<>();
+        for (Path archivo : archivos) {
+            String nombre = archivo.getFileName().toString();
+            long primera = Long.parseLong(nombre.substring(0, nombre.length() - EXTENSION_SEGMENTO.length()));
+            segmentos.put(primera, archivo);
+            siguienteSecuencia = Math.max(siguienteSecuencia, primera);
+
+            long finValido = 0;
+            try (DataInputStream entrada = new DataInputStream(
+                    new BufferedInputStream(Files.newInputStream(archivo)))) {
+                while (true) {
+                    int longitud;
+                    try {
+                        longitud = entrada.readInt();
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    byte[] contenido;
+                    long secuencia;
+                    int crcGuardado;
+                    try {
+                        secuencia = entrada.readLong();
+                        crcGuardado = entrada.readInt();
+                        if (longitud < 0 || longitud > TAMANIO_MAXIMO_SEGMENTO) {
+                            break;
+                        }
+                        contenido = entrada.readNBytes(longitud);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    CRC32 crc = new CRC32();
+                    crc.update(contenido);
+                    if (contenido.length < longitud || (int) crc.getValue() != crcGuardado) {
+                        break;
+                    }
+
+                    finValido += TAMANIO_ENCABEZADO + longitud;
+                    siguienteSecuencia = Math.max(siguienteSecuencia, secuencia + 1);
+                    if (secuencia >= desplazamientoGuardado) {
+                        registros.add(new Registro(secuencia, decodificar(contenido)));
+                        pendientes.add(secuencia);
+                    }
+                }
+            }
+            if (finValido < Files.size(archivo)) {
+                // Registro incompleto por una caída durante la escritura
+                try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.WRITE)) {
+                    canal.truncate(finValido);
+                }
+            }
+        }
+        return registros;
+    }
+
+    private static void escribirRegistro(ByteBuffer destino, long secuencia, CRC32 crc, byte[] contenido) {
+        destino.putInt(contenido.length);
+        destino.putLong(secuencia);
+        destino.putInt((int) crc.getValue());
+        destino.put(contenido);
+    }
+
+    private static byte[] codificar(Notificacion notificacion) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream salida = new DataOutputStream(bytes);
+
+        if (notificacion instanceof NotificacionPrestamo) {
+            salida.writeByte(CLASE_PRESTAMO);
+        } else if (notificacion instanceof NotificacionReserva) {
+            salida.writeByte(CLASE_RESERVA);
+        } else if (notificacion instanceof NotificacionSistema) {
+            salida.writeByte(CLASE_SISTEMA);
+        } else {
+            salida.writeByte(CLASE_BASE);
+        }
+        // Con plantilla se guardan sus argumentos ya formateados, sin armar el mensaje
+        PlantillaMensaje plantilla = notificacion.getPlantilla();
+        escribirTexto(salida, plantilla != null ? plantilla.name() : null);
+        if (plantilla == null) {
+            escribirTexto(salida, notificacion.getMensaje());
+        } else {
+            String[] argumentos = plantilla.argumentosComoTexto(notificacion.getArgumentos());
+            salida.writeInt(argumentos.length);
+            for (String argumento : argumentos) {
+                escribirTexto(salida, argumento);
+            }
+        }
+        escribirTexto(salida, notificacion.getTipo().name());
+        escribirTexto(salida, notificacion.getNivelUrgencia().name());
+        escribirTexto(salida, notificacion.getFechaCreacion().toString());
+
+        Usuario destinatario = notificacion.getDestinatario();
+        salida.writeBoolean(destinatario != null);
+        if (destinatario != null) {
+            salida.writeInt(destinatario.getID());
+            escribirTexto(salida, destinatario.getNombre());
+            escribirTexto(salida, destinatario.getApellido());
+            escribirTexto(salida, destinatario.getEmail());
+            escribirTexto(salida, destinatario.getTelefono());
+        }
+
+        if (notificacion instanceof NotificacionPrestamo) {
+            NotificacionPrestamo prestamo = (NotificacionPrestamo) notificacion;
+            escribirTexto(salida, prestamo.getRecurso() != null ? prestamo.getRecurso().getIdentificador() : null);
+            escribirTexto(salida, prestamo.getIdPrestamo());
+        } else if (notificacion instanceof NotificacionReserva) {
+            NotificacionReserva reserva = (NotificacionReserva) notificacion;
+            escribirTexto(salida, reserva.getRecurso() != null ? reserva.getRecurso().getIdentificador() : null);
+            escribirTexto(salida, reserva.getIdReserva());
+            salida.writeInt(reserva.getPrioridad());
+        } else if (notificacion instanceof NotificacionSistema) {
+            escribirTexto(salida, ((NotificacionSistema) notificacion).getOrigen());
+        }
+        salida.flush();
+        return bytes.toByteArray();
+    }
+
+    private Notificacion decodificar(byte[] contenido) throws IOException {
+        DataInputStream entrada = new DataInputStream(new ByteArrayInputStream(contenido));
+        byte clase = entrada.readByte();
+        String nombrePlantilla = leerTexto(entrada);
+        PlantillaMensaje plantilla = null;
+        String mensaje = null;
+        Object[] argumentos = null;
+        if (nombrePlantilla == null) {
+            mensaje = leerTexto(entrada);
+        } else {
+            plantilla = PlantillaMensaje.valueOf(nombrePlantilla);
+            argumentos = new Object[entrada.readInt()];
+            for (int i = 0; i < argumentos.length; i++) {
+                argumentos[i] = leerTexto(entrada);
+            }
+        }
+        Notificacion.TipoNotificacion tipo = Notificacion.TipoNotificacion.valueOf(leerTexto(entrada));
+        Notificacion.NivelUrgencia nivel = Notificacion.NivelUrgencia.valueOf(leerTexto(entrada));
+        LocalDateTime fechaCreacion = LocalDateTime.parse(leerTexto(entrada));
+
+        Usuario destinatario = null;
+        if (entrada.readBoolean()) {
+            int id = entrada.readInt();
+            String nombre = leerTexto(entrada);
+            String apellido = leerTexto(entrada);
+            String email = leerTexto(entrada);
+            String telefono = leerTexto(entrada);
+            destinatario = new Usuario(nombre, apellido, id, email, telefono);
+        }
+
+        switch (clase) {
+            case CLASE_PRESTAMO: {
+                RecursoDigital recurso = resolver(leerTexto(entrada));
+                String idPrestamo = leerTexto(entrada);
+                if (recurso != null) {
+                    return new NotificacionPrestamo(mensaje, plantilla, argumentos, destinatario, tipo, recurso,
+                            idPrestamo, nivel, fechaCreacion);
+                }
+                return new NotificacionSistema(mensaje, plantilla, argumentos, destinatario, tipo,
+                        "Bandeja de salida", nivel, fechaCreacion);
+            }
+            case CLASE_RESERVA: {
+                RecursoDigital recurso = resolver(leerTexto(entrada));
+                String idReserva = leerTexto(entrada);
+                int prioridad = entrada.readInt();
+                if (recurso != null) {
+                    return new NotificacionReserva(mensaje, plantilla, argumentos, destinatario, tipo, recurso,
+                            idReserva, prioridad, nivel, fechaCreacion);
+                }
+                return new NotificacionSistema(mensaje, plantilla, argumentos, destinatario, tipo,
+                        "Bandeja de salida", nivel, fechaCreacion);
+            }
+            case CLASE_SISTEMA:
+                return new NotificacionSistema(mensaje, plantilla, argumentos, destinatario, tipo, leerTexto(entrada),
+                        nivel, fechaCreacion);
+            default:
+                return new Notificacion(mensaje, plantilla, argumentos, destinatario, tipo, nivel, fechaCreacion);
+        }
+    }
+
+    private RecursoDigital resolver(String identificador) {
+        return identificador != null ? resolverRecurso.apply(identificador) : null;
+    }
+
+    private static void escribirTexto(DataOutputStream salida, String texto) throws IOException {
+        if (texto == null) {
+            salida.writeInt(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        salida.writeInt(bytes.length);
+        salida.write(bytes);
+    }
+
+    private static String leerTexto(DataInputStream entrada) throws IOException {
+        int longitud = entrada.readInt();
+        if (longitud < 0) {
+            return null;
+        }
+        return new String(entrada.readNBytes(longitud), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Notificación recuperada del log junto con su secuencia.
+     */
+    public static final class Registro {
+        private final long secuencia;
+        private final Notificacion notificacion;
+
+        Registro(long secuencia, Notificacion notificacion) {
+            this.secuencia = secuencia;
+            this.notificacion = notificacion;
+        }
+
+        public long getSecuencia() {
+            return secuencia;
+        }
+
+        public Notificacion getNotificacion() {
+            return notificacion;
+        }
+    }
+}
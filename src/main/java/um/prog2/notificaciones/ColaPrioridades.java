@@ -0,0 +1,231 @@
+package um.prog2.notificaciones;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cola bloqueante con un carril por nivel de urgencia.
+ * Los carriles se atienden por turnos ponderados: en cada turno ERROR puede
+ * sacar hasta {@value #PESO_ERROR} elementos, WARNING hasta {@value #PESO_WARNING}
+ * e INFO hasta {@value #PESO_INFO}, siempre revisando primero el carril más
+ * urgente. Un elemento urgente pasa delante de los menos urgentes que esperan,
+ * pero con los tres carriles llenos INFO sigue recibiendo su parte. El turno se
+ * renueva cuando ningún carril con elementos tiene cupo; un carril vacío no
+ * gasta su cupo. Dentro de un carril el orden es de llegada.
+ * <p>
+ * Por cada carril se lleva la cantidad de elementos en espera y el tiempo que
+ * esperaron los que ya salieron.
+ *
+ * @param <E> Tipo de los elementos
+ */
+class ColaPrioridades<E> {
+    // Cupo de cada nivel por turno
+    static final int PESO_ERROR = 8;
+    static final int PESO_WARNING = 4;
+    static final int PESO_INFO = 1;
+
+    private static final Notificacion.NivelUrgencia[] NIVELES = Notificacion.NivelUrgencia.values();
+
+    private final Function<E, Notificacion.NivelUrgencia> nivelDe;
+    private final Carril<E>[] carriles;
+    private final int[] cupos;
+    // Un permiso por elemento en la cola
+    private final Semaphore disponibles;
+
+    /**
+     * @param nivelDe Función que da el nivel de urgencia de un elemento
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    ColaPrioridades(Function<E, Notificacion.NivelUrgencia> nivelDe) {
+        this.nivelDe = nivelDe;
+        this.carriles = new Carril[NIVELES.length];
+        for (Notificacion.NivelUrgencia nivel : NIVELES) {
+            carriles[nivel.ordinal()] = new Carril<>(peso(nivel));
+        }
+        this.cupos = new int[NIVELES.length];
+        this.disponibles = new Semaphore(0);
+    }
+
+    /**
+     * Agrega un elemento al final del carril de su nivel.
+     *
+     * @param elemento Elemento a agregar
+     */
+    void agregar(E elemento) {
+        Notificacion.NivelUrgencia nivel = nivelDe.apply(elemento);
+        Carril<E> carril = carriles[(nivel != null ? nivel : Notificacion.NivelUrgencia.INFO).ordinal()];
+        carril.elementos.add(new Nodo<>(elemento, System.nanoTime()));
+        carril.profundidad.incrementAndGet();
+        disponibles.release();
+    }
+
+    /**
+     * Saca el próximo elemento, esperando a que haya uno.
+     *
+     * @return Elemento
+     * @throws InterruptedException Si se interrumpe la espera
+     */
+    E tomar() throws InterruptedException {
+        disponibles.acquire();
+        return siguiente();
+    }
+
+    /**
+     * Saca el próximo elemento, esperando como máximo el tiempo indicado.
+     *
+     * @return Elemento, o null si no llegó ninguno a tiempo
+     * @throws InterruptedException Si se interrumpe la espera
+     */
+    E tomar(long espera, TimeUnit unidad) throws InterruptedException {
+        return disponibles.tryAcquire(espera, unidad) ? siguiente() : null;
+    }
+
+    /**
+     * Saca sin esperar hasta la cantidad indicada de elementos, en el orden de los turnos.
+     *
+     * @param destino Colección donde se agregan
+     * @param maximo Cantidad máxima de elementos a sacar
+     * @return Cantidad de elementos sacados
+     */
+    int drenar(Collection<? super E> destino, int maximo) {
+        int sacados = 0;
+        while (sacados < maximo && disponibles.tryAcquire()) {
+            destino.add(siguiente());
+            sacados++;
+        }
+        return sacados;
+    }
+
+    boolean estaVacia() {
+        return disponibles.availablePermits() == 0;
+    }
+
+    int tamanio() {
+        return disponibles.availablePermits();
+    }
+
+    /**
+     * @return Cantidad de elementos de un nivel que esperan en la cola
+     */
+    int getProfundidad(Notificacion.NivelUrgencia nivel) {
+        return carriles[nivel.ordinal()].profundidad.get();
+    }
+
+    /**
+     * @return Cantidad de elementos de un nivel que ya salieron de la cola
+     */
+    long getAtendidos(Notificacion.NivelUrgencia nivel) {
+        return carriles[nivel.ordinal()].atendidos.get();
+    }
+
+    /**
+     * @return Suma de las esperas de los elementos de un nivel que ya salieron, en nanosegundos
+     */
+    long getEsperaTotalNanos(Notificacion.NivelUrgencia nivel) {
+        return carriles[nivel.ordinal()].esperaTotalNanos.get();
+    }
+
+    /**
+     * @return Mayor espera de un elemento de un nivel, en nanosegundos
+     */
+    long getEsperaMaximaNanos(Notificacion.NivelUrgencia nivel) {
+        return carriles[nivel.ordinal()].esperaMaximaNanos.get();
+    }
+
+    /**
+     * Calcula la espera promedio de un nivel en varias colas.
+     *
+     * @param colas Colas a considerar
+     * @param nivel Nivel de urgencia
+     * @return Espera promedio de los elementos que ya salieron, o cero si no salió ninguno
+     */
+    static Duration esperaPromedio(Collection<? extends ColaPrioridades<?>> colas, Notificacion.NivelUrgencia nivel) {
+        long atendidos = 0;
+        long esperaTotal = 0;
+        for (ColaPrioridades<?> cola : colas) {
+            atendidos += cola.getAtendidos(nivel);
+            esperaTotal += cola.getEsperaTotalNanos(nivel);
+        }
+        return atendidos == 0 ? Duration.ZERO : Duration.ofNanos(esperaTotal / atendidos);
+    }
+
+    /**
+     * Elige el carril según los turnos y saca su primer elemento. Solo se llama
+     * después de tomar un permiso, así que alguno de los carriles tiene un elemento.
+     */
+    private synchronized E siguiente() {
+        while (true) {
+            for (int i = carriles.length - 1; i >= 0; i--) {
+                if (cupos[i] > 0) {
+                    Nodo<E> nodo = carriles[i].elementos.poll();
+                    if (nodo != null) {
+                        cupos[i]--;
+                        return carriles[i].sacar(nodo);
+                    }
+                }
+            }
+            // Ningún carril con elementos tiene cupo: empieza otro turno
+            for (int i = 0; i < carriles.length; i++) {
+                cupos[i] = carriles[i].peso;
+            }
+        }
+    }
+
+    private static int peso(Notificacion.NivelUrgencia nivel) {
+        switch (nivel) {
+            case ERROR:
+                return PESO_ERROR;
+            case WARNING:
+                return PESO_WARNING;
+            default:
+                return PESO_INFO;
+        }
+    }
+
+    /**
+     * Elementos de un nivel y sus métricas.
+     */
+    private static final class Carril<E> {
+        private final int peso;
+        private final Queue<Nodo<E>> elementos;
+        private final AtomicInteger profundidad;
+        private final AtomicLong atendidos;
+        private final AtomicLong esperaTotalNanos;
+        private final AtomicLong esperaMaximaNanos;
+
+        Carril(int peso) {
+            this.peso = peso;
+            this.elementos = new ConcurrentLinkedQueue<>();
+            this.profundidad = new AtomicInteger();
+            this.atendidos = new AtomicLong();
+            this.esperaTotalNanos = new AtomicLong();
+            this.esperaMaximaNanos = new AtomicLong();
+        }
+
+        E sacar(Nodo<E> nodo) {
+            long espera = System.nanoTime() - nodo.encoladoNanos;
+            profundidad.decrementAndGet();
+            atendidos.incrementAndGet();
+            esperaTotalNanos.addAndGet(espera);
+            esperaMaximaNanos.accumulateAndGet(espera, Math::max);
+            return nodo.elemento;
+        }
+    }
+
+    private static final class Nodo<E> {
+        private final E elemento;
+        private final long encoladoNanos;
+
+        Nodo(E elemento, long encoladoNanos) {
+            this.elemento = elemento;
+            this.encoladoNanos = encoladoNanos;
+        }
+    }
+}
@@ -2,64 +2,88 @@ package um.prog2.notificaciones;
 
 import um.prog2.usuario.Usuario;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.time.Duration;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
  * Clase que gestiona las preferencias de notificación de los usuarios.
  * Permite configurar qué tipos de notificaciones y niveles de urgencia
  * desea recibir cada usuario.
+ * <p>
+ * Las preferencias de cada usuario se guardan en un único entero: un bit por
+ * tipo, uno por nivel de urgencia y uno por canal. Los enteros se agrupan en
+ * páginas de {@link AtomicIntegerArray} indexadas por ID de usuario, así que
+ * decidir si se envía una notificación es una sola lectura sin locks y las
+ * modificaciones son operaciones atómicas sobre el bit correspondiente. Las
+ * páginas son chicas (64 usuarios, 256 bytes) porque los IDs los ingresa el
+ * usuario y pueden estar muy dispersos: un ID sin vecinos cuesta una página.
+ * <p>
+ * Un usuario puede pedir un resumen por canal: sus notificaciones INFO por ese
+ * canal se acumulan y se envían juntas en un solo mensaje cada
+ * {@link #getIntervaloResumen()} o al llegar a {@link #getTamanioMaximoResumen()};
+ * las de nivel WARNING o ERROR se envían siempre en el momento.
  */
 public class ConfiguracionNotificaciones {
-    // Mapa de usuario -> tipos de notificación habilitados
-    private final Map<Usuario, Set<Notificacion.TipoNotificacion>> tiposHabilitados;
-    
-    // Mapa de usuario -> niveles de urgencia habilitados
-    private final Map<Usuario, Set<Notificacion.NivelUrgencia>> nivelesHabilitados;
-    
-    // Mapa de usuario -> canales de notificación habilitados
-    private final Map<Usuario, Set<CanalNotificacion>> canalesHabilitados;
-    
+    // Posición del primer bit de cada grupo dentro de la máscara de un usuario
+    private static final int DESPLAZAMIENTO_TIPOS = 0;
+    private static final int DESPLAZAMIENTO_NIVELES = 16;
+    private static final int DESPLAZAMIENTO_CANALES = 24;
+    private static final int DESPLAZAMIENTO_RESUMEN = 28;
+
+    // Valores por defecto del envío de resúmenes
+    public static final Duration INTERVALO_RESUMEN_DEFECTO = Duration.ofHours(1);
+    public static final int TAMANIO_MAXIMO_RESUMEN_DEFECTO = 20;
+
+    // Usuarios por página (potencia de dos)
+    private static final int BITS_PAGINA = 6;
+    private static final int TAMANIO_PAGINA = 1 << BITS_PAGINA;
+
+    static {
+        if (Notificacion.TipoNotificacion.values().length > DESPLAZAMIENTO_NIVELES - DESPLAZAMIENTO_TIPOS
+                || Notificacion.NivelUrgencia.values().length > DESPLAZAMIENTO_CANALES - DESPLAZAMIENTO_NIVELES
+                || CanalNotificacion.values().length > DESPLAZAMIENTO_RESUMEN - DESPLAZAMIENTO_CANALES
+                || CanalNotificacion.values().length > Integer.SIZE - DESPLAZAMIENTO_RESUMEN) {
+            throw new IllegalStateException("Las preferencias no entran en una máscara de 32 bits");
+        }
+    }
+
+    // Página (ID de usuario / TAMANIO_PAGINA) -> máscaras de los usuarios de esa página
+    private final Map<Integer, AtomicIntegerArray> paginas;
+    private volatile Duration intervaloResumen;
+    private volatile int tamanioMaximoResumen;
+
     /**
      * Constructor de la configuración de notificaciones.
      */
     public ConfiguracionNotificaciones() {
-        this.tiposHabilitados = new HashMap<>();
-        this.nivelesHabilitados = new HashMap<>();
-        this.canalesHabilitados = new HashMap<>();
+        this.paginas = new ConcurrentHashMap<>();
+        this.intervaloResumen = INTERVALO_RESUMEN_DEFECTO;
+        this.tamanioMaximoResumen = TAMANIO_MAXIMO_RESUMEN_DEFECTO;
     }
-    
+
     /**
      * Inicializa las preferencias por defecto para un usuario.
-     * Por defecto, se habilitan todos los tipos, niveles y canales.
+     * Por defecto, se habilitan todos los tipos, niveles y canales, sin resúmenes.
      *
      * @param usuario Usuario a inicializar
      */
     public void inicializarPreferenciasDefecto(Usuario usuario) {
-        // Habilitar todos los tipos de notificación
-        Set<Notificacion.TipoNotificacion> todosTipos = new HashSet<>();
+        int mascara = 0;
         for (Notificacion.TipoNotificacion tipo : Notificacion.TipoNotificacion.values()) {
-            todosTipos.add(tipo);
+            mascara |= bit(tipo);
         }
-        tiposHabilitados.put(usuario, todosTipos);
-        
-        // Habilitar todos los niveles de urgencia
-        Set<Notificacion.NivelUrgencia> todosNiveles = new HashSet<>();
         for (Notificacion.NivelUrgencia nivel : Notificacion.NivelUrgencia.values()) {
-            todosNiveles.add(nivel);
+            mascara |= bit(nivel);
         }
-        nivelesHabilitados.put(usuario, todosNiveles);
-        
-        // Habilitar todos los canales
-        Set<CanalNotificacion> todosCanales = new HashSet<>();
         for (CanalNotificacion canal : CanalNotificacion.values()) {
-            todosCanales.add(canal);
+            mascara |= bit(canal);
         }
-        canalesHabilitados.put(usuario, todosCanales);
+        int id = usuario.getID();
+        pagina(id, true).set(posicion(id), mascara);
     }
-    
+
     /**
      * Habilita un tipo de notificación para un usuario.
      *
@@ -67,9 +91,9 @@ public class ConfiguracionNotificaciones {
      * @param tipo Tipo de notificación a habilitar
      */
     public void habilitarTipoNotificacion(Usuario usuario, Notificacion.TipoNotificacion tipo) {
-        tiposHabilitados.computeIfAbsent(usuario, k -> new HashSet<>()).add(tipo);
+        modificar(usuario, bit(tipo), true);
     }
-    
+
     /**
      * Deshabilita un tipo de notificación para un usuario.
      *
@@ -77,11 +101,9 @@ public class ConfiguracionNotificaciones {
      * @param tipo Tipo de notificación a deshabilitar
      */
     public void deshabilitarTipoNotificacion(Usuario usuario, Notificacion.TipoNotificacion tipo) {
-        if (tiposHabilitados.containsKey(usuario)) {
-            tiposHabilitados.get(usuario).remove(tipo);
-        }
+        modificar(usuario, bit(tipo), false);
     }
-    
+
     /**
      * Habilita un nivel de urgencia para un usuario.
      *
@@ -89,9 +111,9 @@ public class ConfiguracionNotificaciones {
      * @param nivel Nivel de urgencia a habilitar
      */
     public void habilitarNivelUrgencia(Usuario usuario, Notificacion.NivelUrgencia nivel) {
-        nivelesHabilitados.computeIfAbsent(usuario, k -> new HashSet<>()).add(nivel);
+        modificar(usuario, bit(nivel), true);
     }
-    
+
     /**
      * Deshabilita un nivel de urgencia para un usuario.
      *
@@ -99,11 +121,9 @@ public class ConfiguracionNotificaciones {
      * @param nivel Nivel de urgencia a deshabilitar
      */
     public void deshabilitarNivelUrgencia(Usuario usuario, Notificacion.NivelUrgencia nivel) {
-        if (nivelesHabilitados.containsKey(usuario)) {
-            nivelesHabilitados.get(usuario).remove(nivel);
-        }
+        modificar(usuario, bit(nivel), false);
     }
-    
+
     /**
      * Habilita un canal de notificación para un usuario.
      *
@@ -111,9 +131,9 @@ public class ConfiguracionNotificaciones {
      * @param canal Canal de notificación a habilitar
      */
     public void habilitarCanalNotificacion(Usuario usuario, CanalNotificacion canal) {
-        canalesHabilitados.computeIfAbsent(usuario, k -> new HashSet<>()).add(canal);
+        modificar(usuario, bit(canal), true);
     }
-    
+
     /**
      * Deshabilita un canal de notificación para un usuario.
      *
@@ -121,11 +141,90 @@ public class ConfiguracionNotificaciones {
      * @param canal Canal de notificación a deshabilitar
      */
     public void deshabilitarCanalNotificacion(Usuario usuario, CanalNotificacion canal) {
-        if (canalesHabilitados.containsKey(usuario)) {
-            canalesHabilitados.get(usuario).remove(canal);
+        modificar(usuario, bit(canal), false);
+    }
+
+    /**
+     * Habilita el resumen de notificaciones INFO de un usuario en un canal.
+     *
+     * @param usuario Usuario
+     * @param canal Canal de notificación
+     */
+    public void habilitarResumen(Usuario usuario, CanalNotificacion canal) {
+        modificar(usuario, bitResumen(canal), true);
+    }
+
+    /**
+     * Deshabilita el resumen de notificaciones de un usuario en un canal.
+     * Lo ya acumulado se envía en el próximo vencimiento del resumen.
+     *
+     * @param usuario Usuario
+     * @param canal Canal de notificación
+     */
+    public void deshabilitarResumen(Usuario usuario, CanalNotificacion canal) {
+        modificar(usuario, bitResumen(canal), false);
+    }
+
+    /**
+     * Verifica si un usuario recibe resúmenes en un canal.
+     *
+     * @param usuario Usuario
+     * @param canal Canal de notificación
+     * @return true si el resumen está habilitado, false en caso contrario
+     */
+    public boolean esResumenHabilitado(Usuario usuario, CanalNotificacion canal) {
+        return (mascara(usuario) & bitResumen(canal)) != 0;
+    }
+
+    /**
+     * Verifica si una notificación debe acumularse en el resumen de su destinatario
+     * en lugar de enviarse en el momento. Solo se resumen las de nivel INFO.
+     *
+     * @param notificacion Notificación a verificar
+     * @param canal Canal por el que se enviaría
+     * @return true si va al resumen, false si se envía en el momento
+     */
+    public boolean debeIncluirEnResumen(Notificacion notificacion, CanalNotificacion canal) {
+        return notificacion.getNivelUrgencia() == Notificacion.NivelUrgencia.INFO
+                && notificacion.getDestinatario() != null
+                && (mascara(notificacion.getDestinatario()) & bitResumen(canal)) != 0;
+    }
+
+    /**
+     * @return Tiempo máximo que una notificación espera en un resumen
+     */
+    public Duration getIntervaloResumen() {
+        return intervaloResumen;
+    }
+
+    /**
+     * Establece cada cuánto se envían los resúmenes.
+     *
+     * @param intervaloResumen Tiempo máximo que una notificación espera en un resumen
+     */
+    public void setIntervaloResumen(Duration intervaloResumen) {
+        this.intervaloResumen = intervaloResumen;
+    }
+
+    /**
+     * @return Cantidad de notificaciones con la que un resumen se envía sin esperar al intervalo
+     */
+    public int getTamanioMaximoResumen() {
+        return tamanioMaximoResumen;
+    }
+
+    /**
+     * Establece con cuántas notificaciones se envía un resumen antes de que venza el intervalo.
+     *
+     * @param tamanioMaximoResumen Cantidad máxima de notificaciones por resumen
+     */
+    public void setTamanioMaximoResumen(int tamanioMaximoResumen) {
+        if (tamanioMaximoResumen < 1) {
+            throw new IllegalArgumentException("El resumen debe admitir al menos una notificación");
         }
+        this.tamanioMaximoResumen = tamanioMaximoResumen;
     }
-    
+
     /**
      * Verifica si un tipo de notificación está habilitado para un usuario.
      *
@@ -134,9 +233,9 @@ public class ConfiguracionNotificaciones {
      * @return true si está habilitado, false en caso contrario
      */
     public boolean esTipoHabilitado(Usuario usuario, Notificacion.TipoNotificacion tipo) {
-        return tiposHabilitados.containsKey(usuario) && tiposHabilitados.get(usuario).contains(tipo);
+        return (mascara(usuario) & bit(tipo)) != 0;
     }
-    
+
     /**
      * Verifica si un nivel de urgencia está habilitado para un usuario.
      *
@@ -145,9 +244,9 @@ public class ConfiguracionNotificaciones {
      * @return true si está habilitado, false en caso contrario
      */
     public boolean esNivelHabilitado(Usuario usuario, Notificacion.NivelUrgencia nivel) {
-        return nivelesHabilitados.containsKey(usuario) && nivelesHabilitados.get(usuario).contains(nivel);
+        return (mascara(usuario) & bit(nivel)) != 0;
     }
-    
+
     /**
      * Verifica si un canal de notificación está habilitado para un usuario.
      *
@@ -156,9 +255,9 @@ public class ConfiguracionNotificaciones {
      * @return true si está habilitado, false en caso contrario
      */
     public boolean esCanalHabilitado(Usuario usuario, CanalNotificacion canal) {
-        return canalesHabilitados.containsKey(usuario) && canalesHabilitados.get(usuario).contains(canal);
+        return (mascara(usuario) & bit(canal)) != 0;
     }
-    
+
     /**
      * Verifica si una notificación debe ser enviada a un usuario según sus preferencias.
      *
@@ -167,13 +266,61 @@ public class ConfiguracionNotificaciones {
      * @return true si debe enviarse, false en caso contrario
      */
     public boolean debeEnviarNotificacion(Notificacion notificacion, CanalNotificacion canal) {
-        Usuario usuario = notificacion.getDestinatario();
-        
-        return esTipoHabilitado(usuario, notificacion.getTipo()) &&
-               esNivelHabilitado(usuario, notificacion.getNivelUrgencia()) &&
-               esCanalHabilitado(usuario, canal);
+        int requeridos = bit(notificacion.getTipo()) | bit(notificacion.getNivelUrgencia()) | bit(canal);
+        return (mascara(notificacion.getDestinatario()) & requeridos) == requeridos;
+    }
+
+    private int mascara(Usuario usuario) {
+        // Una notificación sin destinatario no tiene preferencias
+        if (usuario == null) {
+            return 0;
+        }
+        int id = usuario.getID();
+        AtomicIntegerArray pagina = pagina(id, false);
+        return pagina != null ? pagina.get(posicion(id)) : 0;
+    }
+
+    private void modificar(Usuario usuario, int bit, boolean habilitar) {
+        int id = usuario.getID();
+        AtomicIntegerArray pagina = pagina(id, habilitar);
+        if (pagina == null) {
+            // Deshabilitar en un usuario sin preferencias no cambia nada
+            return;
+        }
+        if (habilitar) {
+            pagina.getAndUpdate(posicion(id), actual -> actual | bit);
+        } else {
+            pagina.getAndUpdate(posicion(id), actual -> actual & ~bit);
+        }
+    }
+
+    private AtomicIntegerArray pagina(int id, boolean crear) {
+        int numeroPagina = id >> BITS_PAGINA;
+        return crear
+                ? paginas.computeIfAbsent(numeroPagina, k -> new AtomicIntegerArray(TAMANIO_PAGINA))
+                : paginas.get(numeroPagina);
     }
-    
+
+    private static int posicion(int id) {
+        return id & (TAMANIO_PAGINA - 1);
+    }
+
+    private static int bit(Notificacion.TipoNotificacion tipo) {
+        return 1 << (DESPLAZAMIENTO_TIPOS + tipo.ordinal());
+    }
+
+    private static int bit(Notificacion.NivelUrgencia nivel) {
+        return 1 << (DESPLAZAMIENTO_NIVELES + nivel.ordinal());
+    }
+
+    private static int bit(CanalNotificacion canal) {
+        return 1 << (DESPLAZAMIENTO_CANALES + canal.ordinal());
+    }
+
+    private static int bitResumen(CanalNotificacion canal) {
+        return 1 << (DESPLAZAMIENTO_RESUMEN + canal.ordinal());
+    }
+
     /**
      * Enumeración que define los canales de notificación disponibles.
      */
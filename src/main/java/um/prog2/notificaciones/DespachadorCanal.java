@@ -0,0 +1,487 @@
+package um.prog2.notificaciones;
+
+import um.prog2.excepciones.EnvioParcialException;
+import um.prog2.interfaces.ServicioNotificaciones;
+import um.prog2.usuario.Usuario;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Cola de salida de un canal de notificaciones con su propio hilo de envío.
+ * Las notificaciones se agrupan en lotes que se envían con
+ * {@link ServicioNotificaciones#enviarLote(List)} cuando se alcanza el tamaño
+ * máximo o cuando pasa la espera máxima desde la primera notificación del lote.
+ * Así un canal lento no demora a los demás. La cola se divide en particiones
+ * por destinatario, cada una con su hilo: las notificaciones de un usuario se
+ * envían en orden y las de usuarios distintos en paralelo. Cada partición es una
+ * {@link ColaPrioridades}: las notificaciones más urgentes salen antes, así que
+ * el orden de un usuario se respeta dentro de cada nivel de urgencia.
+ * Si el envío de un lote falla, las notificaciones se reprograman según la
+ * {@link PoliticaReintentos} en un planificador aparte, sin frenar la cola; las
+ * que agotan los intentos van al {@link AlmacenMensajesFallidos}. Si el servicio
+ * informa un envío parcial con {@link EnvioParcialException}, solo se reprograman
+ * las notificaciones que no llegaron. Las fallidas de un mismo usuario vuelven
+ * juntas y en su orden, pero al final de la cola: los reintentos relajan el orden
+ * por usuario, porque las notificaciones posteriores que ya estaban en la cola
+ * pueden entregarse antes que las reintentadas. Si el canal
+ * tiene un {@link LimitadorTasa}, el hilo de envío espera un permiso por cada
+ * notificación antes de enviar el lote: lo que excede la tasa queda en la cola.
+ * Las notificaciones que el destinatario pidió recibir en resumen se acumulan
+ * por usuario y se encolan juntas como una {@link NotificacionResumen}.
+ */
+class DespachadorCanal {
+    // Espera del hilo de envío cuando la cola está vacía, para revisar si debe terminar
+    private static final long ESPERA_COLA_VACIA_MS = 100;
+
+    private final ServicioNotificaciones servicio;
+    private final ConfiguracionNotificaciones.CanalNotificacion canal;
+    private final List<ColaPrioridades<Envio>> colas;
+    private final int tamanioLote;
+    private final long esperaMaximaNanos;
+    private final ScheduledExecutorService planificadorReintentos;
+    private final Consumer<Notificacion> alCompletar;
+    private final List<Thread> hilosEnvio;
+    private final AtomicLong lotesEnviados;
+    private final AtomicLong notificacionesEnviadas;
+    private final AtomicLong lotesFallidos;
+    private final AtomicLong reintentos;
+    private final AtomicLong notificacionesFallidas;
+    private final AtomicLong notificacionesDiferidas;
+    private final AtomicLong notificacionesResumidas;
+    private final Map<Integer, Resumen> resumenes;
+    private volatile LimitadorTasa limitador;
+    private volatile PoliticaReintentos politicaReintentos;
+    private volatile AlmacenMensajesFallidos almacenFallidos;
+    private volatile boolean activo;
+
+    /**
+     * Constructor del despachador. El hilo de envío arranca de inmediato.
+     *
+     * @param servicio Servicio que realiza los envíos
+     * @param canal Canal al que corresponde el servicio
+     * @param tamanioLote Cantidad máxima de notificaciones por lote
+     * @param esperaMaxima Tiempo máximo que una notificación espera a que se complete su lote
+     * @param particiones Cantidad de colas (e hilos de envío) entre las que se reparten los destinatarios
+     * @param planificadorReintentos Planificador donde se programan los reintentos
+     * @param politicaReintentos Política de reintentos de los envíos fallidos
+     * @param almacenFallidos Almacén de las notificaciones que agotan sus reintentos
+     * @param alCompletar Acción a ejecutar con cada notificación enviada o descartada por fallida
+     */
+    DespachadorCanal(ServicioNotificaciones servicio, ConfiguracionNotificaciones.CanalNotificacion canal,
+                     int tamanioLote, Duration esperaMaxima, int particiones,
+                     ScheduledExecutorService planificadorReintentos, PoliticaReintentos politicaReintentos,
+                     AlmacenMensajesFallidos almacenFallidos, Consumer<Notificacion> alCompletar) {
+        if (tamanioLote < 1) {
+            throw new IllegalArgumentException("El tamaño de lote debe ser al menos 1");
+        }
+        this.servicio = servicio;
+        this.canal = canal;
+        this.colas = new ArrayList<>(particiones);
+        this.tamanioLote = tamanioLote;
+        this.esperaMaximaNanos = esperaMaxima.toNanos();
+        this.planificadorReintentos = planificadorReintentos;
+        this.politicaReintentos = politicaReintentos;
+        this.almacenFallidos = almacenFallidos;
+        this.alCompletar = alCompletar;
+        this.hilosEnvio = new ArrayList<>(particiones);
+        this.lotesEnviados = new AtomicLong();
+        this.notificacionesEnviadas = new AtomicLong();
+        this.lotesFallidos = new AtomicLong();
+        this.reintentos = new AtomicLong();
+        this.notificacionesFallidas = new AtomicLong();
+        this.notificacionesDiferidas = new AtomicLong();
+        this.notificacionesResumidas = new AtomicLong();
+        this.resumenes = new ConcurrentHashMap<>();
+        this.activo = true;
+        for (int i = 0; i < particiones; i++) {
+            ColaPrioridades<Envio> cola = new ColaPrioridades<>(envio -> envio.notificacion.getNivelUrgencia());
+            colas.add(cola);
+            Thread hiloEnvio = new Thread(() -> procesarCola(cola), "envio-" + canal.name().toLowerCase() + "-" + i);
+            hiloEnvio.setDaemon(true);
+            hilosEnvio.add(hiloEnvio);
+            hiloEnvio.start();
+        }
+    }
+
+    /**
+     * Agrega una notificación a la cola de salida del canal.
+     *
+     * @param notificacion Notificación a enviar
+     */
+    void encolar(Notificacion notificacion) {
+        encolar(new Envio(notificacion));
+    }
+
+    private void encolar(Envio envio) {
+        colas.get(ServicioEnvioNotificaciones.particionDe(envio.notificacion.getDestinatario(), colas.size()))
+                .agregar(envio);
+    }
+
+    /**
+     * Agrega una notificación al resumen de su destinatario. Si el resumen llega
+     * al tamaño máximo se encola de inmediato.
+     *
+     * @param notificacion Notificación a resumir
+     * @param tamanioMaximo Cantidad de notificaciones con la que se envía el resumen
+     */
+    void acumular(Notificacion notificacion, int tamanioMaximo) {
+        notificacionesResumidas.incrementAndGet();
+        List<Notificacion> completo = new ArrayList<>(0);
+        resumenes.compute(notificacion.getDestinatario().getID(), (id, resumen) -> {
+            if (resumen == null) {
+                resumen = new Resumen(notificacion.getDestinatario());
+            }
+            resumen.notificaciones.add(notificacion);
+            if (resumen.notificaciones.size() < tamanioMaximo) {
+                return resumen;
+            }
+            completo.add(resumen.aNotificacion(canal));
+            return null;
+        });
+        for (Notificacion resumen : completo) {
+            encolar(resumen);
+        }
+    }
+
+    /**
+     * Encola los resúmenes que llevan abiertos al menos el tiempo indicado.
+     *
+     * @param antiguedadMinima Antigüedad desde la primera notificación del resumen
+     *                         (cero para encolarlos todos)
+     */
+    void encolarResumenes(Duration antiguedadMinima) {
+        long limite = System.nanoTime() - antiguedadMinima.toNanos();
+        List<Notificacion> vencidos = new ArrayList<>(0);
+        for (Integer id : resumenes.keySet()) {
+            resumenes.computeIfPresent(id, (clave, resumen) -> {
+                if (resumen.inicioNanos - limite > 0) {
+                    return resumen;
+                }
+                vencidos.add(resumen.aNotificacion(canal));
+                return null;
+            });
+        }
+        for (Notificacion resumen : vencidos) {
+            encolar(resumen);
+        }
+    }
+
+    /**
+     * @param limitador Limitador de tasa del canal (null para no limitar)
+     */
+    void setLimitador(LimitadorTasa limitador) {
+        this.limitador = limitador;
+    }
+
+    void setPoliticaReintentos(PoliticaReintentos politicaReintentos) {
+        this.politicaReintentos = politicaReintentos;
+    }
+
+    void setAlmacenFallidos(AlmacenMensajesFallidos almacenFallidos) {
+        this.almacenFallidos = almacenFallidos;
+    }
+
+    ServicioNotificaciones getServicio() {
+        return servicio;
+    }
+
+    ConfiguracionNotificaciones.CanalNotificacion getCanal() {
+        return canal;
+    }
+
+    long getLotesEnviados() {
+        return lotesEnviados.get();
+    }
+
+    long getNotificacionesEnviadas() {
+        return notificacionesEnviadas.get();
+    }
+
+    long getLotesFallidos() {
+        return lotesFallidos.get();
+    }
+
+    long getReintentos() {
+        return reintentos.get();
+    }
+
+    /**
+     * @return Cantidad de notificaciones que agotaron sus reintentos
+     */
+    long getNotificacionesFallidas() {
+        return notificacionesFallidas.get();
+    }
+
+    /**
+     * @return Cantidad de notificaciones que tuvieron que esperar por el límite de tasa del canal
+     */
+    long getNotificacionesDiferidas() {
+        return notificacionesDiferidas.get();
+    }
+
+    /**
+     * @return Cantidad de notificaciones que se acumularon en resúmenes
+     */
+    long getNotificacionesResumidas() {
+        return notificacionesResumidas.get();
+    }
+
+    /**
+     * @return Cantidad de notificaciones de un nivel que esperan en la cola de salida
+     */
+    int getProfundidad(Notificacion.NivelUrgencia nivel) {
+        int profundidad = 0;
+        for (ColaPrioridades<Envio> cola : colas) {
+            profundidad += cola.getProfundidad(nivel);
+        }
+        return profundidad;
+    }
+
+    /**
+     * @return Espera promedio en la cola de salida de las notificaciones de un nivel
+     */
+    Duration getEsperaPromedio(Notificacion.NivelUrgencia nivel) {
+        return ColaPrioridades.esperaPromedio(colas, nivel);
+    }
+
+    /**
+     * @return Cantidad de notificaciones que esperan ser enviadas, incluidas las de resúmenes abiertos
+     */
+    int getPendientes() {
+        int pendientes = 0;
+        for (Resumen resumen : resumenes.values()) {
+            pendientes += resumen.notificaciones.size();
+        }
+        for (ColaPrioridades<Envio> cola : colas) {
+            pendientes += cola.tamanio();
+        }
+        return pendientes;
+    }
+
+    /**
+     * Deja de aceptar trabajo nuevo; el hilo termina después de enviar lo pendiente.
+     */
+    void cerrar() {
+        activo = false;
+    }
+
+    /**
+     * Espera a que los hilos de envío terminen después de {@link #cerrar()}.
+     *
+     * @param plazo Instante (System.nanoTime) hasta el que se espera
+     * @return true si todos los hilos terminaron
+     * @throws InterruptedException Si el hilo es interrumpido mientras espera
+     */
+    boolean esperarTerminacion(long plazo) throws InterruptedException {
+        for (Thread hilo : hilosEnvio) {
+            long restante = plazo - System.nanoTime();
+            if (restante > 0) {
+                TimeUnit.NANOSECONDS.timedJoin(hilo, restante);
+            }
+            if (hilo.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void procesarCola(ColaPrioridades<Envio> cola) {
+        List<Envio> lote = new ArrayList<>(tamanioLote);
+        try {
+            while (activo || !cola.estaVacia()) {
+                Envio primera = cola.tomar(ESPERA_COLA_VACIA_MS, TimeUnit.MILLISECONDS);
+                if (primera == null) {
+                    continue;
+                }
+                lote.add(primera);
+                completarLote(cola, lote, System.nanoTime() + esperaMaximaNanos);
+                esperarPermisos(lote.size());
+                enviar(lote);
+                lote.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Agrega notificaciones al lote hasta llenarlo o hasta que venza el plazo.
+     */
+    private void completarLote(ColaPrioridades<Envio> cola, List<Envio> lote, long plazo)
+            throws InterruptedException {
+        while (lote.size() < tamanioLote) {
+            cola.drenar(lote, tamanioLote - lote.size());
+            if (lote.size() >= tamanioLote) {
+                return;
+            }
+            long restante = plazo - System.nanoTime();
+            if (restante <= 0) {
+                return;
+            }
+            Envio siguiente = cola.tomar(restante, TimeUnit.NANOSECONDS);
+            if (siguiente == null) {
+                return;
+            }
+            lote.add(siguiente);
+        }
+    }
+
+    /**
+     * Toma un permiso del limitador del canal por cada notificación, esperando si hace falta.
+     */
+    private void esperarPermisos(int cantidad) throws InterruptedException {
+        LimitadorTasa limitadorActual = limitador;
+        if (limitadorActual == null) {
+            return;
+        }
+        for (int i = 0; i < cantidad; i++) {
+            long espera = limitadorActual.intentarAdquirir();
+            if (espera > 0) {
+                notificacionesDiferidas.incrementAndGet();
+                do {
+                    TimeUnit.NANOSECONDS.sleep(espera);
+                } while ((espera = limitadorActual.intentarAdquirir()) > 0);
+            }
+        }
+    }
+
+    private void enviar(List<Envio> lote) {
+        List<Notificacion> notificaciones = new ArrayList<>(lote.size());
+        for (Envio envio : lote) {
+            notificaciones.add(envio.notificacion);
+        }
+        try {
+            servicio.enviarLote(notificaciones);
+        } catch (EnvioParcialException e) {
+            lotesFallidos.incrementAndGet();
+            System.out.println("[NOTIFICACIONES] Se enviaron " + (lote.size() - e.getNoEnviadas().size()) +
+                    " de " + lote.size() + " por " + canal + ": " + e.getMessage());
+            Set<Notificacion> noEnviadas = Collections.newSetFromMap(new IdentityHashMap<>());
+            noEnviadas.addAll(e.getNoEnviadas());
+            List<Envio> fallidos = new ArrayList<>(noEnviadas.size());
+            for (Envio envio : lote) {
+                if (noEnviadas.contains(envio.notificacion)) {
+                    fallidos.add(envio);
+                } else {
+                    notificacionesEnviadas.incrementAndGet();
+                    alCompletar.accept(envio.notificacion);
+                }
+            }
+            reprogramar(fallidos, e);
+            return;
+        } catch (RuntimeException e) {
+            lotesFallidos.incrementAndGet();
+            System.out.println("[NOTIFICACIONES] Error al enviar un lote de " + lote.size() +
+                    " por " + canal + ": " + e.getMessage());
+            reprogramar(lote, e);
+            return;
+        }
+        lotesEnviados.incrementAndGet();
+        notificacionesEnviadas.addAndGet(lote.size());
+        for (Envio envio : lote) {
+            alCompletar.accept(envio.notificacion);
+        }
+    }
+
+    /**
+     * Programa un nuevo intento de los envíos fallidos de un lote o, a los que agotaron
+     * los intentos, los manda al almacén de fallidos. Los de un mismo destinatario se
+     * reintentan juntos y en el orden del lote.
+     */
+    private void reprogramar(List<Envio> fallidos, RuntimeException error) {
+        PoliticaReintentos politica = politicaReintentos;
+        Map<Integer, List<Envio>> porDestinatario = new LinkedHashMap<>();
+        for (Envio envio : fallidos) {
+            envio.intentos++;
+            if (politica.debeReintentar(envio.intentos)) {
+                Usuario destinatario = envio.notificacion.getDestinatario();
+                porDestinatario.computeIfAbsent(destinatario != null ? destinatario.getID() : null,
+                        id -> new ArrayList<>()).add(envio);
+                continue;
+            }
+            // Se cuenta después de registrarla, así el contador nunca adelanta al almacén
+            almacenFallidos.registrar(envio.notificacion, canal, envio.intentos, error);
+            notificacionesFallidas.incrementAndGet();
+            alCompletar.accept(envio.notificacion);
+        }
+        for (List<Envio> delDestinatario : porDestinatario.values()) {
+            programarReintento(delDestinatario, politica, error);
+        }
+    }
+
+    /**
+     * Vuelve a encolar juntos los envíos de un destinatario, con la espera del que más
+     * intentos lleva. El reintento vuelve a la cola de su partición, así que no bloquea a
+     * las demás notificaciones. Si el servicio se está cerrando no hay quién reintente:
+     * los envíos quedan sin confirmar para que la bandeja de salida los vuelva a entregar
+     * al reiniciar.
+     */
+    private void programarReintento(List<Envio> envios, PoliticaReintentos politica, RuntimeException error) {
+        if (activo) {
+            int intentos = 0;
+            for (Envio envio : envios) {
+                intentos = Math.max(intentos, envio.intentos);
+            }
+            try {
+                planificadorReintentos.schedule(() -> envios.forEach(this::encolar),
+                        politica.calcularEspera(intentos).toNanos(), TimeUnit.NANOSECONDS);
+                reintentos.addAndGet(envios.size());
+                return;
+            } catch (RejectedExecutionException e) {
+                // El planificador ya se cerró
+            }
+        }
+        System.out.println("[NOTIFICACIONES] Quedan sin confirmar " + envios.size() + " notificaciones por " +
+                canal + " al cerrar: " + error.getMessage());
+    }
+
+    /**
+     * Notificación en la cola de salida junto con los intentos de envío ya realizados.
+     */
+    private static final class Envio {
+        private final Notificacion notificacion;
+        private int intentos;
+
+        private Envio(Notificacion notificacion) {
+            this.notificacion = notificacion;
+        }
+    }
+
+    /**
+     * Notificaciones de un usuario que esperan a enviarse juntas.
+     */
+    private static final class Resumen {
+        private final Usuario destinatario;
+        private final List<Notificacion> notificaciones;
+        private final long inicioNanos;
+
+        Resumen(Usuario destinatario) {
+            this.destinatario = destinatario;
+            this.notificaciones = new ArrayList<>();
+            this.inicioNanos = System.nanoTime();
+        }
+
+        /**
+         * Una sola notificación se envía tal cual; varias, como resumen.
+         */
+        Notificacion aNotificacion(ConfiguracionNotificaciones.CanalNotificacion canal) {
+            if (notificaciones.size() == 1) {
+                return notificaciones.get(0);
+            }
+            return new NotificacionResumen(destinatario, canal, notificaciones);
+        }
+    }
+}
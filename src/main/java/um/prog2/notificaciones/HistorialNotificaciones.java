@@ -0,0 +1,534 @@
+package um.prog2.notificaciones;
+
+import um.prog2.usuario.Usuario;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Historial de notificaciones de capacidad fija implementado como buffer circular.
+ * Cada registro toma un número de secuencia con una operación atómica y escribe su
+ * ranura sin locks; cuando el buffer está lleno, la notificación más antigua se
+ * reemplaza. Si se configura un archivo de desborde, las notificaciones reemplazadas
+ * se escriben en él (una por línea) desde un hilo aparte, en vez de perderse. La
+ * cola de escritura admite una vuelta del buffer (y al menos
+ * {@value #MINIMO_PENDIENTES_DESBORDE}): si el disco no da abasto, las que no entran
+ * se descartan y se cuentan, para no bloquear a quien registra.
+ * Los lectores recorren el buffer o piden páginas sin copiar el historial completo.
+ * <p>
+ * Además se mantienen índices secundarios por destinatario, tipo y nivel de urgencia,
+ * y uno general, todos ordenados por fecha de creación. Las consultas por esas
+ * claves o por rango de fechas cuestan O(resultado) más una búsqueda binaria, sin
+ * recorrer el historial ni ordenar. Cada índice descarta sus entradas reemplazadas
+ * al agregar, y cada vez que el buffer da una vuelta completa se barren todos: se
+ * compactan y se eliminan los índices de destinatarios que quedaron vacíos. Así la
+ * memoria de los índices queda acotada por la capacidad aunque un destinatario no
+ * vuelva a recibir notificaciones.
+ * <p>
+ * Los índices sí se sincronizan: cada registro toma el monitor de tres o cuatro de
+ * ellos (general, tipo, nivel y destinatario). Con muchos hilos registrando a la vez,
+ * los índices general, de tipo y de nivel son el punto de contención, no el buffer.
+ */
+public class HistorialNotificaciones implements Iterable<Notificacion> {
+    // Notificaciones que pueden esperar a escribirse en el desborde aunque la capacidad sea chica
+    static final int MINIMO_PENDIENTES_DESBORDE = 1024;
+
+    private final int capacidad;
+    private final AtomicReferenceArray<Ranura> ranuras;
+    private final AtomicLong siguienteSecuencia;
+
+    // Índices secundarios ordenados por fecha de creación
+    private final IndiceTemporal indiceGeneral;
+    private final Map<Integer, IndiceTemporal> indicePorDestinatario;
+    private final Map<Notificacion.TipoNotificacion, IndiceTemporal> indicePorTipo;
+    private final Map<Notificacion.NivelUrgencia, IndiceTemporal> indicePorNivel;
+
+    // Desborde a disco (opcional)
+    private final Path archivoDesborde;
+    private final BlockingQueue<Notificacion> pendientesDesborde;
+    private final AtomicLong desbordadas;
+    private final AtomicLong desbordesPerdidos;
+    private final Thread hiloDesborde;
+    private volatile boolean activo;
+
+    /**
+     * Constructor de un historial que descarta las notificaciones más antiguas.
+     *
+     * @param capacidad Cantidad máxima de notificaciones en memoria
+     */
+    public HistorialNotificaciones(int capacidad) {
+        this(capacidad, null);
+    }
+
+    /**
+     * Constructor de un historial con desborde a disco.
+     *
+     * @param capacidad Cantidad máxima de notificaciones en memoria
+     * @param archivoDesborde Archivo donde se agregan las notificaciones reemplazadas (null para descartarlas)
+     */
+    public HistorialNotificaciones(int capacidad, Path archivoDesborde) {
+        if (capacidad < 1) {
+            throw new IllegalArgumentException("La capacidad debe ser al menos 1");
+        }
+        this.capacidad = capacidad;
+        this.ranuras = new AtomicReferenceArray<>(capacidad);
+        this.siguienteSecuencia = new AtomicLong();
+        this.indiceGeneral = new IndiceTemporal();
+        this.indicePorDestinatario = new ConcurrentHashMap<>();
+        this.indicePorTipo = new EnumMap<>(Notificacion.TipoNotificacion.class);
+        for (Notificacion.TipoNotificacion tipo : Notificacion.TipoNotificacion.values()) {
+            indicePorTipo.put(tipo, new IndiceTemporal());
+        }
+        this.indicePorNivel = new EnumMap<>(Notificacion.NivelUrgencia.class);
+        for (Notificacion.NivelUrgencia nivel : Notificacion.NivelUrgencia.values()) {
+            indicePorNivel.put(nivel, new IndiceTemporal());
+        }
+        this.archivoDesborde = archivoDesborde;
+        this.pendientesDesborde = new LinkedBlockingQueue<>(Math.max(capacidad, MINIMO_PENDIENTES_DESBORDE));
+        this.desbordadas = new AtomicLong();
+        this.desbordesPerdidos = new AtomicLong();
+        this.activo = true;
+        if (archivoDesborde != null) {
+            this.hiloDesborde = new Thread(this::escribirDesborde, "historial-desborde");
+            this.hiloDesborde.setDaemon(true);
+            this.hiloDesborde.start();
+        } else {
+            this.hiloDesborde = null;
+        }
+    }
+
+    /**
+     * Registra una notificación. Puede llamarse desde varios hilos a la vez.
+     *
+     * @param notificacion Notificación a registrar
+     */
+    public void agregar(Notificacion notificacion) {
+        long secuencia = siguienteSecuencia.getAndIncrement();
+        int indice = indice(secuencia);
+        Ranura nueva = new Ranura(secuencia, notificacion);
+        while (true) {
+            Ranura actual = ranuras.get(indice);
+            if (actual != null && actual.secuencia > secuencia) {
+                // Un registro posterior ya dio la vuelta al buffer: esta notificación es la más vieja
+                desbordar(notificacion);
+                return;
+            }
+            if (ranuras.compareAndSet(indice, actual, nueva)) {
+                if (actual != null) {
+                    desbordar(actual.notificacion);
+                }
+                indexar(secuencia, notificacion);
+                if (secuencia % capacidad == capacidad - 1) {
+                    // Una vez por vuelta del buffer, así el barrido cuesta O(1) amortizado por registro
+                    barrerIndices();
+                }
+                return;
+            }
+        }
+    }
+
+    private void desbordar(Notificacion notificacion) {
+        if (archivoDesborde != null && (!activo || !pendientesDesborde.offer(notificacion))) {
+            desbordesPerdidos.incrementAndGet();
+        }
+    }
+
+    private void indexar(long secuencia, Notificacion notificacion) {
+        long instante = instanteDe(notificacion.getFechaCreacion());
+        long primeraVigente = Math.max(0, siguienteSecuencia.get() - capacidad);
+        indiceGeneral.agregar(secuencia, instante, primeraVigente);
+        indicePorTipo.get(notificacion.getTipo()).agregar(secuencia, instante, primeraVigente);
+        indicePorNivel.get(notificacion.getNivelUrgencia()).agregar(secuencia, instante, primeraVigente);
+        if (notificacion.getDestinatario() != null) {
+            // Se agrega dentro de compute para no escribir en un índice que el barrido acaba de quitar
+            indicePorDestinatario.compute(notificacion.getDestinatario().getID(), (id, indice) -> {
+                IndiceTemporal destino = indice != null ? indice : new IndiceTemporal();
+                destino.agregar(secuencia, instante, primeraVigente);
+                return destino;
+            });
+        }
+    }
+
+    /**
+     * Quita de todos los índices las entradas ya reemplazadas en el buffer y elimina
+     * los índices de destinatarios que quedaron vacíos.
+     */
+    private void barrerIndices() {
+        long primeraVigente = Math.max(0, siguienteSecuencia.get() - capacidad);
+        indiceGeneral.compactar(primeraVigente);
+        for (IndiceTemporal indice : indicePorTipo.values()) {
+            indice.compactar(primeraVigente);
+        }
+        for (IndiceTemporal indice : indicePorNivel.values()) {
+            indice.compactar(primeraVigente);
+        }
+        for (Integer id : indicePorDestinatario.keySet()) {
+            indicePorDestinatario.computeIfPresent(id,
+                    (clave, indice) -> indice.compactar(primeraVigente) ? null : indice);
+        }
+    }
+
+    /**
+     * @return Cantidad de destinatarios con notificaciones indexadas
+     */
+    int getDestinatariosIndexados() {
+        return indicePorDestinatario.size();
+    }
+
+    /**
+     * @return Cantidad de notificaciones en memoria
+     */
+    public int tamanio() {
+        return (int) Math.min(siguienteSecuencia.get(), capacidad);
+    }
+
+    public int getCapacidad() {
+        return capacidad;
+    }
+
+    /**
+     * @return Cantidad de notificaciones registradas desde el inicio, incluidas las reemplazadas
+     */
+    public long getTotalRegistradas() {
+        return siguienteSecuencia.get();
+    }
+
+    /**
+     * @return Cantidad de notificaciones escritas en el archivo de desborde
+     */
+    public long getDesbordadas() {
+        return desbordadas.get();
+    }
+
+    /**
+     * @return Cantidad de notificaciones reemplazadas que no llegaron al archivo de desborde
+     *         porque la cola de escritura estaba llena o el historial ya estaba cerrado
+     */
+    public long getDesbordesPerdidos() {
+        return desbordesPerdidos.get();
+    }
+
+    /**
+     * Obtiene las notificaciones más recientes por fecha de creación, de la más nueva a la más vieja.
+     *
+     * @param cantidad Cantidad máxima de notificaciones
+     * @return Lista con las notificaciones más recientes
+     */
+    public List<Notificacion> obtenerRecientes(int cantidad) {
+        return consultar(indiceGeneral, Long.MIN_VALUE, Long.MAX_VALUE, cantidad);
+    }
+
+    /**
+     * Obtiene las notificaciones de un destinatario, de la más nueva a la más vieja.
+     *
+     * @param destinatario Usuario destinatario
+     * @return Notificaciones en memoria para ese usuario
+     */
+    public List<Notificacion> obtenerPorDestinatario(Usuario destinatario) {
+        IndiceTemporal indice = indicePorDestinatario.get(destinatario.getID());
+        return indice != null ? consultar(indice, Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE) : new ArrayList<>();
+    }
+
+    /**
+     * Obtiene las notificaciones de un tipo, de la más nueva a la más vieja.
+     *
+     * @param tipo Tipo de notificación
+     * @return Notificaciones en memoria de ese tipo
+     */
+    public List<Notificacion> obtenerPorTipo(Notificacion.TipoNotificacion tipo) {
+        return consultar(indicePorTipo.get(tipo), Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Obtiene las notificaciones de un nivel de urgencia, de la más nueva a la más vieja.
+     *
+     * @param nivel Nivel de urgencia
+     * @return Notificaciones en memoria de ese nivel
+     */
+    public List<Notificacion> obtenerPorNivelUrgencia(Notificacion.NivelUrgencia nivel) {
+        return consultar(indicePorNivel.get(nivel), Long.MIN_VALUE, Long.MAX_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Obtiene las notificaciones creadas en un rango de fechas (ambos extremos incluidos),
+     * de la más nueva a la más vieja.
+     *
+     * @param desde Fecha de inicio
+     * @param hasta Fecha de fin
+     * @return Notificaciones en memoria creadas en el rango
+     */
+    public List<Notificacion> obtenerEntre(LocalDateTime desde, LocalDateTime hasta) {
+        return consultar(indiceGeneral, instanteDe(desde), instanteDe(hasta), Integer.MAX_VALUE);
+    }
+
+    private List<Notificacion> consultar(IndiceTemporal indice, long desde, long hasta, int limite) {
+        long[] secuencias = indice.secuenciasEntre(desde, hasta, limite);
+        List<Notificacion> resultado = new ArrayList<>(secuencias.length);
+        for (long secuencia : secuencias) {
+            Notificacion notificacion = leer(secuencia);
+            if (notificacion != null) {
+                resultado.add(notificacion);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Obtiene una página del historial, de la notificación más nueva a la más vieja.
+     *
+     * @param pagina Número de página, empezando en 0
+     * @param tamanioPagina Cantidad de notificaciones por página
+     * @return Notificaciones de la página (vacía si no hay tantas)
+     */
+    public List<Notificacion> obtenerPagina(int pagina, int tamanioPagina) {
+        List<Notificacion> resultado = new ArrayList<>(Math.min(tamanioPagina, capacidad));
+        long fin = siguienteSecuencia.get();
+        long inicio = Math.max(0, fin - capacidad);
+        long desde = fin - 1 - (long) pagina * tamanioPagina;
+        for (long secuencia = desde; secuencia >= inicio && resultado.size() < tamanioPagina; secuencia--) {
+            Notificacion notificacion = leer(secuencia);
+            if (notificacion != null) {
+                resultado.add(notificacion);
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * @return Copia de las notificaciones en memoria, de la más vieja a la más nueva
+     */
+    public List<Notificacion> aLista() {
+        List<Notificacion> lista = new ArrayList<>(tamanio());
+        for (Notificacion notificacion : this) {
+            lista.add(notificacion);
+        }
+        return lista;
+    }
+
+    /**
+     * Recorre las notificaciones en memoria de la más vieja a la más nueva, sin copiarlas.
+     * Las que se reemplacen durante el recorrido se omiten.
+     */
+    @Override
+    public Iterator<Notificacion> iterator() {
+        long fin = siguienteSecuencia.get();
+        long inicio = Math.max(0, fin - capacidad);
+        return new Iterator<Notificacion>() {
+            private long secuencia = inicio;
+            private Notificacion proxima = avanzar();
+
+            private Notificacion avanzar() {
+                while (secuencia < fin) {
+                    Notificacion notificacion = leer(secuencia++);
+                    if (notificacion != null) {
+                        return notificacion;
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return proxima != null;
+            }
+
+            @Override
+            public Notificacion next() {
+                if (proxima == null) {
+                    throw new NoSuchElementException();
+                }
+                Notificacion actual = proxima;
+                proxima = avanzar();
+                return actual;
+            }
+        };
+    }
+
+    /**
+     * Detiene el hilo de desborde y espera a que escriba lo pendiente.
+     */
+    public void cerrar() {
+        activo = false;
+        if (hiloDesborde == null) {
+            return;
+        }
+        try {
+            hiloDesborde.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Lee la notificación de una secuencia, o null si ya fue reemplazada o aún no se escribió.
+     */
+    private Notificacion leer(long secuencia) {
+        Ranura ranura = ranuras.get(indice(secuencia));
+        return ranura != null && ranura.secuencia == secuencia ? ranura.notificacion : null;
+    }
+
+    private int indice(long secuencia) {
+        return (int) (secuencia % capacidad);
+    }
+
+    private void escribirDesborde() {
+        try (BufferedWriter escritor = Files.newBufferedWriter(archivoDesborde, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            while (activo || !pendientesDesborde.isEmpty()) {
+                Notificacion notificacion = pendientesDesborde.poll(100, TimeUnit.MILLISECONDS);
+                if (notificacion == null) {
+                    escritor.flush();
+                    continue;
+                }
+                escritor.write(formatearLinea(notificacion));
+                escritor.newLine();
+                desbordadas.incrementAndGet();
+            }
+        } catch (IOException e) {
+            System.out.println("[NOTIFICACIONES] Error al escribir el desborde del historial: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String formatearLinea(Notificacion notificacion) {
+        return notificacion.getFechaCreacion() + "\t" +
+                notificacion.getTipo().name() + "\t" +
+                notificacion.getNivelUrgencia().name() + "\t" +
+                (notificacion.getDestinatario() != null ? notificacion.getDestinatario().getID() : "") + "\t" +
+                notificacion.getMensaje().replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+    }
+
+    /**
+     * Convierte una fecha a un número comparable (nanosegundos desde 1970, sin zona).
+     */
+    private static long instanteDe(LocalDateTime fecha) {
+        return fecha.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + fecha.getNano();
+    }
+
+    /**
+     * Índice de secuencias del buffer ordenado por instante de creación. Como las
+     * notificaciones llegan casi en orden, la inserción ordenada desde el final
+     * cuesta O(1) en el caso habitual. Las entradas del principio que ya fueron
+     * reemplazadas en el buffer se descartan al agregar.
+     */
+    private static final class IndiceTemporal {
+        private static final int CAPACIDAD_INICIAL = 16;
+
+        private long[] secuencias = new long[CAPACIDAD_INICIAL];
+        private long[] instantes = new long[CAPACIDAD_INICIAL];
+        private int inicio;
+        private int fin;
+
+        synchronized void agregar(long secuencia, long instante, long primeraVigente) {
+            while (inicio < fin && secuencias[inicio] < primeraVigente) {
+                inicio++;
+            }
+            if (fin == secuencias.length) {
+                int vigentes = fin - inicio;
+                int nuevaCapacidad = vigentes < secuencias.length / 2 ? secuencias.length : secuencias.length * 2;
+                long[] nuevasSecuencias = new long[nuevaCapacidad];
+                long[] nuevosInstantes = new long[nuevaCapacidad];
+                System.arraycopy(secuencias, inicio, nuevasSecuencias, 0, vigentes);
+                System.arraycopy(instantes, inicio, nuevosInstantes, 0, vigentes);
+                secuencias = nuevasSecuencias;
+                instantes = nuevosInstantes;
+                inicio = 0;
+                fin = vigentes;
+            }
+            int posicion = fin++;
+            while (posicion > inicio && instantes[posicion - 1] > instante) {
+                secuencias[posicion] = secuencias[posicion - 1];
+                instantes[posicion] = instantes[posicion - 1];
+                posicion--;
+            }
+            secuencias[posicion] = secuencia;
+            instantes[posicion] = instante;
+        }
+
+        /**
+         * Descarta todas las entradas reemplazadas, no solo las del principio, y achica
+         * los arreglos si quedaron mucho más grandes que lo vigente.
+         *
+         * @return true si el índice quedó vacío
+         */
+        synchronized boolean compactar(long primeraVigente) {
+            int vigentes = 0;
+            for (int i = inicio; i < fin; i++) {
+                if (secuencias[i] >= primeraVigente) {
+                    secuencias[vigentes] = secuencias[i];
+                    instantes[vigentes] = instantes[i];
+                    vigentes++;
+                }
+            }
+            inicio = 0;
+            fin = vigentes;
+            if (secuencias.length > CAPACIDAD_INICIAL && vigentes < secuencias.length / 4) {
+                int nuevaCapacidad = Math.max(CAPACIDAD_INICIAL, vigentes * 2);
+                secuencias = Arrays.copyOf(secuencias, nuevaCapacidad);
+                instantes = Arrays.copyOf(instantes, nuevaCapacidad);
+            }
+            return vigentes == 0;
+        }
+
+        /**
+         * @return Secuencias con instante en [desde, hasta], de la más nueva a la más vieja
+         */
+        synchronized long[] secuenciasEntre(long desde, long hasta, int limite) {
+            int primera = buscarPrimeraMayorOIgual(desde);
+            int ultima = buscarPrimeraMayorOIgual(hasta == Long.MAX_VALUE ? hasta : hasta + 1) - 1;
+            int cantidad = Math.max(0, Math.min(limite, ultima - primera + 1));
+            long[] resultado = new long[cantidad];
+            for (int i = 0; i < cantidad; i++) {
+                resultado[i] = secuencias[ultima - i];
+            }
+            return resultado;
+        }
+
+        private int buscarPrimeraMayorOIgual(long instante) {
+            if (instante == Long.MAX_VALUE) {
+                return fin;
+            }
+            int bajo = inicio;
+            int alto = fin;
+            while (bajo < alto) {
+                int medio = (bajo + alto) >>> 1;
+                if (instantes[medio] < instante) {
+                    bajo = medio + 1;
+                } else {
+                    alto = medio;
+                }
+            }
+            return bajo;
+        }
+    }
+
+    private static final class Ranura {
+        final long secuencia;
+        final Notificacion notificacion;
+
+        Ranura(long secuencia, Notificacion notificacion) {
+            this.secuencia = secuencia;
+            this.notificacion = notificacion;
+        }
+    }
+}
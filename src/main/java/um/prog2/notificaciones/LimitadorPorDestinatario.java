@@ -0,0 +1,73 @@
+package um.prog2.notificaciones;
+
+import um.prog2.usuario.Usuario;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Un {@link LimitadorTasa} por destinatario, creado la primera vez que se le
+ * envía algo. Los baldes llenos no aportan información, así que se descartan
+ * cuando hay demasiados. La limpieza se hace cada vez que la cantidad de
+ * destinatarios duplica a la que quedó después de la anterior, de modo que su
+ * costo se reparte entre los destinatarios nuevos.
+ */
+class LimitadorPorDestinatario {
+    // Cantidad mínima de destinatarios para descartar los baldes llenos
+    private static final int LIMPIAR_DESDE = 10_000;
+
+    private final double permisosPorSegundo;
+    private final int rafaga;
+    private final Map<Integer, LimitadorTasa> limitadores;
+
+    // Cantidad de destinatarios que dispara la próxima limpieza
+    private final AtomicInteger proximaLimpieza;
+
+    /**
+     * Constructor del limitador.
+     *
+     * @param permisosPorSegundo Notificaciones por segundo permitidas a cada destinatario
+     * @param rafaga Notificaciones seguidas permitidas a un destinatario sin envíos recientes
+     */
+    LimitadorPorDestinatario(double permisosPorSegundo, int rafaga) {
+        this.permisosPorSegundo = permisosPorSegundo;
+        this.rafaga = rafaga;
+        this.limitadores = new ConcurrentHashMap<>();
+        this.proximaLimpieza = new AtomicInteger(LIMPIAR_DESDE);
+    }
+
+    /**
+     * Toma un permiso para el destinatario de una notificación o, si no hay, le
+     * reserva el próximo turno (ver {@link LimitadorTasa#reservar()}).
+     *
+     * @param destinatario Usuario destinatario (si es null no se limita)
+     * @return 0 si se concedió el permiso; si no, los nanosegundos hasta el turno reservado
+     */
+    long reservar(Usuario destinatario) {
+        if (destinatario == null) {
+            return 0;
+        }
+        LimitadorTasa limitador = limitadores.get(destinatario.getID());
+        if (limitador == null) {
+            if (limitadores.size() > proximaLimpieza.get()) {
+                limpiar();
+            }
+            limitador = limitadores.computeIfAbsent(destinatario.getID(),
+                    id -> new LimitadorTasa(permisosPorSegundo, rafaga));
+        }
+        return limitador.reservar();
+    }
+
+    /**
+     * Descarta los baldes llenos. Si otro hilo está limpiando, no espera.
+     */
+    private void limpiar() {
+        int umbral = proximaLimpieza.get();
+        if (!proximaLimpieza.compareAndSet(umbral, Integer.MAX_VALUE)) {
+            return;
+        }
+        limitadores.values().removeIf(LimitadorTasa::estaLleno);
+        proximaLimpieza.set(Math.max(LIMPIAR_DESDE, limitadores.size() * 2));
+    }
+}
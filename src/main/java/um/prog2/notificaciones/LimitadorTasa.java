@@ -0,0 +1,89 @@
+package um.prog2.notificaciones;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limitador de tasa tipo token bucket, sin locks. En vez de contar tokens guarda
+ * un único valor: el instante teórico en que el balde vuelve a estar lleno
+ * (algoritmo GCRA). Cada permiso lo adelanta un intervalo, y se concede si el
+ * adelanto no supera la ráfaga permitida. Tomar un permiso es una lectura y un
+ * compareAndSet, por lo que el camino rápido nunca bloquea.
+ */
+class LimitadorTasa {
+    private final long intervaloNanos;
+    private final long toleranciaNanos;
+    private final AtomicLong llenoEn;
+
+    /**
+     * Constructor del limitador.
+     *
+     * @param permisosPorSegundo Tasa sostenida de permisos
+     * @param rafaga Cantidad de permisos que pueden tomarse seguidos con el balde lleno
+     */
+    LimitadorTasa(double permisosPorSegundo, int rafaga) {
+        if (permisosPorSegundo <= 0 || rafaga < 1) {
+            throw new IllegalArgumentException("La tasa y la ráfaga deben ser positivas");
+        }
+        this.intervaloNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permisosPorSegundo));
+        this.toleranciaNanos = intervaloNanos * rafaga;
+        this.llenoEn = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Intenta tomar un permiso sin esperar.
+     *
+     * @return 0 si se concedió el permiso; si no, los nanosegundos que faltan para que haya uno
+     */
+    long intentarAdquirir() {
+        while (true) {
+            long ahora = System.nanoTime();
+            long actual = llenoEn.get();
+            long siguiente = Math.max(actual, ahora) + intervaloNanos;
+            long exceso = siguiente - ahora - toleranciaNanos;
+            if (exceso > 0) {
+                return exceso;
+            }
+            if (llenoEn.compareAndSet(actual, siguiente)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Toma un permiso aunque no haya disponibles, reservando el próximo turno libre.
+     * Los pedidos posteriores quedan detrás del reservado, así que los turnos se
+     * reparten en el mismo orden en que se pidieron.
+     *
+     * @return 0 si había un permiso; si no, los nanosegundos hasta el turno reservado
+     */
+    long reservar() {
+        while (true) {
+            long ahora = System.nanoTime();
+            long actual = llenoEn.get();
+            long siguiente = Math.max(actual, ahora) + intervaloNanos;
+            if (llenoEn.compareAndSet(actual, siguiente)) {
+                return Math.max(0, siguiente - ahora - toleranciaNanos);
+            }
+        }
+    }
+
+    /**
+     * Toma un permiso, esperando lo necesario si no hay disponibles.
+     *
+     * @throws InterruptedException Si el hilo es interrumpido mientras espera
+     */
+    void adquirir() throws InterruptedException {
+        long espera;
+        while ((espera = intentarAdquirir()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(espera);
+        }
+    }
+
+    /**
+     * @return true si el balde está lleno, es decir, si no hay permisos tomados pendientes de reponer
+     */
+    boolean estaLleno() {
+        return llenoEn.get() <= System.nanoTime();
+    }
+}
@@ -2,12 +2,25 @@ package um.prog2.notificaciones;
 
 import um.prog2.usuario.Usuario;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Clase base para representar una notificación.
+ * El mensaje puede ser un texto fijo o una {@link PlantillaMensaje} con sus
+ * argumentos; en ese caso se arma la primera vez que se pide y se guarda, uno
+ * por canal si la plantilla tiene un texto propio para ese canal.
  */
 public class Notificacion {
-    private final String mensaje;
+    private static final Object[] SIN_ARGUMENTOS = new Object[0];
+
+    private final PlantillaMensaje plantilla;
+    private final Object[] argumentos;
+    // Mensaje general, armado a demanda si hay plantilla
+    private volatile String mensaje;
+    // Mensajes de los canales con texto propio, indexados por canal
+    private volatile String[] mensajesPorCanal;
     private final Usuario destinatario;
     private final LocalDateTime fechaCreacion;
     private final TipoNotificacion tipo;
@@ -33,9 +46,43 @@ public class Notificacion {
      * @param nivelUrgencia Nivel de urgencia de la notificación
      */
     public Notificacion(String mensaje, Usuario destinatario, TipoNotificacion tipo, NivelUrgencia nivelUrgencia) {
+        this(mensaje, null, null, destinatario, tipo, nivelUrgencia, LocalDateTime.now());
+    }
+
+    /**
+     * Constructor para crear una notificación a partir de una plantilla.
+     * El mensaje no se arma hasta que se necesita.
+     * 
+     * @param plantilla Plantilla del mensaje
+     * @param argumentos Argumentos de la plantilla
+     * @param destinatario Usuario destinatario de la notificación
+     * @param tipo Tipo de notificación
+     * @param nivelUrgencia Nivel de urgencia de la notificación
+     */
+    public Notificacion(PlantillaMensaje plantilla, Object[] argumentos, Usuario destinatario,
+                        TipoNotificacion tipo, NivelUrgencia nivelUrgencia) {
+        this(null, plantilla, argumentos, destinatario, tipo, nivelUrgencia, LocalDateTime.now());
+    }
+
+    /**
+     * Constructor completo, también usado para reconstruir una notificación con su
+     * fecha de creación original al recuperarla de la bandeja de salida.
+     * 
+     * @param mensaje Mensaje de la notificación (null si se usa una plantilla)
+     * @param plantilla Plantilla del mensaje (null si se usa un mensaje fijo)
+     * @param argumentos Argumentos de la plantilla
+     * @param destinatario Usuario destinatario de la notificación
+     * @param tipo Tipo de notificación
+     * @param nivelUrgencia Nivel de urgencia de la notificación
+     * @param fechaCreacion Fecha de creación original
+     */
+    Notificacion(String mensaje, PlantillaMensaje plantilla, Object[] argumentos, Usuario destinatario,
+                 TipoNotificacion tipo, NivelUrgencia nivelUrgencia, LocalDateTime fechaCreacion) {
         this.mensaje = mensaje;
+        this.plantilla = plantilla;
+        this.argumentos = argumentos != null ? argumentos : SIN_ARGUMENTOS;
         this.destinatario = destinatario;
-        this.fechaCreacion = LocalDateTime.now();
+        this.fechaCreacion = fechaCreacion;
         this.tipo = tipo;
         this.nivelUrgencia = nivelUrgencia;
     }
@@ -46,7 +93,68 @@ public class Notificacion {
      * @return Mensaje de la notificación
      */
     public String getMensaje() {
-        return mensaje;
+        String texto = mensaje;
+        if (texto == null && plantilla != null) {
+            // Si dos hilos lo arman a la vez obtienen el mismo texto; no hace falta sincronizar
+            texto = plantilla.renderizar(argumentos);
+            mensaje = texto;
+        }
+        return texto;
+    }
+
+    /**
+     * Obtiene el mensaje de la notificación tal como se entrega por un canal.
+     * 
+     * @param canal Canal que entrega la notificación
+     * @return Mensaje para ese canal
+     */
+    public String getMensaje(ConfiguracionNotificaciones.CanalNotificacion canal) {
+        if (plantilla == null || !plantilla.tieneVariante(canal)) {
+            return getMensaje();
+        }
+        String[] porCanal = mensajesPorCanal;
+        if (porCanal == null) {
+            porCanal = new String[ConfiguracionNotificaciones.CanalNotificacion.values().length];
+            mensajesPorCanal = porCanal;
+        }
+        String texto = porCanal[canal.ordinal()];
+        if (texto == null) {
+            texto = plantilla.renderizar(canal, argumentos);
+            porCanal[canal.ordinal()] = texto;
+        }
+        return texto;
+    }
+
+    /**
+     * Obtiene la plantilla del mensaje.
+     * 
+     * @return Plantilla, o null si el mensaje es un texto fijo
+     */
+    public PlantillaMensaje getPlantilla() {
+        return plantilla;
+    }
+
+    /**
+     * @return Argumentos de la plantilla (vacío si el mensaje es un texto fijo)
+     */
+    Object[] getArgumentos() {
+        return argumentos;
+    }
+
+    /**
+     * Obtiene un valor que identifica el contenido del mensaje sin armarlo:
+     * el texto fijo, o la plantilla con sus argumentos.
+     * 
+     * @return Valor comparable con equals
+     */
+    Object getContenido() {
+        if (plantilla == null) {
+            return mensaje;
+        }
+        List<Object> contenido = new ArrayList<>(argumentos.length + 1);
+        contenido.add(plantilla);
+        contenido.addAll(Arrays.asList(argumentos));
+        return contenido;
     }
 
     /**
@@ -92,7 +200,7 @@ public class Notificacion {
      */
     @Override
     public String toString() {
-        return "[" + fechaCreacion + "] " + nivelUrgencia.getIcono() + " " + tipo + ": " + mensaje;
+        return "[" + fechaCreacion + "] " + nivelUrgencia.getIcono() + " " + tipo + ": " + getMensaje();
     }
 
     /**
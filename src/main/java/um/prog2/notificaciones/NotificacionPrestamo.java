@@ -3,6 +3,8 @@ package um.prog2.notificaciones;
 import um.prog2.interfaces.RecursoDigital;
 import um.prog2.usuario.Usuario;
 
+import java.time.LocalDateTime;
+
 /**
  * Notificación específica para eventos relacionados con préstamos.
  */
@@ -36,7 +38,34 @@ public class NotificacionPrestamo extends Notificacion {
      */
     public NotificacionPrestamo(String mensaje, Usuario destinatario, TipoNotificacion tipo, 
                                RecursoDigital recurso, String idPrestamo, NivelUrgencia nivelUrgencia) {
-        super(mensaje, destinatario, tipo, nivelUrgencia);
+        this(mensaje, null, null, destinatario, tipo, recurso, idPrestamo, nivelUrgencia, LocalDateTime.now());
+    }
+
+    /**
+     * Constructor para crear una notificación de préstamo a partir de una plantilla.
+     * 
+     * @param plantilla Plantilla del mensaje
+     * @param argumentos Argumentos de la plantilla
+     * @param destinatario Usuario destinatario de la notificación
+     * @param tipo Tipo de notificación
+     * @param recurso Recurso relacionado con el préstamo
+     * @param idPrestamo Identificador del préstamo
+     * @param nivelUrgencia Nivel de urgencia de la notificación
+     */
+    public NotificacionPrestamo(PlantillaMensaje plantilla, Object[] argumentos, Usuario destinatario,
+                                TipoNotificacion tipo, RecursoDigital recurso, String idPrestamo,
+                                NivelUrgencia nivelUrgencia) {
+        this(null, plantilla, argumentos, destinatario, tipo, recurso, idPrestamo, nivelUrgencia, LocalDateTime.now());
+    }
+
+    /**
+     * Constructor completo, también usado para reconstruir una notificación de préstamo
+     * con su fecha de creación original.
+     */
+    NotificacionPrestamo(String mensaje, PlantillaMensaje plantilla, Object[] argumentos, Usuario destinatario,
+                         TipoNotificacion tipo, RecursoDigital recurso, String idPrestamo,
+                         NivelUrgencia nivelUrgencia, LocalDateTime fechaCreacion) {
+        super(mensaje, plantilla, argumentos, destinatario, tipo, nivelUrgencia, fechaCreacion);
         this.recurso = recurso;
         this.idPrestamo = idPrestamo;
     }
@@ -3,6 +3,8 @@ package um.prog2.notificaciones;
 import um.prog2.interfaces.RecursoDigital;
 import um.prog2.usuario.Usuario;
 
+import java.time.LocalDateTime;
+
 /**
  * Notificación específica para eventos relacionados con reservas.
  */
@@ -39,7 +41,18 @@ public class NotificacionReserva extends Notificacion {
      */
     public NotificacionReserva(String mensaje, Usuario destinatario, TipoNotificacion tipo, 
                               RecursoDigital recurso, String idReserva, int prioridad, NivelUrgencia nivelUrgencia) {
-        super(mensaje, destinatario, tipo, nivelUrgencia);
+        this(mensaje, null, null, destinatario, tipo, recurso, idReserva, prioridad, nivelUrgencia,
+                LocalDateTime.now());
+    }
+
+    /**
+     * Constructor completo, también usado para reconstruir una notificación de reserva
+     * con su fecha de creación original.
+     */
+    NotificacionReserva(String mensaje, PlantillaMensaje plantilla, Object[] argumentos, Usuario destinatario,
+                        TipoNotificacion tipo, RecursoDigital recurso, String idReserva, int prioridad,
+                        NivelUrgencia nivelUrgencia, LocalDateTime fechaCreacion) {
+        super(mensaje, plantilla, argumentos, destinatario, tipo, nivelUrgencia, fechaCreacion);
         this.recurso = recurso;
         this.idReserva = idReserva;
         this.prioridad = prioridad;
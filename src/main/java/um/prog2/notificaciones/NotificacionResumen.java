@@ -0,0 +1,67 @@
+package um.prog2.notificaciones;
+
+import um.prog2.usuario.Usuario;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Notificación que agrupa varias notificaciones INFO de un usuario para un canal.
+ * Su mensaje lista los mensajes de cada una, tal como se verían en ese canal,
+ * y se arma recién cuando se entrega.
+ */
+public class NotificacionResumen extends Notificacion {
+    private final ConfiguracionNotificaciones.CanalNotificacion canal;
+    private final List<Notificacion> notificaciones;
+
+    /**
+     * Constructor del resumen.
+     *
+     * @param destinatario Usuario destinatario
+     * @param canal Canal para el que se arma el resumen
+     * @param notificaciones Notificaciones resumidas, en orden de llegada
+     */
+    NotificacionResumen(Usuario destinatario, ConfiguracionNotificaciones.CanalNotificacion canal,
+                        List<Notificacion> notificaciones) {
+        super(PlantillaMensaje.RESUMEN, new Object[]{notificaciones.size(), new Contenido(canal, notificaciones)},
+                destinatario, TipoNotificacion.SISTEMA, NivelUrgencia.INFO);
+        this.canal = canal;
+        this.notificaciones = Collections.unmodifiableList(notificaciones);
+    }
+
+    /**
+     * @return Canal para el que se armó el resumen
+     */
+    public ConfiguracionNotificaciones.CanalNotificacion getCanal() {
+        return canal;
+    }
+
+    /**
+     * @return Notificaciones incluidas en el resumen
+     */
+    public List<Notificacion> getNotificaciones() {
+        return notificaciones;
+    }
+
+    /**
+     * Lista de mensajes del resumen; se convierte a texto al armar el mensaje.
+     */
+    private static final class Contenido {
+        private final ConfiguracionNotificaciones.CanalNotificacion canal;
+        private final List<Notificacion> notificaciones;
+
+        Contenido(ConfiguracionNotificaciones.CanalNotificacion canal, List<Notificacion> notificaciones) {
+            this.canal = canal;
+            this.notificaciones = notificaciones;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder texto = new StringBuilder();
+            for (Notificacion notificacion : notificaciones) {
+                texto.append("\n- ").append(notificacion.getMensaje(canal));
+            }
+            return texto.toString();
+        }
+    }
+}
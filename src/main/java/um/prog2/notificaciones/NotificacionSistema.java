@@ -2,6 +2,8 @@ package um.prog2.notificaciones;
 
 import um.prog2.usuario.Usuario;
 
+import java.time.LocalDateTime;
+
 /**
  * Notificación específica para eventos relacionados con el sistema.
  */
@@ -30,7 +32,32 @@ public class NotificacionSistema extends Notificacion {
      * @param nivelUrgencia Nivel de urgencia de la notificación
      */
     public NotificacionSistema(String mensaje, Usuario destinatario, TipoNotificacion tipo, String origen, NivelUrgencia nivelUrgencia) {
-        super(mensaje, destinatario, tipo, nivelUrgencia);
+        this(mensaje, null, null, destinatario, tipo, origen, nivelUrgencia, LocalDateTime.now());
+    }
+
+    /**
+     * Constructor para crear una notificación del sistema a partir de una plantilla.
+     * 
+     * @param plantilla Plantilla del mensaje
+     * @param argumentos Argumentos de la plantilla
+     * @param destinatario Usuario destinatario de la notificación
+     * @param tipo Tipo de notificación
+     * @param origen Origen de la notificación
+     * @param nivelUrgencia Nivel de urgencia de la notificación
+     */
+    public NotificacionSistema(PlantillaMensaje plantilla, Object[] argumentos, Usuario destinatario,
+                               TipoNotificacion tipo, String origen, NivelUrgencia nivelUrgencia) {
+        this(null, plantilla, argumentos, destinatario, tipo, origen, nivelUrgencia, LocalDateTime.now());
+    }
+
+    /**
+     * Constructor completo, también usado para reconstruir una notificación del sistema
+     * con su fecha de creación original.
+     */
+    NotificacionSistema(String mensaje, PlantillaMensaje plantilla, Object[] argumentos, Usuario destinatario,
+                        TipoNotificacion tipo, String origen, NivelUrgencia nivelUrgencia,
+                        LocalDateTime fechaCreacion) {
+        super(mensaje, plantilla, argumentos, destinatario, tipo, nivelUrgencia, fechaCreacion);
         this.origen = origen;
     }
 
@@ -0,0 +1,189 @@
+package um.prog2.notificaciones;
+
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plantillas de los mensajes de notificación.
+ * Cada plantilla se compila una sola vez, al cargar la clase, en sus partes fijas
+ * y las posiciones de sus argumentos. Una notificación guarda la plantilla y los
+ * argumentos, y el texto se arma recién cuando un canal lo entrega (o alguien lo
+ * muestra), así las notificaciones que se descartan por las preferencias del
+ * usuario nunca llegan a formatearse.
+ * <p>
+ * Los argumentos se escriben {n}, o {n,fecha} para formatear una fecha como
+ * dd/MM/yyyy HH:mm. Una plantilla puede tener un texto más corto para SMS.
+ */
+public enum PlantillaMensaje {
+    PRESTAMO_VENCE_MANANA(
+        "⚠️ ALERTA: Su préstamo del recurso '{0}' vence MAÑANA ({1,fecha}). " +
+        "Responda con 'RENOVAR {2}' para extender el préstamo.",
+        "Su préstamo de '{0}' vence MAÑANA ({1,fecha}). Responda RENOVAR {2} para extenderlo."),
+    PRESTAMO_VENCE_HOY(
+        "🔔 ALERTA: Su préstamo del recurso '{0}' vence HOY ({1,fecha}). " +
+        "Responda con 'RENOVAR {2}' para extender el préstamo o devuelva el recurso.",
+        "Su préstamo de '{0}' vence HOY ({1,fecha}). Responda RENOVAR {2} o devuelva el recurso."),
+    PRESTAMO_VENCIDO_ALERTA(
+        "🚨 ALERTA: Su préstamo del recurso '{0}' está VENCIDO desde el {1,fecha}. " +
+        "Responda con 'RENOVAR {2}' para extender el préstamo o devuelva el recurso inmediatamente.",
+        "Su préstamo de '{0}' está VENCIDO desde el {1,fecha}. Responda RENOVAR {2} o devuélvalo ya."),
+    RECURSO_DISPONIBLE(
+        "✅ DISPONIBLE: El recurso '{0}' que reservaste está ahora DISPONIBLE. " +
+        "Responde con 'PRESTAR {0}' para tomarlo en préstamo inmediatamente.",
+        "'{0}' ya está DISPONIBLE. Responde PRESTAR {0} para tomarlo."),
+    RECORDATORIO(
+        "{0}: {1} [Recordatorio programado cada {2} minutos]",
+        null),
+    PRESTAMO_REALIZADO(
+        "Préstamo realizado: {0}. Fecha de devolución: {1}",
+        null),
+    DEVOLUCION_REALIZADA(
+        "Devolución realizada: {0}",
+        null),
+    RENOVACION_REALIZADA(
+        "Renovación realizada: {0}. Nueva fecha de devolución: {1}",
+        null),
+    PRESTAMO_VENCIDO(
+        "Préstamo vencido: {0}. Fecha de devolución: {1}",
+        null),
+    ERROR_SOLICITUD_PRESTAMO(
+        "Error en solicitud de préstamo: {0}",
+        null),
+    RESUMEN(
+        "📋 Resumen de {0} notificaciones:{1}",
+        "Resumen de {0} avisos:{1}");
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+
+    private final Compilada general;
+    private final Compilada sms;
+
+    PlantillaMensaje(String textoGeneral, String textoSms) {
+        this.general = new Compilada(textoGeneral);
+        this.sms = textoSms != null ? new Compilada(textoSms) : null;
+    }
+
+    /**
+     * Arma el texto general del mensaje.
+     *
+     * @param argumentos Argumentos de la plantilla
+     * @return Mensaje armado
+     */
+    public String renderizar(Object... argumentos) {
+        return general.renderizar(argumentos);
+    }
+
+    /**
+     * Arma el texto del mensaje para un canal, usando su variante si la tiene.
+     *
+     * @param canal Canal que entrega el mensaje
+     * @param argumentos Argumentos de la plantilla
+     * @return Mensaje armado
+     */
+    public String renderizar(ConfiguracionNotificaciones.CanalNotificacion canal, Object... argumentos) {
+        return textoPara(canal).renderizar(argumentos);
+    }
+
+    /**
+     * @param canal Canal de notificación
+     * @return true si la plantilla tiene un texto propio para ese canal
+     */
+    public boolean tieneVariante(ConfiguracionNotificaciones.CanalNotificacion canal) {
+        return textoPara(canal) != general;
+    }
+
+    /**
+     * Convierte los argumentos a texto tal como aparecerían en el mensaje, por
+     * ejemplo para guardarlos. Renderizar la plantilla con el resultado produce el
+     * mismo mensaje que con los argumentos originales.
+     *
+     * @param argumentos Argumentos de la plantilla
+     * @return Argumentos formateados
+     */
+    String[] argumentosComoTexto(Object[] argumentos) {
+        String[] textos = new String[argumentos.length];
+        for (int i = 0; i < argumentos.length; i++) {
+            textos[i] = formatear(argumentos[i], general.esFecha(i));
+        }
+        return textos;
+    }
+
+    private Compilada textoPara(ConfiguracionNotificaciones.CanalNotificacion canal) {
+        return canal == ConfiguracionNotificaciones.CanalNotificacion.SMS && sms != null ? sms : general;
+    }
+
+    private static String formatear(Object argumento, boolean fecha) {
+        if (fecha && argumento instanceof TemporalAccessor) {
+            return FORMATO_FECHA.format((TemporalAccessor) argumento);
+        }
+        return String.valueOf(argumento);
+    }
+
+    /**
+     * Plantilla separada en partes fijas y argumentos: partes[i], argumento i, partes[i + 1]...
+     */
+    private static final class Compilada {
+        private final String[] partes;
+        private final int[] indices;
+        private final boolean[] fechas;
+        private final int longitudFija;
+
+        Compilada(String texto) {
+            List<String> partesLeidas = new ArrayList<>();
+            List<int[]> argumentosLeidos = new ArrayList<>();
+            StringBuilder parte = new StringBuilder();
+            int i = 0;
+            while (i < texto.length()) {
+                char c = texto.charAt(i);
+                int cierre = c == '{' ? texto.indexOf('}', i) : -1;
+                if (cierre < 0) {
+                    parte.append(c);
+                    i++;
+                    continue;
+                }
+                String[] especificacion = texto.substring(i + 1, cierre).split(",", 2);
+                boolean fecha = especificacion.length > 1 && especificacion[1].trim().equals("fecha");
+                argumentosLeidos.add(new int[]{Integer.parseInt(especificacion[0].trim()), fecha ? 1 : 0});
+                partesLeidas.add(parte.toString());
+                parte.setLength(0);
+                i = cierre + 1;
+            }
+            partesLeidas.add(parte.toString());
+
+            this.partes = partesLeidas.toArray(new String[0]);
+            this.indices = new int[argumentosLeidos.size()];
+            this.fechas = new boolean[argumentosLeidos.size()];
+            int longitud = 0;
+            for (int j = 0; j < indices.length; j++) {
+                indices[j] = argumentosLeidos.get(j)[0];
+                fechas[j] = argumentosLeidos.get(j)[1] == 1;
+            }
+            for (String p : partes) {
+                longitud += p.length();
+            }
+            this.longitudFija = longitud;
+        }
+
+        String renderizar(Object[] argumentos) {
+            StringBuilder texto = new StringBuilder(longitudFija + 16 * indices.length);
+            texto.append(partes[0]);
+            for (int j = 0; j < indices.length; j++) {
+                Object argumento = indices[j] < argumentos.length ? argumentos[indices[j]] : null;
+                texto.append(formatear(argumento, fechas[j]));
+                texto.append(partes[j + 1]);
+            }
+            return texto.toString();
+        }
+
+        boolean esFecha(int indiceArgumento) {
+            for (int j = 0; j < indices.length; j++) {
+                if (indices[j] == indiceArgumento) {
+                    return fechas[j];
+                }
+            }
+            return false;
+        }
+    }
+}
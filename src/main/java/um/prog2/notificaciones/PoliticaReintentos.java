@@ -0,0 +1,68 @@
+package um.prog2.notificaciones;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Política de reintentos con espera exponencial y variación aleatoria (jitter).
+ * La espera antes del intento n es un valor al azar entre la mitad y el total de
+ * esperaInicial * 2^(n-1), acotado por esperaMaxima. El jitter evita que muchos
+ * envíos fallidos a la vez reintenten todos en el mismo instante.
+ */
+public class PoliticaReintentos {
+    private final int maximoIntentos;
+    private final Duration esperaInicial;
+    private final Duration esperaMaxima;
+
+    /**
+     * Constructor de la política.
+     *
+     * @param maximoIntentos Cantidad total de intentos, incluido el primero
+     * @param esperaInicial Espera base antes del primer reintento
+     * @param esperaMaxima Espera máxima entre intentos
+     */
+    public PoliticaReintentos(int maximoIntentos, Duration esperaInicial, Duration esperaMaxima) {
+        if (maximoIntentos < 1) {
+            throw new IllegalArgumentException("Debe haber al menos un intento");
+        }
+        this.maximoIntentos = maximoIntentos;
+        this.esperaInicial = esperaInicial;
+        this.esperaMaxima = esperaMaxima;
+    }
+
+    /**
+     * @return Política por defecto: 5 intentos, empezando en 200 ms y sin superar 30 segundos
+     */
+    public static PoliticaReintentos porDefecto() {
+        return new PoliticaReintentos(5, Duration.ofMillis(200), Duration.ofSeconds(30));
+    }
+
+    public int getMaximoIntentos() {
+        return maximoIntentos;
+    }
+
+    /**
+     * Indica si después de un intento fallido corresponde reintentar.
+     *
+     * @param intentosRealizados Intentos ya realizados
+     * @return true si quedan intentos
+     */
+    public boolean debeReintentar(int intentosRealizados) {
+        return intentosRealizados < maximoIntentos;
+    }
+
+    /**
+     * Calcula la espera antes del siguiente intento.
+     *
+     * @param intentosRealizados Intentos ya realizados (1 después del primer fallo)
+     * @return Espera con jitter
+     */
+    public Duration calcularEspera(int intentosRealizados) {
+        int exponente = Math.min(Math.max(intentosRealizados - 1, 0), 30);
+        long base = Math.min(esperaMaxima.toMillis(), esperaInicial.toMillis() << exponente);
+        if (base <= 1) {
+            return Duration.ofMillis(base);
+        }
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(base / 2, base + 1));
+    }
+}
@@ -3,39 +3,82 @@ package um.prog2.notificaciones;
 import um.prog2.interfaces.ServicioNotificaciones;
 import um.prog2.usuario.Usuario;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Servicio para el envío asincrónico de notificaciones utilizando ExecutorService.
  * Implementa la interfaz ServicioNotificaciones para permitir un sistema unificado.
  * Soporta configuración de preferencias de notificación y diferentes niveles de urgencia.
+ * Cada servicio registrado tiene su propia cola de salida que envía por lotes,
+ * de modo que un canal lento no demora a los demás. Los envíos que fallan se
+ * reintentan con espera exponencial y los que agotan los intentos se guardan
+ * en un almacén de mensajes fallidos. Opcionalmente se limita la tasa de envío
+ * por canal y por destinatario; lo que excede un límite se demora, no se descarta.
+ * Tanto las colas de los trabajadores como las de los canales tienen un carril
+ * por nivel de urgencia ({@link ColaPrioridades}): una acumulación de avisos INFO
+ * no demora a las alertas ERROR, y las INFO igual reciben su parte de los envíos.
+ * Con una {@link BandejaSalida} las notificaciones se guardan en disco hasta que
+ * todos sus canales las entregan, y las pendientes se reenvían al reiniciar.
+ * Las notificaciones INFO de los usuarios con resumen habilitado en un canal se
+ * acumulan y se envían juntas según la {@link ConfiguracionNotificaciones}.
  */
 public class ServicioEnvioNotificaciones implements ServicioNotificaciones {
-    private final BlockingQueue<Notificacion> colaNotificaciones;
+    // Umbrales por defecto para enviar un lote: tamaño o espera de la primera notificación
+    public static final int TAMANIO_LOTE_DEFECTO = 100;
+    public static final Duration ESPERA_MAXIMA_LOTE_DEFECTO = Duration.ofMillis(50);
+
+    // Cantidad de trabajadores por defecto para procesar y enviar notificaciones
+    public static final int TRABAJADORES_DEFECTO = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+    // Cantidad de notificaciones que se conservan en memoria por defecto
+    public static final int CAPACIDAD_HISTORIAL_DEFECTO = 10_000;
+
+    // Ventana por defecto en la que se agrupan notificaciones idénticas sobre un recurso
+    public static final Duration VENTANA_AGRUPAMIENTO_DEFECTO = Duration.ofMinutes(10);
+
+    // Espera máxima por defecto para enviar lo pendiente al cerrar el servicio
+    public static final Duration ESPERA_CIERRE_DEFECTO = Duration.ofSeconds(5);
+
+    // Cada cuánto se buscan resúmenes que ya deben enviarse
+    private static final long REVISION_RESUMENES_MS = 250;
+
+    private final List<ColaPrioridades<Notificacion>> colasNotificaciones;
     private final ExecutorService procesadorNotificaciones;
-    private final List<ServicioNotificaciones> serviciosNotificacion;
-    private final List<Notificacion> historialNotificaciones;
+    private final int trabajadores;
+    private final List<DespachadorCanal> despachadores;
+    private final ScheduledExecutorService planificadorReintentos;
+    private final HistorialNotificaciones historialNotificaciones;
+    private volatile PoliticaReintentos politicaReintentos;
+    private volatile AlmacenMensajesFallidos almacenFallidos;
+    private final Map<ConfiguracionNotificaciones.CanalNotificacion, LimitadorTasa> limitesCanal;
+    private volatile LimitadorPorDestinatario limitadorDestinatarios;
+    private final AtomicLong notificacionesDiferidas;
+    // Notificaciones diferidas que ya tienen reservado su permiso del limitador por destinatario
+    private final Set<Notificacion> conTurnoReservado;
+    private volatile BandejaSalida bandejaSalida;
+    private final Map<Notificacion, Entrega> entregasPendientes;
+    private volatile AgrupadorNotificaciones agrupador;
     private boolean mostrarEnConsola;
-    private ConfiguracionNotificaciones configuracionNotificaciones;
+    private volatile ConfiguracionNotificaciones configuracionNotificaciones;
 
     /**
      * Constructor del servicio de envío de notificaciones.
      */
     public ServicioEnvioNotificaciones() {
-        this.colaNotificaciones = new LinkedBlockingQueue<>();
-        this.procesadorNotificaciones = Executors.newSingleThreadExecutor();
-        this.serviciosNotificacion = new ArrayList<>();
-        this.historialNotificaciones = new ArrayList<>();
-        this.mostrarEnConsola = true;
-        this.configuracionNotificaciones = new ConfiguracionNotificaciones();
-
-        // Iniciar el procesador de notificaciones
-        iniciarProcesador();
+        this(new ConfiguracionNotificaciones());
     }
 
     /**
@@ -44,31 +87,142 @@ public class ServicioEnvioNotificaciones implements ServicioNotificaciones {
      * @param configuracionNotificaciones Configuración de preferencias de notificación
      */
     public ServicioEnvioNotificaciones(ConfiguracionNotificaciones configuracionNotificaciones) {
-        this.colaNotificaciones = new LinkedBlockingQueue<>();
-        this.procesadorNotificaciones = Executors.newSingleThreadExecutor();
-        this.serviciosNotificacion = new ArrayList<>();
-        this.historialNotificaciones = new ArrayList<>();
+        this(configuracionNotificaciones, TRABAJADORES_DEFECTO);
+    }
+
+    /**
+     * Constructor del servicio de envío de notificaciones con una cantidad de trabajadores.
+     * Las notificaciones se reparten entre los trabajadores según su destinatario:
+     * las de un mismo usuario se entregan en orden y las de usuarios distintos en paralelo.
+     * Los reintentos de envíos fallidos pueden quedar detrás de notificaciones posteriores
+     * del mismo usuario (ver {@link DespachadorCanal}).
+     * 
+     * @param configuracionNotificaciones Configuración de preferencias de notificación
+     * @param trabajadores Cantidad de hilos que procesan notificaciones (y de hilos de envío por canal)
+     */
+    public ServicioEnvioNotificaciones(ConfiguracionNotificaciones configuracionNotificaciones, int trabajadores) {
+        this(configuracionNotificaciones, trabajadores, new HistorialNotificaciones(CAPACIDAD_HISTORIAL_DEFECTO));
+    }
+
+    /**
+     * Constructor del servicio de envío de notificaciones con un historial propio,
+     * por ejemplo de otra capacidad o con desborde a disco.
+     * 
+     * @param configuracionNotificaciones Configuración de preferencias de notificación
+     * @param trabajadores Cantidad de hilos que procesan notificaciones (y de hilos de envío por canal)
+     * @param historialNotificaciones Historial donde se registran las notificaciones procesadas
+     */
+    public ServicioEnvioNotificaciones(ConfiguracionNotificaciones configuracionNotificaciones, int trabajadores,
+                                       HistorialNotificaciones historialNotificaciones) {
+        if (trabajadores < 1) {
+            throw new IllegalArgumentException("Debe haber al menos un trabajador");
+        }
+        this.trabajadores = trabajadores;
+        this.colasNotificaciones = new ArrayList<>(trabajadores);
+        for (int i = 0; i < trabajadores; i++) {
+            colasNotificaciones.add(new ColaPrioridades<>(Notificacion::getNivelUrgencia));
+        }
+        this.procesadorNotificaciones = Executors.newFixedThreadPool(trabajadores);
+        this.despachadores = new CopyOnWriteArrayList<>();
+        this.planificadorReintentos = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "reintentos-notificaciones");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        this.politicaReintentos = PoliticaReintentos.porDefecto();
+        this.almacenFallidos = new AlmacenMensajesFallidos();
+        this.limitesCanal = new ConcurrentHashMap<>();
+        this.notificacionesDiferidas = new AtomicLong();
+        this.conTurnoReservado = ConcurrentHashMap.newKeySet();
+        this.entregasPendientes = new ConcurrentHashMap<>();
+        this.historialNotificaciones = historialNotificaciones;
+        this.agrupador = new AgrupadorNotificaciones(VENTANA_AGRUPAMIENTO_DEFECTO);
         this.mostrarEnConsola = true;
         this.configuracionNotificaciones = configuracionNotificaciones;
 
-        // Iniciar el procesador de notificaciones
+        // Iniciar los procesadores de notificaciones
         iniciarProcesador();
+        planificadorReintentos.scheduleWithFixedDelay(this::encolarResumenesVencidos,
+                REVISION_RESUMENES_MS, REVISION_RESUMENES_MS, TimeUnit.MILLISECONDS);
     }
 
     /**
-     * Inicia el procesador de notificaciones.
+     * Inicia un procesador por cada cola de notificaciones.
      */
     private void iniciarProcesador() {
-        procesadorNotificaciones.submit(() -> {
-            try {
-                while (!Thread.currentThread().isInterrupted()) {
-                    Notificacion notificacion = colaNotificaciones.take();
-                    procesarNotificacion(notificacion);
+        for (ColaPrioridades<Notificacion> cola : colasNotificaciones) {
+            procesadorNotificaciones.submit(() -> {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        Notificacion notificacion = cola.tomar();
+                        if (diferirSiExcedeLimite(notificacion, cola)) {
+                            continue;
+                        }
+                        try {
+                            procesarNotificacion(notificacion);
+                        } catch (RuntimeException e) {
+                            // Un error con una notificación no debe detener al trabajador
+                            System.out.println("[NOTIFICACIONES] Error al procesar una notificación: " +
+                                    e.getMessage());
+                            // Reenviarla al reiniciar volvería a fallar
+                            confirmarEnBandeja(entregasPendientes.remove(notificacion));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
                 }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
-        });
+            });
+        }
+    }
+
+    /**
+     * Si el destinatario superó su límite de tasa, le reserva el próximo turno y
+     * vuelve a encolar la notificación cuando llegue, sin bloquear al trabajador.
+     * Las notificaciones posteriores del mismo usuario reciben turnos más tardíos,
+     * así que no pueden adelantarse a la diferida.
+     * 
+     * @return true si la notificación se difirió
+     */
+    private boolean diferirSiExcedeLimite(Notificacion notificacion, ColaPrioridades<Notificacion> cola) {
+        if (conTurnoReservado.remove(notificacion)) {
+            // Vuelve de una espera y ya tiene su permiso
+            return false;
+        }
+        LimitadorPorDestinatario limitador = limitadorDestinatarios;
+        if (limitador == null) {
+            return false;
+        }
+        long espera = limitador.reservar(notificacion.getDestinatario());
+        if (espera == 0) {
+            return false;
+        }
+        conTurnoReservado.add(notificacion);
+        try {
+            planificadorReintentos.schedule(() -> cola.agregar(notificacion), espera, TimeUnit.NANOSECONDS);
+            notificacionesDiferidas.incrementAndGet();
+            return true;
+        } catch (RejectedExecutionException e) {
+            // El servicio se está cerrando: se procesa sin esperar
+            conTurnoReservado.remove(notificacion);
+            return false;
+        }
+    }
+
+    /**
+     * Calcula la partición de un destinatario. Todas las notificaciones de un usuario
+     * caen en la misma partición, lo que preserva su orden dentro de cada nivel de urgencia.
+     * 
+     * @param destinatario Usuario destinatario (puede ser null)
+     * @param particiones Cantidad de particiones
+     * @return Índice de partición entre 0 y particiones - 1
+     */
+    static int particionDe(Usuario destinatario, int particiones) {
+        if (destinatario == null) {
+            return 0;
+        }
+        // Mezclar los bits para que IDs consecutivos se repartan de forma pareja
+        int hash = destinatario.getID() * 0x9E3779B9;
+        return Math.floorMod(hash ^ (hash >>> 16), particiones);
     }
 
     /**
@@ -79,9 +233,7 @@ public class ServicioEnvioNotificaciones implements ServicioNotificaciones {
      */
     private void procesarNotificacion(Notificacion notificacion) {
         // Guardar en el historial (siempre se guarda, independientemente de las preferencias)
-        historialNotificaciones.add(notificacion);
-
-        Usuario usuario = notificacion.getDestinatario();
+        historialNotificaciones.agregar(notificacion);
 
         // Mostrar en consola si está habilitado y el usuario tiene habilitado este canal
         if (mostrarEnConsola && 
@@ -90,18 +242,70 @@ public class ServicioEnvioNotificaciones implements ServicioNotificaciones {
             System.out.println("NOTIFICACIÓN: " + notificacion);
         }
 
-        // Enviar a través de los servicios registrados según las preferencias del usuario
-        for (ServicioNotificaciones servicio : serviciosNotificacion) {
-            // Determinar el canal según el tipo de servicio
-            ConfiguracionNotificaciones.CanalNotificacion canal = determinarCanalServicio(servicio);
-
+        // Elegir los servicios registrados según las preferencias del usuario
+        List<DespachadorCanal> destinos = new ArrayList<>(despachadores.size());
+        for (DespachadorCanal despachador : despachadores) {
             // Verificar si el usuario tiene habilitado este canal para este tipo y nivel de notificación
-            if (configuracionNotificaciones.debeEnviarNotificacion(notificacion, canal)) {
-                servicio.enviarNotificacion(notificacion.getMensaje(), usuario);
+            if (configuracionNotificaciones.debeEnviarNotificacion(notificacion, despachador.getCanal())) {
+                destinos.add(despachador);
+            }
+        }
+
+        // La notificación queda pendiente en la bandeja hasta que todos sus canales terminen
+        Entrega entrega = entregasPendientes.get(notificacion);
+        if (entrega != null) {
+            if (destinos.isEmpty()) {
+                confirmarEnBandeja(entregasPendientes.remove(notificacion));
+            } else {
+                entrega.canalesRestantes.set(destinos.size());
+            }
+        }
+        ConfiguracionNotificaciones configuracion = configuracionNotificaciones;
+        for (DespachadorCanal despachador : destinos) {
+            if (configuracion.debeIncluirEnResumen(notificacion, despachador.getCanal())) {
+                despachador.acumular(notificacion, configuracion.getTamanioMaximoResumen());
+            } else {
+                despachador.encolar(notificacion);
             }
         }
     }
 
+    /**
+     * Encola los resúmenes abiertos desde hace al menos el intervalo configurado.
+     */
+    private void encolarResumenesVencidos() {
+        Duration intervalo = configuracionNotificaciones.getIntervaloResumen();
+        for (DespachadorCanal despachador : despachadores) {
+            despachador.encolarResumenes(intervalo);
+        }
+    }
+
+    /**
+     * Registra que un canal terminó con una notificación (enviada o descartada por fallida).
+     * Cuando terminan todos sus canales, se confirma en la bandeja de salida.
+     * 
+     * @param notificacion Notificación completada
+     */
+    private void completarEntrega(Notificacion notificacion) {
+        if (notificacion instanceof NotificacionResumen) {
+            for (Notificacion resumida : ((NotificacionResumen) notificacion).getNotificaciones()) {
+                completarEntrega(resumida);
+            }
+            return;
+        }
+        Entrega entrega = entregasPendientes.get(notificacion);
+        if (entrega != null && entrega.canalesRestantes.decrementAndGet() == 0) {
+            confirmarEnBandeja(entregasPendientes.remove(notificacion));
+        }
+    }
+
+    private void confirmarEnBandeja(Entrega entrega) {
+        BandejaSalida bandeja = bandejaSalida;
+        if (entrega != null && bandeja != null) {
+            bandeja.confirmar(entrega.secuencia);
+        }
+    }
+
     /**
      * Determina el canal de notificación según el tipo de servicio.
      * 
@@ -113,6 +317,8 @@ public class ServicioEnvioNotificaciones implements ServicioNotificaciones {
             return ConfiguracionNotificaciones.CanalNotificacion.EMAIL;
         } else if (servicio instanceof ServicioNotificacionesSMS) {
             return ConfiguracionNotificaciones.CanalNotificacion.SMS;
+        } else if (servicio instanceof ServicioNotificacionesPush) {
+            return ConfiguracionNotificaciones.CanalNotificacion.PUSH;
         } else {
             return ConfiguracionNotificaciones.CanalNotificacion.CONSOLA;
         }
@@ -124,25 +330,291 @@ public class ServicioEnvioNotificaciones implements ServicioNotificaciones {
      * @param servicio Servicio a registrar
      */
     public void registrarServicio(ServicioNotificaciones servicio) {
-        serviciosNotificacion.add(servicio);
+        registrarServicio(servicio, TAMANIO_LOTE_DEFECTO, ESPERA_MAXIMA_LOTE_DEFECTO);
+    }
+
+    /**
+     * Registra un servicio de notificaciones con umbrales de lote propios.
+     * Un lote se envía al llegar a tamanioLote notificaciones o cuando la primera
+     * de ellas lleva esperaMaxima en la cola, lo que ocurra primero.
+     * 
+     * @param servicio Servicio a registrar
+     * @param tamanioLote Cantidad máxima de notificaciones por lote
+     * @param esperaMaxima Espera máxima de una notificación antes de enviar su lote
+     */
+    public void registrarServicio(ServicioNotificaciones servicio, int tamanioLote, Duration esperaMaxima) {
+        ConfiguracionNotificaciones.CanalNotificacion canal = determinarCanalServicio(servicio);
+        DespachadorCanal despachador = new DespachadorCanal(servicio, canal, tamanioLote, esperaMaxima,
+                trabajadores, planificadorReintentos, politicaReintentos, almacenFallidos, this::completarEntrega);
+        despachador.setLimitador(limitesCanal.get(canal));
+        despachadores.add(despachador);
     }
 
     /**
      * Elimina un servicio de notificaciones.
+     * Las notificaciones ya encoladas para el servicio se envían antes de que su hilo termine.
      * 
      * @param servicio Servicio a eliminar
      */
     public void eliminarServicio(ServicioNotificaciones servicio) {
-        serviciosNotificacion.remove(servicio);
+        for (DespachadorCanal despachador : despachadores) {
+            if (despachador.getServicio() == servicio) {
+                despachadores.remove(despachador);
+                despachador.cerrar();
+            }
+        }
+    }
+
+    /**
+     * Obtiene la cantidad de lotes enviados por un servicio.
+     * 
+     * @param servicio Servicio registrado
+     * @return Cantidad de lotes enviados, o 0 si el servicio no está registrado
+     */
+    public long obtenerLotesEnviados(ServicioNotificaciones servicio) {
+        DespachadorCanal despachador = buscarDespachador(servicio);
+        return despachador != null ? despachador.getLotesEnviados() : 0;
+    }
+
+    /**
+     * Obtiene la cantidad de notificaciones enviadas por un servicio.
+     * 
+     * @param servicio Servicio registrado
+     * @return Cantidad de notificaciones enviadas, o 0 si el servicio no está registrado
+     */
+    public long obtenerNotificacionesEnviadas(ServicioNotificaciones servicio) {
+        DespachadorCanal despachador = buscarDespachador(servicio);
+        return despachador != null ? despachador.getNotificacionesEnviadas() : 0;
+    }
+
+    /**
+     * Obtiene la cantidad de reintentos programados para un servicio.
+     * 
+     * @param servicio Servicio registrado
+     * @return Cantidad de reintentos, o 0 si el servicio no está registrado
+     */
+    public long obtenerReintentos(ServicioNotificaciones servicio) {
+        DespachadorCanal despachador = buscarDespachador(servicio);
+        return despachador != null ? despachador.getReintentos() : 0;
+    }
+
+    /**
+     * Obtiene la cantidad de notificaciones que agotaron sus reintentos en un servicio.
+     * 
+     * @param servicio Servicio registrado
+     * @return Cantidad de notificaciones fallidas, o 0 si el servicio no está registrado
+     */
+    public long obtenerNotificacionesFallidas(ServicioNotificaciones servicio) {
+        DespachadorCanal despachador = buscarDespachador(servicio);
+        return despachador != null ? despachador.getNotificacionesFallidas() : 0;
+    }
+
+    /**
+     * Limita la tasa de envío de un canal, compartida por todos sus servicios.
+     * Las notificaciones que exceden el límite esperan en la cola del canal.
+     * 
+     * @param canal Canal a limitar
+     * @param porSegundo Notificaciones por segundo sostenidas
+     * @param rafaga Notificaciones seguidas permitidas después de un período sin envíos
+     */
+    public void setLimiteCanal(ConfiguracionNotificaciones.CanalNotificacion canal, double porSegundo, int rafaga) {
+        LimitadorTasa limitador = new LimitadorTasa(porSegundo, rafaga);
+        limitesCanal.put(canal, limitador);
+        aplicarLimiteCanal(canal, limitador);
+    }
+
+    /**
+     * Quita el límite de tasa de un canal.
+     * 
+     * @param canal Canal a liberar
+     */
+    public void quitarLimiteCanal(ConfiguracionNotificaciones.CanalNotificacion canal) {
+        limitesCanal.remove(canal);
+        aplicarLimiteCanal(canal, null);
+    }
+
+    private void aplicarLimiteCanal(ConfiguracionNotificaciones.CanalNotificacion canal, LimitadorTasa limitador) {
+        for (DespachadorCanal despachador : despachadores) {
+            if (despachador.getCanal() == canal) {
+                despachador.setLimitador(limitador);
+            }
+        }
+    }
+
+    /**
+     * Limita la cantidad de notificaciones por segundo que recibe cada destinatario.
+     * Las que exceden el límite se vuelven a encolar cuando corresponde.
+     * 
+     * @param porSegundo Notificaciones por segundo sostenidas para cada usuario
+     * @param rafaga Notificaciones seguidas permitidas a un usuario sin envíos recientes
+     */
+    public void setLimitePorDestinatario(double porSegundo, int rafaga) {
+        this.limitadorDestinatarios = new LimitadorPorDestinatario(porSegundo, rafaga);
+    }
+
+    /**
+     * Quita el límite de tasa por destinatario.
+     */
+    public void quitarLimitePorDestinatario() {
+        this.limitadorDestinatarios = null;
+    }
+
+    /**
+     * Obtiene la cantidad de notificaciones demoradas por el límite de tasa por destinatario.
+     * 
+     * @return Cantidad de notificaciones diferidas
+     */
+    public long getNotificacionesDiferidas() {
+        return notificacionesDiferidas.get();
+    }
+
+    /**
+     * Obtiene la cantidad de notificaciones demoradas por el límite de tasa del canal de un servicio.
+     * 
+     * @param servicio Servicio registrado
+     * @return Cantidad de notificaciones diferidas, o 0 si el servicio no está registrado
+     */
+    public long obtenerNotificacionesDiferidas(ServicioNotificaciones servicio) {
+        DespachadorCanal despachador = buscarDespachador(servicio);
+        return despachador != null ? despachador.getNotificacionesDiferidas() : 0;
+    }
+
+    /**
+     * Obtiene la cantidad de notificaciones de un nivel que esperan ser procesadas.
+     * 
+     * @param nivel Nivel de urgencia
+     * @return Notificaciones de ese nivel en las colas de los trabajadores
+     */
+    public int getProfundidadCarril(Notificacion.NivelUrgencia nivel) {
+        int profundidad = 0;
+        for (ColaPrioridades<Notificacion> cola : colasNotificaciones) {
+            profundidad += cola.getProfundidad(nivel);
+        }
+        return profundidad;
+    }
+
+    /**
+     * Obtiene cuánto esperaron en promedio las notificaciones de un nivel antes de ser procesadas.
+     * 
+     * @param nivel Nivel de urgencia
+     * @return Espera promedio en las colas de los trabajadores, o cero si no se procesó ninguna
+     */
+    public Duration getLatenciaPromedioCarril(Notificacion.NivelUrgencia nivel) {
+        return ColaPrioridades.esperaPromedio(colasNotificaciones, nivel);
+    }
+
+    /**
+     * Obtiene la mayor espera de una notificación de un nivel antes de ser procesada.
+     * 
+     * @param nivel Nivel de urgencia
+     * @return Espera máxima en las colas de los trabajadores
+     */
+    public Duration getLatenciaMaximaCarril(Notificacion.NivelUrgencia nivel) {
+        long maxima = 0;
+        for (ColaPrioridades<Notificacion> cola : colasNotificaciones) {
+            maxima = Math.max(maxima, cola.getEsperaMaximaNanos(nivel));
+        }
+        return Duration.ofNanos(maxima);
+    }
+
+    /**
+     * Obtiene la cantidad de notificaciones de un nivel en la cola de salida de un servicio.
+     * 
+     * @param servicio Servicio registrado
+     * @param nivel Nivel de urgencia
+     * @return Notificaciones de ese nivel por enviar, o 0 si el servicio no está registrado
+     */
+    public int obtenerProfundidadCarril(ServicioNotificaciones servicio, Notificacion.NivelUrgencia nivel) {
+        DespachadorCanal despachador = buscarDespachador(servicio);
+        return despachador != null ? despachador.getProfundidad(nivel) : 0;
+    }
+
+    /**
+     * Obtiene cuánto esperaron en promedio las notificaciones de un nivel en la cola de salida de un servicio.
+     * 
+     * @param servicio Servicio registrado
+     * @param nivel Nivel de urgencia
+     * @return Espera promedio, o cero si el servicio no está registrado o no envió ninguna
+     */
+    public Duration obtenerLatenciaPromedioCarril(ServicioNotificaciones servicio, Notificacion.NivelUrgencia nivel) {
+        DespachadorCanal despachador = buscarDespachador(servicio);
+        return despachador != null ? despachador.getEsperaPromedio(nivel) : Duration.ZERO;
+    }
+
+    /**
+     * Obtiene la cantidad de notificaciones que un servicio recibió dentro de resúmenes.
+     * 
+     * @param servicio Servicio registrado
+     * @return Cantidad de notificaciones resumidas, o 0 si el servicio no está registrado
+     */
+    public long obtenerNotificacionesResumidas(ServicioNotificaciones servicio) {
+        DespachadorCanal despachador = buscarDespachador(servicio);
+        return despachador != null ? despachador.getNotificacionesResumidas() : 0;
+    }
+
+    /**
+     * Establece la política de reintentos de los envíos fallidos, también para
+     * los servicios ya registrados.
+     * 
+     * @param politicaReintentos Política de reintentos
+     */
+    public void setPoliticaReintentos(PoliticaReintentos politicaReintentos) {
+        this.politicaReintentos = politicaReintentos;
+        for (DespachadorCanal despachador : despachadores) {
+            despachador.setPoliticaReintentos(politicaReintentos);
+        }
+    }
+
+    /**
+     * Establece dónde se guardan las notificaciones que agotan sus reintentos,
+     * por ejemplo un almacén persistente en disco.
+     * 
+     * @param almacenFallidos Almacén de mensajes fallidos
+     */
+    public void setAlmacenMensajesFallidos(AlmacenMensajesFallidos almacenFallidos) {
+        this.almacenFallidos = almacenFallidos;
+        for (DespachadorCanal despachador : despachadores) {
+            despachador.setAlmacenFallidos(almacenFallidos);
+        }
+    }
+
+    /**
+     * Obtiene el almacén de las notificaciones que agotaron sus reintentos.
+     * 
+     * @return Almacén de mensajes fallidos
+     */
+    public AlmacenMensajesFallidos getAlmacenMensajesFallidos() {
+        return almacenFallidos;
+    }
+
+    private DespachadorCanal buscarDespachador(ServicioNotificaciones servicio) {
+        for (DespachadorCanal despachador : despachadores) {
+            if (despachador.getServicio() == servicio) {
+                return despachador;
+            }
+        }
+        return null;
     }
 
     /**
      * Envía una notificación.
+     * Si repite a otra idéntica (mismo usuario, recurso, tipo y mensaje) enviada dentro
+     * de la ventana de agrupamiento, se descarta.
      * 
      * @param notificacion Notificación a enviar
      */
     public void enviarNotificacion(Notificacion notificacion) {
-        colaNotificaciones.add(notificacion);
+        if (!agrupador.admitir(notificacion)) {
+            return;
+        }
+        BandejaSalida bandeja = bandejaSalida;
+        if (bandeja != null) {
+            long secuencia = bandeja.agregar(notificacion);
+            if (secuencia >= 0) {
+                entregasPendientes.put(notificacion, new Entrega(secuencia));
+            }
+        }
+        colasNotificaciones.get(particionDe(notificacion.getDestinatario(), trabajadores)).agregar(notificacion);
     }
 
     /**
@@ -181,6 +653,28 @@ public class ServicioEnvioNotificaciones implements ServicioNotificaciones {
         enviarNotificacion(notificacion);
     }
 
+    /**
+     * Envía una notificación de préstamo armada a partir de una plantilla.
+     * El mensaje se arma recién cuando algún canal lo entrega.
+     * 
+     * @param plantilla Plantilla del mensaje
+     * @param usuario Usuario destinatario
+     * @param tipo Tipo de notificación
+     * @param recurso Recurso relacionado
+     * @param idPrestamo ID del préstamo
+     * @param nivelUrgencia Nivel de urgencia de la notificación
+     * @param argumentos Argumentos de la plantilla
+     */
+    public void enviarNotificacionPrestamo(PlantillaMensaje plantilla, Usuario usuario,
+                                          Notificacion.TipoNotificacion tipo,
+                                          um.prog2.interfaces.RecursoDigital recurso,
+                                          String idPrestamo,
+                                          Notificacion.NivelUrgencia nivelUrgencia,
+                                          Object... argumentos) {
+        enviarNotificacion(new NotificacionPrestamo(plantilla, argumentos, usuario, tipo, recurso, idPrestamo,
+                nivelUrgencia));
+    }
+
     /**
      * Envía una notificación de reserva.
      * 
@@ -251,6 +745,70 @@ public class ServicioEnvioNotificaciones implements ServicioNotificaciones {
         enviarNotificacion(notificacion);
     }
 
+    /**
+     * Envía una notificación del sistema armada a partir de una plantilla.
+     * El mensaje se arma recién cuando algún canal lo entrega.
+     * 
+     * @param plantilla Plantilla del mensaje
+     * @param usuario Usuario destinatario
+     * @param tipo Tipo de notificación
+     * @param origen Origen de la notificación
+     * @param nivelUrgencia Nivel de urgencia de la notificación
+     * @param argumentos Argumentos de la plantilla
+     */
+    public void enviarNotificacionSistema(PlantillaMensaje plantilla, Usuario usuario,
+                                         Notificacion.TipoNotificacion tipo,
+                                         String origen,
+                                         Notificacion.NivelUrgencia nivelUrgencia,
+                                         Object... argumentos) {
+        enviarNotificacion(new NotificacionSistema(plantilla, argumentos, usuario, tipo, origen, nivelUrgencia));
+    }
+
+    /**
+     * Guarda las notificaciones en una bandeja de salida persistente hasta que se entreguen,
+     * y reenvía las que quedaron pendientes en ella. Debe llamarse después de registrar
+     * los servicios, para que las pendientes tengan por dónde salir. El servicio cierra
+     * la bandeja al cerrarse.
+     * 
+     * @param bandejaSalida Bandeja de salida abierta
+     */
+    public void setBandejaSalida(BandejaSalida bandejaSalida) {
+        this.bandejaSalida = bandejaSalida;
+        for (BandejaSalida.Registro registro : bandejaSalida.tomarRecuperados()) {
+            Notificacion notificacion = registro.getNotificacion();
+            entregasPendientes.put(notificacion, new Entrega(registro.getSecuencia()));
+            colasNotificaciones.get(particionDe(notificacion.getDestinatario(), trabajadores)).agregar(notificacion);
+        }
+    }
+
+    /**
+     * Obtiene la bandeja de salida persistente.
+     * 
+     * @return Bandeja de salida, o null si no se configuró
+     */
+    public BandejaSalida getBandejaSalida() {
+        return bandejaSalida;
+    }
+
+    /**
+     * Establece la ventana en la que se agrupan las notificaciones idénticas sobre un recurso.
+     * Duration.ZERO deshabilita el agrupamiento.
+     * 
+     * @param ventana Ventana de agrupamiento
+     */
+    public void setVentanaAgrupamiento(Duration ventana) {
+        this.agrupador = new AgrupadorNotificaciones(ventana);
+    }
+
+    /**
+     * Obtiene la cantidad de notificaciones descartadas por repetir a otra dentro de la ventana.
+     * 
+     * @return Cantidad de notificaciones agrupadas desde la última configuración de la ventana
+     */
+    public long getNotificacionesAgrupadas() {
+        return agrupador.getAgrupadas();
+    }
+
     /**
      * Habilita o deshabilita la visualización de notificaciones en consola.
      * 
@@ -261,12 +819,22 @@ public class ServicioEnvioNotificaciones implements ServicioNotificaciones {
     }
 
     /**
-     * Obtiene el historial de notificaciones.
+     * Obtiene una copia de las notificaciones en memoria, de la más vieja a la más nueva.
+     * Para recorrerlas o paginarlas sin copiar todo, usar {@link #getHistorial()}.
      * 
      * @return Lista con el historial de notificaciones
      */
     public List<Notificacion> getHistorialNotificaciones() {
-        return new ArrayList<>(historialNotificaciones);
+        return historialNotificaciones.aLista();
+    }
+
+    /**
+     * Obtiene el historial de notificaciones para recorrerlo o pedir páginas.
+     * 
+     * @return Historial de notificaciones
+     */
+    public HistorialNotificaciones getHistorial() {
+        return historialNotificaciones;
     }
 
     /**
@@ -314,9 +882,91 @@ public class ServicioEnvioNotificaciones implements ServicioNotificaciones {
     }
 
     /**
-     * Cierra el servicio de envío de notificaciones.
+     * Implementación del método de la interfaz ServicioNotificaciones.
+     * Envía una notificación del sistema armada a partir de una plantilla, sin armar el mensaje.
+     * 
+     * @param plantilla Plantilla del mensaje
+     * @param usuario Usuario destinatario
+     * @param argumentos Argumentos de la plantilla
+     */
+    @Override
+    public void enviarNotificacion(PlantillaMensaje plantilla, Usuario usuario, Object... argumentos) {
+        enviarNotificacionSistema(
+            plantilla,
+            usuario,
+            Notificacion.TipoNotificacion.SISTEMA,
+            "Sistema",
+            Notificacion.NivelUrgencia.INFO,
+            argumentos
+        );
+    }
+
+    /**
+     * Cierra el servicio de envío de notificaciones, esperando hasta
+     * {@link #ESPERA_CIERRE_DEFECTO} a que se envíe lo pendiente.
      */
     public void cerrar() {
-        procesadorNotificaciones.shutdown();
+        cerrar(ESPERA_CIERRE_DEFECTO);
+    }
+
+    /**
+     * Cierra el servicio de envío de notificaciones. Primero se procesan las colas y
+     * se envía lo pendiente en cada canal, hasta la espera indicada; lo que quede sin
+     * enviar (y los reintentos programados) se pierde, salvo que esté en la bandeja de salida.
+     * 
+     * @param espera Tiempo máximo para enviar lo pendiente
+     */
+    public void cerrar(Duration espera) {
+        long plazo = System.nanoTime() + espera.toNanos();
+        try {
+            while (!colasVacias() && System.nanoTime() < plazo) {
+                Thread.sleep(5);
+            }
+            procesadorNotificaciones.shutdownNow();
+            procesadorNotificaciones.awaitTermination(Math.max(0, plazo - System.nanoTime()), TimeUnit.NANOSECONDS);
+            planificadorReintentos.shutdownNow();
+            for (DespachadorCanal despachador : despachadores) {
+                // Los resúmenes abiertos se envían antes de cerrar
+                despachador.encolarResumenes(Duration.ZERO);
+                despachador.cerrar();
+            }
+            for (DespachadorCanal despachador : despachadores) {
+                despachador.esperarTerminacion(plazo);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            procesadorNotificaciones.shutdownNow();
+            planificadorReintentos.shutdownNow();
+            historialNotificaciones.cerrar();
+            for (DespachadorCanal despachador : despachadores) {
+                despachador.cerrar();
+            }
+            if (bandejaSalida != null) {
+                bandejaSalida.cerrar();
+            }
+        }
+    }
+
+    private boolean colasVacias() {
+        for (ColaPrioridades<Notificacion> cola : colasNotificaciones) {
+            if (!cola.estaVacia()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Secuencia de una notificación en la bandeja de salida y canales que faltan entregarla.
+     */
+    private static final class Entrega {
+        private final long secuencia;
+        private final AtomicInteger canalesRestantes;
+
+        private Entrega(long secuencia) {
+            this.secuencia = secuencia;
+            this.canalesRestantes = new AtomicInteger();
+        }
     }
 }
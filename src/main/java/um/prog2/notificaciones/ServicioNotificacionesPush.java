@@ -0,0 +1,658 @@
+package um.prog2.notificaciones;
+
+import um.prog2.interfaces.ServicioNotificaciones;
+import um.prog2.usuario.Usuario;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canal PUSH: un concentrador de server-sent events sobre sockets no bloqueantes.
+ * Cada usuario se conecta con GET /eventos?usuario=ID y recibe sus notificaciones
+ * como eventos mientras la conexión siga abierta. La conexión debe traer un token
+ * del usuario, en el encabezado {@code Authorization: Bearer} o en el parámetro
+ * {@code token} (EventSource no permite agregar encabezados); lo valida el
+ * {@link VerificadorToken} del canal. Sin token se responde 401 y con un token
+ * que no corresponde al usuario, 403.
+ * <p>
+ * Un solo hilo atiende todas las conexiones con un {@link Selector}: ninguna
+ * escritura bloquea, así que una conexión inactiva solo cuesta su socket y su
+ * cola, y un cliente que no lee nunca frena a los demás. Enviar una notificación
+ * solo la agrega a las colas de las conexiones de su destinatario, sin esperar a
+ * la red. Si la cola de una conexión se llena se descarta su evento más antiguo,
+ * y una conexión que no acepta datos durante el plazo de escritura se cierra.
+ * Las notificaciones de usuarios sin conexión abierta se descartan; el historial
+ * del servicio las conserva.
+ */
+public class ServicioNotificacionesPush implements ServicioNotificaciones {
+    // Cada cuánto se envía un comentario a las conexiones sin eventos, para detectar las caídas
+    private static final long LATIDO_MS = 15_000;
+
+    // Tiempo que una conexión puede tener datos sin que el cliente los lea antes de cerrarla
+    private static final long PLAZO_ESCRITURA_MS = 30_000;
+
+    // Conexiones que pueden esperar a ser aceptadas
+    private static final int PENDIENTES_ACEPTAR = 4096;
+
+    // Tamaño máximo de la línea de pedido y los encabezados
+    private static final int MAXIMO_PEDIDO = 8 * 1024;
+
+    // Eventos que se juntan en una sola escritura
+    private static final int EVENTOS_POR_ESCRITURA = 64;
+
+    private static final byte[] LATIDO = ": latido\n\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] ENCABEZADOS = ("HTTP/1.1 200 OK\r\n" +
+            "Content-Type: text/event-stream; charset=UTF-8\r\n" +
+            "Cache-Control: no-cache\r\n" +
+            "Connection: close\r\n\r\n" +
+            ": conectado\n\n").getBytes(StandardCharsets.US_ASCII);
+
+    private final ServerSocketChannel servidor;
+    private final Selector selector;
+    private final Thread hilo;
+    private final int puerto;
+    private final int capacidadPorConexion;
+    private final long plazoEscrituraNanos;
+    private final VerificadorToken verificador;
+    private final Map<Integer, List<Conexion>> sesiones;
+    private final Queue<Conexion> porEscribir;
+    private final AtomicBoolean despertado;
+    private final AtomicInteger conexiones;
+    private final AtomicLong eventosEnviados;
+    private final AtomicLong eventosDescartados;
+    private final AtomicLong sinConexion;
+    private final AtomicLong conexionesLentasCerradas;
+    private final AtomicLong secuencia;
+    private volatile boolean activo;
+
+    // Solo los usa el hilo del selector
+    private final Set<Conexion> trabadas;
+    private final ByteBuffer descarte;
+
+    /**
+     * Constructor del canal PUSH. El servidor empieza a aceptar conexiones de inmediato.
+     *
+     * @param direccion Dirección y puerto donde escuchar (puerto 0 para uno libre)
+     * @param capacidadPorConexion Cantidad máxima de eventos esperando en cada conexión
+     * @param verificador Decide si un token autoriza a escuchar los eventos de un usuario
+     * @throws IOException Si no se puede abrir el puerto
+     */
+    public ServicioNotificacionesPush(InetSocketAddress direccion, int capacidadPorConexion,
+                                      VerificadorToken verificador) throws IOException {
+        this(direccion, capacidadPorConexion, verificador, PLAZO_ESCRITURA_MS);
+    }
+
+    /**
+     * @param plazoEscrituraMs Tiempo que una conexión puede quedar sin leer antes de cerrarla
+     */
+    ServicioNotificacionesPush(InetSocketAddress direccion, int capacidadPorConexion,
+                               VerificadorToken verificador, long plazoEscrituraMs) throws IOException {
+        if (capacidadPorConexion < 1) {
+            throw new IllegalArgumentException("Cada conexión debe admitir al menos un evento");
+        }
+        if (verificador == null) {
+            throw new IllegalArgumentException("El canal PUSH necesita un verificador de tokens");
+        }
+        this.capacidadPorConexion = capacidadPorConexion;
+        this.plazoEscrituraNanos = TimeUnit.MILLISECONDS.toNanos(plazoEscrituraMs);
+        this.verificador = verificador;
+        this.sesiones = new ConcurrentHashMap<>();
+        this.porEscribir = new ConcurrentLinkedQueue<>();
+        this.despertado = new AtomicBoolean();
+        this.conexiones = new AtomicInteger();
+        this.eventosEnviados = new AtomicLong();
+        this.eventosDescartados = new AtomicLong();
+        this.sinConexion = new AtomicLong();
+        this.conexionesLentasCerradas = new AtomicLong();
+        this.secuencia = new AtomicLong();
+        this.trabadas = new HashSet<>();
+        this.descarte = ByteBuffer.allocate(1024);
+        this.activo = true;
+        this.selector = Selector.open();
+        this.servidor = ServerSocketChannel.open();
+        try {
+            servidor.bind(direccion, PENDIENTES_ACEPTAR);
+            servidor.configureBlocking(false);
+            servidor.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            servidor.close();
+            selector.close();
+            throw e;
+        }
+        this.puerto = ((InetSocketAddress) servidor.getLocalAddress()).getPort();
+        this.hilo = new Thread(this::atender, "push-sse");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    /**
+     * @return Puerto donde escucha el servidor
+     */
+    public int getPuerto() {
+        return puerto;
+    }
+
+    @Override
+    public void enviarNotificacion(String mensaje, Usuario usuario) {
+        enviarLote(List.of(new Notificacion(mensaje, usuario, Notificacion.TipoNotificacion.SISTEMA)));
+    }
+
+    /**
+     * Agrega cada notificación a las colas de las conexiones de su destinatario.
+     * Nunca espera a un cliente.
+     */
+    @Override
+    public void enviarLote(List<Notificacion> lote) {
+        for (Notificacion notificacion : lote) {
+            List<Conexion> delUsuario = notificacion.getDestinatario() != null
+                    ? sesiones.get(notificacion.getDestinatario().getID()) : null;
+            if (delUsuario == null || delUsuario.isEmpty()) {
+                sinConexion.incrementAndGet();
+                continue;
+            }
+            // El evento se arma una vez y se comparte entre las conexiones del usuario
+            byte[] evento = armarEvento(notificacion);
+            for (Conexion conexion : delUsuario) {
+                conexion.ofrecer(evento);
+                programar(conexion);
+            }
+        }
+    }
+
+    private byte[] armarEvento(Notificacion notificacion) {
+        StringBuilder evento = new StringBuilder(128);
+        evento.append("id: ").append(secuencia.incrementAndGet()).append('\n');
+        evento.append("event: ").append(notificacion.getNivelUrgencia().name().toLowerCase()).append('\n');
+        for (String linea : notificacion.getMensaje(ConfiguracionNotificaciones.CanalNotificacion.PUSH)
+                .split("\r?\n", -1)) {
+            evento.append("data: ").append(linea).append('\n');
+        }
+        return evento.append('\n').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Avisa al hilo del selector que la conexión tiene eventos para escribir.
+     */
+    private void programar(Conexion conexion) {
+        if (conexion.programada.compareAndSet(false, true)) {
+            porEscribir.add(conexion);
+            if (despertado.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+    }
+
+    /**
+     * Ciclo del hilo del selector: acepta, lee los pedidos, escribe lo pendiente y
+     * cierra las conexiones caídas o trabadas.
+     */
+    private void atender() {
+        long revision = Math.max(1, Math.min(TimeUnit.NANOSECONDS.toMillis(plazoEscrituraNanos) / 2, 1_000));
+        long proximoLatido = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LATIDO_MS);
+        try {
+            while (activo) {
+                selector.select(revision);
+                despertado.set(false);
+                Iterator<SelectionKey> listas = selector.selectedKeys().iterator();
+                while (listas.hasNext()) {
+                    SelectionKey clave = listas.next();
+                    listas.remove();
+                    if (!clave.isValid()) {
+                        continue;
+                    }
+                    if (clave.isAcceptable()) {
+                        aceptar();
+                        continue;
+                    }
+                    Conexion conexion = (Conexion) clave.attachment();
+                    if (clave.isReadable()) {
+                        leer(conexion);
+                    }
+                    if (clave.isValid() && clave.isWritable()) {
+                        escribir(conexion);
+                    }
+                }
+                Conexion conexion;
+                while ((conexion = porEscribir.poll()) != null) {
+                    conexion.programada.set(false);
+                    escribir(conexion);
+                }
+                long ahora = System.nanoTime();
+                cerrarTrabadas(ahora);
+                if (ahora - proximoLatido >= 0) {
+                    enviarLatidos(ahora);
+                    proximoLatido = ahora + TimeUnit.MILLISECONDS.toNanos(LATIDO_MS);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("[NOTIFICACIONES] El canal PUSH dejó de atender: " + e.getMessage());
+        } finally {
+            for (SelectionKey clave : selector.keys()) {
+                if (clave.attachment() instanceof Conexion) {
+                    Conexion conexion = (Conexion) clave.attachment();
+                    // Último intento, sin esperar, de entregar lo que quedó en la cola
+                    if (conexion.usuario != null) {
+                        escribir(conexion);
+                    }
+                    cerrar(conexion);
+                }
+            }
+            try {
+                servidor.close();
+                selector.close();
+            } catch (IOException e) {
+                // Se cierra igual
+            }
+        }
+    }
+
+    private void aceptar() throws IOException {
+        SocketChannel canal;
+        while ((canal = servidor.accept()) != null) {
+            canal.configureBlocking(false);
+            canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Conexion conexion = new Conexion(canal);
+            conexion.clave = canal.register(selector, SelectionKey.OP_READ, conexion);
+        }
+    }
+
+    /**
+     * Lee el pedido de una conexión nueva. En una conexión ya atendida lo leído se
+     * descarta y solo sirve para notar que el cliente cerró.
+     */
+    private void leer(Conexion conexion) {
+        try {
+            if (conexion.pedido == null) {
+                int leidos;
+                do {
+                    descarte.clear();
+                    leidos = conexion.canal.read(descarte);
+                } while (leidos > 0);
+                if (leidos < 0) {
+                    cerrar(conexion);
+                }
+                return;
+            }
+            if (conexion.canal.read(conexion.pedido) < 0) {
+                cerrar(conexion);
+                return;
+            }
+            String texto = new String(conexion.pedido.array(), 0, conexion.pedido.position(),
+                    StandardCharsets.ISO_8859_1);
+            int fin = texto.indexOf("\r\n\r\n");
+            if (fin < 0) {
+                if (!conexion.pedido.hasRemaining()) {
+                    rechazar(conexion, "431 Request Header Fields Too Large", "");
+                }
+                return;
+            }
+            conexion.pedido = null;
+            atenderPedido(conexion, texto.substring(0, fin));
+        } catch (IOException e) {
+            cerrar(conexion);
+        }
+    }
+
+    private void atenderPedido(Conexion conexion, String pedido) throws IOException {
+        String[] lineas = pedido.split("\r\n");
+        String[] partes = lineas[0].split(" ");
+        if (partes.length != 3 || !"GET".equals(partes[0])) {
+            rechazar(conexion, "400 Bad Request", "");
+            return;
+        }
+        int inicioConsulta = partes[1].indexOf('?');
+        String ruta = inicioConsulta < 0 ? partes[1] : partes[1].substring(0, inicioConsulta);
+        String consulta = inicioConsulta < 0 ? null : partes[1].substring(inicioConsulta + 1);
+        if (!"/eventos".equals(ruta)) {
+            rechazar(conexion, "404 Not Found", "");
+            return;
+        }
+        Integer id = leerUsuario(consulta);
+        if (id == null) {
+            rechazar(conexion, "400 Bad Request", "");
+            return;
+        }
+        String token = leerToken(lineas, consulta);
+        if (token == null) {
+            rechazar(conexion, "401 Unauthorized", "WWW-Authenticate: Bearer\r\n");
+            return;
+        }
+        if (!verificador.esValido(id, token)) {
+            rechazar(conexion, "403 Forbidden", "");
+            return;
+        }
+
+        conexion.usuario = id;
+        conexion.eventos = new LinkedBlockingQueue<>(capacidadPorConexion);
+        conexion.salida = new ByteBuffer[] {ByteBuffer.wrap(ENCABEZADOS)};
+        conexion.ultimaEscritura = System.nanoTime();
+        // Se agrega dentro de compute para no sumarse a una lista que otra conexión está quitando
+        sesiones.compute(id, (clave, delUsuario) -> {
+            delUsuario = delUsuario != null ? delUsuario : new CopyOnWriteArrayList<>();
+            delUsuario.add(conexion);
+            return delUsuario;
+        });
+        conexiones.incrementAndGet();
+        escribir(conexion);
+    }
+
+    /**
+     * Responde el error y cierra. La respuesta es corta y entra en el búfer del socket.
+     */
+    private void rechazar(Conexion conexion, String estado, String encabezados) {
+        try {
+            conexion.canal.write(ByteBuffer.wrap(("HTTP/1.1 " + estado + "\r\n" + encabezados +
+                    "Content-Length: 0\r\nConnection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII)));
+        } catch (IOException e) {
+            // El cliente ya se fue
+        }
+        cerrar(conexion);
+    }
+
+    /**
+     * Escribe lo que el socket acepte sin bloquear. Si queda algo sin escribir se
+     * espera a que el socket tenga lugar y corre el plazo de escritura.
+     */
+    private void escribir(Conexion conexion) {
+        if (!conexion.clave.isValid() || conexion.usuario == null) {
+            return;
+        }
+        try {
+            while (true) {
+                if (conexion.salida == null && !armarSalida(conexion)) {
+                    break;
+                }
+                conexion.canal.write(conexion.salida, conexion.desde, conexion.salida.length - conexion.desde);
+                while (conexion.desde < conexion.salida.length && !conexion.salida[conexion.desde].hasRemaining()) {
+                    conexion.desde++;
+                }
+                if (conexion.desde < conexion.salida.length) {
+                    if (trabadas.add(conexion)) {
+                        conexion.trabadaDesde = System.nanoTime();
+                        conexion.clave.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                    }
+                    return;
+                }
+                conexion.salida = null;
+                conexion.ultimaEscritura = System.nanoTime();
+            }
+            if (trabadas.remove(conexion)) {
+                conexion.clave.interestOps(SelectionKey.OP_READ);
+            }
+        } catch (IOException e) {
+            cerrar(conexion);
+        }
+    }
+
+    /**
+     * Junta los eventos de la cola en una sola escritura.
+     *
+     * @return false si la cola estaba vacía
+     */
+    private boolean armarSalida(Conexion conexion) {
+        List<ByteBuffer> buferes = new ArrayList<>(0);
+        byte[] evento;
+        while (buferes.size() < EVENTOS_POR_ESCRITURA && (evento = conexion.eventos.poll()) != null) {
+            if (evento != LATIDO) {
+                eventosEnviados.incrementAndGet();
+            }
+            buferes.add(ByteBuffer.wrap(evento));
+        }
+        if (buferes.isEmpty()) {
+            return false;
+        }
+        conexion.salida = buferes.toArray(new ByteBuffer[0]);
+        conexion.desde = 0;
+        return true;
+    }
+
+    private void cerrarTrabadas(long ahora) {
+        if (trabadas.isEmpty()) {
+            return;
+        }
+        for (Conexion conexion : new ArrayList<>(trabadas)) {
+            if (ahora - conexion.trabadaDesde > plazoEscrituraNanos) {
+                conexionesLentasCerradas.incrementAndGet();
+                cerrar(conexion);
+            }
+        }
+    }
+
+    private void enviarLatidos(long ahora) {
+        long latido = TimeUnit.MILLISECONDS.toNanos(LATIDO_MS);
+        for (SelectionKey clave : selector.keys()) {
+            if (clave.attachment() instanceof Conexion) {
+                Conexion conexion = (Conexion) clave.attachment();
+                if (conexion.usuario != null && ahora - conexion.ultimaEscritura >= latido) {
+                    conexion.ofrecer(LATIDO);
+                    escribir(conexion);
+                }
+            }
+        }
+    }
+
+    private void cerrar(Conexion conexion) {
+        if (!conexion.clave.isValid()) {
+            return;
+        }
+        conexion.clave.cancel();
+        trabadas.remove(conexion);
+        try {
+            conexion.canal.close();
+        } catch (IOException e) {
+            // Se descarta igual
+        }
+        if (conexion.usuario != null) {
+            sesiones.computeIfPresent(conexion.usuario, (clave, delUsuario) -> {
+                delUsuario.remove(conexion);
+                return delUsuario.isEmpty() ? null : delUsuario;
+            });
+            conexiones.decrementAndGet();
+        }
+    }
+
+    private static Integer leerUsuario(String consulta) {
+        String usuario = leerParametro(consulta, "usuario");
+        if (usuario == null) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(usuario);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Token del encabezado Authorization o, si no está, del parámetro token
+     */
+    private static String leerToken(String[] lineas, String consulta) {
+        for (int i = 1; i < lineas.length; i++) {
+            String linea = lineas[i];
+            if (linea.regionMatches(true, 0, "Authorization:", 0, 14)) {
+                String valor = linea.substring(14).trim();
+                if (valor.regionMatches(true, 0, "Bearer ", 0, 7)) {
+                    String token = valor.substring(7).trim();
+                    return token.isEmpty() ? null : token;
+                }
+            }
+        }
+        String token = leerParametro(consulta, "token");
+        return token == null || token.isEmpty() ? null : URLDecoder.decode(token, StandardCharsets.UTF_8);
+    }
+
+    private static String leerParametro(String consulta, String nombre) {
+        if (consulta == null) {
+            return null;
+        }
+        String prefijo = nombre + "=";
+        for (String parametro : consulta.split("&")) {
+            if (parametro.startsWith(prefijo)) {
+                return parametro.substring(prefijo.length());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Cantidad de conexiones abiertas
+     */
+    public int getConexiones() {
+        return conexiones.get();
+    }
+
+    /**
+     * @return Cantidad de eventos escritos a los clientes
+     */
+    public long getEventosEnviados() {
+        return eventosEnviados.get();
+    }
+
+    /**
+     * @return Cantidad de eventos descartados porque la cola de su conexión estaba llena
+     */
+    public long getEventosDescartados() {
+        return eventosDescartados.get();
+    }
+
+    /**
+     * @return Cantidad de notificaciones descartadas porque su destinatario no estaba conectado
+     */
+    public long getNotificacionesSinConexion() {
+        return sinConexion.get();
+    }
+
+    /**
+     * @return Cantidad de conexiones cerradas porque el cliente no leía dentro del plazo
+     */
+    public long getConexionesLentasCerradas() {
+        return conexionesLentasCerradas.get();
+    }
+
+    /**
+     * Cierra todas las conexiones y deja de aceptar nuevas. Lo que cada conexión
+     * tenga en cola se intenta escribir una última vez, sin esperar al cliente.
+     */
+    public void cerrar() {
+        activo = false;
+        selector.wakeup();
+        try {
+            hilo.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Genera el token de un usuario firmado con un secreto compartido (HMAC-SHA256 del
+     * id del usuario, en hexadecimal). Lo entrega quien autentica al usuario, por ejemplo
+     * la aplicación web, y lo valida {@link #verificadorConSecreto(byte[])}.
+     *
+     * @param secreto Secreto compartido
+     * @param idUsuario ID del usuario
+     * @return Token del usuario
+     */
+    public static String generarToken(byte[] secreto, int idUsuario) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secreto, "HmacSHA256"));
+            byte[] firma = mac.doFinal(Integer.toString(idUsuario).getBytes(StandardCharsets.US_ASCII));
+            StringBuilder token = new StringBuilder(firma.length * 2);
+            for (byte b : firma) {
+                token.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return token.toString();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo firmar el token", e);
+        }
+    }
+
+    /**
+     * @param secreto Secreto compartido con quien genera los tokens
+     * @return Verificador que acepta los tokens de {@link #generarToken(byte[], int)}
+     */
+    public static VerificadorToken verificadorConSecreto(byte[] secreto) {
+        byte[] copia = secreto.clone();
+        return (idUsuario, token) -> MessageDigest.isEqual(
+                generarToken(copia, idUsuario).getBytes(StandardCharsets.US_ASCII),
+                token.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Decide si un token autoriza a escuchar los eventos de un usuario.
+     */
+    @FunctionalInterface
+    public interface VerificadorToken {
+        /**
+         * @param idUsuario ID del usuario pedido en la conexión
+         * @param token Token que trajo la conexión
+         * @return true si el token corresponde a ese usuario
+         */
+        boolean esValido(int idUsuario, String token);
+    }
+
+    /**
+     * Estado de una conexión. Los eventos los agrega cualquier hilo; el resto lo usa
+     * solo el hilo del selector.
+     */
+    private final class Conexion {
+        private final SocketChannel canal;
+        private final AtomicBoolean programada;
+        private SelectionKey clave;
+        // Pedido que se está leyendo; null una vez atendido
+        private ByteBuffer pedido;
+        private volatile Integer usuario;
+        private volatile BlockingQueue<byte[]> eventos;
+        // Escritura en curso y primer búfer que todavía tiene datos
+        private ByteBuffer[] salida;
+        private int desde;
+        private long trabadaDesde;
+        private long ultimaEscritura;
+
+        Conexion(SocketChannel canal) {
+            this.canal = canal;
+            this.programada = new AtomicBoolean();
+            this.pedido = ByteBuffer.allocate(MAXIMO_PEDIDO);
+        }
+
+        /**
+         * Agrega el evento sin esperar; si la cola está llena descarta el más antiguo.
+         */
+        void ofrecer(byte[] evento) {
+            while (!eventos.offer(evento)) {
+                if (eventos.poll() != null) {
+                    eventosDescartados.incrementAndGet();
+                }
+            }
+        }
+    }
+}
@@ -2,10 +2,23 @@ package um.prog2.notificaciones;
 import um.prog2.interfaces.ServicioNotificaciones;
 import um.prog2.usuario.Usuario;
 
+import java.util.List;
+
 public class ServicioNotificacionesSMS implements ServicioNotificaciones {
     @Override
     public void enviarNotificacion(String mensaje, Usuario usuario) {
         // Lógica para enviar una notificación por SMS
         System.out.println("Enviando notificación por SMS a " + usuario.getTelefono() + ": " + mensaje);
     }
+
+    /**
+     * Envía cada notificación con el texto corto de su plantilla para SMS, si lo tiene.
+     */
+    @Override
+    public void enviarLote(List<Notificacion> lote) {
+        for (Notificacion notificacion : lote) {
+            enviarNotificacion(notificacion.getMensaje(ConfiguracionNotificaciones.CanalNotificacion.SMS),
+                    notificacion.getDestinatario());
+        }
+    }
 }
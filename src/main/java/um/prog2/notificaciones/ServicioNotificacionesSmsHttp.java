@@ -0,0 +1,266 @@
+package um.prog2.notificaciones;
+
+import um.prog2.excepciones.EnvioParcialException;
+import um.prog2.usuario.Usuario;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canal de SMS que entrega a través de la API HTTP de un gateway.
+ * Los pedidos se hacen en forma asincrónica con {@link HttpClient}: un lote se
+ * reparte en varios pedidos simultáneos, con un máximo de pedidos en vuelo
+ * compartido por todos los hilos que usan el canal. Si el gateway tiene un
+ * endpoint masivo, cada pedido lleva varios destinatarios; si ese endpoint
+ * responde que no existe (404, 405 o 501), se pasa a enviar de a un mensaje.
+ * <p>
+ * Cuando parte de un lote falla se lanza una {@link EnvioParcialException} con
+ * las notificaciones de los pedidos fallidos, para reintentar solo esas.
+ */
+public class ServicioNotificacionesSmsHttp extends ServicioNotificacionesSMS {
+    // Tiempo máximo de conexión y de respuesta de cada pedido
+    private static final Duration TIEMPO_ESPERA = Duration.ofSeconds(10);
+
+    private final HttpClient cliente;
+    private final URI endpointIndividual;
+    private final URI endpointMasivo;
+    private final int maximoPorPedido;
+    private final String claveApi;
+    private final Semaphore enVuelo;
+    private final AtomicLong pedidos;
+    private final AtomicLong pedidosFallidos;
+    private volatile boolean masivoDisponible;
+
+    /**
+     * Constructor del canal. Con un endpoint masivo nulo o un máximo por pedido de 1
+     * se envía siempre de a un mensaje.
+     *
+     * @param endpointIndividual URL para enviar un mensaje
+     * @param endpointMasivo URL para enviar varios mensajes en un pedido (puede ser null)
+     * @param maximoPorPedido Cantidad máxima de mensajes por pedido masivo
+     * @param maximoEnVuelo Cantidad máxima de pedidos simultáneos
+     * @param claveApi Clave que se envía como token Bearer (puede ser null)
+     */
+    public ServicioNotificacionesSmsHttp(URI endpointIndividual, URI endpointMasivo, int maximoPorPedido,
+                                         int maximoEnVuelo, String claveApi) {
+        if (maximoPorPedido < 1 || maximoEnVuelo < 1) {
+            throw new IllegalArgumentException("Los máximos por pedido y en vuelo deben ser al menos 1");
+        }
+        this.cliente = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(TIEMPO_ESPERA)
+                .build();
+        this.endpointIndividual = endpointIndividual;
+        this.endpointMasivo = endpointMasivo;
+        this.maximoPorPedido = maximoPorPedido;
+        this.claveApi = claveApi;
+        this.enVuelo = new Semaphore(maximoEnVuelo);
+        this.pedidos = new AtomicLong();
+        this.pedidosFallidos = new AtomicLong();
+        this.masivoDisponible = endpointMasivo != null && maximoPorPedido > 1;
+    }
+
+    @Override
+    public void enviarNotificacion(String mensaje, Usuario usuario) {
+        enviarLote(List.of(new Notificacion(mensaje, usuario, Notificacion.TipoNotificacion.SISTEMA)));
+    }
+
+    /**
+     * Envía el lote en pedidos simultáneos y espera a que terminen todos.
+     *
+     * @throws EnvioParcialException Si alguno de los pedidos falló
+     */
+    @Override
+    public void enviarLote(List<Notificacion> lote) {
+        List<Notificacion> conTelefono = new ArrayList<>(lote.size());
+        for (Notificacion notificacion : lote) {
+            // Sin teléfono no hay a quién entregarla
+            if (notificacion.getDestinatario() != null && notificacion.getDestinatario().getTelefono() != null) {
+                conTelefono.add(notificacion);
+            }
+        }
+        List<Notificacion> noEnviadas = new ArrayList<>(0);
+        Throwable ultimoError = null;
+        List<Notificacion> pendientes = conTelefono;
+        while (!pendientes.isEmpty()) {
+            List<Pedido> enCurso = new ArrayList<>();
+            int tamanio = masivoDisponible ? maximoPorPedido : 1;
+            for (int desde = 0; desde < pendientes.size(); desde += tamanio) {
+                List<Notificacion> parte = pendientes.subList(desde, Math.min(desde + tamanio, pendientes.size()));
+                try {
+                    enVuelo.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    noEnviadas.addAll(pendientes.subList(desde, pendientes.size()));
+                    ultimoError = e;
+                    break;
+                }
+                try {
+                    enCurso.add(new Pedido(parte, enviar(parte)));
+                } catch (RuntimeException e) {
+                    // El pedido no llegó a salir: el permiso no lo libera nadie más
+                    enVuelo.release();
+                    pedidosFallidos.incrementAndGet();
+                    noEnviadas.addAll(parte);
+                    ultimoError = e;
+                }
+            }
+
+            // Las partes rechazadas por falta de endpoint masivo se vuelven a enviar de a una
+            List<Notificacion> sinMasivo = new ArrayList<>(0);
+            for (Pedido pedido : enCurso) {
+                try {
+                    pedido.respuesta.join();
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof MasivoNoDisponibleException) {
+                        sinMasivo.addAll(pedido.notificaciones);
+                        continue;
+                    }
+                    pedidosFallidos.incrementAndGet();
+                    noEnviadas.addAll(pedido.notificaciones);
+                    ultimoError = e.getCause();
+                }
+            }
+            pendientes = sinMasivo;
+        }
+        if (!noEnviadas.isEmpty()) {
+            throw new EnvioParcialException("Fallaron " + noEnviadas.size() + " de " + lote.size() +
+                    " SMS: " + ultimoError.getMessage(), noEnviadas, ultimoError);
+        }
+    }
+
+    /**
+     * Hace el pedido de una parte del lote. El permiso de vuelo ya está tomado y se
+     * libera al terminar; si el pedido no se puede armar, lo libera quien llama.
+     */
+    private CompletableFuture<Void> enviar(List<Notificacion> parte) {
+        boolean masivo = parte.size() > 1;
+        HttpRequest pedido = armarPedido(masivo ? endpointMasivo : endpointIndividual, masivo
+                ? cuerpoMasivo(parte) : cuerpo(parte.get(0)));
+        pedidos.incrementAndGet();
+        return cliente.sendAsync(pedido, HttpResponse.BodyHandlers.discarding())
+                .thenAccept(respuesta -> {
+                    int estado = respuesta.statusCode();
+                    if (masivo && (estado == 404 || estado == 405 || estado == 501)) {
+                        masivoDisponible = false;
+                        throw new MasivoNoDisponibleException();
+                    }
+                    if (estado / 100 != 2) {
+                        throw new IllegalStateException("El gateway respondió " + estado);
+                    }
+                })
+                .whenComplete((resultado, error) -> enVuelo.release());
+    }
+
+    private HttpRequest armarPedido(URI endpoint, String cuerpo) {
+        HttpRequest.Builder pedido = HttpRequest.newBuilder(endpoint)
+                .timeout(TIEMPO_ESPERA)
+                .header("Content-Type", "application/json; charset=UTF-8")
+                .POST(HttpRequest.BodyPublishers.ofString(cuerpo));
+        if (claveApi != null) {
+            pedido.header("Authorization", "Bearer " + claveApi);
+        }
+        return pedido.build();
+    }
+
+    private static String cuerpo(Notificacion notificacion) {
+        return "{\"telefono\":" + json(notificacion.getDestinatario().getTelefono()) +
+                ",\"mensaje\":" + json(notificacion.getMensaje(ConfiguracionNotificaciones.CanalNotificacion.SMS)) + "}";
+    }
+
+    private static String cuerpoMasivo(List<Notificacion> parte) {
+        StringBuilder cuerpo = new StringBuilder(64 * parte.size()).append("{\"mensajes\":[");
+        for (int i = 0; i < parte.size(); i++) {
+            if (i > 0) {
+                cuerpo.append(',');
+            }
+            cuerpo.append(cuerpo(parte.get(i)));
+        }
+        return cuerpo.append("]}").toString();
+    }
+
+    private static String json(String texto) {
+        StringBuilder escapado = new StringBuilder(texto.length() + 2).append('"');
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            switch (c) {
+                case '"':
+                    escapado.append("\\\"");
+                    break;
+                case '\\':
+                    escapado.append("\\\\");
+                    break;
+                case '\n':
+                    escapado.append("\\n");
+                    break;
+                case '\r':
+                    escapado.append("\\r");
+                    break;
+                case '\t':
+                    escapado.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        escapado.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        escapado.append(c);
+                    }
+            }
+        }
+        return escapado.append('"').toString();
+    }
+
+    /**
+     * @return Cantidad de pedidos HTTP realizados
+     */
+    public long getPedidos() {
+        return pedidos.get();
+    }
+
+    /**
+     * @return Cantidad de pedidos de lotes que fallaron
+     */
+    public long getPedidosFallidos() {
+        return pedidosFallidos.get();
+    }
+
+    /**
+     * @return true si se están usando pedidos masivos
+     */
+    public boolean isEnvioMasivo() {
+        return masivoDisponible;
+    }
+
+    /**
+     * El gateway no tiene endpoint masivo.
+     */
+    private static final class MasivoNoDisponibleException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        MasivoNoDisponibleException() {
+            super("El gateway no tiene endpoint masivo", null, false, false);
+        }
+    }
+
+    /**
+     * Notificaciones de un pedido y su resultado.
+     */
+    private static final class Pedido {
+        private final List<Notificacion> notificaciones;
+        private final CompletableFuture<Void> respuesta;
+
+        Pedido(List<Notificacion> notificaciones, CompletableFuture<Void> respuesta) {
+            this.notificaciones = notificaciones;
+            this.respuesta = respuesta;
+        }
+    }
+}
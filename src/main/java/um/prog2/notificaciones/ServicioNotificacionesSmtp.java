@@ -0,0 +1,400 @@
+package um.prog2.notificaciones;
+
+import um.prog2.excepciones.EnvioParcialException;
+import um.prog2.usuario.Usuario;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Canal de email que entrega por SMTP.
+ * Mantiene un conjunto de conexiones abiertas que se reutilizan entre lotes y,
+ * dentro de una sesión, envía varios mensajes seguidos. Si el servidor anuncia
+ * PIPELINING, los comandos de cada sobre (MAIL, RCPT, DATA) viajan juntos y el
+ * sobre del mensaje siguiente sale junto con el cuerpo del actual, así que cada
+ * mensaje cuesta una sola ida y vuelta.
+ * <p>
+ * Si una conexión falla en medio de un lote (por ejemplo porque el servidor
+ * cerró una sesión inactiva), se abre otra y se sigue desde el primer mensaje no
+ * confirmado. Si vuelve a fallar sin avanzar, se lanza una
+ * {@link EnvioParcialException} con los mensajes que faltan.
+ */
+public class ServicioNotificacionesSmtp extends ServicioNotificacionesEmail {
+    // Tiempo máximo para conectar y para esperar cada respuesta del servidor
+    private static final int TIEMPO_ESPERA_MS = 10_000;
+
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.RFC_1123_DATE_TIME;
+
+    private final String host;
+    private final int puerto;
+    private final String remitente;
+    private final BlockingQueue<ConexionSmtp> libres;
+    private final Semaphore permisos;
+    private final AtomicLong conexionesAbiertas;
+    private final AtomicLong reconexiones;
+    private volatile boolean cerrado;
+
+    /**
+     * Constructor del canal SMTP. Las conexiones se abren a medida que se necesitan.
+     *
+     * @param host Servidor SMTP
+     * @param puerto Puerto del servidor
+     * @param remitente Dirección del remitente
+     * @param maximoConexiones Cantidad máxima de conexiones simultáneas
+     */
+    public ServicioNotificacionesSmtp(String host, int puerto, String remitente, int maximoConexiones) {
+        if (maximoConexiones < 1) {
+            throw new IllegalArgumentException("Debe haber al menos una conexión");
+        }
+        this.host = host;
+        this.puerto = puerto;
+        this.remitente = remitente;
+        this.libres = new LinkedBlockingQueue<>();
+        this.permisos = new Semaphore(maximoConexiones);
+        this.conexionesAbiertas = new AtomicLong();
+        this.reconexiones = new AtomicLong();
+    }
+
+    @Override
+    public void enviarNotificacion(String mensaje, Usuario usuario) {
+        enviarLote(List.of(new Notificacion(mensaje, usuario, Notificacion.TipoNotificacion.SISTEMA)));
+    }
+
+    /**
+     * Envía el lote por una sola conexión del conjunto. Los mensajes que el
+     * servidor rechaza de forma permanente (respuesta 5xx) se saltean y el resto
+     * del lote sigue por una conexión nueva.
+     *
+     * @throws EnvioParcialException Si no se pudieron entregar todos los mensajes
+     */
+    @Override
+    public void enviarLote(List<Notificacion> lote) {
+        if (cerrado) {
+            throw new IllegalStateException("El canal SMTP está cerrado");
+        }
+        try {
+            permisos.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EnvioParcialException("Envío interrumpido", lote, e);
+        }
+        List<Notificacion> rechazadas = new ArrayList<>(0);
+        IOException ultimoError = null;
+        try {
+            // Posición del primer mensaje sin confirmar; avanza a medida que el servidor acepta cada uno
+            int[] siguiente = {0};
+            int fallidaEn = -1;
+            while (siguiente[0] < lote.size()) {
+                // Después de un fallo se reintenta con una conexión nueva: las del pool pueden estar muertas
+                ConexionSmtp conexion = fallidaEn == siguiente[0] ? null : libres.poll();
+                try {
+                    if (conexion == null) {
+                        conexion = conectar();
+                    }
+                } catch (IOException e) {
+                    if (fallidaEn == siguiente[0]) {
+                        throw new EnvioParcialException("No se pudo conectar al servidor SMTP: " + e.getMessage(),
+                                concatenar(rechazadas, lote.subList(siguiente[0], lote.size())), e);
+                    }
+                    fallidaEn = siguiente[0];
+                    continue;
+                }
+                try {
+                    enviarDesde(conexion, lote, siguiente);
+                    devolver(conexion);
+                } catch (IOException e) {
+                    conexion.cerrar();
+                    ultimoError = e;
+                    if (e instanceof RechazoSmtpException && ((RechazoSmtpException) e).esPermanente()) {
+                        rechazadas.add(lote.get(siguiente[0]));
+                        siguiente[0]++;
+                    } else if (fallidaEn == siguiente[0]) {
+                        // Un segundo fallo en el mismo mensaje no se reintenta aquí
+                        throw new EnvioParcialException("Error SMTP: " + e.getMessage(),
+                                concatenar(rechazadas, lote.subList(siguiente[0], lote.size())), e);
+                    } else {
+                        fallidaEn = siguiente[0];
+                        reconexiones.incrementAndGet();
+                    }
+                }
+            }
+        } finally {
+            permisos.release();
+        }
+        if (!rechazadas.isEmpty()) {
+            throw new EnvioParcialException("El servidor SMTP rechazó " + rechazadas.size() + " mensajes: " +
+                    ultimoError.getMessage(), rechazadas, ultimoError);
+        }
+    }
+
+    private static List<Notificacion> concatenar(List<Notificacion> primeras, List<Notificacion> resto) {
+        List<Notificacion> todas = new ArrayList<>(primeras);
+        todas.addAll(resto);
+        return todas;
+    }
+
+    private void devolver(ConexionSmtp conexion) {
+        libres.add(conexion);
+        // Si el canal se cerró mientras se usaba, nadie más la va a tomar
+        if (cerrado && libres.remove(conexion)) {
+            conexion.terminar();
+        }
+    }
+
+    /**
+     * Envía los mensajes del lote a partir de la posición indicada y la avanza con
+     * cada mensaje que el servidor acepta.
+     *
+     * @throws IOException Si la conexión falla o el servidor rechaza un comando
+     */
+    private void enviarDesde(ConexionSmtp conexion, List<Notificacion> lote, int[] siguiente) throws IOException {
+        siguiente[0] = siguienteConDestinatario(lote, siguiente[0]);
+        if (siguiente[0] == lote.size()) {
+            return;
+        }
+        conexion.iniciarSobre(remitente, lote.get(siguiente[0]).getDestinatario().getEmail());
+        while (true) {
+            conexion.confirmarSobre();
+            conexion.escribirCuerpo(armarMensaje(lote.get(siguiente[0])));
+            int proxima = siguienteConDestinatario(lote, siguiente[0] + 1);
+            boolean hayOtra = proxima < lote.size();
+            if (hayOtra && conexion.admitePipelining()) {
+                // El sobre del próximo mensaje viaja junto con el cuerpo del actual
+                conexion.iniciarSobre(remitente, lote.get(proxima).getDestinatario().getEmail());
+            }
+            conexion.esperar(250);
+            siguiente[0] = proxima;
+            if (!hayOtra) {
+                return;
+            }
+            if (!conexion.admitePipelining()) {
+                conexion.iniciarSobre(remitente, lote.get(proxima).getDestinatario().getEmail());
+            }
+        }
+    }
+
+    /**
+     * Las notificaciones sin destinatario o sin email no tienen a quién entregarse y se saltean.
+     */
+    private static int siguienteConDestinatario(List<Notificacion> lote, int desde) {
+        int i = desde;
+        while (i < lote.size() && (lote.get(i).getDestinatario() == null
+                || lote.get(i).getDestinatario().getEmail() == null)) {
+            i++;
+        }
+        return i;
+    }
+
+    private String armarMensaje(Notificacion notificacion) {
+        StringBuilder mensaje = new StringBuilder(256);
+        mensaje.append("From: <").append(remitente).append(">\r\n");
+        mensaje.append("To: <").append(notificacion.getDestinatario().getEmail()).append(">\r\n");
+        mensaje.append("Subject: ").append(codificarEncabezado(
+                notificacion.getNivelUrgencia().getNombre() + ": " + notificacion.getTipo())).append("\r\n");
+        mensaje.append("Date: ").append(FORMATO_FECHA.format(ZonedDateTime.now())).append("\r\n");
+        mensaje.append("MIME-Version: 1.0\r\n");
+        mensaje.append("Content-Type: text/plain; charset=UTF-8\r\n");
+        mensaje.append("Content-Transfer-Encoding: 8bit\r\n\r\n");
+        String cuerpo = notificacion.getMensaje(ConfiguracionNotificaciones.CanalNotificacion.EMAIL);
+        for (String linea : cuerpo.split("\r?\n", -1)) {
+            // Una línea que empieza con punto se duplica para no confundirla con el fin del mensaje
+            if (linea.startsWith(".")) {
+                mensaje.append('.');
+            }
+            mensaje.append(linea).append("\r\n");
+        }
+        return mensaje.toString();
+    }
+
+    private static String codificarEncabezado(String texto) {
+        for (int i = 0; i < texto.length(); i++) {
+            if (texto.charAt(i) > 127) {
+                return "=?UTF-8?B?" + Base64.getEncoder().encodeToString(texto.getBytes(StandardCharsets.UTF_8)) + "?=";
+            }
+        }
+        return texto;
+    }
+
+    private ConexionSmtp conectar() throws IOException {
+        ConexionSmtp conexion = new ConexionSmtp(host, puerto);
+        conexionesAbiertas.incrementAndGet();
+        return conexion;
+    }
+
+    /**
+     * @return Cantidad de conexiones abiertas desde la creación del canal
+     */
+    public long getConexionesAbiertas() {
+        return conexionesAbiertas.get();
+    }
+
+    /**
+     * @return Cantidad de veces que se reabrió una conexión por un fallo en medio de un lote
+     */
+    public long getReconexiones() {
+        return reconexiones.get();
+    }
+
+    /**
+     * Cierra las conexiones inactivas con QUIT. Las que están en uso se cierran al terminar su lote.
+     */
+    public void cerrar() {
+        cerrado = true;
+        ConexionSmtp conexion;
+        while ((conexion = libres.poll()) != null) {
+            conexion.terminar();
+        }
+    }
+
+    /**
+     * Una sesión SMTP: conexión, saludo y EHLO ya realizados.
+     */
+    private static final class ConexionSmtp {
+        private final Socket socket;
+        private final BufferedReader entrada;
+        private final BufferedWriter salida;
+        private final boolean pipelining;
+
+        ConexionSmtp(String host, int puerto) throws IOException {
+            this.socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, puerto), TIEMPO_ESPERA_MS);
+                socket.setSoTimeout(TIEMPO_ESPERA_MS);
+                socket.setTcpNoDelay(true);
+                this.entrada = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                this.salida = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8),
+                        16 * 1024);
+                esperar(220);
+                comando("EHLO " + socket.getLocalAddress().getHostName());
+                this.pipelining = esperar(250).contains("PIPELINING");
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        boolean admitePipelining() {
+            return pipelining;
+        }
+
+        /**
+         * Escribe MAIL, RCPT y DATA. Sin PIPELINING espera la respuesta de MAIL y RCPT en el momento.
+         */
+        void iniciarSobre(String remitente, String destinatario) throws IOException {
+            comando("MAIL FROM:<" + remitente + ">");
+            if (!pipelining) {
+                esperar(250);
+            }
+            comando("RCPT TO:<" + destinatario + ">");
+            if (!pipelining) {
+                esperar(250);
+            }
+            comando("DATA");
+        }
+
+        /**
+         * Lee las respuestas pendientes del sobre; al volver, el servidor espera el cuerpo.
+         */
+        void confirmarSobre() throws IOException {
+            if (pipelining) {
+                esperar(250);
+                esperar(250);
+            }
+            esperar(354);
+        }
+
+        void escribirCuerpo(String mensaje) throws IOException {
+            salida.write(mensaje);
+            salida.write(".\r\n");
+        }
+
+        void comando(String comando) throws IOException {
+            salida.write(comando);
+            salida.write("\r\n");
+        }
+
+        /**
+         * Envía lo escrito y lee una respuesta, que puede ocupar varias líneas.
+         *
+         * @return Texto completo de la respuesta
+         * @throws IOException Si la conexión falla o el código no es el esperado
+         */
+        String esperar(int codigo) throws IOException {
+            salida.flush();
+            StringBuilder respuesta = new StringBuilder();
+            String linea;
+            do {
+                linea = entrada.readLine();
+                if (linea == null) {
+                    throw new IOException("El servidor cerró la conexión");
+                }
+                if (linea.isEmpty()) {
+                    throw new IOException("El servidor respondió una línea vacía");
+                }
+                respuesta.append(linea).append('\n');
+            } while (linea.length() > 3 && linea.charAt(3) == '-');
+            if (!linea.startsWith(Integer.toString(codigo))) {
+                throw new RechazoSmtpException(linea.charAt(0), "Respuesta inesperada (se esperaba " + codigo + "): " +
+                        respuesta.toString().trim());
+            }
+            return respuesta.toString();
+        }
+
+        /**
+         * Termina la sesión con QUIT y cierra la conexión.
+         */
+        void terminar() {
+            try {
+                comando("QUIT");
+                esperar(221);
+            } catch (IOException e) {
+                // La conexión se cierra igual
+            }
+            cerrar();
+        }
+
+        void cerrar() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nada más que hacer con una conexión que ya falló
+            }
+        }
+    }
+
+    /**
+     * Respuesta del servidor distinta de la esperada.
+     */
+    private static final class RechazoSmtpException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final char clase;
+
+        RechazoSmtpException(char clase, String mensaje) {
+            super(mensaje);
+            this.clase = clase;
+        }
+
+        /**
+         * @return true si el servidor rechazó el comando de forma definitiva (5xx)
+         */
+        boolean esPermanente() {
+            return clase == '5';
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package um.prog2.prestamos;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Historial de solo agregado guardado en segmentos de tamaño fijo.
+ * Un segmento nunca se modifica en posiciones ya escritas, y el directorio de
+ * segmentos se copia (copy-on-write) solo cuando hace falta uno nuevo. Por eso
+ * una {@link Instantanea} se toma en O(1) leyendo un único campo volatile: ve
+ * exactamente los elementos agregados hasta ese momento, sin locks y sin
+ * bloquear a quien sigue agregando.
+ *
+ * @param <T> Tipo de los elementos
+ */
+public class HistorialSegmentado<T> {
+    private static final int BITS_SEGMENTO = 10;
+    private static final int TAMANIO_SEGMENTO = 1 << BITS_SEGMENTO;
+    private static final int MASCARA_SEGMENTO = TAMANIO_SEGMENTO - 1;
+
+    // Estado publicado: directorio de segmentos y cantidad de elementos visibles
+    private volatile Instantanea<T> actual;
+
+    /**
+     * Constructor de un historial vacío.
+     */
+    public HistorialSegmentado() {
+        this.actual = new Instantanea<>(new Object[0][], 0);
+    }
+
+    /**
+     * Agrega un elemento al final del historial.
+     * Los agregados se serializan entre sí; las lecturas no esperan a nadie.
+     *
+     * @param elemento Elemento a agregar
+     */
+    public synchronized void agregar(T elemento) {
+        Instantanea<T> previa = actual;
+        Object[][] segmentos = previa.segmentos;
+        int tamanio = previa.tamanio;
+        int indiceSegmento = tamanio >>> BITS_SEGMENTO;
+
+        if (indiceSegmento == segmentos.length) {
+            // Se copia solo el directorio; los segmentos existentes se comparten
+            segmentos = Arrays.copyOf(segmentos, Math.max(4, segmentos.length * 2));
+        }
+        if (segmentos[indiceSegmento] == null) {
+            segmentos[indiceSegmento] = new Object[TAMANIO_SEGMENTO];
+        }
+        segmentos[indiceSegmento][tamanio & MASCARA_SEGMENTO] = elemento;
+
+        // La escritura volatile publica el elemento junto con el nuevo tamaño
+        actual = new Instantanea<>(segmentos, tamanio + 1);
+    }
+
+    /**
+     * Toma una instantánea inmutable del historial en O(1).
+     *
+     * @return Instantánea con los elementos agregados hasta ahora
+     */
+    public Instantanea<T> instantanea() {
+        return actual;
+    }
+
+    /**
+     * @return Cantidad de elementos agregados
+     */
+    public int tamanio() {
+        return actual.tamanio;
+    }
+
+    /**
+     * Vista de solo lectura del historial en un punto del tiempo.
+     * Los elementos agregados después de tomarla no son visibles.
+     *
+     * @param <T> Tipo de los elementos
+     */
+    public static final class Instantanea<T> implements Iterable<T> {
+        private final Object[][] segmentos;
+        private final int tamanio;
+
+        private Instantanea(Object[][] segmentos, int tamanio) {
+            this.segmentos = segmentos;
+            this.tamanio = tamanio;
+        }
+
+        /**
+         * Crea una instantánea fija a partir de una lista de elementos.
+         *
+         * @param elementos Elementos de la instantánea
+         * @return Instantánea con los elementos en el mismo orden
+         */
+        public static <T> Instantanea<T> de(List<T> elementos) {
+            HistorialSegmentado<T> historial = new HistorialSegmentado<>();
+            for (T elemento : elementos) {
+                historial.agregar(elemento);
+            }
+            return historial.instantanea();
+        }
+
+        public int tamanio() {
+            return tamanio;
+        }
+
+        /**
+         * @param indice Posición del elemento, entre 0 y tamanio() - 1
+         * @return Elemento en esa posición
+         */
+        @SuppressWarnings("unchecked")
+        public T obtener(int indice) {
+            if (indice < 0 || indice >= tamanio) {
+                throw new IndexOutOfBoundsException("Índice " + indice + " fuera del historial de " + tamanio);
+            }
+            return (T) segmentos[indice >>> BITS_SEGMENTO][indice & MASCARA_SEGMENTO];
+        }
+
+        /**
+         * @return Copia de los elementos de la instantánea en una lista
+         */
+        public List<T> aLista() {
+            List<T> lista = new ArrayList<>(tamanio);
+            for (T elemento : this) {
+                lista.add(elemento);
+            }
+            return lista;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private int siguiente;
+
+                @Override
+                public boolean hasNext() {
+                    return siguiente < tamanio;
+                }
+
+                @Override
+                public T next() {
+                    if (siguiente >= tamanio) {
+                        throw new NoSuchElementException();
+                    }
+                    return obtener(siguiente++);
+                }
+            };
+        }
+    }
+}
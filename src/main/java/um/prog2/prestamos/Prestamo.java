@@ -15,6 +15,7 @@ public class Prestamo {
     private final RecursoDigital recurso;
     private LocalDateTime fechaPrestamo;
     private LocalDateTime fechaDevolucion;
+    private LocalDateTime fechaDevolucionReal;
     private boolean activo;
 
     /**
@@ -48,6 +49,7 @@ public class Prestamo {
         }
         
         recurso.actualizarEstado(EstadoRecurso.DISPONIBLE);
+        fechaDevolucionReal = LocalDateTime.now();
         activo = false;
         return true;
     }
@@ -97,6 +99,13 @@ public class Prestamo {
         return fechaDevolucion;
     }
 
+    /**
+     * @return Fecha en que el recurso fue efectivamente devuelto, o null si sigue activo
+     */
+    public LocalDateTime getFechaDevolucionReal() {
+        return fechaDevolucionReal;
+    }
+
     public boolean isActivo() {
         return activo;
     }
@@ -2,19 +2,21 @@ package um.prog2.prestamos;
 
 import um.prog2.Enums.EstadoRecurso;
 import um.prog2.excepciones.RecursoNoDisponibleException;
+import um.prog2.interfaces.ObservadorPrestamos;
 import um.prog2.interfaces.Prestable;
 import um.prog2.interfaces.RecursoDigital;
 import um.prog2.interfaces.ServicioNotificaciones;
+import um.prog2.notificaciones.PlantillaMensaje;
 import um.prog2.usuario.Usuario;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -27,8 +29,9 @@ public class SistemaPrestamos {
     private final BlockingQueue<SolicitudPrestamo> colaSolicitudes;
     private final ExecutorService procesadorPrestamos;
     private final Map<String, Prestamo> prestamosActivos;
-    private final List<Prestamo> historialPrestamos;
+    private final HistorialSegmentado<Prestamo> historialPrestamos;
     private final ServicioNotificaciones servicioNotificaciones;
+    private final List<ObservadorPrestamos> observadores;
 
     /**
      * Constructor del sistema de préstamos.
@@ -39,13 +42,37 @@ public class SistemaPrestamos {
         this.colaSolicitudes = new LinkedBlockingQueue<>();
         this.procesadorPrestamos = Executors.newSingleThreadExecutor();
         this.prestamosActivos = new ConcurrentHashMap<>();
-        this.historialPrestamos = Collections.synchronizedList(new ArrayList<>());
+        this.historialPrestamos = new HistorialSegmentado<>();
         this.servicioNotificaciones = servicioNotificaciones;
+        this.observadores = new CopyOnWriteArrayList<>();
 
         // Iniciar el procesador de solicitudes
         iniciarProcesador();
     }
 
+    /**
+     * Registra un observador que será notificado de cada préstamo y devolución.
+     *
+     * @param observador Observador a registrar
+     */
+    public void agregarObservador(ObservadorPrestamos observador) {
+        observadores.add(observador);
+    }
+
+    /**
+     * Registra un observador y obtiene el historial de préstamos devueltos hasta ese momento.
+     * Ambas cosas ocurren bajo el mismo lock que las devoluciones: toda devolución que no
+     * está en el historial devuelto se notifica al observador, y ninguna se recibe dos veces.
+     *
+     * @param observador Observador a registrar
+     * @return Instantánea del historial previo al registro
+     */
+    public synchronized HistorialSegmentado.Instantanea<Prestamo> agregarObservadorConHistorial(
+            ObservadorPrestamos observador) {
+        observadores.add(observador);
+        return obtenerInstantaneaHistorial();
+    }
+
     /**
      * Inicia el procesador de solicitudes de préstamo.
      */
@@ -88,8 +115,9 @@ public class SistemaPrestamos {
             System.out.println("[CONCURRENCIA] Error al procesar solicitud: " + e.getMessage());
             // Notificar al usuario sobre el error
             servicioNotificaciones.enviarNotificacion(
-                    "Error en solicitud de préstamo: " + e.getMessage(),
-                    solicitud.getUsuario()
+                    PlantillaMensaje.ERROR_SOLICITUD_PRESTAMO,
+                    solicitud.getUsuario(),
+                    e.getMessage()
             );
         }
     }
@@ -168,14 +196,18 @@ public class SistemaPrestamos {
         String idPrestamo = generarIdPrestamo();
         Prestamo prestamo = new Prestamo(idPrestamo, usuario, recurso, diasPrestamo);
         prestamosActivos.put(idPrestamo, prestamo);
+        for (ObservadorPrestamos observador : observadores) {
+            observador.alPrestar(prestamo);
+        }
 
         System.out.println("[CONCURRENCIA] Préstamo realizado con éxito: ID=" + idPrestamo);
 
         // Notificar al usuario
         servicioNotificaciones.enviarNotificacion(
-                "Préstamo realizado: " + recurso.getIdentificador() + 
-                ". Fecha de devolución: " + prestamo.getFechaDevolucion(),
-                usuario
+                PlantillaMensaje.PRESTAMO_REALIZADO,
+                usuario,
+                recurso.getIdentificador(),
+                prestamo.getFechaDevolucion()
         );
     }
 
@@ -198,14 +230,18 @@ public class SistemaPrestamos {
         boolean devuelto = prestamo.devolver();
         if (devuelto) {
             prestamosActivos.remove(idPrestamo);
-            historialPrestamos.add(prestamo);
+            historialPrestamos.agregar(prestamo);
+            for (ObservadorPrestamos observador : observadores) {
+                observador.alDevolver(prestamo);
+            }
 
             System.out.println("[CONCURRENCIA] Devolución realizada con éxito: ID=" + idPrestamo);
 
             // Notificar al usuario
             servicioNotificaciones.enviarNotificacion(
-                    "Devolución realizada: " + prestamo.getRecurso().getIdentificador(),
-                    prestamo.getUsuario()
+                    PlantillaMensaje.DEVOLUCION_REALIZADA,
+                    prestamo.getUsuario(),
+                    prestamo.getRecurso().getIdentificador()
             );
         } else {
             System.out.println("[CONCURRENCIA] El préstamo ya fue devuelto: " + idPrestamo);
@@ -236,9 +272,10 @@ public class SistemaPrestamos {
 
             // Notificar al usuario
             servicioNotificaciones.enviarNotificacion(
-                    "Renovación realizada: " + prestamo.getRecurso().getIdentificador() + 
-                    ". Nueva fecha de devolución: " + prestamo.getFechaDevolucion(),
-                    prestamo.getUsuario()
+                    PlantillaMensaje.RENOVACION_REALIZADA,
+                    prestamo.getUsuario(),
+                    prestamo.getRecurso().getIdentificador(),
+                    prestamo.getFechaDevolucion()
             );
         } else {
             System.out.println("[CONCURRENCIA] El préstamo no puede ser renovado: " + idPrestamo);
@@ -282,16 +319,14 @@ public class SistemaPrestamos {
      * @param usuario Usuario del que se quiere obtener el historial
      * @return Lista con el historial de préstamos del usuario
      */
-    public synchronized List<Prestamo> obtenerHistorialPrestamos(Usuario usuario) {
+    public List<Prestamo> obtenerHistorialPrestamos(Usuario usuario) {
         System.out.println("[CONCURRENCIA] Obteniendo historial de préstamos para usuario " + usuario.getNombre() + 
                 " en thread " + Thread.currentThread().getName());
 
         List<Prestamo> historialUsuario = new ArrayList<>();
-        synchronized (historialPrestamos) {
-            for (Prestamo prestamo : historialPrestamos) {
-                if (prestamo.getUsuario().getID() == usuario.getID()) {
-                    historialUsuario.add(prestamo);
-                }
+        for (Prestamo prestamo : obtenerInstantaneaHistorial()) {
+            if (prestamo.getUsuario().getID() == usuario.getID()) {
+                historialUsuario.add(prestamo);
             }
         }
 
@@ -299,6 +334,17 @@ public class SistemaPrestamos {
         return historialUsuario;
     }
 
+    /**
+     * Obtiene una instantánea inmutable del historial completo de préstamos.
+     * Se toma en O(1) y sin locks, así que los reportes largos pueden recorrerla
+     * sin bloquear los préstamos ni ver devoluciones posteriores a medias.
+     *
+     * @return Instantánea del historial de préstamos devueltos
+     */
+    public HistorialSegmentado.Instantanea<Prestamo> obtenerInstantaneaHistorial() {
+        return historialPrestamos.instantanea();
+    }
+
     /**
      * Verifica si hay préstamos vencidos y notifica a los usuarios.
      */
@@ -312,9 +358,10 @@ public class SistemaPrestamos {
                 System.out.println("[CONCURRENCIA] Préstamo vencido encontrado: ID=" + prestamo.getId());
 
                 servicioNotificaciones.enviarNotificacion(
-                        "Préstamo vencido: " + prestamo.getRecurso().getIdentificador() + 
-                        ". Fecha de devolución: " + prestamo.getFechaDevolucion(),
-                        prestamo.getUsuario()
+                        PlantillaMensaje.PRESTAMO_VENCIDO,
+                        prestamo.getUsuario(),
+                        prestamo.getRecurso().getIdentificador(),
+                        prestamo.getFechaDevolucion()
                 );
             }
         }
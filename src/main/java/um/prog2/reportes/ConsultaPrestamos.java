@@ -0,0 +1,161 @@
+package um.prog2.reportes;
+
+import um.prog2.Enums.CategoriaRecurso;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Consulta ad-hoc sobre el historial de préstamos: filtros, claves de
+ * agrupación y una agregación. Se ejecuta con
+ * {@link SistemaReportes#iniciarConsulta(ConsultaPrestamos)}.
+ * Los filtros vacíos no restringen nada.
+ */
+public class ConsultaPrestamos {
+
+    /**
+     * Claves por las que se pueden agrupar los préstamos.
+     * Las claves de fecha se calculan sobre la fecha de préstamo.
+     */
+    public enum Agrupacion {
+        CATEGORIA,
+        TIPO_RECURSO,
+        RECURSO,
+        USUARIO,
+        DIA_SEMANA,
+        MES,
+        ANIO
+    }
+
+    /**
+     * Agregaciones disponibles para cada grupo.
+     */
+    public enum Agregacion {
+        CANTIDAD,
+        SUMA_DURACION_SEGUNDOS,
+        SUMA_ATRASO_SEGUNDOS,
+        USUARIOS_DISTINTOS,
+        RECURSOS_DISTINTOS
+    }
+
+    private final Agregacion agregacion;
+    private final List<Agrupacion> agrupaciones;
+    private final Set<String> tiposRecurso;
+    private final Set<CategoriaRecurso> categorias;
+    private final Set<Integer> idsUsuario;
+    private LocalDateTime desde;
+    private LocalDateTime hasta;
+
+    /**
+     * Constructor de la consulta.
+     *
+     * @param agregacion Agregación a calcular para cada grupo
+     * @param agrupaciones Claves de agrupación, en orden (ninguna calcula un total general)
+     * @throws NullPointerException Si la agregación es null
+     */
+    public ConsultaPrestamos(Agregacion agregacion, Agrupacion... agrupaciones) {
+        this.agregacion = Objects.requireNonNull(agregacion, "La consulta necesita una agregación");
+        this.agrupaciones = Collections.unmodifiableList(new ArrayList<>(Arrays.asList(agrupaciones)));
+        this.tiposRecurso = new TreeSet<>();
+        this.categorias = EnumSet.noneOf(CategoriaRecurso.class);
+        this.idsUsuario = new TreeSet<>();
+    }
+
+    /**
+     * Restringe la consulta a un tipo de recurso (por ejemplo "Libro", "AudioLibro" o "Revista").
+     */
+    public ConsultaPrestamos filtrarTipoRecurso(String tipo) {
+        tiposRecurso.add(tipo);
+        return this;
+    }
+
+    /**
+     * Restringe la consulta a una categoría.
+     */
+    public ConsultaPrestamos filtrarCategoria(CategoriaRecurso categoria) {
+        categorias.add(categoria);
+        return this;
+    }
+
+    /**
+     * Restringe la consulta a un usuario por su ID.
+     */
+    public ConsultaPrestamos filtrarUsuario(int idUsuario) {
+        idsUsuario.add(idUsuario);
+        return this;
+    }
+
+    /**
+     * Restringe la consulta a préstamos iniciados en el rango [desde, hasta).
+     * Cualquiera de los extremos puede ser null para dejarlo abierto.
+     */
+    public ConsultaPrestamos filtrarRango(LocalDateTime desde, LocalDateTime hasta) {
+        this.desde = desde;
+        this.hasta = hasta;
+        return this;
+    }
+
+    /**
+     * Crea una copia independiente de la consulta: los filtros que se agreguen
+     * después a una no afectan a la otra.
+     *
+     * @return Copia de la consulta
+     */
+    ConsultaPrestamos copiar() {
+        ConsultaPrestamos copia = new ConsultaPrestamos(agregacion, agrupaciones.toArray(new Agrupacion[0]));
+        copia.tiposRecurso.addAll(tiposRecurso);
+        copia.categorias.addAll(categorias);
+        copia.idsUsuario.addAll(idsUsuario);
+        copia.desde = desde;
+        copia.hasta = hasta;
+        return copia;
+    }
+
+    public Agregacion getAgregacion() {
+        return agregacion;
+    }
+
+    public List<Agrupacion> getAgrupaciones() {
+        return agrupaciones;
+    }
+
+    public Set<String> getTiposRecurso() {
+        return Collections.unmodifiableSet(tiposRecurso);
+    }
+
+    public Set<CategoriaRecurso> getCategorias() {
+        return Collections.unmodifiableSet(categorias);
+    }
+
+    public Set<Integer> getIdsUsuario() {
+        return Collections.unmodifiableSet(idsUsuario);
+    }
+
+    public LocalDateTime getDesde() {
+        return desde;
+    }
+
+    public LocalDateTime getHasta() {
+        return hasta;
+    }
+
+    @Override
+    public String toString() {
+        return "ConsultaPrestamos{" +
+                "agregacion=" + agregacion +
+                ", agrupaciones=" + agrupaciones +
+                ", tiposRecurso=" + tiposRecurso +
+                ", categorias=" + categorias +
+                ", idsUsuario=" + idsUsuario +
+                ", desde=" + desde +
+                ", hasta=" + hasta +
+                '}';
+    }
+}
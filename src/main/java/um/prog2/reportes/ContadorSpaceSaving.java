@@ -0,0 +1,183 @@
+package um.prog2.reportes;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Contador aproximado de elementos frecuentes (algoritmo Space-Saving).
+ * Usa memoria fija: como máximo {@code capacidad} contadores, sin importar
+ * cuántos elementos distintos se registren. Cualquier elemento con frecuencia
+ * mayor a N / capacidad está garantizado en el resumen, y su cuenta se
+ * sobreestima como mucho en el error asociado.
+ *
+ * @param <T> Tipo de los elementos contados
+ */
+public class ContadorSpaceSaving<T> {
+    private final int capacidad;
+
+    // Min-heap indexado por cuenta: la posición 0 es siempre el contador más chico
+    private final Object[] elementos;
+    private final long[] cuentas;
+    private final long[] errores;
+    private final Map<T, Integer> posiciones;
+    private int tamanio;
+    private long total;
+
+    /**
+     * Constructor del contador.
+     *
+     * @param capacidad Cantidad máxima de contadores a mantener
+     */
+    public ContadorSpaceSaving(int capacidad) {
+        if (capacidad <= 0) {
+            throw new IllegalArgumentException("La capacidad debe ser mayor a cero");
+        }
+        this.capacidad = capacidad;
+        this.elementos = new Object[capacidad];
+        this.cuentas = new long[capacidad];
+        this.errores = new long[capacidad];
+        this.posiciones = new HashMap<>(capacidad * 2);
+    }
+
+    /**
+     * Registra una ocurrencia de un elemento. Costo O(log capacidad).
+     *
+     * @param elemento Elemento a registrar
+     */
+    public synchronized void registrar(T elemento) {
+        total++;
+        Integer posicion = posiciones.get(elemento);
+        if (posicion != null) {
+            cuentas[posicion]++;
+            bajar(posicion);
+        } else if (tamanio < capacidad) {
+            elementos[tamanio] = elemento;
+            cuentas[tamanio] = 1;
+            errores[tamanio] = 0;
+            posiciones.put(elemento, tamanio);
+            subir(tamanio);
+            tamanio++;
+        } else {
+            // Reemplazar el contador mínimo heredando su cuenta como error
+            posiciones.remove(elementoEn(0));
+            elementos[0] = elemento;
+            errores[0] = cuentas[0];
+            cuentas[0]++;
+            posiciones.put(elemento, 0);
+            bajar(0);
+        }
+    }
+
+    /**
+     * Obtiene la cuenta estimada de un elemento.
+     *
+     * @param elemento Elemento a consultar
+     * @return Cuenta estimada (cota superior) o 0 si no está en el resumen
+     */
+    public synchronized long estimar(T elemento) {
+        Integer posicion = posiciones.get(elemento);
+        return posicion != null ? cuentas[posicion] : 0;
+    }
+
+    /**
+     * Obtiene el error máximo de la cuenta estimada de un elemento.
+     *
+     * @param elemento Elemento a consultar
+     * @return Sobreestimación máxima posible de la cuenta
+     */
+    public synchronized long error(T elemento) {
+        Integer posicion = posiciones.get(elemento);
+        return posicion != null ? errores[posicion] : 0;
+    }
+
+    /**
+     * Obtiene los elementos más frecuentes según el resumen.
+     *
+     * @param limite Cantidad máxima de elementos a devolver
+     * @return Mapa ordenado de mayor a menor cuenta estimada
+     */
+    public Map<T, Long> obtenerTop(int limite) {
+        Map<T, Long> copia = new HashMap<>();
+        synchronized (this) {
+            for (int i = 0; i < tamanio; i++) {
+                copia.put(elementoEn(i), cuentas[i]);
+            }
+        }
+        return TopK.seleccionar(copia, limite);
+    }
+
+    /**
+     * @return Cantidad total de ocurrencias registradas
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    public int getCapacidad() {
+        return capacidad;
+    }
+
+    /**
+     * Descarta todos los contadores.
+     */
+    public synchronized void limpiar() {
+        for (int i = 0; i < tamanio; i++) {
+            elementos[i] = null;
+        }
+        posiciones.clear();
+        tamanio = 0;
+        total = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private T elementoEn(int posicion) {
+        return (T) elementos[posicion];
+    }
+
+    private void subir(int posicion) {
+        while (posicion > 0) {
+            int padre = (posicion - 1) / 2;
+            if (cuentas[padre] <= cuentas[posicion]) {
+                break;
+            }
+            intercambiar(posicion, padre);
+            posicion = padre;
+        }
+    }
+
+    private void bajar(int posicion) {
+        while (true) {
+            int izquierdo = 2 * posicion + 1;
+            if (izquierdo >= tamanio) {
+                break;
+            }
+            int menor = izquierdo;
+            int derecho = izquierdo + 1;
+            if (derecho < tamanio && cuentas[derecho] < cuentas[izquierdo]) {
+                menor = derecho;
+            }
+            if (cuentas[posicion] <= cuentas[menor]) {
+                break;
+            }
+            intercambiar(posicion, menor);
+            posicion = menor;
+        }
+    }
+
+    private void intercambiar(int i, int j) {
+        Object elemento = elementos[i];
+        elementos[i] = elementos[j];
+        elementos[j] = elemento;
+
+        long cuenta = cuentas[i];
+        cuentas[i] = cuentas[j];
+        cuentas[j] = cuenta;
+
+        long error = errores[i];
+        errores[i] = errores[j];
+        errores[j] = error;
+
+        posiciones.put(elementoEn(i), i);
+        posiciones.put(elementoEn(j), j);
+    }
+}
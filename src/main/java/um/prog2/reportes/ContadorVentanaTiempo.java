@@ -0,0 +1,146 @@
+package um.prog2.reportes;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Contador de eventos por ventanas de tiempo deslizantes.
+ * Mantiene tres buffers circulares de cubetas: por minuto (última hora),
+ * por hora (último día) y por día (últimos 30 días). Cada evento incrementa
+ * una cubeta de cada nivel, y una consulta combina como máximo 60 cubetas
+ * del nivel más fino que cubra la ventana pedida, sin recorrer el historial.
+ * La precisión en los bordes de la ventana es la de la cubeta usada.
+ *
+ * @param <K> Tipo de los elementos contados
+ */
+public class ContadorVentanaTiempo<K> {
+    public static final int CUBETAS_MINUTO = 60;
+    public static final int CUBETAS_HORA = 24;
+    public static final int CUBETAS_DIA = 30;
+
+    private final Nivel minutos;
+    private final Nivel horas;
+    private final Nivel dias;
+
+    /**
+     * Constructor del contador por ventanas de tiempo.
+     */
+    public ContadorVentanaTiempo() {
+        this.minutos = new Nivel(60, CUBETAS_MINUTO);
+        this.horas = new Nivel(3600, CUBETAS_HORA);
+        this.dias = new Nivel(86400, CUBETAS_DIA);
+    }
+
+    /**
+     * Registra una ocurrencia de un elemento en un instante dado.
+     *
+     * @param elemento Elemento a registrar
+     * @param instante Momento en que ocurrió el evento
+     */
+    public synchronized void registrar(K elemento, Instant instante) {
+        long segundo = instante.getEpochSecond();
+        minutos.registrar(elemento, segundo);
+        horas.registrar(elemento, segundo);
+        dias.registrar(elemento, segundo);
+    }
+
+    /**
+     * Obtiene la cantidad de ocurrencias por elemento dentro de una ventana
+     * que termina en el instante indicado.
+     *
+     * @param ventana Duración de la ventana (hasta 30 días)
+     * @param ahora Fin de la ventana
+     * @return Mapa de elemento -> cantidad de ocurrencias en la ventana
+     */
+    public synchronized Map<K, Integer> contar(Duration ventana, Instant ahora) {
+        long segundos = ventana.getSeconds();
+        if (segundos <= 0) {
+            return new HashMap<>();
+        }
+
+        Nivel nivel;
+        if (segundos <= minutos.cubrimiento()) {
+            nivel = minutos;
+        } else if (segundos <= horas.cubrimiento()) {
+            nivel = horas;
+        } else if (segundos <= dias.cubrimiento()) {
+            nivel = dias;
+        } else {
+            throw new IllegalArgumentException("La ventana máxima soportada es de " + CUBETAS_DIA + " días");
+        }
+        return nivel.combinar(segundos, ahora.getEpochSecond());
+    }
+
+    /**
+     * Descarta todas las cubetas.
+     */
+    public synchronized void limpiar() {
+        minutos.limpiar();
+        horas.limpiar();
+        dias.limpiar();
+    }
+
+    /**
+     * Buffer circular de cubetas de una misma granularidad.
+     */
+    private class Nivel {
+        private final long segundosPorCubeta;
+        private final long[] periodos;
+        private final Map<K, Integer>[] cuentas;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Nivel(long segundosPorCubeta, int cantidadCubetas) {
+            this.segundosPorCubeta = segundosPorCubeta;
+            this.periodos = new long[cantidadCubetas];
+            this.cuentas = new Map[cantidadCubetas];
+            limpiar();
+        }
+
+        long cubrimiento() {
+            return segundosPorCubeta * periodos.length;
+        }
+
+        void registrar(K elemento, long segundo) {
+            long periodo = Math.floorDiv(segundo, segundosPorCubeta);
+            int indice = (int) Math.floorMod(periodo, (long) periodos.length);
+            if (periodos[indice] != periodo) {
+                // La cubeta pertenece a una vuelta anterior del buffer: se recicla
+                if (periodo < periodos[indice]) {
+                    return; // Evento más viejo que la ventana que cubre este nivel
+                }
+                periodos[indice] = periodo;
+                cuentas[indice].clear();
+            }
+            cuentas[indice].merge(elemento, 1, Integer::sum);
+        }
+
+        Map<K, Integer> combinar(long segundosVentana, long ahora) {
+            long periodoActual = Math.floorDiv(ahora, segundosPorCubeta);
+            long cantidad = (segundosVentana + segundosPorCubeta - 1) / segundosPorCubeta;
+            long periodoInicial = periodoActual - cantidad + 1;
+
+            Map<K, Integer> resultado = new HashMap<>();
+            for (int i = 0; i < periodos.length; i++) {
+                if (periodos[i] >= periodoInicial && periodos[i] <= periodoActual) {
+                    for (Map.Entry<K, Integer> entrada : cuentas[i].entrySet()) {
+                        resultado.merge(entrada.getKey(), entrada.getValue(), Integer::sum);
+                    }
+                }
+            }
+            return resultado;
+        }
+
+        void limpiar() {
+            for (int i = 0; i < periodos.length; i++) {
+                periodos[i] = Long.MIN_VALUE;
+                if (cuentas[i] == null) {
+                    cuentas[i] = new HashMap<>();
+                } else {
+                    cuentas[i].clear();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package um.prog2.reportes;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Escritor de filas a un archivo CSV o JSON Lines a través de un canal NIO.
+ * Cada fila se codifica en un buffer de tamaño fijo que se vuelca al canal
+ * cuando se llena, por lo que la memoria usada no depende de la cantidad de
+ * filas exportadas. Si el hilo que exporta es interrumpido (por ejemplo, al
+ * cancelar el Future del reporte) la exportación se detiene en la fila actual.
+ */
+public class ExportadorStreaming implements AutoCloseable {
+
+    /**
+     * Formatos de exportación soportados.
+     */
+    public enum Formato {
+        CSV,
+        JSON_LINES
+    }
+
+    private static final int TAMANIO_BUFFER = 64 * 1024;
+
+    private final FileChannel canal;
+    private final Formato formato;
+    private final String[] columnas;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder codificador;
+    private final StringBuilder fila;
+    private long filasEscritas;
+
+    /**
+     * Abre (o reemplaza) el archivo de destino y escribe el encabezado si corresponde.
+     *
+     * @param destino Archivo de destino
+     * @param formato Formato de exportación
+     * @param columnas Nombres de las columnas
+     * @throws IOException Si no se puede abrir o escribir el archivo
+     */
+    public ExportadorStreaming(Path destino, Formato formato, String... columnas) throws IOException {
+        this.canal = FileChannel.open(destino, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.formato = formato;
+        this.columnas = columnas.clone();
+        this.buffer = ByteBuffer.allocateDirect(TAMANIO_BUFFER);
+        this.codificador = StandardCharsets.UTF_8.newEncoder();
+        this.fila = new StringBuilder(256);
+
+        if (formato == Formato.CSV) {
+            for (int i = 0; i < columnas.length; i++) {
+                if (i > 0) {
+                    fila.append(',');
+                }
+                agregarCsv(columnas[i]);
+            }
+            fila.append('\n');
+            codificarFila();
+        }
+    }
+
+    /**
+     * Escribe una fila. Los valores deben venir en el orden de las columnas.
+     * Los números y booleanos se escriben sin comillas en JSON; el resto como texto.
+     *
+     * @param valores Valores de la fila
+     * @throws IOException Si falla la escritura o la exportación fue cancelada
+     */
+    public void escribirFila(Object... valores) throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Exportación cancelada");
+        }
+        if (valores.length != columnas.length) {
+            throw new IllegalArgumentException("Se esperaban " + columnas.length + " valores");
+        }
+
+        if (formato == Formato.CSV) {
+            for (int i = 0; i < valores.length; i++) {
+                if (i > 0) {
+                    fila.append(',');
+                }
+                if (valores[i] != null) {
+                    agregarCsv(String.valueOf(valores[i]));
+                }
+            }
+        } else {
+            fila.append('{');
+            for (int i = 0; i < valores.length; i++) {
+                if (i > 0) {
+                    fila.append(',');
+                }
+                agregarJson(columnas[i]);
+                fila.append(':');
+                Object valor = valores[i];
+                if (valor == null || !esFinito(valor)) {
+                    // JSON no admite NaN ni Infinity como números
+                    fila.append("null");
+                } else if (valor instanceof Number || valor instanceof Boolean) {
+                    fila.append(valor);
+                } else {
+                    agregarJson(String.valueOf(valor));
+                }
+            }
+            fila.append('}');
+        }
+        fila.append('\n');
+        codificarFila();
+        filasEscritas++;
+    }
+
+    private static boolean esFinito(Object valor) {
+        if (valor instanceof Double) {
+            return Double.isFinite((Double) valor);
+        }
+        if (valor instanceof Float) {
+            return Float.isFinite((Float) valor);
+        }
+        return true;
+    }
+
+    /**
+     * @return Cantidad de filas de datos escritas (sin contar el encabezado)
+     */
+    public long getFilasEscritas() {
+        return filasEscritas;
+    }
+
+    /**
+     * Vuelca lo que quede en el buffer y cierra el archivo.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (canal.isOpen()) {
+                volcar();
+            }
+        } finally {
+            canal.close();
+        }
+    }
+
+    private void codificarFila() throws IOException {
+        CharBuffer caracteres = CharBuffer.wrap(fila);
+        while (true) {
+            CoderResult resultado = codificador.encode(caracteres, buffer, true);
+            if (resultado.isOverflow()) {
+                volcar();
+            } else if (resultado.isError()) {
+                resultado.throwException();
+            } else {
+                break;
+            }
+        }
+        codificador.reset();
+        fila.setLength(0);
+    }
+
+    private void volcar() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            canal.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void agregarCsv(String valor) {
+        boolean requiereComillas = valor.indexOf(',') >= 0 || valor.indexOf('"') >= 0
+                || valor.indexOf('\n') >= 0 || valor.indexOf('\r') >= 0;
+        if (!requiereComillas) {
+            fila.append(valor);
+            return;
+        }
+        fila.append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            if (c == '"') {
+                fila.append('"');
+            }
+            fila.append(c);
+        }
+        fila.append('"');
+    }
+
+    private void agregarJson(String valor) {
+        fila.append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '"':
+                    fila.append("\\\"");
+                    break;
+                case '\\':
+                    fila.append("\\\\");
+                    break;
+                case '\n':
+                    fila.append("\\n");
+                    break;
+                case '\r':
+                    fila.append("\\r");
+                    break;
+                case '\t':
+                    fila.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        fila.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        fila.append(c);
+                    }
+            }
+        }
+        fila.append('"');
+    }
+}
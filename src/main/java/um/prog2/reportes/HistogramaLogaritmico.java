@@ -0,0 +1,100 @@
+package um.prog2.reportes;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma de valores no negativos con cubetas de tamaño logarítmico.
+ * Cada potencia de 2 se divide en {@value #SUBCUBETAS} subcubetas, por lo que
+ * el error relativo de un percentil es como máximo 1/{@value #SUBCUBETAS}.
+ * Usa memoria fija y registrar un valor es una operación atómica sin bloqueo;
+ * calcular un percentil recorre una cantidad fija de cubetas, sin importar
+ * cuántos valores se hayan registrado.
+ */
+public class HistogramaLogaritmico {
+    private static final int BITS_SUBCUBETA = 4;
+    public static final int SUBCUBETAS = 1 << BITS_SUBCUBETA;
+    private static final int CANTIDAD_CUBETAS = (Long.SIZE - BITS_SUBCUBETA + 1) * SUBCUBETAS;
+
+    private final AtomicLongArray cuentas;
+    private final AtomicLong total;
+
+    /**
+     * Constructor del histograma.
+     */
+    public HistogramaLogaritmico() {
+        this.cuentas = new AtomicLongArray(CANTIDAD_CUBETAS);
+        this.total = new AtomicLong();
+    }
+
+    /**
+     * Registra un valor. Los valores negativos se registran como 0.
+     *
+     * @param valor Valor a registrar
+     */
+    public void registrar(long valor) {
+        cuentas.incrementAndGet(indiceDe(Math.max(0, valor)));
+        total.incrementAndGet();
+    }
+
+    /**
+     * @return Cantidad de valores registrados
+     */
+    public long getCantidad() {
+        return total.get();
+    }
+
+    /**
+     * Calcula un percentil aproximado.
+     *
+     * @param percentil Percentil entre 0 y 100
+     * @return Valor aproximado del percentil, o 0 si no hay valores
+     */
+    public long percentil(double percentil) {
+        if (percentil < 0 || percentil > 100) {
+            throw new IllegalArgumentException("El percentil debe estar entre 0 y 100");
+        }
+
+        long cantidad = total.get();
+        if (cantidad == 0) {
+            return 0;
+        }
+
+        long objetivo = Math.max(1, (long) Math.ceil(cantidad * percentil / 100.0));
+        long acumulado = 0;
+        for (int i = 0; i < CANTIDAD_CUBETAS; i++) {
+            acumulado += cuentas.get(i);
+            if (acumulado >= objetivo) {
+                return valorRepresentativo(i);
+            }
+        }
+        // Solo por registros concurrentes entre la lectura del total y el recorrido
+        return valorRepresentativo(CANTIDAD_CUBETAS - 1);
+    }
+
+    /**
+     * Obtiene el índice de cubeta de un valor no negativo.
+     */
+    static int indiceDe(long valor) {
+        if (valor < SUBCUBETAS) {
+            return (int) valor;
+        }
+        int exponente = Long.SIZE - 1 - Long.numberOfLeadingZeros(valor);
+        int desplazamiento = exponente - BITS_SUBCUBETA;
+        int mantisa = (int) ((valor >>> desplazamiento) & (SUBCUBETAS - 1));
+        return (desplazamiento + 1) * SUBCUBETAS + mantisa;
+    }
+
+    /**
+     * Obtiene el valor medio del rango que cubre una cubeta.
+     */
+    static long valorRepresentativo(int indice) {
+        if (indice < SUBCUBETAS) {
+            return indice;
+        }
+        int desplazamiento = indice / SUBCUBETAS - 1;
+        long inferior = (long) (SUBCUBETAS + indice % SUBCUBETAS) << desplazamiento;
+        long ancho = 1L << desplazamiento;
+        return inferior + (ancho - 1) / 2;
+    }
+}
@@ -0,0 +1,346 @@
+package um.prog2.reportes;
+
+import um.prog2.interfaces.RecursoDigital;
+import um.prog2.prestamos.Prestamo;
+import um.prog2.usuario.Usuario;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Historial de préstamos almacenado por columnas en arreglos primitivos.
+ * Cada préstamo ocupa una fila: índice de recurso, índice de usuario y las
+ * fechas de inicio, vencimiento y devolución en segundos epoch. Los objetos
+ * {@link RecursoDigital} y {@link Usuario} se guardan una sola vez en
+ * diccionarios y los reportes solo los resuelven para el resultado final.
+ * <p>
+ * Es de solo agregado: las filas y las entradas de los diccionarios nunca se
+ * modifican una vez escritas, y al crecer se copian los arreglos. Como en
+ * {@code HistorialSegmentado}, cada agregado publica una {@link Vista} nueva en
+ * un campo volatile, así que tomar una vista es O(1), sin locks y sin esperar
+ * a quien agrega.
+ */
+public class HistorialColumnar {
+    // Valor usado en la columna de devolución para préstamos aún no devueltos
+    public static final long SIN_DEVOLUCION = Long.MIN_VALUE;
+
+    // Bytes que ocupa una fila en las cinco columnas (2 int + 3 long)
+    public static final int BYTES_POR_FILA = 2 * Integer.BYTES + 3 * Long.BYTES;
+
+    private static final int CAPACIDAD_INICIAL = 1024;
+
+    private final ZoneId zona;
+
+    // Columnas
+    private int[] recursos;
+    private int[] usuarios;
+    private long[] inicios;
+    private long[] vencimientos;
+    private long[] devoluciones;
+    private int tamanio;
+
+    // Diccionarios índice -> objeto, de solo agregado, y sus índices inversos (solo los usa agregar)
+    private RecursoDigital[] diccionarioRecursos;
+    private int cantidadRecursos;
+    private final Map<RecursoDigital, Integer> indiceRecursos;
+    private Usuario[] diccionarioUsuarios;
+    private int cantidadUsuarios;
+    private final Map<Usuario, Integer> indiceUsuarios;
+
+    // Estado publicado para los lectores
+    private volatile Vista actual;
+
+    /**
+     * Constructor del historial columnar usando la zona horaria del sistema.
+     */
+    public HistorialColumnar() {
+        this(ZoneId.systemDefault());
+    }
+
+    /**
+     * Constructor del historial columnar.
+     *
+     * @param zona Zona horaria para convertir las fechas de los préstamos
+     */
+    public HistorialColumnar(ZoneId zona) {
+        this.zona = zona;
+        this.recursos = new int[CAPACIDAD_INICIAL];
+        this.usuarios = new int[CAPACIDAD_INICIAL];
+        this.inicios = new long[CAPACIDAD_INICIAL];
+        this.vencimientos = new long[CAPACIDAD_INICIAL];
+        this.devoluciones = new long[CAPACIDAD_INICIAL];
+        this.diccionarioRecursos = new RecursoDigital[CAPACIDAD_INICIAL];
+        this.indiceRecursos = new HashMap<>();
+        this.diccionarioUsuarios = new Usuario[CAPACIDAD_INICIAL];
+        this.indiceUsuarios = new HashMap<>();
+        publicar();
+    }
+
+    /**
+     * Agrega un préstamo al final del historial.
+     * Los agregados se serializan entre sí; las vistas no esperan a nadie.
+     *
+     * @param prestamo Préstamo a agregar
+     * @return Número de fila asignado
+     */
+    public synchronized int agregar(Prestamo prestamo) {
+        if (tamanio == recursos.length) {
+            crecer();
+        }
+
+        int fila = tamanio;
+        recursos[fila] = indiceRecurso(prestamo.getRecurso());
+        usuarios[fila] = indiceUsuario(prestamo.getUsuario());
+        inicios[fila] = aSegundos(prestamo.getFechaPrestamo());
+        vencimientos[fila] = aSegundos(prestamo.getFechaDevolucion());
+        devoluciones[fila] = prestamo.getFechaDevolucionReal() != null
+                ? aSegundos(prestamo.getFechaDevolucionReal())
+                : SIN_DEVOLUCION;
+        tamanio++;
+        publicar();
+        return fila;
+    }
+
+    /**
+     * Publica las filas y entradas escritas hasta ahora. La escritura volatile
+     * hace visibles las posiciones nuevas junto con los tamaños.
+     */
+    private void publicar() {
+        actual = new Vista(zona, recursos, usuarios, inicios, vencimientos, devoluciones, tamanio,
+                diccionarioRecursos, cantidadRecursos, diccionarioUsuarios, cantidadUsuarios);
+    }
+
+    /**
+     * Obtiene en O(1) y sin locks una vista de solo lectura de las filas escritas
+     * hasta ahora. Sigue siendo consistente aunque se agreguen préstamos después.
+     *
+     * @return Vista inmutable del historial
+     */
+    public Vista vista() {
+        return actual;
+    }
+
+    public int tamanio() {
+        return actual.tamanio;
+    }
+
+    /**
+     * @return Bytes reservados por las columnas, incluida la capacidad libre
+     */
+    public long bytesReservados() {
+        return (long) actual.recursos.length * BYTES_POR_FILA;
+    }
+
+    private void crecer() {
+        int nuevaCapacidad = recursos.length * 2;
+        recursos = Arrays.copyOf(recursos, nuevaCapacidad);
+        usuarios = Arrays.copyOf(usuarios, nuevaCapacidad);
+        inicios = Arrays.copyOf(inicios, nuevaCapacidad);
+        vencimientos = Arrays.copyOf(vencimientos, nuevaCapacidad);
+        devoluciones = Arrays.copyOf(devoluciones, nuevaCapacidad);
+    }
+
+    private long aSegundos(LocalDateTime fecha) {
+        return fecha.atZone(zona).toEpochSecond();
+    }
+
+    private int indiceRecurso(RecursoDigital recurso) {
+        Integer existente = indiceRecursos.get(recurso);
+        if (existente != null) {
+            return existente;
+        }
+        if (cantidadRecursos == diccionarioRecursos.length) {
+            diccionarioRecursos = Arrays.copyOf(diccionarioRecursos, cantidadRecursos * 2);
+        }
+        diccionarioRecursos[cantidadRecursos] = recurso;
+        indiceRecursos.put(recurso, cantidadRecursos);
+        return cantidadRecursos++;
+    }
+
+    private int indiceUsuario(Usuario usuario) {
+        Integer existente = indiceUsuarios.get(usuario);
+        if (existente != null) {
+            return existente;
+        }
+        if (cantidadUsuarios == diccionarioUsuarios.length) {
+            diccionarioUsuarios = Arrays.copyOf(diccionarioUsuarios, cantidadUsuarios * 2);
+        }
+        diccionarioUsuarios[cantidadUsuarios] = usuario;
+        indiceUsuarios.put(usuario, cantidadUsuarios);
+        return cantidadUsuarios++;
+    }
+
+    /**
+     * Vista inmutable de un prefijo del historial, pensada para recorrer
+     * las columnas de forma secuencial durante la generación de reportes.
+     */
+    public static final class Vista {
+        private final ZoneId zona;
+        private final int[] recursos;
+        private final int[] usuarios;
+        private final long[] inicios;
+        private final long[] vencimientos;
+        private final long[] devoluciones;
+        private final int tamanio;
+        private final RecursoDigital[] diccionarioRecursos;
+        private final int cantidadRecursos;
+        private final Usuario[] diccionarioUsuarios;
+        private final int cantidadUsuarios;
+
+        private Vista(ZoneId zona, int[] recursos, int[] usuarios, long[] inicios, long[] vencimientos,
+                      long[] devoluciones, int tamanio, RecursoDigital[] diccionarioRecursos,
+                      int cantidadRecursos, Usuario[] diccionarioUsuarios, int cantidadUsuarios) {
+            this.zona = zona;
+            this.recursos = recursos;
+            this.usuarios = usuarios;
+            this.inicios = inicios;
+            this.vencimientos = vencimientos;
+            this.devoluciones = devoluciones;
+            this.tamanio = tamanio;
+            this.diccionarioRecursos = diccionarioRecursos;
+            this.cantidadRecursos = cantidadRecursos;
+            this.diccionarioUsuarios = diccionarioUsuarios;
+            this.cantidadUsuarios = cantidadUsuarios;
+        }
+
+        public int tamanio() {
+            return tamanio;
+        }
+
+        /**
+         * @return Zona horaria con la que se convirtieron las fechas a segundos epoch
+         */
+        public ZoneId getZona() {
+            return zona;
+        }
+
+        public int recurso(int fila) {
+            return recursos[fila];
+        }
+
+        public int usuario(int fila) {
+            return usuarios[fila];
+        }
+
+        public long inicio(int fila) {
+            return inicios[fila];
+        }
+
+        public long vencimiento(int fila) {
+            return vencimientos[fila];
+        }
+
+        public long devolucion(int fila) {
+            return devoluciones[fila];
+        }
+
+        public int cantidadRecursos() {
+            return cantidadRecursos;
+        }
+
+        public int cantidadUsuarios() {
+            return cantidadUsuarios;
+        }
+
+        public RecursoDigital resolverRecurso(int indice) {
+            return diccionarioRecursos[indice];
+        }
+
+        public Usuario resolverUsuario(int indice) {
+            return diccionarioUsuarios[indice];
+        }
+
+        /**
+         * Cuenta los préstamos de cada recurso recorriendo solo la columna de recursos.
+         *
+         * @return Arreglo indexado por índice de recurso
+         */
+        public int[] contarPorRecurso() {
+            int[] cuentas = new int[cantidadRecursos];
+            contarPorRecurso(0, tamanio, null, cuentas);
+            return cuentas;
+        }
+
+        /**
+         * Suma los préstamos de cada recurso en un tramo de filas, contando solo los
+         * de los usuarios incluidos. Permite recorrer la vista por tramos para informar
+         * el progreso o atender una cancelación entre uno y otro.
+         *
+         * @param desde Primera fila del tramo
+         * @param hasta Fila siguiente a la última del tramo
+         * @param usuariosIncluidos Indexado por índice de usuario, o null para contar a todos
+         * @param cuentas Arreglo indexado por índice de recurso donde se suman las cuentas
+         */
+        public void contarPorRecurso(int desde, int hasta, boolean[] usuariosIncluidos, int[] cuentas) {
+            if (usuariosIncluidos == null) {
+                for (int fila = desde; fila < hasta; fila++) {
+                    cuentas[recursos[fila]]++;
+                }
+                return;
+            }
+            for (int fila = desde; fila < hasta; fila++) {
+                if (usuariosIncluidos[usuarios[fila]]) {
+                    cuentas[recursos[fila]]++;
+                }
+            }
+        }
+
+        /**
+         * Cuenta los préstamos de cada usuario recorriendo solo la columna de usuarios.
+         *
+         * @return Arreglo indexado por índice de usuario
+         */
+        public int[] contarPorUsuario() {
+            int[] cuentas = new int[cantidadUsuarios];
+            contarPorUsuario(0, tamanio, cuentas);
+            return cuentas;
+        }
+
+        /**
+         * Suma los préstamos de cada usuario en un tramo de filas.
+         *
+         * @param desde Primera fila del tramo
+         * @param hasta Fila siguiente a la última del tramo
+         * @param cuentas Arreglo indexado por índice de usuario donde se suman las cuentas
+         */
+        public void contarPorUsuario(int desde, int hasta, int[] cuentas) {
+            for (int fila = desde; fila < hasta; fila++) {
+                cuentas[usuarios[fila]]++;
+            }
+        }
+
+        /**
+         * Obtiene los recursos más prestados, resolviendo objetos solo para el top.
+         *
+         * @param limite Número máximo de recursos a incluir
+         * @return Mapa ordenado con los recursos y su cantidad de préstamos
+         */
+        public Map<RecursoDigital, Integer> topRecursos(int limite) {
+            int[] cuentas = contarPorRecurso();
+            Map<RecursoDigital, Integer> resultado = new LinkedHashMap<>();
+            for (int indice : TopK.seleccionarIndices(cuentas, limite)) {
+                resultado.put(diccionarioRecursos[indice], cuentas[indice]);
+            }
+            return resultado;
+        }
+
+        /**
+         * Obtiene los usuarios más activos, resolviendo objetos solo para el top.
+         *
+         * @param limite Número máximo de usuarios a incluir
+         * @return Mapa ordenado con los usuarios y su cantidad de préstamos
+         */
+        public Map<Usuario, Integer> topUsuarios(int limite) {
+            int[] cuentas = contarPorUsuario();
+            Map<Usuario, Integer> resultado = new LinkedHashMap<>();
+            for (int indice : TopK.seleccionarIndices(cuentas, limite)) {
+                resultado.put(diccionarioUsuarios[indice], cuentas[indice]);
+            }
+            return resultado;
+        }
+    }
+}
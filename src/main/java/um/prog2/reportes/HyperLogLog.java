@@ -0,0 +1,282 @@
+package um.prog2.reportes;
+
+import java.util.Arrays;
+
+/**
+ * Estimador de cardinalidad HyperLogLog.
+ * Permite contar elementos distintos (por ejemplo, lectores únicos de un
+ * recurso) con a lo sumo 2^precision bytes y un error relativo de
+ * aproximadamente 1.04 / sqrt(2^precision). Dos estimadores de la misma
+ * precisión se pueden combinar para obtener la cardinalidad de la unión.
+ * <p>
+ * Empieza en forma dispersa: solo guarda los registros distintos de cero, como
+ * pares (índice, rango) ordenados por índice en un int cada uno. Pasa a la forma
+ * densa cuando la dispersa ocuparía más de la cuarta parte de la densa, así que
+ * un recurso con pocos lectores ocupa unos pocos bytes en vez de 2^precision.
+ * Las dos formas dan exactamente la misma estimación.
+ */
+public class HyperLogLog {
+    public static final int PRECISION_MINIMA = 4;
+    public static final int PRECISION_MAXIMA = 16;
+
+    // Bits del rango en cada par disperso; el rango nunca supera 64 - PRECISION_MINIMA + 1
+    private static final int BITS_RANGO = 6;
+    private static final int MASCARA_RANGO = (1 << BITS_RANGO) - 1;
+
+    private final int precision;
+    // Forma densa; null mientras el estimador es disperso
+    private byte[] registros;
+    // Forma dispersa: (índice << BITS_RANGO) | rango, ordenados por índice
+    private int[] dispersos;
+    private int cantidadDispersos;
+
+    /**
+     * Constructor del estimador.
+     *
+     * @param precision Cantidad de bits usados para elegir el registro (entre 4 y 16)
+     */
+    public HyperLogLog(int precision) {
+        if (precision < PRECISION_MINIMA || precision > PRECISION_MAXIMA) {
+            throw new IllegalArgumentException("La precisión debe estar entre "
+                    + PRECISION_MINIMA + " y " + PRECISION_MAXIMA);
+        }
+        this.precision = precision;
+        this.dispersos = new int[Math.min(4, limiteDisperso())];
+    }
+
+    private HyperLogLog(int precision, byte[] registros) {
+        this.precision = precision;
+        this.registros = registros;
+    }
+
+    private HyperLogLog(int precision, int[] dispersos, int cantidadDispersos) {
+        this.precision = precision;
+        this.dispersos = dispersos;
+        this.cantidadDispersos = cantidadDispersos;
+    }
+
+    /**
+     * Registra un elemento identificado por un valor numérico (por ejemplo, el ID de usuario).
+     *
+     * @param valor Identificador del elemento
+     */
+    public void agregar(long valor) {
+        long hash = mezclar(valor);
+        int indice = (int) (hash >>> (64 - precision));
+        // Posición del primer bit en 1 entre los bits restantes (1 si el primero ya es 1)
+        long resto = hash << precision;
+        int rango = resto == 0 ? 64 - precision + 1 : Long.numberOfLeadingZeros(resto) + 1;
+        synchronized (this) {
+            actualizar(indice, rango);
+        }
+    }
+
+    /**
+     * Sube el registro al rango si es mayor. Se llama con el lock tomado.
+     */
+    private void actualizar(int indice, int rango) {
+        if (registros != null) {
+            if (rango > registros[indice]) {
+                registros[indice] = (byte) rango;
+            }
+            return;
+        }
+        int posicion = buscar(indice);
+        if (posicion >= 0) {
+            if (rango > (dispersos[posicion] & MASCARA_RANGO)) {
+                dispersos[posicion] = indice << BITS_RANGO | rango;
+            }
+            return;
+        }
+        if (cantidadDispersos == limiteDisperso()) {
+            densificar();
+            registros[indice] = (byte) rango;
+            return;
+        }
+        int insercion = -posicion - 1;
+        if (cantidadDispersos == dispersos.length) {
+            dispersos = Arrays.copyOf(dispersos, Math.min(dispersos.length * 2, limiteDisperso()));
+        }
+        System.arraycopy(dispersos, insercion, dispersos, insercion + 1, cantidadDispersos - insercion);
+        dispersos[insercion] = indice << BITS_RANGO | rango;
+        cantidadDispersos++;
+    }
+
+    /**
+     * Búsqueda binaria de un índice entre los pares dispersos.
+     *
+     * @return Posición del par, o -(posición de inserción) - 1 si no está
+     */
+    private int buscar(int indice) {
+        int desde = 0;
+        int hasta = cantidadDispersos - 1;
+        while (desde <= hasta) {
+            int medio = (desde + hasta) >>> 1;
+            int actual = dispersos[medio] >>> BITS_RANGO;
+            if (actual < indice) {
+                desde = medio + 1;
+            } else if (actual > indice) {
+                hasta = medio - 1;
+            } else {
+                return medio;
+            }
+        }
+        return -desde - 1;
+    }
+
+    /**
+     * Cantidad máxima de pares dispersos: ocupan a lo sumo la cuarta parte de la forma densa.
+     */
+    private int limiteDisperso() {
+        return Math.max(1, (1 << precision) / 16);
+    }
+
+    private void densificar() {
+        registros = new byte[1 << precision];
+        for (int i = 0; i < cantidadDispersos; i++) {
+            registros[dispersos[i] >>> BITS_RANGO] = (byte) (dispersos[i] & MASCARA_RANGO);
+        }
+        dispersos = null;
+        cantidadDispersos = 0;
+    }
+
+    /**
+     * Estima la cantidad de elementos distintos registrados.
+     *
+     * @return Cardinalidad estimada
+     */
+    public synchronized long estimar() {
+        int m = 1 << precision;
+        double suma = 0;
+        int registrosVacios = 0;
+        if (registros == null) {
+            // Los registros que no están valen 0 y suman 1 cada uno
+            registrosVacios = m - cantidadDispersos;
+            suma = registrosVacios;
+            for (int i = 0; i < cantidadDispersos; i++) {
+                suma += 1.0 / (1L << (dispersos[i] & MASCARA_RANGO));
+            }
+        } else {
+            for (byte registro : registros) {
+                suma += 1.0 / (1L << registro);
+                if (registro == 0) {
+                    registrosVacios++;
+                }
+            }
+        }
+
+        double estimacion = alfa(m) * m * m / suma;
+
+        // Corrección para cardinalidades chicas: conteo lineal
+        if (estimacion <= 2.5 * m && registrosVacios > 0) {
+            estimacion = m * Math.log((double) m / registrosVacios);
+        }
+        return Math.round(estimacion);
+    }
+
+    /**
+     * Combina otro estimador en este, que pasa a representar la unión de ambos.
+     *
+     * @param otro Estimador de la misma precisión
+     */
+    public void combinar(HyperLogLog otro) {
+        if (otro.precision != precision) {
+            throw new IllegalArgumentException("Solo se pueden combinar estimadores de la misma precisión");
+        }
+        HyperLogLog copia = otro.copiar();
+        synchronized (this) {
+            if (copia.registros == null) {
+                for (int i = 0; i < copia.cantidadDispersos; i++) {
+                    actualizar(copia.dispersos[i] >>> BITS_RANGO, copia.dispersos[i] & MASCARA_RANGO);
+                }
+                return;
+            }
+            if (registros == null) {
+                densificar();
+            }
+            for (int i = 0; i < registros.length; i++) {
+                if (copia.registros[i] > registros[i]) {
+                    registros[i] = copia.registros[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Serializa el estimador: un byte de precisión seguido de los registros.
+     *
+     * @return Representación binaria del estimador
+     */
+    public synchronized byte[] aBytes() {
+        byte[] datos = new byte[(1 << precision) + 1];
+        datos[0] = (byte) precision;
+        if (registros == null) {
+            for (int i = 0; i < cantidadDispersos; i++) {
+                datos[1 + (dispersos[i] >>> BITS_RANGO)] = (byte) (dispersos[i] & MASCARA_RANGO);
+            }
+        } else {
+            System.arraycopy(registros, 0, datos, 1, registros.length);
+        }
+        return datos;
+    }
+
+    /**
+     * Reconstruye un estimador serializado con {@link #aBytes()}.
+     *
+     * @param datos Representación binaria del estimador
+     * @return Estimador reconstruido
+     */
+    public static HyperLogLog desdeBytes(byte[] datos) {
+        int precision = datos[0];
+        if (precision < PRECISION_MINIMA || precision > PRECISION_MAXIMA
+                || datos.length != (1 << precision) + 1) {
+            throw new IllegalArgumentException("Datos de HyperLogLog inválidos");
+        }
+        return new HyperLogLog(precision, Arrays.copyOfRange(datos, 1, datos.length));
+    }
+
+    /**
+     * @return Copia independiente de este estimador
+     */
+    public synchronized HyperLogLog copiar() {
+        if (registros == null) {
+            return new HyperLogLog(precision, dispersos.clone(), cantidadDispersos);
+        }
+        return new HyperLogLog(precision, registros.clone());
+    }
+
+    public int getPrecision() {
+        return precision;
+    }
+
+    /**
+     * @return true si todavía guarda solo los registros distintos de cero
+     */
+    synchronized boolean esDisperso() {
+        return registros == null;
+    }
+
+    private static double alfa(int m) {
+        switch (m) {
+            case 16:
+                return 0.673;
+            case 32:
+                return 0.697;
+            case 64:
+                return 0.709;
+            default:
+                return 0.7213 / (1 + 1.079 / m);
+        }
+    }
+
+    // Función de mezcla de 64 bits (finalizador de MurmurHash3)
+    private static long mezclar(long valor) {
+        long h = valor;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
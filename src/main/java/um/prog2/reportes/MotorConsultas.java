@@ -0,0 +1,393 @@
+package um.prog2.reportes;
+
+import um.prog2.Enums.CategoriaRecurso;
+import um.prog2.interfaces.RecursoDigital;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+/**
+ * Ejecuta consultas ad-hoc de agrupación sobre el historial columnar.
+ * Los filtros por recurso y usuario se precalculan una vez por índice de
+ * diccionario, de modo que el recorrido de cada fila solo hace accesos a
+ * arreglos. El historial se divide en bloques que se procesan en paralelo
+ * y cuyos resultados parciales se combinan al final.
+ * <p>
+ * La clave de cada grupo se empaqueta en un long combinando los componentes
+ * según la cardinalidad de cada agrupación. Si el producto de las cardinalidades
+ * no entra en un long, las claves se guardan como arreglos de componentes.
+ */
+class MotorConsultas {
+    static final int FILAS_POR_BLOQUE = 1 << 16;
+
+    private final Function<RecursoDigital, CategoriaRecurso> categoriaDe;
+
+    /**
+     * Constructor del motor de consultas.
+     *
+     * @param categoriaDe Función para obtener la categoría de un recurso
+     */
+    MotorConsultas(Function<RecursoDigital, CategoriaRecurso> categoriaDe) {
+        this.categoriaDe = categoriaDe;
+    }
+
+    /**
+     * Ejecuta una consulta sobre una vista del historial.
+     *
+     * @param consulta Consulta a ejecutar
+     * @param vista Vista del historial columnar
+     * @param progreso Progreso a actualizar (puede ser null)
+     * @return Mapa de clave de grupo -> valor agregado, ordenado de mayor a menor valor.
+     *         Cada clave es una lista con un valor por agrupación, en el orden pedido.
+     */
+    Map<List<Object>, Long> ejecutar(ConsultaPrestamos consulta, HistorialColumnar.Vista vista, AtomicInteger progreso) {
+        Plan plan = new Plan(consulta, vista);
+        Thread solicitante = Thread.currentThread();
+
+        int bloques = (vista.tamanio() + FILAS_POR_BLOQUE - 1) / FILAS_POR_BLOQUE;
+        AtomicInteger bloquesProcesados = new AtomicInteger();
+
+        Map<Object, Acumulador> parcial = IntStream.range(0, bloques)
+                .parallel()
+                .mapToObj(bloque -> {
+                    // Los hilos del pool no heredan la interrupción de quien generó el reporte
+                    if (solicitante.isInterrupted()) {
+                        throw new CancellationException("Generación de reporte cancelada");
+                    }
+                    Map<Object, Acumulador> resultado = plan.recorrer(bloque * FILAS_POR_BLOQUE,
+                            Math.min(vista.tamanio(), (bloque + 1) * FILAS_POR_BLOQUE));
+                    int hechos = bloquesProcesados.incrementAndGet();
+                    if (progreso != null) {
+                        progreso.set((hechos * 90) / bloques);
+                    }
+                    return resultado;
+                })
+                .reduce(MotorConsultas::combinar)
+                .orElseGet(HashMap::new);
+
+        Map<List<Object>, Long> resultado = new HashMap<>();
+        for (Map.Entry<Object, Acumulador> entrada : parcial.entrySet()) {
+            resultado.put(plan.decodificar(entrada.getKey()), entrada.getValue().valor(consulta.getAgregacion()));
+        }
+
+        if (progreso != null) {
+            progreso.set(100);
+        }
+        return TopK.seleccionar(resultado, resultado.size());
+    }
+
+    private static Map<Object, Acumulador> combinar(Map<Object, Acumulador> a, Map<Object, Acumulador> b) {
+        Map<Object, Acumulador> mayor = a.size() >= b.size() ? a : b;
+        Map<Object, Acumulador> menor = mayor == a ? b : a;
+        for (Map.Entry<Object, Acumulador> entrada : menor.entrySet()) {
+            mayor.merge(entrada.getKey(), entrada.getValue(), Acumulador::combinar);
+        }
+        return mayor;
+    }
+
+    /**
+     * Consulta ya resuelta contra los diccionarios de una vista concreta.
+     */
+    private class Plan {
+        private final HistorialColumnar.Vista vista;
+        private final ConsultaPrestamos.Agregacion agregacion;
+        private final ConsultaPrestamos.Agrupacion[] agrupaciones;
+        private final long[] cardinalidades;
+        private final boolean claveEmpaquetada;
+        private final boolean necesitaFecha;
+        private final ZoneRules reglasZona;
+
+        // Datos precalculados por índice de recurso y de usuario
+        private final boolean[] recursoIncluido;
+        private final boolean[] usuarioIncluido;
+        private final int[] categoriaPorRecurso;
+        private final int[] tipoPorRecurso;
+        private final List<String> tipos;
+
+        private final long desde;
+        private final long hasta;
+
+        Plan(ConsultaPrestamos consulta, HistorialColumnar.Vista vista) {
+            this.vista = vista;
+            this.agregacion = consulta.getAgregacion();
+            this.agrupaciones = consulta.getAgrupaciones().toArray(new ConsultaPrestamos.Agrupacion[0]);
+            ZoneId zona = vista.getZona();
+            this.reglasZona = zona.getRules();
+
+            int cantidadRecursos = vista.cantidadRecursos();
+            this.recursoIncluido = new boolean[cantidadRecursos];
+            this.categoriaPorRecurso = new int[cantidadRecursos];
+            this.tipoPorRecurso = new int[cantidadRecursos];
+            this.tipos = new ArrayList<>();
+            Map<String, Integer> indiceTipos = new HashMap<>();
+            for (int i = 0; i < cantidadRecursos; i++) {
+                RecursoDigital recurso = vista.resolverRecurso(i);
+                CategoriaRecurso categoria = categoriaDe.apply(recurso);
+                String tipo = recurso.getClass().getSimpleName();
+                categoriaPorRecurso[i] = categoria.ordinal();
+                tipoPorRecurso[i] = indiceTipos.computeIfAbsent(tipo, t -> {
+                    tipos.add(t);
+                    return tipos.size() - 1;
+                });
+                recursoIncluido[i] = (consulta.getCategorias().isEmpty() || consulta.getCategorias().contains(categoria))
+                        && (consulta.getTiposRecurso().isEmpty() || consulta.getTiposRecurso().contains(tipo));
+            }
+
+            int cantidadUsuarios = vista.cantidadUsuarios();
+            this.usuarioIncluido = new boolean[cantidadUsuarios];
+            for (int i = 0; i < cantidadUsuarios; i++) {
+                usuarioIncluido[i] = consulta.getIdsUsuario().isEmpty()
+                        || consulta.getIdsUsuario().contains(vista.resolverUsuario(i).getID());
+            }
+
+            this.desde = consulta.getDesde() != null ? consulta.getDesde().atZone(zona).toEpochSecond() : Long.MIN_VALUE;
+            this.hasta = consulta.getHasta() != null ? consulta.getHasta().atZone(zona).toEpochSecond() : Long.MAX_VALUE;
+
+            this.cardinalidades = new long[agrupaciones.length];
+            boolean fecha = false;
+            for (int i = 0; i < agrupaciones.length; i++) {
+                switch (agrupaciones[i]) {
+                    case CATEGORIA:
+                        cardinalidades[i] = CategoriaRecurso.values().length;
+                        break;
+                    case TIPO_RECURSO:
+                        cardinalidades[i] = Math.max(1, tipos.size());
+                        break;
+                    case RECURSO:
+                        cardinalidades[i] = Math.max(1, cantidadRecursos);
+                        break;
+                    case USUARIO:
+                        cardinalidades[i] = Math.max(1, cantidadUsuarios);
+                        break;
+                    case DIA_SEMANA:
+                        cardinalidades[i] = 7;
+                        fecha = true;
+                        break;
+                    case MES:
+                        cardinalidades[i] = 12;
+                        fecha = true;
+                        break;
+                    case ANIO:
+                        cardinalidades[i] = 10000;
+                        fecha = true;
+                        break;
+                }
+            }
+            this.necesitaFecha = fecha;
+            this.claveEmpaquetada = cabeEnLong(cardinalidades);
+        }
+
+        private boolean cabeEnLong(long[] cardinalidades) {
+            long producto = 1;
+            try {
+                for (long cardinalidad : cardinalidades) {
+                    producto = Math.multiplyExact(producto, cardinalidad);
+                }
+                return true;
+            } catch (ArithmeticException e) {
+                return false;
+            }
+        }
+
+        /**
+         * Recorre las filas [inicio, fin) y acumula por clave de grupo.
+         */
+        Map<Object, Acumulador> recorrer(int inicio, int fin) {
+            Map<Object, Acumulador> grupos = new HashMap<>();
+            for (int fila = inicio; fila < fin; fila++) {
+                int recurso = vista.recurso(fila);
+                int usuario = vista.usuario(fila);
+                long fechaPrestamo = vista.inicio(fila);
+                if (!recursoIncluido[recurso] || !usuarioIncluido[usuario]
+                        || fechaPrestamo < desde || fechaPrestamo >= hasta) {
+                    continue;
+                }
+
+                LocalDate fecha = necesitaFecha ? aFecha(fechaPrestamo) : null;
+                Object clave;
+                if (claveEmpaquetada) {
+                    long empaquetada = 0;
+                    for (int i = 0; i < agrupaciones.length; i++) {
+                        empaquetada = empaquetada * cardinalidades[i] + componente(agrupaciones[i], recurso, usuario, fecha);
+                    }
+                    clave = empaquetada;
+                } else {
+                    long[] componentes = new long[agrupaciones.length];
+                    for (int i = 0; i < agrupaciones.length; i++) {
+                        componentes[i] = componente(agrupaciones[i], recurso, usuario, fecha);
+                    }
+                    clave = new ClaveCompuesta(componentes);
+                }
+
+                Acumulador acumulador = grupos.get(clave);
+                if (acumulador == null) {
+                    acumulador = new Acumulador();
+                    grupos.put(clave, acumulador);
+                }
+                acumular(acumulador, fila, recurso, usuario);
+            }
+            return grupos;
+        }
+
+        private long componente(ConsultaPrestamos.Agrupacion agrupacion, int recurso, int usuario, LocalDate fecha) {
+            switch (agrupacion) {
+                case CATEGORIA:
+                    return categoriaPorRecurso[recurso];
+                case TIPO_RECURSO:
+                    return tipoPorRecurso[recurso];
+                case RECURSO:
+                    return recurso;
+                case USUARIO:
+                    return usuario;
+                case DIA_SEMANA:
+                    return fecha.getDayOfWeek().ordinal();
+                case MES:
+                    return fecha.getMonthValue() - 1;
+                case ANIO:
+                    return Math.floorMod(fecha.getYear(), 10000);
+                default:
+                    throw new IllegalStateException("Agrupación desconocida: " + agrupacion);
+            }
+        }
+
+        private void acumular(Acumulador acumulador, int fila, int recurso, int usuario) {
+            long devolucion = vista.devolucion(fila);
+            switch (agregacion) {
+                case CANTIDAD:
+                    acumulador.suma++;
+                    break;
+                case SUMA_DURACION_SEGUNDOS:
+                    if (devolucion != HistorialColumnar.SIN_DEVOLUCION) {
+                        acumulador.suma += devolucion - vista.inicio(fila);
+                    }
+                    break;
+                case SUMA_ATRASO_SEGUNDOS:
+                    if (devolucion != HistorialColumnar.SIN_DEVOLUCION) {
+                        acumulador.suma += Math.max(0, devolucion - vista.vencimiento(fila));
+                    }
+                    break;
+                case USUARIOS_DISTINTOS:
+                    acumulador.distintos().set(usuario);
+                    break;
+                case RECURSOS_DISTINTOS:
+                    acumulador.distintos().set(recurso);
+                    break;
+            }
+        }
+
+        private LocalDate aFecha(long segundoEpoch) {
+            int desplazamiento = reglasZona.getOffset(Instant.ofEpochSecond(segundoEpoch)).getTotalSeconds();
+            return LocalDate.ofEpochDay(Math.floorDiv(segundoEpoch + desplazamiento, 86400));
+        }
+
+        /**
+         * Convierte una clave de grupo en la lista de valores de agrupación.
+         */
+        List<Object> decodificar(Object clave) {
+            Object[] valores = new Object[agrupaciones.length];
+            if (clave instanceof ClaveCompuesta) {
+                long[] componentes = ((ClaveCompuesta) clave).componentes;
+                for (int i = 0; i < agrupaciones.length; i++) {
+                    valores[i] = valorDe(agrupaciones[i], (int) componentes[i]);
+                }
+                return List.of(valores);
+            }
+            long empaquetada = (Long) clave;
+            for (int i = agrupaciones.length - 1; i >= 0; i--) {
+                int componente = (int) (empaquetada % cardinalidades[i]);
+                empaquetada /= cardinalidades[i];
+                valores[i] = valorDe(agrupaciones[i], componente);
+            }
+            return List.of(valores);
+        }
+
+        private Object valorDe(ConsultaPrestamos.Agrupacion agrupacion, int componente) {
+            switch (agrupacion) {
+                case CATEGORIA:
+                    return CategoriaRecurso.values()[componente];
+                case TIPO_RECURSO:
+                    return tipos.get(componente);
+                case RECURSO:
+                    return vista.resolverRecurso(componente);
+                case USUARIO:
+                    return vista.resolverUsuario(componente);
+                case DIA_SEMANA:
+                    return DayOfWeek.values()[componente];
+                case MES:
+                    return Month.values()[componente];
+                case ANIO:
+                    return componente;
+                default:
+                    throw new IllegalStateException("Agrupación desconocida: " + agrupacion);
+            }
+        }
+    }
+
+    /**
+     * Clave de grupo sin empaquetar, para cuando las cardinalidades no entran en un long.
+     */
+    private static final class ClaveCompuesta {
+        private final long[] componentes;
+        private final int hash;
+
+        ClaveCompuesta(long[] componentes) {
+            this.componentes = componentes;
+            this.hash = Arrays.hashCode(componentes);
+        }
+
+        @Override
+        public boolean equals(Object otro) {
+            return otro instanceof ClaveCompuesta && Arrays.equals(componentes, ((ClaveCompuesta) otro).componentes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Acumulador parcial de un grupo.
+     */
+    private static class Acumulador {
+        private long suma;
+        private BitSet distintos;
+
+        BitSet distintos() {
+            if (distintos == null) {
+                distintos = new BitSet();
+            }
+            return distintos;
+        }
+
+        long valor(ConsultaPrestamos.Agregacion agregacion) {
+            if (agregacion == ConsultaPrestamos.Agregacion.USUARIOS_DISTINTOS
+                    || agregacion == ConsultaPrestamos.Agregacion.RECURSOS_DISTINTOS) {
+                return distintos != null ? distintos.cardinality() : 0;
+            }
+            return suma;
+        }
+
+        static Acumulador combinar(Acumulador a, Acumulador b) {
+            a.suma += b.suma;
+            if (b.distintos != null) {
+                a.distintos().or(b.distintos);
+            }
+            return a;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package um.prog2.reportes;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Planificador que recalcula reportes pesados en segundo plano según un intervalo.
+ * Todas las actualizaciones corren en un único hilo de baja prioridad y respetan
+ * un presupuesto de CPU: después de cada cálculo el hilo descansa lo necesario
+ * para que la fracción de tiempo ocupado no supere el presupuesto. Además, si la
+ * carga del sistema supera el umbral configurado, las actualizaciones de reportes
+ * que ya tienen un resultado se postergan.
+ * Así los recálculos nunca compiten por CPU con el procesamiento de préstamos.
+ */
+public class PlanificadorReportes {
+    // Espera antes de reintentar una actualización postergada por carga alta
+    private static final long ESPERA_POR_CARGA_MS = 30_000;
+
+    private final ScheduledExecutorService planificador;
+    private final double presupuestoCpu;
+    private final double cargaMaxima;
+    private final Map<String, ResultadoPrecalculado<?>> resultados;
+    private final ThreadMXBean threadMXBean;
+    private final OperatingSystemMXBean osMXBean;
+
+    // Instante (System.nanoTime) a partir del cual el hilo puede volver a calcular
+    private long libreDesde;
+
+    /**
+     * Constructor del planificador.
+     *
+     * @param presupuestoCpu Fracción máxima de un núcleo que pueden usar las actualizaciones (0 a 1]
+     * @param cargaMaxima Carga promedio por núcleo por encima de la cual se posterga una actualización
+     */
+    public PlanificadorReportes(double presupuestoCpu, double cargaMaxima) {
+        if (presupuestoCpu <= 0 || presupuestoCpu > 1) {
+            throw new IllegalArgumentException("El presupuesto de CPU debe estar entre 0 y 1");
+        }
+        this.presupuestoCpu = presupuestoCpu;
+        this.cargaMaxima = cargaMaxima;
+        this.resultados = new ConcurrentHashMap<>();
+        this.threadMXBean = ManagementFactory.getThreadMXBean();
+        this.osMXBean = ManagementFactory.getOperatingSystemMXBean();
+        this.planificador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "planificador-reportes");
+            hilo.setDaemon(true);
+            hilo.setPriority(Thread.MIN_PRIORITY);
+            return hilo;
+        });
+    }
+
+    /**
+     * Registra un reporte para recalcularlo periódicamente.
+     *
+     * @param nombre Nombre con el que se consulta el resultado
+     * @param intervalo Tiempo entre el fin de un cálculo y el inicio del siguiente
+     * @param retrasoInicial Espera antes del primer cálculo
+     * @param generador Cálculo del reporte
+     * @param alCompletar Acción a ejecutar con cada resultado nuevo (puede ser null)
+     */
+    public <T> void registrar(String nombre, Duration intervalo, Duration retrasoInicial,
+                              Callable<T> generador, Consumer<ResultadoPrecalculado<T>> alCompletar) {
+        Runnable[] ejecucion = new Runnable[1];
+        ejecucion[0] = () -> {
+            long ahora = System.nanoTime();
+            if (ahora < libreDesde) {
+                // Todavía se está pagando el presupuesto de CPU de un cálculo anterior
+                planificador.schedule(ejecucion[0], libreDesde - ahora, TimeUnit.NANOSECONDS);
+                return;
+            }
+            // El primer cálculo no se posterga: sin él no hay resultado que servir
+            if (resultados.containsKey(nombre) && cargaAlta()) {
+                planificador.schedule(ejecucion[0], Math.min(intervalo.toMillis(), ESPERA_POR_CARGA_MS),
+                        TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            long cpuInicial = tiempoCpuActual();
+            long inicio = System.nanoTime();
+            try {
+                T valor = generador.call();
+                ResultadoPrecalculado<T> resultado = new ResultadoPrecalculado<>(valor, Instant.now(),
+                        Duration.ofNanos(System.nanoTime() - inicio));
+                resultados.put(nombre, resultado);
+                if (alCompletar != null) {
+                    alCompletar.accept(resultado);
+                }
+            } catch (Exception e) {
+                System.out.println("[REPORTES] Error al actualizar el reporte " + nombre + ": " + e.getMessage());
+            } finally {
+                long cpuUsada = cpuInicial >= 0 ? tiempoCpuActual() - cpuInicial : System.nanoTime() - inicio;
+                long descanso = (long) (cpuUsada * (1 - presupuestoCpu) / presupuestoCpu);
+                libreDesde = System.nanoTime() + descanso;
+                if (!planificador.isShutdown()) {
+                    planificador.schedule(ejecucion[0], Math.max(intervalo.toNanos(), descanso), TimeUnit.NANOSECONDS);
+                }
+            }
+        };
+        planificador.schedule(ejecucion[0], retrasoInicial.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Obtiene el último resultado calculado de un reporte.
+     *
+     * @param nombre Nombre del reporte
+     * @return Último resultado o null si todavía no se calculó
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ResultadoPrecalculado<T> obtenerResultado(String nombre) {
+        return (ResultadoPrecalculado<T>) resultados.get(nombre);
+    }
+
+    /**
+     * Detiene todas las actualizaciones programadas.
+     */
+    public void cerrar() {
+        planificador.shutdownNow();
+    }
+
+    /**
+     * Calcula el retraso hasta la próxima ocurrencia de una hora del día,
+     * útil para programar actualizaciones nocturnas.
+     *
+     * @param hora Hora del día
+     * @return Tiempo hasta la próxima vez que el reloj marque esa hora
+     */
+    public static Duration retrasoHasta(LocalTime hora) {
+        LocalDateTime ahora = LocalDateTime.now();
+        LocalDateTime proxima = ahora.toLocalDate().atTime(hora);
+        if (!proxima.isAfter(ahora)) {
+            proxima = proxima.plusDays(1);
+        }
+        return Duration.between(ahora, proxima);
+    }
+
+    private boolean cargaAlta() {
+        double carga = osMXBean.getSystemLoadAverage();
+        return carga >= 0 && carga / osMXBean.getAvailableProcessors() > cargaMaxima;
+    }
+
+    private long tiempoCpuActual() {
+        return threadMXBean.isCurrentThreadCpuTimeSupported() ? threadMXBean.getCurrentThreadCpuTime() : -1;
+    }
+}
@@ -0,0 +1,35 @@
+package um.prog2.reportes;
+
+import um.prog2.Enums.CategoriaRecurso;
+import um.prog2.interfaces.RecursoDigital;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Resultado del reporte de lectores únicos.
+ * Las cantidades son estimaciones obtenidas con {@link HyperLogLog}.
+ */
+public class ReporteLectoresUnicos {
+    private final Map<RecursoDigital, Long> porRecurso;
+    private final Map<CategoriaRecurso, Long> porCategoria;
+
+    /**
+     * Constructor del resultado.
+     *
+     * @param porRecurso Lectores únicos estimados por recurso, ordenados de mayor a menor
+     * @param porCategoria Lectores únicos estimados por categoría, ordenados de mayor a menor
+     */
+    public ReporteLectoresUnicos(Map<RecursoDigital, Long> porRecurso, Map<CategoriaRecurso, Long> porCategoria) {
+        this.porRecurso = Collections.unmodifiableMap(porRecurso);
+        this.porCategoria = Collections.unmodifiableMap(porCategoria);
+    }
+
+    public Map<RecursoDigital, Long> getPorRecurso() {
+        return porRecurso;
+    }
+
+    public Map<CategoriaRecurso, Long> getPorCategoria() {
+        return porCategoria;
+    }
+}
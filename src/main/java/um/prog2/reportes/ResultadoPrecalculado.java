@@ -0,0 +1,41 @@
+package um.prog2.reportes;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Resultado de un reporte calculado en segundo plano, junto con el momento
+ * en que se generó.
+ *
+ * @param <T> Tipo del resultado del reporte
+ */
+public class ResultadoPrecalculado<T> {
+    private final T valor;
+    private final Instant generadoEn;
+    private final Duration duracionCalculo;
+
+    public ResultadoPrecalculado(T valor, Instant generadoEn, Duration duracionCalculo) {
+        this.valor = valor;
+        this.generadoEn = generadoEn;
+        this.duracionCalculo = duracionCalculo;
+    }
+
+    public T getValor() {
+        return valor;
+    }
+
+    public Instant getGeneradoEn() {
+        return generadoEn;
+    }
+
+    public Duration getDuracionCalculo() {
+        return duracionCalculo;
+    }
+
+    /**
+     * @return Tiempo transcurrido desde que se generó el resultado
+     */
+    public Duration getEdad() {
+        return Duration.between(generadoEn, Instant.now());
+    }
+}
@@ -0,0 +1,51 @@
+package um.prog2.reportes;
+
+import java.time.Duration;
+
+/**
+ * Resumen de una distribución de duraciones: cantidad de muestras y percentiles 50, 90 y 99.
+ */
+public class ResumenPercentiles {
+    private final long cantidad;
+    private final Duration p50;
+    private final Duration p90;
+    private final Duration p99;
+
+    /**
+     * Construye el resumen a partir de un histograma de segundos.
+     *
+     * @param histograma Histograma con valores en segundos
+     */
+    public ResumenPercentiles(HistogramaLogaritmico histograma) {
+        this.cantidad = histograma.getCantidad();
+        this.p50 = Duration.ofSeconds(histograma.percentil(50));
+        this.p90 = Duration.ofSeconds(histograma.percentil(90));
+        this.p99 = Duration.ofSeconds(histograma.percentil(99));
+    }
+
+    public long getCantidad() {
+        return cantidad;
+    }
+
+    public Duration getP50() {
+        return p50;
+    }
+
+    public Duration getP90() {
+        return p90;
+    }
+
+    public Duration getP99() {
+        return p99;
+    }
+
+    @Override
+    public String toString() {
+        return "ResumenPercentiles{" +
+                "cantidad=" + cantidad +
+                ", p50=" + p50 +
+                ", p90=" + p90 +
+                ", p99=" + p99 +
+                '}';
+    }
+}
@@ -1,25 +1,36 @@
 package um.prog2.reportes;
 
 import um.prog2.Enums.CategoriaRecurso;
+import um.prog2.interfaces.ObservadorPrestamos;
 import um.prog2.interfaces.RecursoDigital;
 import um.prog2.prestamos.Prestamo;
 import um.prog2.prestamos.SistemaPrestamos;
 import um.prog2.recursoDigital.Libro;
 import um.prog2.recursoDigital.AudioLibro;
 import um.prog2.recursoDigital.Revista;
+import um.prog2.reservas.Reserva;
+import um.prog2.reservas.SistemaReservas;
 import um.prog2.usuario.Usuario;
 
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * Sistema de generación de reportes para la biblioteca digital.
  * Permite generar reportes sobre recursos, usuarios y categorías.
+ * Además se registra como observador de préstamos para mantener
+ * rankings aproximados actualizados en tiempo real.
  */
-public class SistemaReportes {
+public class SistemaReportes implements ObservadorPrestamos {
     private final SistemaPrestamos sistemaPrestamos;
     private final List<RecursoDigital> recursos;
     private final Map<String, Usuario> usuarios;
@@ -27,19 +38,72 @@ public class SistemaReportes {
     // ExecutorService para manejar tareas asíncronas
     private final ExecutorService executorService;
 
-    // Mapa para almacenar el progreso de generación de reportes
-    private final Map<String, AtomicInteger> progresoReportes;
+    // Cache de generaciones por tipo de reporte y parámetros, válida para una versión de datos.
+    // Cada generación lleva su propio progreso y resultado.
+    private final Map<String, EntradaCache> cacheReportes;
 
-    // Mapa para almacenar los resultados de los reportes
-    private final Map<String, Object> resultadosReportes;
+    // Última generación pedida de cada tipo, la que informan los métodos que reciben solo el tipo
+    private final Map<String, EntradaCache> ultimaGeneracion;
 
-    // Lock para acceso concurrente a los datos
-    private final ReadWriteLock rwLock;
+    // Versión de los datos: se incrementa con cada préstamo o devolución
+    private final AtomicLong versionDatos;
+
+    // Versión de los datos con la que se descartaron por última vez las entradas viejas de la cache
+    private final AtomicLong versionLimpieza;
+
+    // Resúmenes de memoria fija actualizados con cada préstamo
+    private final ContadorSpaceSaving<RecursoDigital> frecuentesRecursos;
+    private final ContadorSpaceSaving<Usuario> frecuentesUsuarios;
+
+    // Préstamos por recurso agrupados en cubetas por minuto, hora y día
+    private final ContadorVentanaTiempo<RecursoDigital> prestamosPorVentana;
+
+    // Préstamos devueltos almacenados por columnas, recorridos por los reportes
+    private final HistorialColumnar historialColumnar;
+
+    // Motor para consultas ad-hoc de agrupación sobre el historial columnar
+    private final MotorConsultas motorConsultas;
+
+    // Planificador de recálculos periódicos de reportes pesados
+    private final PlanificadorReportes planificadorReportes;
+
+    // Fracción de un núcleo que pueden usar los recálculos programados
+    public static final double PRESUPUESTO_CPU_ACTUALIZACIONES = 0.25;
+
+    // Carga por núcleo a partir de la cual se postergan los recálculos programados
+    public static final double CARGA_MAXIMA_ACTUALIZACIONES = 0.75;
+
+    // Estimadores de lectores distintos por recurso, actualizados con cada préstamo
+    private final Map<RecursoDigital, HyperLogLog> lectoresPorRecurso;
+
+    // Histogramas (en segundos) de duración real y de atraso, actualizados con cada devolución
+    private final Map<CategoriaRecurso, HistogramaLogaritmico> duracionPorCategoria;
+    private final Map<CategoriaRecurso, HistogramaLogaritmico> atrasoPorCategoria;
+    private final Map<String, HistogramaLogaritmico> duracionPorTipo;
+    private final Map<String, HistogramaLogaritmico> atrasoPorTipo;
+
+    // Cantidad de contadores que mantiene cada resumen aproximado
+    public static final int CAPACIDAD_RESUMEN_FRECUENTES = 1024;
+
+    // Precisión de los estimadores de lectores únicos (hasta 1 KB por recurso, ~3% de error)
+    public static final int PRECISION_LECTORES_UNICOS = 10;
+
+    // Ventanas de tiempo habituales para los reportes en tiempo real
+    public static final Duration VENTANA_ULTIMA_HORA = Duration.ofHours(1);
+    public static final Duration VENTANA_ULTIMO_DIA = Duration.ofDays(1);
+    public static final Duration VENTANA_ULTIMA_SEMANA = Duration.ofDays(7);
+    public static final Duration VENTANA_ULTIMOS_30_DIAS = Duration.ofDays(30);
 
     // Constantes para identificar los tipos de reportes
     public static final String REPORTE_RECURSOS_MAS_PRESTADOS = "recursos_mas_prestados";
     public static final String REPORTE_USUARIOS_MAS_ACTIVOS = "usuarios_mas_activos";
     public static final String REPORTE_ESTADISTICAS_CATEGORIA = "estadisticas_categoria";
+    public static final String REPORTE_LECTORES_UNICOS = "lectores_unicos";
+    public static final String REPORTE_CONSULTA = "consulta";
+    public static final String REPORTE_EXPORTACION = "exportacion";
+
+    // Filas del historial columnar que se recorren entre dos revisiones de progreso y cancelación
+    private static final int FILAS_POR_TRAMO = 1 << 16;
 
     /**
      * Constructor del sistema de reportes.
@@ -57,49 +121,246 @@ public class SistemaReportes {
         this.executorService = Executors.newFixedThreadPool(3);
 
         // Inicializar mapas para progreso y resultados
-        this.progresoReportes = new ConcurrentHashMap<>();
-        this.resultadosReportes = new ConcurrentHashMap<>();
+        this.cacheReportes = new ConcurrentHashMap<>();
+        this.ultimaGeneracion = new ConcurrentHashMap<>();
+        this.versionDatos = new AtomicLong();
+        this.versionLimpieza = new AtomicLong();
+
+        // Inicializar resúmenes aproximados y suscribirse a los eventos de préstamo
+        this.frecuentesRecursos = new ContadorSpaceSaving<>(CAPACIDAD_RESUMEN_FRECUENTES);
+        this.frecuentesUsuarios = new ContadorSpaceSaving<>(CAPACIDAD_RESUMEN_FRECUENTES);
+        this.prestamosPorVentana = new ContadorVentanaTiempo<>();
+        this.historialColumnar = new HistorialColumnar();
+        this.motorConsultas = new MotorConsultas(this::obtenerCategoriaRecurso);
+        this.planificadorReportes = new PlanificadorReportes(PRESUPUESTO_CPU_ACTUALIZACIONES,
+                CARGA_MAXIMA_ACTUALIZACIONES);
+        this.lectoresPorRecurso = new ConcurrentHashMap<>();
+        this.duracionPorCategoria = new EnumMap<>(CategoriaRecurso.class);
+        this.atrasoPorCategoria = new EnumMap<>(CategoriaRecurso.class);
+        for (CategoriaRecurso categoria : CategoriaRecurso.values()) {
+            duracionPorCategoria.put(categoria, new HistogramaLogaritmico());
+            atrasoPorCategoria.put(categoria, new HistogramaLogaritmico());
+        }
+        this.duracionPorTipo = new ConcurrentHashMap<>();
+        this.atrasoPorTipo = new ConcurrentHashMap<>();
+        if (sistemaPrestamos != null) {
+            // Se carga el historial previo; las devoluciones posteriores llegan por alDevolver
+            for (Prestamo prestamo : sistemaPrestamos.agregarObservadorConHistorial(this)) {
+                historialColumnar.agregar(prestamo);
+                registrarDistribuciones(prestamo);
+            }
+        }
+    }
+
+    /**
+     * Actualiza los rankings aproximados con un nuevo préstamo.
+     *
+     * @param prestamo Préstamo recién realizado
+     */
+    @Override
+    public void alPrestar(Prestamo prestamo) {
+        versionDatos.incrementAndGet();
+        frecuentesRecursos.registrar(prestamo.getRecurso());
+        frecuentesUsuarios.registrar(prestamo.getUsuario());
+        Instant instante = prestamo.getFechaPrestamo().atZone(ZoneId.systemDefault()).toInstant();
+        prestamosPorVentana.registrar(prestamo.getRecurso(), instante);
+        lectoresPorRecurso
+                .computeIfAbsent(prestamo.getRecurso(), r -> new HyperLogLog(PRECISION_LECTORES_UNICOS))
+                .agregar(prestamo.getUsuario().getID());
+    }
+
+    /**
+     * Agrega el préstamo devuelto al historial columnar.
+     *
+     * @param prestamo Préstamo devuelto
+     */
+    @Override
+    public void alDevolver(Prestamo prestamo) {
+        versionDatos.incrementAndGet();
+        historialColumnar.agregar(prestamo);
+        registrarDistribuciones(prestamo);
+    }
+
+    /**
+     * Registra la duración real y el atraso de un préstamo devuelto en los histogramas
+     * de su categoría y de su tipo de recurso. Solo los préstamos devueltos después
+     * del vencimiento se registran en los histogramas de atraso.
+     *
+     * @param prestamo Préstamo devuelto
+     */
+    private void registrarDistribuciones(Prestamo prestamo) {
+        LocalDateTime devolucion = prestamo.getFechaDevolucionReal();
+        if (devolucion == null) {
+            return;
+        }
+
+        RecursoDigital recurso = prestamo.getRecurso();
+        CategoriaRecurso categoria = obtenerCategoriaRecurso(recurso);
+        String tipo = recurso.getClass().getSimpleName();
+
+        long duracion = Duration.between(prestamo.getFechaPrestamo(), devolucion).getSeconds();
+        duracionPorCategoria.get(categoria).registrar(duracion);
+        duracionPorTipo.computeIfAbsent(tipo, t -> new HistogramaLogaritmico()).registrar(duracion);
+
+        long atraso = Duration.between(prestamo.getFechaDevolucion(), devolucion).getSeconds();
+        if (atraso > 0) {
+            atrasoPorCategoria.get(categoria).registrar(atraso);
+            atrasoPorTipo.computeIfAbsent(tipo, t -> new HistogramaLogaritmico()).registrar(atraso);
+        }
+    }
+
+    /**
+     * Obtiene los percentiles de duración real de los préstamos por categoría.
+     * Se calculan a partir de histogramas, en tiempo constante respecto del historial.
+     *
+     * @return Percentiles por categoría, solo para categorías con devoluciones
+     */
+    public Map<CategoriaRecurso, ResumenPercentiles> obtenerPercentilesDuracionPorCategoria() {
+        return resumir(duracionPorCategoria, new EnumMap<>(CategoriaRecurso.class));
+    }
 
-        // Inicializar lock para acceso concurrente
-        this.rwLock = new ReentrantReadWriteLock();
+    /**
+     * Obtiene los percentiles de atraso de los préstamos devueltos tarde por categoría.
+     *
+     * @return Percentiles por categoría, solo para categorías con devoluciones tardías
+     */
+    public Map<CategoriaRecurso, ResumenPercentiles> obtenerPercentilesAtrasoPorCategoria() {
+        return resumir(atrasoPorCategoria, new EnumMap<>(CategoriaRecurso.class));
+    }
+
+    /**
+     * Obtiene los percentiles de duración real de los préstamos por tipo de recurso
+     * (Libro, AudioLibro, Revista).
+     *
+     * @return Percentiles por nombre de tipo de recurso
+     */
+    public Map<String, ResumenPercentiles> obtenerPercentilesDuracionPorTipo() {
+        return resumir(duracionPorTipo, new TreeMap<>());
+    }
+
+    /**
+     * Obtiene los percentiles de atraso de los préstamos devueltos tarde por tipo de recurso.
+     *
+     * @return Percentiles por nombre de tipo de recurso
+     */
+    public Map<String, ResumenPercentiles> obtenerPercentilesAtrasoPorTipo() {
+        return resumir(atrasoPorTipo, new TreeMap<>());
+    }
+
+    private <K> Map<K, ResumenPercentiles> resumir(Map<K, HistogramaLogaritmico> histogramas,
+                                                   Map<K, ResumenPercentiles> resultado) {
+        for (Map.Entry<K, HistogramaLogaritmico> entrada : histogramas.entrySet()) {
+            if (entrada.getValue().getCantidad() > 0) {
+                resultado.put(entrada.getKey(), new ResumenPercentiles(entrada.getValue()));
+            }
+        }
+        return resultado;
+    }
+
+    /**
+     * Obtiene el historial de préstamos devueltos almacenado por columnas.
+     * Permite recorrer el historial sin materializar objetos {@link Prestamo}.
+     *
+     * @return Historial columnar cargado con el historial previo y alimentado con cada devolución
+     */
+    public HistorialColumnar obtenerHistorialColumnar() {
+        return historialColumnar;
+    }
+
+    /**
+     * Obtiene los recursos más prestados a partir del resumen en memoria fija.
+     * No recorre el historial, por lo que responde de inmediato aunque haya
+     * millones de recursos distintos. Las cuentas son cotas superiores.
+     *
+     * @param limite Número máximo de recursos a incluir
+     * @return Mapa ordenado con los recursos y su cantidad estimada de préstamos
+     */
+    public Map<RecursoDigital, Long> obtenerRecursosMasPrestadosAproximado(int limite) {
+        return frecuentesRecursos.obtenerTop(limite);
+    }
+
+    /**
+     * Obtiene los usuarios más activos a partir del resumen en memoria fija.
+     *
+     * @param limite Número máximo de usuarios a incluir
+     * @return Mapa ordenado con los usuarios y su cantidad estimada de préstamos
+     */
+    public Map<Usuario, Long> obtenerUsuariosMasActivosAproximado(int limite) {
+        return frecuentesUsuarios.obtenerTop(limite);
+    }
+
+    /**
+     * Obtiene los recursos más prestados dentro de una ventana de tiempo reciente
+     * (por ejemplo, las últimas 24 horas).
+     *
+     * @param ventana Duración de la ventana, hasta 30 días
+     * @param limite Número máximo de recursos a incluir
+     * @return Mapa ordenado con los recursos y su cantidad de préstamos en la ventana
+     */
+    public Map<RecursoDigital, Integer> obtenerRecursosMasPrestadosEnVentana(Duration ventana, int limite) {
+        Map<RecursoDigital, Integer> contador = prestamosPorVentana.contar(ventana, Instant.now());
+        return TopK.seleccionar(contador, limite);
+    }
+
+    /**
+     * Obtiene el uso por categoría dentro de una ventana de tiempo reciente
+     * (por ejemplo, la última semana).
+     *
+     * @param ventana Duración de la ventana, hasta 30 días
+     * @return Mapa ordenado con las categorías y su cantidad de préstamos en la ventana
+     */
+    public Map<CategoriaRecurso, Integer> obtenerEstadisticasPorCategoriaEnVentana(Duration ventana) {
+        Map<CategoriaRecurso, Integer> contadorCategorias = new EnumMap<>(CategoriaRecurso.class);
+        for (Map.Entry<RecursoDigital, Integer> entrada : prestamosPorVentana.contar(ventana, Instant.now()).entrySet()) {
+            contadorCategorias.merge(obtenerCategoriaRecurso(entrada.getKey()), entrada.getValue(), Integer::sum);
+        }
+        return TopK.seleccionar(contadorCategorias, contadorCategorias.size());
     }
 
     /**
      * Obtiene el progreso actual de generación de un reporte.
+     * Si se pidieron varias generaciones del mismo tipo con distintos parámetros,
+     * se informa la última pedida.
      * 
      * @param tipoReporte Tipo de reporte
      * @return Porcentaje de progreso (0-100) o -1 si el reporte no está en progreso
      */
     public int obtenerProgresoReporte(String tipoReporte) {
-        AtomicInteger progreso = progresoReportes.get(tipoReporte);
-        return progreso != null ? progreso.get() : -1;
+        EntradaCache generacion = ultimaGeneracion.get(tipoReporte);
+        if (generacion == null || generacion.fallida || generacion.tarea.isCancelled()) {
+            return -1;
+        }
+        return generacion.progreso.get();
     }
 
     /**
      * Verifica si un reporte está completo.
      * 
      * @param tipoReporte Tipo de reporte
-     * @return true si el reporte está completo, false en caso contrario
+     * @return true si la última generación pedida del tipo terminó bien, false en caso contrario
      */
     public boolean esReporteCompleto(String tipoReporte) {
-        return resultadosReportes.containsKey(tipoReporte);
+        EntradaCache generacion = ultimaGeneracion.get(tipoReporte);
+        return generacion != null && generacion.completa();
     }
 
     /**
      * Obtiene el resultado de un reporte.
      * 
      * @param tipoReporte Tipo de reporte
-     * @return Resultado del reporte o null si no está disponible
+     * @return Resultado de la última generación pedida del tipo o null si no está disponible
      */
     @SuppressWarnings("unchecked")
     public <T> T obtenerResultadoReporte(String tipoReporte) {
-        return (T) resultadosReportes.get(tipoReporte);
+        EntradaCache generacion = ultimaGeneracion.get(tipoReporte);
+        return generacion != null && generacion.completa() ? (T) generacion.resultado : null;
     }
 
     /**
      * Cancela todos los reportes en progreso y cierra el ExecutorService.
      */
     public void cerrar() {
+        planificadorReportes.cerrar();
         executorService.shutdownNow();
     }
 
@@ -108,108 +369,203 @@ public class SistemaReportes {
      * Útil para liberar memoria cuando ya no se necesitan los reportes.
      */
     public void limpiarReportes() {
-        progresoReportes.clear();
-        resultadosReportes.clear();
+        cacheReportes.clear();
+        ultimaGeneracion.clear();
     }
 
     /**
-     * Inicia la generación de un reporte de los recursos más prestados en segundo plano.
-     * 
-     * @param limite Número máximo de recursos a incluir en el reporte
+     * Obtiene la versión actual de los datos de préstamos.
+     * Cambia con cada préstamo o devolución, invalidando los reportes cacheados.
+     *
+     * @return Versión de los datos
+     */
+    public long obtenerVersionDatos() {
+        return versionDatos.get();
+    }
+
+    /**
+     * Inicia (o reutiliza) la generación de un reporte en segundo plano.
+     * Si ya existe una generación para el mismo tipo y parámetros con la versión
+     * de datos actual, se devuelve esa misma tarea: en curso, las solicitudes
+     * concurrentes comparten un único cálculo; terminada, el resultado es inmediato.
+     * Cancelar el Future devuelto cancela la generación para todos los que la comparten.
+     * Generaciones con distintos parámetros llevan progresos separados.
+     *
+     * @param tipoReporte Tipo de reporte
+     * @param parametros Parámetros que distinguen el resultado (por ejemplo, el límite)
+     * @param generador Cálculo del reporte, que recibe el progreso a actualizar
      * @return Future que representa la tarea asíncrona
      */
-    public Future<Map<RecursoDigital, Integer>> iniciarReporteRecursosMasPrestados(int limite) {
-        // Limpiar resultados anteriores y reiniciar progreso
-        resultadosReportes.remove(REPORTE_RECURSOS_MAS_PRESTADOS);
-        progresoReportes.put(REPORTE_RECURSOS_MAS_PRESTADOS, new AtomicInteger(0));
+    @SuppressWarnings("unchecked")
+    private <T> Future<T> iniciarReporte(String tipoReporte, String parametros, Function<AtomicInteger, T> generador) {
+        String clave = tipoReporte + "|" + parametros;
+        long version = versionDatos.get();
+        descartarVersionesAnteriores(version);
 
-        // Crear y ejecutar tarea asíncrona
-        return executorService.submit(() -> {
+        EntradaCache nueva = new EntradaCache(version);
+        nueva.tarea = new FutureTask<>(() -> {
             try {
-                Map<RecursoDigital, Integer> resultado = generarReporteRecursosMasPrestados(limite);
-                // Almacenar resultado
-                resultadosReportes.put(REPORTE_RECURSOS_MAS_PRESTADOS, resultado);
-                // Marcar como completado
-                progresoReportes.get(REPORTE_RECURSOS_MAS_PRESTADOS).set(100);
+                T resultado = generador.apply(nueva.progreso);
+                // Almacenar resultado y marcar como completado
+                nueva.resultado = resultado;
+                nueva.progreso.set(100);
                 return resultado;
-            } catch (Exception e) {
-                // En caso de error, eliminar progreso
-                progresoReportes.remove(REPORTE_RECURSOS_MAS_PRESTADOS);
+            } catch (RuntimeException e) {
+                // En caso de error, no reutilizar la entrada
+                nueva.fallida = true;
                 throw e;
             }
         });
+
+        EntradaCache entrada = cacheReportes.compute(clave,
+                (k, actual) -> actual != null && actual.vigente(version) ? actual : nueva);
+        ultimaGeneracion.put(tipoReporte, entrada);
+
+        if (entrada == nueva) {
+            executorService.execute(nueva.tarea);
+        }
+        return (Future<T>) entrada.tarea;
     }
 
     /**
-     * Genera un reporte de los recursos más prestados.
-     * Este método es privado y se ejecuta en segundo plano.
-     * 
+     * Quita de la cache las entradas de versiones de datos anteriores, que ya no se
+     * reutilizan. La cache se recorre una sola vez por cada versión nueva, no en cada
+     * pedido, así que cada entrada se descarta una vez.
+     *
+     * @param version Versión de datos actual
+     */
+    private void descartarVersionesAnteriores(long version) {
+        long anterior = versionLimpieza.get();
+        if (version > anterior && versionLimpieza.compareAndSet(anterior, version)) {
+            cacheReportes.values().removeIf(entrada -> entrada.version < version);
+        }
+    }
+
+    /**
+     * Programa el recálculo periódico en segundo plano del reporte de recursos más prestados.
+     * Cada resultado nuevo queda en la cache, de modo que
+     * {@link #iniciarReporteRecursosMasPrestados(int)} con el mismo límite responde de inmediato
+     * mientras los datos no cambien.
+     *
      * @param limite Número máximo de recursos a incluir en el reporte
-     * @return Mapa ordenado con los recursos más prestados y la cantidad de préstamos
+     * @param intervalo Tiempo entre recálculos (por ejemplo, 10 minutos o 1 día)
+     * @param retrasoInicial Espera antes del primer cálculo (ver {@link PlanificadorReportes#retrasoHasta})
      */
-    private Map<RecursoDigital, Integer> generarReporteRecursosMasPrestados(int limite) {
-        Map<RecursoDigital, Integer> contadorPrestamos = new HashMap<>();
-        AtomicInteger progreso = progresoReportes.get(REPORTE_RECURSOS_MAS_PRESTADOS);
+    public void programarReporteRecursosMasPrestados(int limite, Duration intervalo, Duration retrasoInicial) {
+        programarReporte(REPORTE_RECURSOS_MAS_PRESTADOS, "limite=" + limite, intervalo, retrasoInicial,
+                () -> generarReporteRecursosMasPrestados(limite, null));
+    }
 
-        // Adquirir lock de lectura para acceder a los datos
-        Lock readLock = rwLock.readLock();
-        readLock.lock();
-        try {
-            // Obtener todos los préstamos históricos para todos los usuarios
-            List<Prestamo> todosLosPrestamos = new ArrayList<>();
-            int totalUsuarios = usuarios.size();
-            int usuariosProcesados = 0;
+    /**
+     * Programa el recálculo periódico en segundo plano del reporte de usuarios más activos.
+     *
+     * @param limite Número máximo de usuarios a incluir en el reporte
+     * @param intervalo Tiempo entre recálculos
+     * @param retrasoInicial Espera antes del primer cálculo
+     */
+    public void programarReporteUsuariosMasActivos(int limite, Duration intervalo, Duration retrasoInicial) {
+        programarReporte(REPORTE_USUARIOS_MAS_ACTIVOS, "limite=" + limite, intervalo, retrasoInicial,
+                () -> generarReporteUsuariosMasActivos(limite, null));
+    }
 
-            for (Usuario usuario : usuarios.values()) {
-                // Verificar si la tarea ha sido interrumpida
-                if (Thread.currentThread().isInterrupted()) {
-                    throw new InterruptedException("Generación de reporte cancelada");
-                }
+    /**
+     * Programa el recálculo periódico en segundo plano de las estadísticas por categoría.
+     *
+     * @param intervalo Tiempo entre recálculos
+     * @param retrasoInicial Espera antes del primer cálculo
+     */
+    public void programarEstadisticasPorCategoria(Duration intervalo, Duration retrasoInicial) {
+        programarReporte(REPORTE_ESTADISTICAS_CATEGORIA, "", intervalo, retrasoInicial,
+                () -> generarEstadisticasPorCategoria(null));
+    }
 
-                todosLosPrestamos.addAll(sistemaPrestamos.obtenerHistorialPrestamos(usuario));
-                usuariosProcesados++;
+    /**
+     * Obtiene el último resultado precalculado de un reporte programado sin parámetros
+     * (por ejemplo, las estadísticas por categoría), con su antigüedad.
+     *
+     * @param tipoReporte Tipo de reporte
+     * @return Último resultado o null si el reporte no está programado o aún no se calculó
+     */
+    public <T> ResultadoPrecalculado<T> obtenerResultadoPrecalculado(String tipoReporte) {
+        return planificadorReportes.obtenerResultado(tipoReporte + "|");
+    }
 
-                // Actualizar progreso (50% del progreso total es recolectar datos)
-                if (progreso != null && totalUsuarios > 0) {
-                    progreso.set((usuariosProcesados * 50) / totalUsuarios);
-                }
-            }
+    /**
+     * Obtiene el último resultado precalculado de un reporte programado con un límite
+     * (recursos más prestados o usuarios más activos), con su antigüedad. Cada límite
+     * programado tiene su propio resultado.
+     *
+     * @param tipoReporte Tipo de reporte
+     * @param limite Límite con el que se programó el reporte
+     * @return Último resultado o null si el reporte no está programado con ese límite o aún no se calculó
+     */
+    public <T> ResultadoPrecalculado<T> obtenerResultadoPrecalculado(String tipoReporte, int limite) {
+        return planificadorReportes.obtenerResultado(tipoReporte + "|limite=" + limite);
+    }
 
-            // Contar préstamos por recurso
-            int totalPrestamos = todosLosPrestamos.size();
-            int prestamosProcesados = 0;
+    /**
+     * Registra el recálculo en el planificador con la misma clave que la cache, de modo que
+     * el mismo tipo programado con distintos parámetros guarda resultados separados.
+     * Los cálculos programados no informan progreso: el que se consulta por tipo es
+     * siempre el de las generaciones pedidas con {@link #iniciarReporte}.
+     */
+    private <T> void programarReporte(String tipoReporte, String parametros, Duration intervalo,
+                                      Duration retrasoInicial, Callable<T> generador) {
+        String clave = tipoReporte + "|" + parametros;
+        // El planificador usa un único hilo, así que la versión no se comparte entre cálculos
+        long[] versionCalculo = new long[1];
+        planificadorReportes.registrar(clave, intervalo, retrasoInicial, () -> {
+            versionCalculo[0] = versionDatos.get();
+            return generador.call();
+        }, resultado -> guardarEnCache(clave, versionCalculo[0], resultado.getValor()));
+    }
 
-            for (Prestamo prestamo : todosLosPrestamos) {
-                // Verificar si la tarea ha sido interrumpida
-                if (Thread.currentThread().isInterrupted()) {
-                    throw new InterruptedException("Generación de reporte cancelada");
-                }
+    /**
+     * Guarda en la cache un resultado ya calculado, salvo que exista uno de una versión más nueva.
+     */
+    private void guardarEnCache(String clave, long version, Object resultado) {
+        EntradaCache entrada = new EntradaCache(version);
+        entrada.tarea = new FutureTask<>(() -> resultado);
+        entrada.tarea.run();
+        entrada.resultado = resultado;
+        entrada.progreso.set(100);
+        cacheReportes.compute(clave, (k, actual) -> actual != null && actual.version > version ? actual : entrada);
+    }
 
-                RecursoDigital recurso = prestamo.getRecurso();
-                contadorPrestamos.put(recurso, contadorPrestamos.getOrDefault(recurso, 0) + 1);
-                prestamosProcesados++;
+    /**
+     * Inicia la generación de un reporte de los recursos más prestados en segundo plano.
+     * Si ya existe una generación con el mismo límite y los datos no cambiaron, se reutiliza.
+     * 
+     * @param limite Número máximo de recursos a incluir en el reporte
+     * @return Future que representa la tarea asíncrona
+     */
+    public Future<Map<RecursoDigital, Integer>> iniciarReporteRecursosMasPrestados(int limite) {
+        return iniciarReporte(REPORTE_RECURSOS_MAS_PRESTADOS, "limite=" + limite,
+                progreso -> generarReporteRecursosMasPrestados(limite, progreso));
+    }
 
-                // Actualizar progreso (del 50% al 90%)
-                if (progreso != null && totalPrestamos > 0) {
-                    progreso.set(50 + (prestamosProcesados * 40) / totalPrestamos);
-                }
-            }
+    /**
+     * Genera un reporte de los recursos más prestados.
+     * Este método es privado y se ejecuta en segundo plano.
+     * 
+     * @param limite Número máximo de recursos a incluir en el reporte
+     * @param progreso Progreso de la generación (puede ser null)
+     * @return Mapa ordenado con los recursos más prestados y la cantidad de préstamos
+     */
+    private Map<RecursoDigital, Integer> generarReporteRecursosMasPrestados(int limite, AtomicInteger progreso) {
+        try {
+            // Vista del historial: no bloquea las devoluciones y no cambia durante el reporte
+            HistorialColumnar.Vista vista = historialColumnar.vista();
 
-            // Ordenar por cantidad de préstamos (descendente) y limitar resultados
-            // Actualizar progreso (90% a 100% es ordenar y formatear)
-            if (progreso != null) {
-                progreso.set(90);
-            }
+            // Contar préstamos por recurso recorriendo solo las columnas de recurso y usuario
+            // (90% del progreso total es contar)
+            int[] cuentas = contarPorRecurso(vista, progreso, 0, 90);
 
-            Map<RecursoDigital, Integer> resultado = contadorPrestamos.entrySet().stream()
-                    .sorted(Map.Entry.<RecursoDigital, Integer>comparingByValue().reversed())
-                    .limit(limite)
-                    .collect(Collectors.toMap(
-                            Map.Entry::getKey,
-                            Map.Entry::getValue,
-                            (e1, e2) -> e1,
-                            LinkedHashMap::new
-                    ));
+            // Seleccionar los más prestados y resolver solo esos recursos
+            Map<RecursoDigital, Integer> resultado = new LinkedHashMap<>();
+            for (int indice : TopK.seleccionarIndices(cuentas, limite)) {
+                resultado.put(vista.resolverRecurso(indice), cuentas[indice]);
+            }
 
             if (progreso != null) {
                 progreso.set(100);
@@ -219,37 +575,19 @@ public class SistemaReportes {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new RuntimeException("Generación de reporte cancelada", e);
-        } finally {
-            readLock.unlock();
         }
     }
 
     /**
      * Inicia la generación de un reporte de los usuarios más activos en segundo plano.
+     * Si ya existe una generación con el mismo límite y los datos no cambiaron, se reutiliza.
      * 
      * @param limite Número máximo de usuarios a incluir en el reporte
      * @return Future que representa la tarea asíncrona
      */
     public Future<Map<Usuario, Integer>> iniciarReporteUsuariosMasActivos(int limite) {
-        // Limpiar resultados anteriores y reiniciar progreso
-        resultadosReportes.remove(REPORTE_USUARIOS_MAS_ACTIVOS);
-        progresoReportes.put(REPORTE_USUARIOS_MAS_ACTIVOS, new AtomicInteger(0));
-
-        // Crear y ejecutar tarea asíncrona
-        return executorService.submit(() -> {
-            try {
-                Map<Usuario, Integer> resultado = generarReporteUsuariosMasActivos(limite);
-                // Almacenar resultado
-                resultadosReportes.put(REPORTE_USUARIOS_MAS_ACTIVOS, resultado);
-                // Marcar como completado
-                progresoReportes.get(REPORTE_USUARIOS_MAS_ACTIVOS).set(100);
-                return resultado;
-            } catch (Exception e) {
-                // En caso de error, eliminar progreso
-                progresoReportes.remove(REPORTE_USUARIOS_MAS_ACTIVOS);
-                throw e;
-            }
-        });
+        return iniciarReporte(REPORTE_USUARIOS_MAS_ACTIVOS, "limite=" + limite,
+                progreso -> generarReporteUsuariosMasActivos(limite, progreso));
     }
 
     /**
@@ -257,51 +595,52 @@ public class SistemaReportes {
      * Este método es privado y se ejecuta en segundo plano.
      * 
      * @param limite Número máximo de usuarios a incluir en el reporte
+     * @param progreso Progreso de la generación (puede ser null)
      * @return Mapa ordenado con los usuarios más activos y la cantidad de préstamos
      */
-    private Map<Usuario, Integer> generarReporteUsuariosMasActivos(int limite) {
+    private Map<Usuario, Integer> generarReporteUsuariosMasActivos(int limite, AtomicInteger progreso) {
         Map<Usuario, Integer> contadorPrestamos = new HashMap<>();
-        AtomicInteger progreso = progresoReportes.get(REPORTE_USUARIOS_MAS_ACTIVOS);
 
-        // Adquirir lock de lectura para acceder a los datos
-        Lock readLock = rwLock.readLock();
-        readLock.lock();
         try {
-            // Contar préstamos por usuario
-            int totalUsuarios = usuarios.size();
-            int usuariosProcesados = 0;
+            // Contar préstamos por usuario sobre la columna de usuarios
+            HistorialColumnar.Vista vista = historialColumnar.vista();
+            int[] cuentas = new int[vista.cantidadUsuarios()];
+            int total = vista.tamanio();
 
-            for (Usuario usuario : usuarios.values()) {
+            for (int desde = 0; desde < total; desde += FILAS_POR_TRAMO) {
                 // Verificar si la tarea ha sido interrumpida
                 if (Thread.currentThread().isInterrupted()) {
                     throw new InterruptedException("Generación de reporte cancelada");
                 }
 
-                List<Prestamo> historialPrestamos = sistemaPrestamos.obtenerHistorialPrestamos(usuario);
-                contadorPrestamos.put(usuario, historialPrestamos.size());
-                usuariosProcesados++;
+                int hasta = Math.min(total, desde + FILAS_POR_TRAMO);
+                vista.contarPorUsuario(desde, hasta, cuentas);
 
                 // Actualizar progreso (80% del progreso total es recolectar datos)
-                if (progreso != null && totalUsuarios > 0) {
-                    progreso.set((usuariosProcesados * 80) / totalUsuarios);
+                if (progreso != null) {
+                    progreso.set((int) ((hasta * 80L) / total));
+                }
+            }
+
+            // Solo se resuelven los usuarios con préstamos, una vez cada uno
+            Map<Integer, Integer> prestamosPorId = new HashMap<>();
+            for (int indice = 0; indice < cuentas.length; indice++) {
+                if (cuentas[indice] > 0) {
+                    prestamosPorId.merge(vista.resolverUsuario(indice).getID(), cuentas[indice], Integer::sum);
                 }
             }
 
-            // Ordenar por cantidad de préstamos (descendente) y limitar resultados
-            // Actualizar progreso (80% a 100% es ordenar y formatear)
+            for (Usuario usuario : usuarios.values()) {
+                contadorPrestamos.put(usuario, prestamosPorId.getOrDefault(usuario.getID(), 0));
+            }
+
+            // Seleccionar los más activos con un heap de tamaño limite
+            // Actualizar progreso (80% a 100% es seleccionar y formatear)
             if (progreso != null) {
                 progreso.set(80);
             }
 
-            Map<Usuario, Integer> resultado = contadorPrestamos.entrySet().stream()
-                    .sorted(Map.Entry.<Usuario, Integer>comparingByValue().reversed())
-                    .limit(limite)
-                    .collect(Collectors.toMap(
-                            Map.Entry::getKey,
-                            Map.Entry::getValue,
-                            (e1, e2) -> e1,
-                            LinkedHashMap::new
-                    ));
+            Map<Usuario, Integer> resultado = TopK.seleccionar(contadorPrestamos, limite);
 
             if (progreso != null) {
                 progreso.set(100);
@@ -311,51 +650,29 @@ public class SistemaReportes {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new RuntimeException("Generación de reporte cancelada", e);
-        } finally {
-            readLock.unlock();
         }
     }
 
     /**
      * Inicia la generación de estadísticas de uso por categoría en segundo plano.
+     * Si ya existe una generación y los datos no cambiaron, se reutiliza.
      * 
      * @return Future que representa la tarea asíncrona
      */
     public Future<Map<CategoriaRecurso, Integer>> iniciarEstadisticasPorCategoria() {
-        // Limpiar resultados anteriores y reiniciar progreso
-        resultadosReportes.remove(REPORTE_ESTADISTICAS_CATEGORIA);
-        progresoReportes.put(REPORTE_ESTADISTICAS_CATEGORIA, new AtomicInteger(0));
-
-        // Crear y ejecutar tarea asíncrona
-        return executorService.submit(() -> {
-            try {
-                Map<CategoriaRecurso, Integer> resultado = generarEstadisticasPorCategoria();
-                // Almacenar resultado
-                resultadosReportes.put(REPORTE_ESTADISTICAS_CATEGORIA, resultado);
-                // Marcar como completado
-                progresoReportes.get(REPORTE_ESTADISTICAS_CATEGORIA).set(100);
-                return resultado;
-            } catch (Exception e) {
-                // En caso de error, eliminar progreso
-                progresoReportes.remove(REPORTE_ESTADISTICAS_CATEGORIA);
-                throw e;
-            }
-        });
+        return iniciarReporte(REPORTE_ESTADISTICAS_CATEGORIA, "", this::generarEstadisticasPorCategoria);
     }
 
     /**
      * Genera estadísticas de uso por categoría.
      * Este método es privado y se ejecuta en segundo plano.
      * 
+     * @param progreso Progreso de la generación (puede ser null)
      * @return Mapa con las categorías y la cantidad de préstamos
      */
-    private Map<CategoriaRecurso, Integer> generarEstadisticasPorCategoria() {
+    private Map<CategoriaRecurso, Integer> generarEstadisticasPorCategoria(AtomicInteger progreso) {
         Map<CategoriaRecurso, Integer> contadorCategorias = new HashMap<>();
-        AtomicInteger progreso = progresoReportes.get(REPORTE_ESTADISTICAS_CATEGORIA);
 
-        // Adquirir lock de lectura para acceder a los datos
-        Lock readLock = rwLock.readLock();
-        readLock.lock();
         try {
             // Inicializar contador para todas las categorías
             for (CategoriaRecurso categoria : CategoriaRecurso.values()) {
@@ -367,46 +684,13 @@ public class SistemaReportes {
                 progreso.set(10);
             }
 
-            // Obtener todos los préstamos históricos para todos los usuarios
-            List<Prestamo> todosLosPrestamos = new ArrayList<>();
-            int totalUsuarios = usuarios.size();
-            int usuariosProcesados = 0;
-
-            for (Usuario usuario : usuarios.values()) {
-                // Verificar si la tarea ha sido interrumpida
-                if (Thread.currentThread().isInterrupted()) {
-                    throw new InterruptedException("Generación de reporte cancelada");
-                }
-
-                todosLosPrestamos.addAll(sistemaPrestamos.obtenerHistorialPrestamos(usuario));
-                usuariosProcesados++;
-
-                // Actualizar progreso (del 10% al 60% es recolectar datos)
-                if (progreso != null && totalUsuarios > 0) {
-                    progreso.set(10 + (usuariosProcesados * 50) / totalUsuarios);
-                }
-            }
-
-            // Contar préstamos por categoría
-            int totalPrestamos = todosLosPrestamos.size();
-            int prestamosProcesados = 0;
-
-            for (Prestamo prestamo : todosLosPrestamos) {
-                // Verificar si la tarea ha sido interrumpida
-                if (Thread.currentThread().isInterrupted()) {
-                    throw new InterruptedException("Generación de reporte cancelada");
-                }
-
-                RecursoDigital recurso = prestamo.getRecurso();
-                CategoriaRecurso categoria = obtenerCategoriaRecurso(recurso);
-                if (categoria != null) {
-                    contadorCategorias.put(categoria, contadorCategorias.getOrDefault(categoria, 0) + 1);
-                }
-                prestamosProcesados++;
-
-                // Actualizar progreso (del 60% al 90%)
-                if (progreso != null && totalPrestamos > 0) {
-                    progreso.set(60 + (prestamosProcesados * 30) / totalPrestamos);
+            // Contar por recurso sobre las columnas (del 10% al 90%) y sumar cada recurso a su categoría
+            HistorialColumnar.Vista vista = historialColumnar.vista();
+            int[] cuentas = contarPorRecurso(vista, progreso, 10, 80);
+            for (int indice = 0; indice < cuentas.length; indice++) {
+                if (cuentas[indice] > 0) {
+                    CategoriaRecurso categoria = obtenerCategoriaRecurso(vista.resolverRecurso(indice));
+                    contadorCategorias.merge(categoria, cuentas[indice], Integer::sum);
                 }
             }
 
@@ -433,11 +717,282 @@ public class SistemaReportes {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new RuntimeException("Generación de reporte cancelada", e);
-        } finally {
-            readLock.unlock();
         }
     }
 
+    /**
+     * Cuenta los préstamos de cada recurso hechos por usuarios registrados, recorriendo
+     * la vista por tramos para informar el progreso y atender la cancelación.
+     *
+     * @param vista Vista del historial columnar
+     * @param progreso Progreso del reporte (puede ser null)
+     * @param progresoInicial Progreso al empezar el recorrido
+     * @param progresoRecorrido Parte del progreso que corresponde al recorrido
+     * @return Cuentas indexadas por índice de recurso de la vista
+     * @throws InterruptedException Si la generación fue cancelada
+     */
+    private int[] contarPorRecurso(HistorialColumnar.Vista vista, AtomicInteger progreso, int progresoInicial,
+                                   int progresoRecorrido) throws InterruptedException {
+        boolean[] incluidos = usuariosRegistrados(vista);
+        int[] cuentas = new int[vista.cantidadRecursos()];
+        int total = vista.tamanio();
+
+        for (int desde = 0; desde < total; desde += FILAS_POR_TRAMO) {
+            // Verificar si la tarea ha sido interrumpida
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("Generación de reporte cancelada");
+            }
+
+            int hasta = Math.min(total, desde + FILAS_POR_TRAMO);
+            vista.contarPorRecurso(desde, hasta, incluidos, cuentas);
+
+            if (progreso != null) {
+                progreso.set(progresoInicial + (int) ((hasta * (long) progresoRecorrido) / total));
+            }
+        }
+        return cuentas;
+    }
+
+    /**
+     * Marca qué usuarios del diccionario de la vista están registrados en la biblioteca.
+     *
+     * @param vista Vista del historial columnar
+     * @return Arreglo indexado por índice de usuario de la vista
+     */
+    private boolean[] usuariosRegistrados(HistorialColumnar.Vista vista) {
+        Set<Integer> ids = new HashSet<>();
+        for (Usuario usuario : usuarios.values()) {
+            ids.add(usuario.getID());
+        }
+        boolean[] incluidos = new boolean[vista.cantidadUsuarios()];
+        for (int indice = 0; indice < incluidos.length; indice++) {
+            incluidos[indice] = ids.contains(vista.resolverUsuario(indice).getID());
+        }
+        return incluidos;
+    }
+
+    /**
+     * Inicia la generación del reporte de lectores únicos por recurso y por categoría.
+     * Si ya existe una generación y los datos no cambiaron, se reutiliza.
+     *
+     * @return Future que representa la tarea asíncrona
+     */
+    public Future<ReporteLectoresUnicos> iniciarReporteLectoresUnicos() {
+        return iniciarReporte(REPORTE_LECTORES_UNICOS, "", this::generarReporteLectoresUnicos);
+    }
+
+    /**
+     * Genera el reporte de lectores únicos.
+     * Este método es privado y se ejecuta en segundo plano. Las categorías se
+     * obtienen combinando los estimadores de sus recursos, sin recorrer el historial.
+     *
+     * @param progreso Progreso de la generación (puede ser null)
+     * @return Lectores únicos estimados por recurso y por categoría
+     */
+    private ReporteLectoresUnicos generarReporteLectoresUnicos(AtomicInteger progreso) {
+        Map<RecursoDigital, Long> porRecurso = new HashMap<>();
+        Map<CategoriaRecurso, HyperLogLog> estimadoresCategoria = new EnumMap<>(CategoriaRecurso.class);
+
+        try {
+            List<Map.Entry<RecursoDigital, HyperLogLog>> entradas = new ArrayList<>(lectoresPorRecurso.entrySet());
+            int totalRecursos = entradas.size();
+            int recursosProcesados = 0;
+
+            for (Map.Entry<RecursoDigital, HyperLogLog> entrada : entradas) {
+                // Verificar si la tarea ha sido interrumpida
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException("Generación de reporte cancelada");
+                }
+
+                HyperLogLog estimador = entrada.getValue();
+                porRecurso.put(entrada.getKey(), estimador.estimar());
+
+                CategoriaRecurso categoria = obtenerCategoriaRecurso(entrada.getKey());
+                HyperLogLog estimadorCategoria = estimadoresCategoria.get(categoria);
+                if (estimadorCategoria == null) {
+                    estimadoresCategoria.put(categoria, estimador.copiar());
+                } else {
+                    estimadorCategoria.combinar(estimador);
+                }
+                recursosProcesados++;
+
+                // Actualizar progreso (hasta 90% es estimar y combinar)
+                if (progreso != null && totalRecursos > 0) {
+                    progreso.set((recursosProcesados * 90) / totalRecursos);
+                }
+            }
+
+            Map<CategoriaRecurso, Long> porCategoria = new EnumMap<>(CategoriaRecurso.class);
+            for (Map.Entry<CategoriaRecurso, HyperLogLog> entrada : estimadoresCategoria.entrySet()) {
+                porCategoria.put(entrada.getKey(), entrada.getValue().estimar());
+            }
+
+            if (progreso != null) {
+                progreso.set(100);
+            }
+
+            return new ReporteLectoresUnicos(
+                    TopK.seleccionar(porRecurso, porRecurso.size()),
+                    TopK.seleccionar(porCategoria, porCategoria.size()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Generación de reporte cancelada", e);
+        }
+    }
+
+    /**
+     * Inicia la ejecución de una consulta ad-hoc de agrupación sobre el historial
+     * de préstamos devueltos (por ejemplo, préstamos por categoría y día de la semana).
+     * Si ya existe una ejecución de la misma consulta y los datos no cambiaron, se reutiliza.
+     *
+     * @param consulta Consulta con filtros, agrupaciones y agregación
+     * @return Future con el mapa de clave de grupo -> valor agregado, ordenado de mayor a menor
+     */
+    public Future<Map<List<Object>, Long>> iniciarConsulta(ConsultaPrestamos consulta) {
+        // Se ejecuta una copia: si la consulta cambia después, no altera la clave de cache ni el cálculo
+        ConsultaPrestamos copia = consulta.copiar();
+        return iniciarReporte(REPORTE_CONSULTA, copia.toString(),
+                progreso -> motorConsultas.ejecutar(copia, historialColumnar.vista(), progreso));
+    }
+
+    /**
+     * Inicia la exportación del historial de préstamos devueltos a un archivo.
+     * Recorre el historial columnar fila por fila, con memoria constante.
+     * Cancelar el Future detiene la exportación.
+     *
+     * @param destino Archivo de destino (se reemplaza si existe)
+     * @param formato Formato de exportación
+     * @return Future con la cantidad de filas exportadas
+     */
+    public Future<Long> iniciarExportacionHistorialPrestamos(Path destino, ExportadorStreaming.Formato formato) {
+        return iniciarExportacion(progreso -> {
+            HistorialColumnar.Vista vista = historialColumnar.vista();
+            try (ExportadorStreaming exportador = new ExportadorStreaming(destino, formato,
+                    "usuario_id", "recurso_id", "tipo_recurso", "categoria",
+                    "fecha_prestamo", "fecha_vencimiento", "fecha_devolucion")) {
+                int total = vista.tamanio();
+                for (int fila = 0; fila < total; fila++) {
+                    RecursoDigital recurso = vista.resolverRecurso(vista.recurso(fila));
+                    long devolucion = vista.devolucion(fila);
+                    exportador.escribirFila(
+                            vista.resolverUsuario(vista.usuario(fila)).getID(),
+                            recurso.getIdentificador(),
+                            recurso.getClass().getSimpleName(),
+                            obtenerCategoriaRecurso(recurso),
+                            aFecha(vista.inicio(fila), vista),
+                            aFecha(vista.vencimiento(fila), vista),
+                            devolucion != HistorialColumnar.SIN_DEVOLUCION ? aFecha(devolucion, vista) : null);
+
+                    // Actualizar progreso (hasta 99%, el 100% se marca al cerrar el archivo)
+                    if ((fila & 0x3FF) == 0) {
+                        progreso.set((int) ((fila * 99L) / total));
+                    }
+                }
+                return exportador.getFilasEscritas();
+            }
+        });
+    }
+
+    /**
+     * Inicia la exportación del historial de reservas a un archivo.
+     * Las reservas se leen por bloques, con memoria constante.
+     * Cancelar el Future detiene la exportación.
+     *
+     * @param sistemaReservas Sistema de reservas del que se lee el historial
+     * @param destino Archivo de destino (se reemplaza si existe)
+     * @param formato Formato de exportación
+     * @return Future con la cantidad de filas exportadas
+     */
+    public Future<Long> iniciarExportacionHistorialReservas(SistemaReservas sistemaReservas, Path destino,
+                                                            ExportadorStreaming.Formato formato) {
+        return iniciarExportacion(progreso -> {
+            int total = sistemaReservas.cantidadHistorialReservas();
+            try (ExportadorStreaming exportador = new ExportadorStreaming(destino, formato,
+                    "id", "usuario_id", "recurso_id", "fecha_reserva", "prioridad", "activa")) {
+                for (Reserva reserva : sistemaReservas.recorrerHistorialReservas()) {
+                    exportador.escribirFila(
+                            reserva.getId(),
+                            reserva.getUsuario().getID(),
+                            reserva.getRecurso().getIdentificador(),
+                            reserva.getFechaReserva(),
+                            reserva.getPrioridad(),
+                            reserva.isActiva());
+
+                    long escritas = exportador.getFilasEscritas();
+                    if (total > 0 && (escritas & 0x3FF) == 0) {
+                        progreso.set((int) Math.min(99, (escritas * 99L) / total));
+                    }
+                }
+                return exportador.getFilasEscritas();
+            }
+        });
+    }
+
+    /**
+     * Inicia la exportación del resultado de un reporte (pares clave-valor) a un archivo.
+     *
+     * @param resultado Resultado de un reporte, por ejemplo el de {@link #iniciarReporteRecursosMasPrestados(int)}
+     * @param destino Archivo de destino (se reemplaza si existe)
+     * @param formato Formato de exportación
+     * @return Future con la cantidad de filas exportadas
+     */
+    public Future<Long> iniciarExportacionReporte(Map<?, ?> resultado, Path destino, ExportadorStreaming.Formato formato) {
+        return iniciarExportacion(progreso -> {
+            try (ExportadorStreaming exportador = new ExportadorStreaming(destino, formato, "clave", "valor")) {
+                for (Map.Entry<?, ?> entrada : resultado.entrySet()) {
+                    exportador.escribirFila(describirClave(entrada.getKey()), entrada.getValue());
+                }
+                return exportador.getFilasEscritas();
+            }
+        });
+    }
+
+    /**
+     * Ejecuta una exportación en segundo plano con seguimiento de progreso.
+     * Las exportaciones no se cachean: cada llamada vuelve a escribir el archivo.
+     * Cada una lleva su propio progreso, así que una exportación que falla no
+     * afecta a otra que sigue en curso; por tipo se informa la última iniciada.
+     */
+    @SuppressWarnings("unchecked")
+    private Future<Long> iniciarExportacion(Exportacion exportacion) {
+        EntradaCache generacion = new EntradaCache(versionDatos.get());
+        generacion.tarea = new FutureTask<>(() -> {
+            try {
+                Long filas = exportacion.exportar(generacion.progreso);
+                // Marcar como completado
+                generacion.resultado = filas;
+                generacion.progreso.set(100);
+                return filas;
+            } catch (Exception e) {
+                // En caso de error o cancelación, el progreso de esta exportación deja de informarse
+                generacion.fallida = true;
+                throw e;
+            }
+        });
+        ultimaGeneracion.put(REPORTE_EXPORTACION, generacion);
+        executorService.execute(generacion.tarea);
+        return (Future<Long>) (Future<?>) generacion.tarea;
+    }
+
+    private LocalDateTime aFecha(long segundoEpoch, HistorialColumnar.Vista vista) {
+        return LocalDateTime.ofInstant(Instant.ofEpochSecond(segundoEpoch), vista.getZona());
+    }
+
+    private Object describirClave(Object clave) {
+        if (clave instanceof RecursoDigital) {
+            return ((RecursoDigital) clave).getIdentificador();
+        } else if (clave instanceof Usuario) {
+            return ((Usuario) clave).getID();
+        } else if (clave instanceof List) {
+            StringJoiner partes = new StringJoiner("|");
+            for (Object parte : (List<?>) clave) {
+                partes.add(String.valueOf(describirClave(parte)));
+            }
+            return partes.toString();
+        }
+        return clave;
+    }
+
     /**
      * Obtiene la categoría de un recurso.
      * 
@@ -454,4 +1009,37 @@ public class SistemaReportes {
         }
         return CategoriaRecurso.NO_FICCION; // Default category if type is unknown
     }
+
+    /**
+     * Escritura de un archivo de exportación que informa su progreso.
+     */
+    @FunctionalInterface
+    private interface Exportacion {
+        Long exportar(AtomicInteger progreso) throws Exception;
+    }
+
+    /**
+     * Generación de un reporte asociada a la versión de datos con la que se inició,
+     * con su propio progreso y resultado.
+     */
+    private static class EntradaCache {
+        private final long version;
+        private final AtomicInteger progreso;
+        private FutureTask<Object> tarea;
+        private volatile Object resultado;
+        private volatile boolean fallida;
+
+        EntradaCache(long version) {
+            this.version = version;
+            this.progreso = new AtomicInteger(0);
+        }
+
+        boolean vigente(long versionActual) {
+            return version == versionActual && !fallida && !tarea.isCancelled();
+        }
+
+        boolean completa() {
+            return tarea.isDone() && !fallida && !tarea.isCancelled();
+        }
+    }
 }
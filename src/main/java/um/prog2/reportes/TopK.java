@@ -0,0 +1,94 @@
+package um.prog2.reportes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Utilidad para seleccionar los K elementos con mayor valor de un contador
+ * sin ordenar el mapa completo.
+ * Mantiene un min-heap de tamaño K, por lo que el costo es O(n log k).
+ */
+public final class TopK {
+
+    private TopK() {
+    }
+
+    /**
+     * Selecciona las entradas con mayor valor de un contador.
+     *
+     * @param contador Mapa de elemento -> valor
+     * @param limite Cantidad máxima de entradas a devolver
+     * @return Mapa ordenado de mayor a menor valor con, como máximo, {@code limite} entradas
+     */
+    public static <K, V extends Comparable<? super V>> Map<K, V> seleccionar(Map<K, V> contador, int limite) {
+        Map<K, V> resultado = new LinkedHashMap<>();
+        if (limite <= 0 || contador.isEmpty()) {
+            return resultado;
+        }
+
+        int capacidad = Math.min(limite, contador.size());
+        PriorityQueue<Map.Entry<K, V>> heap = new PriorityQueue<>(capacidad + 1, Map.Entry.comparingByValue());
+
+        for (Map.Entry<K, V> entrada : contador.entrySet()) {
+            if (heap.size() < capacidad) {
+                heap.add(entrada);
+            } else if (entrada.getValue().compareTo(heap.peek().getValue()) > 0) {
+                heap.poll();
+                heap.add(entrada);
+            }
+        }
+
+        // El heap entrega de menor a mayor, así que se invierte al final
+        List<Map.Entry<K, V>> ordenadas = new ArrayList<>(heap.size());
+        while (!heap.isEmpty()) {
+            ordenadas.add(heap.poll());
+        }
+        Collections.reverse(ordenadas);
+
+        for (Map.Entry<K, V> entrada : ordenadas) {
+            resultado.put(entrada.getKey(), entrada.getValue());
+        }
+        return resultado;
+    }
+
+    /**
+     * Selecciona las posiciones con mayor valor de un arreglo de contadores.
+     * Pensado para contadores indexados por posición (por ejemplo, columnas
+     * de un historial columnar), donde solo se resuelven los K ganadores.
+     *
+     * @param valores Arreglo de contadores
+     * @param limite Cantidad máxima de posiciones a devolver
+     * @return Posiciones ordenadas de mayor a menor valor, omitiendo las de valor 0
+     */
+    public static int[] seleccionarIndices(int[] valores, int limite) {
+        if (limite <= 0) {
+            return new int[0];
+        }
+
+        int capacidad = Math.min(limite, valores.length);
+        PriorityQueue<Integer> heap = new PriorityQueue<>(capacidad + 1,
+                (a, b) -> Integer.compare(valores[a], valores[b]));
+
+        for (int i = 0; i < valores.length; i++) {
+            if (valores[i] == 0) {
+                continue;
+            }
+            if (heap.size() < capacidad) {
+                heap.add(i);
+            } else if (valores[i] > valores[heap.peek()]) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+
+        int[] resultado = new int[heap.size()];
+        for (int i = resultado.length - 1; i >= 0; i--) {
+            resultado[i] = heap.poll();
+        }
+        return resultado;
+    }
+}
@@ -10,8 +10,10 @@ import um.prog2.usuario.Usuario;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
@@ -335,6 +337,54 @@ public class SistemaReservas {
         return historialUsuario;
     }
 
+    /**
+     * Obtiene la cantidad de reservas en el historial.
+     *
+     * @return Cantidad de reservas finalizadas
+     */
+    public int cantidadHistorialReservas() {
+        return historialReservas.size();
+    }
+
+    /**
+     * Permite recorrer el historial completo de reservas sin copiarlo.
+     * Las reservas se leen por bloques, tomando el lock del historial solo
+     * mientras se copia cada bloque, y se recorren las que existían al
+     * comenzar el recorrido.
+     *
+     * @return Iterable sobre el historial de reservas
+     */
+    public Iterable<Reserva> recorrerHistorialReservas() {
+        final int tamanioBloque = 1024;
+        return () -> new Iterator<Reserva>() {
+            private final int total = historialReservas.size();
+            private final List<Reserva> bloque = new ArrayList<>(tamanioBloque);
+            private int siguiente;
+            private int posicionBloque;
+
+            @Override
+            public boolean hasNext() {
+                return siguiente < total;
+            }
+
+            @Override
+            public Reserva next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (posicionBloque == bloque.size()) {
+                    bloque.clear();
+                    posicionBloque = 0;
+                    synchronized (historialReservas) {
+                        bloque.addAll(historialReservas.subList(siguiente, Math.min(total, siguiente + tamanioBloque)));
+                    }
+                }
+                siguiente++;
+                return bloque.get(posicionBloque++);
+            }
+        };
+    }
+
     /**
      * Obtiene todas las reservas activas.
      * 
@@ -164,9 +164,7 @@ class AlertaDisponibilidadTest {
         public boolean notificacionEnviada = false;
 
         @Override
-        public void enviarNotificacionSistema(String mensaje, Usuario usuario, 
-                                             um.prog2.notificaciones.Notificacion.TipoNotificacion tipo,
-                                             String origen) {
+        public void enviarNotificacion(um.prog2.notificaciones.Notificacion notificacion) {
             notificacionEnviada = true;
         }
     }
@@ -0,0 +1,89 @@
+package um.prog2.alertas;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import um.prog2.Enums.EstadoRecurso;
+import um.prog2.notificaciones.Notificacion;
+import um.prog2.notificaciones.ServicioEnvioNotificaciones;
+import um.prog2.prestamos.Prestamo;
+import um.prog2.prestamos.SistemaPrestamos;
+import um.prog2.recursoDigital.Libro;
+import um.prog2.usuario.Usuario;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AlertaVencimientoTest {
+
+    private AlertaVencimiento alertaVencimiento;
+    private TestSistemaPrestamos sistemaPrestamos;
+    private TestServicioNotificaciones servicioNotificaciones;
+    private Usuario usuario;
+
+    @BeforeEach
+    void setUp() {
+        sistemaPrestamos = new TestSistemaPrestamos();
+        servicioNotificaciones = new TestServicioNotificaciones();
+        usuario = new Usuario("Test", "User", 1, "test@example.com", "123456789");
+        alertaVencimiento = new AlertaVencimiento(sistemaPrestamos, servicioNotificaciones);
+    }
+
+    @Test
+    void testCadaEtapaSeAlertaUnaSolaVez() {
+        // Arrange
+        Prestamo prestamo = new Prestamo("P-1", usuario, new Libro(EstadoRecurso.DISPONIBLE, "Autor", "Título", "L001"), 2);
+        sistemaPrestamos.prestamos.add(prestamo);
+
+        // Act
+        for (int i = 0; i < 288; i++) {
+            alertaVencimiento.verificarPrestamos();
+        }
+
+        // Assert
+        assertEquals(1, servicioNotificaciones.mensajes.size(), "La etapa 'vence mañana' debe alertarse una vez");
+        assertTrue(servicioNotificaciones.mensajes.get(0).contains("MAÑANA"), "Debe ser la alerta de vence mañana");
+    }
+
+    @Test
+    void testRenovacionReiniciaLasEtapas() {
+        // Arrange
+        Prestamo prestamo = new Prestamo("P-1", usuario, new Libro(EstadoRecurso.DISPONIBLE, "Autor", "Título", "L001"), -3);
+        sistemaPrestamos.prestamos.add(prestamo);
+        alertaVencimiento.verificarPrestamos();
+        alertaVencimiento.verificarPrestamos();
+
+        // Act
+        prestamo.renovar(5);
+        alertaVencimiento.verificarPrestamos();
+        alertaVencimiento.verificarPrestamos();
+
+        // Assert
+        assertEquals(2, servicioNotificaciones.mensajes.size(), "Debe haber una alerta antes y otra después de renovar");
+        assertTrue(servicioNotificaciones.mensajes.get(0).contains("VENCIDO"), "La primera alerta es de vencido");
+        assertTrue(servicioNotificaciones.mensajes.get(1).contains("MAÑANA"), "Tras renovar vence mañana");
+    }
+
+    private static class TestSistemaPrestamos extends SistemaPrestamos {
+        private final List<Prestamo> prestamos = new ArrayList<>();
+
+        TestSistemaPrestamos() {
+            super(null);
+        }
+
+        @Override
+        public synchronized List<Prestamo> obtenerTodosPrestamosActivos() {
+            return new ArrayList<>(prestamos);
+        }
+    }
+
+    private static class TestServicioNotificaciones extends ServicioEnvioNotificaciones {
+        private final List<String> mensajes = new ArrayList<>();
+
+        @Override
+        public void enviarNotificacion(Notificacion notificacion) {
+            mensajes.add(notificacion.getMensaje());
+        }
+    }
+}
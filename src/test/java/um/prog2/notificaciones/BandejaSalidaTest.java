@@ -0,0 +1,170 @@
+package um.prog2.notificaciones;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import um.prog2.Enums.EstadoRecurso;
+import um.prog2.interfaces.ServicioNotificaciones;
+import um.prog2.recursoDigital.Libro;
+import um.prog2.usuario.Usuario;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la bandeja de salida persistente de notificaciones.
+ */
+public class BandejaSalidaTest {
+    private final Usuario usuario = new Usuario("Test", "User", 12345, "test@example.com", "555123456");
+
+    @Test
+    void testRecuperaLasNoConfirmadasAlReabrir(@TempDir Path directorio) throws IOException {
+        // Arrange
+        Libro libro = new Libro(EstadoRecurso.DISPONIBLE, "Autor", "Título", "L001");
+        BandejaSalida bandeja = new BandejaSalida(directorio);
+        long confirmada = bandeja.agregar(new NotificacionSistema("Entregada", usuario,
+                Notificacion.TipoNotificacion.SISTEMA, "Test"));
+        NotificacionPrestamo prestamo = new NotificacionPrestamo("Vence mañana", usuario,
+                Notificacion.TipoNotificacion.VENCIMIENTO, libro, "P-1", Notificacion.NivelUrgencia.WARNING);
+        bandeja.agregar(prestamo);
+        bandeja.agregar(new NotificacionSistema("Pendiente", usuario, Notificacion.TipoNotificacion.SISTEMA, "Test"));
+        bandeja.confirmar(confirmada);
+
+        // Act
+        bandeja.cerrar();
+        BandejaSalida reabierta = new BandejaSalida(directorio, id -> id.equals("L001") ? libro : null);
+        List<BandejaSalida.Registro> recuperados = reabierta.tomarRecuperados();
+        reabierta.cerrar();
+
+        // Assert
+        assertEquals(2, recuperados.size(), "Solo deben recuperarse las no confirmadas");
+        Notificacion recuperada = recuperados.get(0).getNotificacion();
+        assertInstanceOf(NotificacionPrestamo.class, recuperada, "Debe conservarse la clase de la notificación");
+        assertEquals(libro, ((NotificacionPrestamo) recuperada).getRecurso(), "Debe resolverse el recurso");
+        assertEquals("P-1", ((NotificacionPrestamo) recuperada).getIdPrestamo(), "Debe conservarse el préstamo");
+        assertEquals(prestamo.getFechaCreacion(), recuperada.getFechaCreacion(), "Debe conservarse la fecha");
+        assertEquals(Notificacion.NivelUrgencia.WARNING, recuperada.getNivelUrgencia(), "Debe conservarse la urgencia");
+        assertEquals(12345, recuperada.getDestinatario().getID(), "Debe conservarse el destinatario");
+        assertEquals("Pendiente", recuperados.get(1).getNotificacion().getMensaje(), "Debe respetarse el orden");
+    }
+
+    @Test
+    void testDescartaUnRegistroIncompletoAlFinal(@TempDir Path directorio) throws IOException {
+        // Arrange
+        BandejaSalida bandeja = new BandejaSalida(directorio);
+        bandeja.agregar(new Notificacion("Completa", usuario, Notificacion.TipoNotificacion.SISTEMA));
+        bandeja.cerrar();
+        Path segmento;
+        try (Stream<Path> archivos = Files.list(directorio)) {
+            segmento = archivos.filter(archivo -> archivo.toString().endsWith(".log")).findFirst().orElseThrow();
+        }
+        // Simular una caída a mitad de la escritura de un registro
+        Files.write(segmento, new byte[]{0, 0, 0, 50, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        // Act
+        BandejaSalida reabierta = new BandejaSalida(directorio);
+        List<BandejaSalida.Registro> recuperados = reabierta.tomarRecuperados();
+        long siguiente = reabierta.agregar(new Notificacion("Nueva", usuario, Notificacion.TipoNotificacion.SISTEMA));
+        reabierta.cerrar();
+        BandejaSalida verificacion = new BandejaSalida(directorio);
+        List<BandejaSalida.Registro> finales = verificacion.tomarRecuperados();
+        verificacion.cerrar();
+
+        // Assert
+        assertEquals(1, recuperados.size(), "El registro incompleto debe descartarse");
+        assertEquals(1, siguiente, "La secuencia debe continuar después del último registro válido");
+        assertEquals(2, finales.size(), "Lo agregado después del recorte debe poder leerse");
+    }
+
+    @Test
+    void testAgregaYConfirmaMuchasNotificaciones(@TempDir Path directorio) throws IOException {
+        // Arrange
+        BandejaSalida bandeja = new BandejaSalida(directorio);
+        Notificacion notificacion = new NotificacionSistema("Recordatorio de devolución", usuario,
+                Notificacion.TipoNotificacion.VENCIMIENTO, "Alertas");
+        int cantidad = 200_000;
+
+        // Act
+        long inicio = System.nanoTime();
+        for (int i = 0; i < cantidad; i++) {
+            bandeja.confirmar(bandeja.agregar(notificacion));
+        }
+        bandeja.sincronizar();
+        double segundos = (System.nanoTime() - inicio) / 1e9;
+        bandeja.cerrar();
+        System.out.println("[NOTIFICACIONES] Bandeja de salida: " + (long) (cantidad / segundos) + " por segundo");
+
+        // Assert
+        assertEquals(0, bandeja.getPendientes(), "No deben quedar pendientes");
+        assertEquals(cantidad, bandeja.getDesplazamientoConfirmado(), "El desplazamiento debe avanzar");
+    }
+
+    @Test
+    void testElServicioReenviaLasPendientesAlReiniciar(@TempDir Path directorio) throws Exception {
+        // Arrange: un canal bloqueado deja las notificaciones sin entregar y el servicio se cae
+        CountDownLatch bloqueo = new CountDownLatch(1);
+        ServicioEnvioNotificaciones caido = new ServicioEnvioNotificaciones();
+        caido.setMostrarEnConsola(false);
+        caido.inicializarPreferenciasUsuario(usuario);
+        caido.registrarServicio(new ServicioNotificaciones() {
+            @Override
+            public void enviarNotificacion(String mensaje, Usuario destinatario) {
+            }
+
+            @Override
+            public void enviarLote(List<Notificacion> lote) {
+                try {
+                    bloqueo.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, 10, Duration.ofMillis(5));
+        caido.setBandejaSalida(new BandejaSalida(directorio));
+        for (int i = 0; i < 3; i++) {
+            caido.enviarNotificacion("Mensaje " + i, usuario);
+        }
+        caido.cerrar(Duration.ofMillis(200));
+        bloqueo.countDown();
+
+        // Act
+        List<Notificacion> recibidas = new CopyOnWriteArrayList<>();
+        ServicioEnvioNotificaciones reiniciado = new ServicioEnvioNotificaciones();
+        reiniciado.setMostrarEnConsola(false);
+        reiniciado.inicializarPreferenciasUsuario(usuario);
+        reiniciado.registrarServicio(new ServicioNotificaciones() {
+            @Override
+            public void enviarNotificacion(String mensaje, Usuario destinatario) {
+            }
+
+            @Override
+            public void enviarLote(List<Notificacion> lote) {
+                recibidas.addAll(lote);
+            }
+        }, 10, Duration.ofMillis(5));
+        BandejaSalida bandeja = new BandejaSalida(directorio);
+        reiniciado.setBandejaSalida(bandeja);
+        long limite = System.currentTimeMillis() + 10_000;
+        while ((recibidas.size() < 3 || bandeja.getPendientes() > 0) && System.currentTimeMillis() < limite) {
+            Thread.sleep(5);
+        }
+        reiniciado.cerrar();
+        BandejaSalida verificacion = new BandejaSalida(directorio);
+        List<BandejaSalida.Registro> restantes = verificacion.tomarRecuperados();
+        verificacion.cerrar();
+
+        // Assert
+        assertEquals(3, recibidas.size(), "Las notificaciones pendientes deben reenviarse");
+        assertEquals("Mensaje 0", recibidas.get(0).getMensaje(), "Deben reenviarse en orden");
+        assertEquals(0, bandeja.getPendientes(), "Las reenviadas deben confirmarse");
+        assertTrue(restantes.isEmpty(), "Después de confirmarlas no debe quedar nada por recuperar");
+    }
+}
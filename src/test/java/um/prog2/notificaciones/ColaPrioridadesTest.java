@@ -0,0 +1,67 @@
+package um.prog2.notificaciones;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas de la cola con carriles por nivel de urgencia.
+ */
+public class ColaPrioridadesTest {
+
+    @Test
+    void testUrgentesPrimeroSinPostergarIndefinidamenteALasInfo() throws InterruptedException {
+        // Arrange
+        ColaPrioridades<Notificacion.NivelUrgencia> cola = new ColaPrioridades<>(nivel -> nivel);
+        for (int i = 0; i < 100; i++) {
+            cola.agregar(Notificacion.NivelUrgencia.INFO);
+        }
+        for (int i = 0; i < 100; i++) {
+            cola.agregar(Notificacion.NivelUrgencia.WARNING);
+            cola.agregar(Notificacion.NivelUrgencia.ERROR);
+        }
+
+        // Act
+        List<Notificacion.NivelUrgencia> orden = new ArrayList<>();
+        for (int i = 0; i < 26; i++) {
+            orden.add(cola.tomar());
+        }
+
+        // Assert
+        assertEquals(Notificacion.NivelUrgencia.ERROR, orden.get(0), "ERROR debe salir primero");
+        assertEquals(2 * ColaPrioridades.PESO_ERROR, orden.stream()
+                .filter(nivel -> nivel == Notificacion.NivelUrgencia.ERROR).count(), "ERROR usa su cupo por turno");
+        assertEquals(2 * ColaPrioridades.PESO_WARNING, orden.stream()
+                .filter(nivel -> nivel == Notificacion.NivelUrgencia.WARNING).count(), "WARNING usa su cupo por turno");
+        assertEquals(2 * ColaPrioridades.PESO_INFO, orden.stream()
+                .filter(nivel -> nivel == Notificacion.NivelUrgencia.INFO).count(), "INFO no debe quedar sin turno");
+        assertEquals(274, cola.tamanio(), "Deben quedar los elementos no tomados");
+    }
+
+    @Test
+    void testMetricasPorCarril() throws InterruptedException {
+        // Arrange
+        ColaPrioridades<Notificacion.NivelUrgencia> cola = new ColaPrioridades<>(nivel -> nivel);
+        cola.agregar(Notificacion.NivelUrgencia.INFO);
+        cola.agregar(Notificacion.NivelUrgencia.INFO);
+        cola.agregar(Notificacion.NivelUrgencia.ERROR);
+        Thread.sleep(20);
+
+        // Act
+        cola.tomar();
+        cola.tomar();
+
+        // Assert
+        assertEquals(1, cola.getProfundidad(Notificacion.NivelUrgencia.INFO), "Queda una INFO en espera");
+        assertEquals(0, cola.getProfundidad(Notificacion.NivelUrgencia.ERROR), "La ERROR ya salió");
+        assertEquals(1, cola.getAtendidos(Notificacion.NivelUrgencia.ERROR), "Debe contarse la ERROR atendida");
+        assertTrue(cola.getEsperaMaximaNanos(Notificacion.NivelUrgencia.ERROR) >= TimeUnit.MILLISECONDS.toNanos(20),
+                "Debe medirse la espera en la cola");
+        assertEquals(Notificacion.NivelUrgencia.INFO, cola.tomar(1, TimeUnit.MILLISECONDS), "Debe salir la INFO");
+        assertNull(cola.tomar(1, TimeUnit.MILLISECONDS), "Sin elementos, la espera debe vencer");
+    }
+}
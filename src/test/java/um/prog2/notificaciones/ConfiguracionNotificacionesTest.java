@@ -191,4 +191,90 @@ public class ConfiguracionNotificacionesTest {
         assertFalse(configuracion.esNivelHabilitado(usuarioNuevo, Notificacion.NivelUrgencia.ERROR));
         assertFalse(configuracion.esCanalHabilitado(usuarioNuevo, ConfiguracionNotificaciones.CanalNotificacion.EMAIL));
     }
+
+    @Test
+    void testNotificacionSinDestinatarioNoSeEnvia() {
+        // Arrange
+        Notificacion sinDestinatario = new Notificacion("Aviso", null, Notificacion.TipoNotificacion.SISTEMA);
+
+        // Act
+        boolean debeEnviarse = configuracion.debeEnviarNotificacion(sinDestinatario,
+                ConfiguracionNotificaciones.CanalNotificacion.CONSOLA);
+
+        // Assert
+        assertFalse(debeEnviarse, "Sin destinatario no hay preferencias que la habiliten");
+        assertFalse(configuracion.debeIncluirEnResumen(sinDestinatario, ConfiguracionNotificaciones.CanalNotificacion.CONSOLA),
+                "Sin destinatario no se acumula en un resumen");
+    }
+
+    @Test
+    void testPreferenciasPorIdDeUsuario() {
+        // Arrange
+        configuracion.inicializarPreferenciasDefecto(usuario);
+        Usuario mismoId = new Usuario("Otra", "Instancia", 12345, "otra@example.com", "555000111");
+        Usuario vecino = new Usuario("Vecino", "Usuario", 12346, "vecino@example.com", "555000222");
+
+        // Act
+        configuracion.deshabilitarCanalNotificacion(mismoId, ConfiguracionNotificaciones.CanalNotificacion.SMS);
+
+        // Assert
+        assertFalse(configuracion.esCanalHabilitado(usuario, ConfiguracionNotificaciones.CanalNotificacion.SMS),
+                "Las preferencias se comparten entre instancias con el mismo ID");
+        assertFalse(configuracion.esCanalHabilitado(vecino, ConfiguracionNotificaciones.CanalNotificacion.CONSOLA),
+                "Un usuario vecino en la misma página no debe heredar preferencias");
+    }
+
+    @Test
+    void testResumenSoloIncluyeNotificacionesInfoDelCanalElegido() {
+        // Arrange
+        configuracion.inicializarPreferenciasDefecto(usuario);
+
+        // Act
+        configuracion.habilitarResumen(usuario, ConfiguracionNotificaciones.CanalNotificacion.EMAIL);
+
+        // Assert
+        assertTrue(configuracion.debeIncluirEnResumen(notificacionInfo,
+                ConfiguracionNotificaciones.CanalNotificacion.EMAIL), "Las INFO por email deben ir al resumen");
+        assertFalse(configuracion.debeIncluirEnResumen(notificacionInfo,
+                ConfiguracionNotificaciones.CanalNotificacion.SMS), "Los demás canales no deben resumirse");
+        assertFalse(configuracion.debeIncluirEnResumen(notificacionWarning,
+                ConfiguracionNotificaciones.CanalNotificacion.EMAIL), "Las WARNING deben enviarse en el momento");
+        assertFalse(configuracion.debeIncluirEnResumen(notificacionError,
+                ConfiguracionNotificaciones.CanalNotificacion.EMAIL), "Las ERROR deben enviarse en el momento");
+        assertTrue(configuracion.esCanalHabilitado(usuario, ConfiguracionNotificaciones.CanalNotificacion.CONSOLA),
+                "El resumen no debe alterar los canales habilitados");
+    }
+
+    @Test
+    void testModificacionesConcurrentes() throws InterruptedException {
+        // Arrange
+        configuracion.inicializarPreferenciasDefecto(usuario);
+        Notificacion.TipoNotificacion[] tipos = Notificacion.TipoNotificacion.values();
+        Thread[] hilos = new Thread[tipos.length];
+        for (int i = 0; i < tipos.length; i++) {
+            Notificacion.TipoNotificacion tipo = tipos[i];
+            hilos[i] = new Thread(() -> {
+                for (int j = 0; j < 10_000; j++) {
+                    configuracion.deshabilitarTipoNotificacion(usuario, tipo);
+                    configuracion.habilitarTipoNotificacion(usuario, tipo);
+                }
+                configuracion.deshabilitarTipoNotificacion(usuario, tipo);
+            });
+        }
+
+        // Act
+        for (Thread hilo : hilos) {
+            hilo.start();
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        // Assert
+        for (Notificacion.TipoNotificacion tipo : tipos) {
+            assertFalse(configuracion.esTipoHabilitado(usuario, tipo), "Ningún cambio de otro hilo se debe perder");
+        }
+        assertTrue(configuracion.esNivelHabilitado(usuario, Notificacion.NivelUrgencia.INFO),
+                "Los niveles no deben verse afectados");
+    }
 }
@@ -0,0 +1,197 @@
+package um.prog2.notificaciones;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import um.prog2.usuario.Usuario;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del historial circular de notificaciones.
+ */
+public class HistorialNotificacionesTest {
+    private Usuario usuario;
+
+    @BeforeEach
+    void setUp() {
+        usuario = new Usuario("Test", "User", 12345, "test@example.com", "555123456");
+    }
+
+    @Test
+    void testConservaSoloLasMasRecientes() {
+        // Arrange
+        HistorialNotificaciones historial = new HistorialNotificaciones(100);
+
+        // Act
+        for (int i = 0; i < 250; i++) {
+            historial.agregar(crear(i));
+        }
+
+        // Assert
+        assertEquals(100, historial.tamanio(), "El historial no debe superar su capacidad");
+        assertEquals(250, historial.getTotalRegistradas(), "Se deben contar todas las registradas");
+        List<Notificacion> lista = historial.aLista();
+        assertEquals("150", lista.get(0).getMensaje(), "La más vieja en memoria debe ser la 150");
+        assertEquals("249", lista.get(99).getMensaje(), "La más nueva debe ser la 249");
+    }
+
+    @Test
+    void testPaginasDeMasNuevaAMasVieja() {
+        // Arrange
+        HistorialNotificaciones historial = new HistorialNotificaciones(100);
+        for (int i = 0; i < 25; i++) {
+            historial.agregar(crear(i));
+        }
+
+        // Act
+        List<Notificacion> primera = historial.obtenerPagina(0, 10);
+        List<Notificacion> tercera = historial.obtenerPagina(2, 10);
+
+        // Assert
+        assertEquals("24", primera.get(0).getMensaje(), "La primera página empieza por la más nueva");
+        assertEquals(10, primera.size(), "La primera página debe estar completa");
+        assertEquals(5, tercera.size(), "La última página tiene las notificaciones restantes");
+        assertEquals("0", tercera.get(4).getMensaje(), "La última página termina en la más vieja");
+    }
+
+    @Test
+    void testDesbordeADisco(@TempDir Path directorio) throws Exception {
+        // Arrange
+        Path archivo = directorio.resolve("desborde.tsv");
+        HistorialNotificaciones historial = new HistorialNotificaciones(10, archivo);
+
+        // Act
+        for (int i = 0; i < 30; i++) {
+            historial.agregar(crear(i));
+        }
+        historial.cerrar();
+
+        // Assert: cerrar espera a que se escriba lo pendiente
+        List<String> lineas = Files.readAllLines(archivo, StandardCharsets.UTF_8);
+        assertEquals(20, lineas.size(), "Las 20 notificaciones reemplazadas deben ir al archivo");
+        assertTrue(lineas.get(0).endsWith("\t0"), "La primera línea debe ser la notificación 0");
+        assertEquals(20, historial.getDesbordadas(), "Deben contarse las escritas");
+    }
+
+    @Test
+    void testDesbordeQueNoSePuedeEscribirNoCreceSinLimite(@TempDir Path directorio) {
+        // Arrange: un directorio no se puede abrir como archivo, así que nada se escribe
+        HistorialNotificaciones historial = new HistorialNotificaciones(10, directorio);
+
+        int reemplazadas = HistorialNotificaciones.MINIMO_PENDIENTES_DESBORDE + 20;
+
+        // Act
+        for (int i = 0; i < 10 + reemplazadas; i++) {
+            historial.agregar(crear(i));
+        }
+        historial.cerrar();
+
+        // Assert
+        assertEquals(0, historial.getDesbordadas(), "No debe escribirse nada");
+        assertEquals(20, historial.getDesbordesPerdidos(),
+                "Las que no entran en la cola de escritura deben contarse como perdidas");
+    }
+
+    @Test
+    void testAgregadosConcurrentes() throws InterruptedException {
+        // Arrange
+        HistorialNotificaciones historial = new HistorialNotificaciones(1000);
+        List<Thread> hilos = new ArrayList<>();
+        for (int h = 0; h < 4; h++) {
+            hilos.add(new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    historial.agregar(crear(i));
+                }
+            }));
+        }
+
+        // Act
+        hilos.forEach(Thread::start);
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        // Assert
+        assertEquals(40_000, historial.getTotalRegistradas(), "No se deben perder registros");
+        assertEquals(1000, historial.aLista().size(), "El buffer debe quedar lleno");
+    }
+
+    @Test
+    void testConsultasPorIndice() {
+        // Arrange
+        HistorialNotificaciones historial = new HistorialNotificaciones(100);
+        Usuario otro = new Usuario("Otro", "User", 999, "otro@example.com", "555000000");
+        Notificacion vieja = new Notificacion("vieja", otro, Notificacion.TipoNotificacion.VENCIMIENTO,
+                Notificacion.NivelUrgencia.WARNING);
+        for (int i = 0; i < 10; i++) {
+            historial.agregar(crear(i));
+        }
+        historial.agregar(vieja);
+
+        // Act
+        List<Notificacion> deOtro = historial.obtenerPorDestinatario(otro);
+        List<Notificacion> deUsuario = historial.obtenerPorDestinatario(usuario);
+        List<Notificacion> vencimientos = historial.obtenerPorTipo(Notificacion.TipoNotificacion.VENCIMIENTO);
+        List<Notificacion> advertencias = historial.obtenerPorNivelUrgencia(Notificacion.NivelUrgencia.WARNING);
+        List<Notificacion> enRango = historial.obtenerEntre(vieja.getFechaCreacion(), vieja.getFechaCreacion());
+        List<Notificacion> recientes = historial.obtenerRecientes(3);
+
+        // Assert
+        assertEquals(List.of(vieja), deOtro, "El índice por destinatario debe separar a los usuarios");
+        assertEquals(10, deUsuario.size(), "El usuario debe tener sus 10 notificaciones");
+        assertEquals("9", deUsuario.get(0).getMensaje(), "Los resultados van de la más nueva a la más vieja");
+        assertEquals(List.of(vieja), vencimientos, "El índice por tipo debe filtrar por tipo");
+        assertEquals(List.of(vieja), advertencias, "El índice por nivel debe filtrar por nivel");
+        assertTrue(enRango.contains(vieja), "El rango de fechas incluye sus extremos");
+        assertEquals(3, recientes.size(), "Se deben devolver las 3 más recientes");
+        assertEquals("9", recientes.get(0).getMensaje(), "El orden es por fecha de creación, no de registro");
+        assertFalse(recientes.contains(vieja), "La notificación creada antes no está entre las recientes");
+    }
+
+    @Test
+    void testIndicesDescartanReemplazadas() {
+        // Arrange
+        HistorialNotificaciones historial = new HistorialNotificaciones(10);
+
+        // Act
+        for (int i = 0; i < 1000; i++) {
+            historial.agregar(crear(i));
+        }
+
+        // Assert
+        List<Notificacion> deUsuario = historial.obtenerPorDestinatario(usuario);
+        assertEquals(10, deUsuario.size(), "Solo se devuelven las notificaciones en memoria");
+        assertEquals("999", deUsuario.get(0).getMensaje(), "La primera debe ser la más nueva");
+    }
+
+    @Test
+    void testIndicesDeDestinatariosInactivosSeEliminan() {
+        // Arrange: una ráfaga a muchos usuarios que después no reciben más notificaciones
+        HistorialNotificaciones historial = new HistorialNotificaciones(10);
+        for (int i = 0; i < 100; i++) {
+            Usuario otro = new Usuario("Otro", "Usuario", i, "otro" + i + "@example.com", "555000000");
+            historial.agregar(new Notificacion("ráfaga", otro, Notificacion.TipoNotificacion.SISTEMA));
+        }
+
+        // Act: el buffer da varias vueltas con notificaciones de un solo usuario
+        for (int i = 0; i < 30; i++) {
+            historial.agregar(crear(i));
+        }
+
+        // Assert
+        assertEquals(1, historial.getDestinatariosIndexados(),
+                "Solo debe quedar el índice del destinatario con notificaciones en memoria");
+        assertEquals(10, historial.obtenerPorDestinatario(usuario).size(), "Sus notificaciones siguen indexadas");
+    }
+
+    private Notificacion crear(int numero) {
+        return new Notificacion(String.valueOf(numero), usuario, Notificacion.TipoNotificacion.SISTEMA);
+    }
+}
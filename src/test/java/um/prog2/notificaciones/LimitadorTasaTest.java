@@ -0,0 +1,79 @@
+package um.prog2.notificaciones;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del limitador de tasa tipo token bucket.
+ */
+public class LimitadorTasaTest {
+
+    @Test
+    void testConcedeLaRafagaYLuegoPideEsperar() {
+        // Arrange
+        LimitadorTasa limitador = new LimitadorTasa(10, 3);
+
+        // Act
+        long primero = limitador.intentarAdquirir();
+        long segundo = limitador.intentarAdquirir();
+        long tercero = limitador.intentarAdquirir();
+        long cuarto = limitador.intentarAdquirir();
+
+        // Assert
+        assertEquals(0, primero, "El primer permiso de la ráfaga debe concederse");
+        assertEquals(0, segundo, "El segundo permiso de la ráfaga debe concederse");
+        assertEquals(0, tercero, "El tercer permiso de la ráfaga debe concederse");
+        assertTrue(cuarto > 0 && cuarto <= TimeUnit.MILLISECONDS.toNanos(100),
+                "Pasada la ráfaga debe esperarse como mucho un intervalo: " + cuarto);
+        assertFalse(limitador.estaLleno(), "Con permisos tomados el balde no está lleno");
+    }
+
+    @Test
+    void testReservarDaTurnosSucesivosYNoDejaAdelantarse() {
+        // Arrange
+        LimitadorTasa limitador = new LimitadorTasa(10, 1);
+        limitador.intentarAdquirir();
+
+        // Act
+        long primerTurno = limitador.reservar();
+        long segundoTurno = limitador.reservar();
+        long posterior = limitador.intentarAdquirir();
+
+        // Assert
+        assertTrue(primerTurno > 0, "Sin permisos, reservar debe devolver la espera hasta el turno");
+        assertTrue(segundoTurno - primerTurno >= TimeUnit.MILLISECONDS.toNanos(99),
+                "Cada reserva debe quedar un intervalo después de la anterior: " + (segundoTurno - primerTurno));
+        assertTrue(posterior >= segundoTurno - TimeUnit.MILLISECONDS.toNanos(1),
+                "Un pedido posterior no debe obtener un permiso antes de los turnos reservados: " + posterior);
+    }
+
+    @Test
+    void testNoConcedeMasQueLaRafagaEntreHilosConcurrentes() throws InterruptedException {
+        // Arrange
+        LimitadorTasa limitador = new LimitadorTasa(0.001, 50);
+        AtomicInteger concedidos = new AtomicInteger();
+        ExecutorService hilos = Executors.newFixedThreadPool(8);
+
+        // Act
+        for (int i = 0; i < 8; i++) {
+            hilos.submit(() -> {
+                for (int j = 0; j < 100; j++) {
+                    if (limitador.intentarAdquirir() == 0) {
+                        concedidos.incrementAndGet();
+                    }
+                }
+            });
+        }
+        hilos.shutdown();
+        assertTrue(hilos.awaitTermination(10, TimeUnit.SECONDS), "Los hilos deben terminar");
+
+        // Assert
+        assertEquals(50, concedidos.get(), "Solo deben concederse los permisos de la ráfaga");
+    }
+}
@@ -0,0 +1,106 @@
+package um.prog2.notificaciones;
+
+import org.junit.jupiter.api.Test;
+import um.prog2.Enums.EstadoRecurso;
+import um.prog2.recursoDigital.Libro;
+import um.prog2.usuario.Usuario;
+
+import java.lang.management.ManagementFactory;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Pruebas de las plantillas de mensajes y su armado diferido.
+ */
+public class PlantillaMensajeTest {
+    private final Usuario usuario = new Usuario("Test", "User", 12345, "test@example.com", "555123456");
+    private final Libro libro = new Libro(EstadoRecurso.DISPONIBLE, "Autor", "Título", "L001");
+    private final LocalDateTime devolucion = LocalDateTime.of(2024, 5, 17, 18, 30);
+
+    @Test
+    void testArmaElMismoTextoQueElFormatoAnterior() {
+        // Arrange
+        String esperado = String.format(
+            "⚠️ ALERTA: Su préstamo del recurso '%s' vence MAÑANA (%s). " +
+            "Responda con 'RENOVAR %s' para extender el préstamo.",
+            "L001", devolucion.format(DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm")), "P-1");
+
+        // Act
+        String mensaje = PlantillaMensaje.PRESTAMO_VENCE_MANANA.renderizar("L001", devolucion, "P-1");
+        String desdeTexto = PlantillaMensaje.PRESTAMO_VENCE_MANANA.renderizar(
+                (Object[]) PlantillaMensaje.PRESTAMO_VENCE_MANANA.argumentosComoTexto(
+                        new Object[]{"L001", devolucion, "P-1"}));
+
+        // Assert
+        assertEquals(esperado, mensaje, "La plantilla debe producir el mismo mensaje");
+        assertEquals(esperado, desdeTexto, "Los argumentos guardados como texto deben producir el mismo mensaje");
+    }
+
+    @Test
+    void testArmaElMensajeUnaVezPorCanal() {
+        // Arrange
+        Notificacion notificacion = new NotificacionPrestamo(PlantillaMensaje.PRESTAMO_VENCE_HOY,
+                new Object[]{"L001", devolucion, "P-1"}, usuario, Notificacion.TipoNotificacion.VENCIMIENTO,
+                libro, "P-1", Notificacion.NivelUrgencia.WARNING);
+
+        // Act
+        String email = notificacion.getMensaje(ConfiguracionNotificaciones.CanalNotificacion.EMAIL);
+        String sms = notificacion.getMensaje(ConfiguracionNotificaciones.CanalNotificacion.SMS);
+
+        // Assert
+        assertSame(email, notificacion.getMensaje(), "Email usa el texto general ya armado");
+        assertSame(sms, notificacion.getMensaje(ConfiguracionNotificaciones.CanalNotificacion.SMS),
+                "El texto de SMS debe armarse una sola vez");
+        assertNotEquals(email, sms, "SMS debe usar su texto corto");
+        assertTrue(sms.length() < email.length(), "El texto de SMS debe ser más corto");
+    }
+
+    @Test
+    void testLasNotificacionesSinEntregarAsignanMenosMemoria() {
+        // Arrange
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "La JVM no informa la memoria asignada por hilo");
+        com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(hilos.isThreadAllocatedMemoryEnabled(), "La medición de memoria asignada está deshabilitada");
+        DateTimeFormatter formato = DateTimeFormatter.ofPattern("dd/MM/yyyy HH:mm");
+        int cantidad = 20_000;
+        Runnable inmediatas = () -> {
+            for (int i = 0; i < cantidad; i++) {
+                String mensaje = String.format(
+                    "⚠️ ALERTA: Su préstamo del recurso '%s' vence MAÑANA (%s). " +
+                    "Responda con 'RENOVAR %s' para extender el préstamo.",
+                    libro.getIdentificador(), devolucion.format(formato), "P-1");
+                new NotificacionPrestamo(mensaje, usuario, Notificacion.TipoNotificacion.VENCIMIENTO, libro, "P-1");
+            }
+        };
+        Runnable diferidas = () -> {
+            for (int i = 0; i < cantidad; i++) {
+                new NotificacionPrestamo(PlantillaMensaje.PRESTAMO_VENCE_MANANA,
+                        new Object[]{libro.getIdentificador(), devolucion, "P-1"}, usuario,
+                        Notificacion.TipoNotificacion.VENCIMIENTO, libro, "P-1", Notificacion.NivelUrgencia.INFO);
+            }
+        };
+        inmediatas.run();
+        diferidas.run();
+
+        // Act
+        long bytesInmediatas = medirAsignacion(hilos, inmediatas) / cantidad;
+        long bytesDiferidas = medirAsignacion(hilos, diferidas) / cantidad;
+
+        // Assert
+        System.out.println("[NOTIFICACIONES] Bytes asignados por notificación: inmediata=" + bytesInmediatas +
+                ", diferida=" + bytesDiferidas);
+        assertTrue(bytesDiferidas * 4 < bytesInmediatas,
+                "Sin armar el mensaje debe asignarse mucha menos memoria: " + bytesDiferidas + " vs " + bytesInmediatas);
+    }
+
+    private static long medirAsignacion(com.sun.management.ThreadMXBean hilos, Runnable tarea) {
+        long id = Thread.currentThread().threadId();
+        long antes = hilos.getThreadAllocatedBytes(id);
+        tarea.run();
+        return hilos.getThreadAllocatedBytes(id) - antes;
+    }
+}
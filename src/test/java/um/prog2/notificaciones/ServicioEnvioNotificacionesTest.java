@@ -0,0 +1,386 @@
+package um.prog2.notificaciones;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import um.prog2.Enums.EstadoRecurso;
+import um.prog2.interfaces.ServicioNotificaciones;
+import um.prog2.recursoDigital.Libro;
+import um.prog2.usuario.Usuario;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del envío de notificaciones por lotes en colas separadas por canal.
+ */
+public class ServicioEnvioNotificacionesTest {
+    private ServicioEnvioNotificaciones servicio;
+    private Usuario usuario;
+
+    @BeforeEach
+    void setUp() {
+        servicio = new ServicioEnvioNotificaciones();
+        servicio.setMostrarEnConsola(false);
+        usuario = new Usuario("Test", "User", 12345, "test@example.com", "555123456");
+        servicio.inicializarPreferenciasUsuario(usuario);
+    }
+
+    @AfterEach
+    void tearDown() {
+        servicio.cerrar(Duration.ZERO);
+    }
+
+    @Test
+    void testEnvioPorLotesMejoraElRendimiento() throws InterruptedException {
+        // Arrange
+        int cantidad = 200;
+        GatewaySimulado individual = new GatewaySimulado(5);
+        GatewaySimulado porLotes = new GatewaySimulado(5);
+        servicio.registrarServicio(individual, 1, Duration.ZERO);
+        servicio.registrarServicio(porLotes, 50, Duration.ofMillis(20));
+
+        // Act
+        long inicio = System.nanoTime();
+        for (int i = 0; i < cantidad; i++) {
+            servicio.enviarNotificacion("Mensaje " + i, usuario);
+        }
+        esperarHasta(() -> porLotes.recibidas.get() == cantidad);
+        long duracionPorLotes = System.nanoTime() - inicio;
+        esperarHasta(() -> individual.recibidas.get() == cantidad);
+        long duracionIndividual = System.nanoTime() - inicio;
+
+        // Assert
+        assertEquals(cantidad, individual.llamadas.get(), "Sin lotes hay una llamada por notificación");
+        assertTrue(porLotes.llamadas.get() <= cantidad / 10,
+                "Con lotes debe haber muchas menos llamadas: " + porLotes.llamadas.get());
+        assertTrue(duracionPorLotes < duracionIndividual,
+                "El canal por lotes debe terminar antes que el individual");
+        assertEquals(porLotes.llamadas.get(), servicio.obtenerLotesEnviados(porLotes),
+                "Los lotes contados deben coincidir con las llamadas");
+    }
+
+    @Test
+    void testCanalLentoNoDemoraALosDemas() throws InterruptedException {
+        // Arrange
+        GatewaySimulado lento = new GatewaySimulado(2000);
+        GatewaySimulado rapido = new GatewaySimulado(0);
+        servicio.registrarServicio(lento, 1, Duration.ZERO);
+        servicio.registrarServicio(rapido, 10, Duration.ofMillis(10));
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            servicio.enviarNotificacion("Mensaje " + i, usuario);
+        }
+        esperarHasta(() -> rapido.recibidas.get() == 5);
+
+        // Assert
+        assertTrue(lento.recibidas.get() <= 1, "El canal lento todavía no debe haber terminado");
+        assertEquals(5, servicio.obtenerNotificacionesEnviadas(rapido), "El canal rápido debe enviar todo");
+    }
+
+    @Test
+    void testTrabajadoresParalelosRespetanElOrdenPorUsuario() throws InterruptedException {
+        // Arrange
+        ServicioEnvioNotificaciones paralelo = new ServicioEnvioNotificaciones(new ConfiguracionNotificaciones(), 4);
+        paralelo.setMostrarEnConsola(false);
+        List<Usuario> usuarios = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            Usuario destinatario = new Usuario("Usuario", "" + i, 1000 + i, "u" + i + "@example.com", "555" + i);
+            paralelo.inicializarPreferenciasUsuario(destinatario);
+            usuarios.add(destinatario);
+        }
+        Map<Integer, List<Integer>> recibidosPorUsuario = new ConcurrentHashMap<>();
+        AtomicInteger total = new AtomicInteger();
+        Set<String> hilos = ConcurrentHashMap.newKeySet();
+        paralelo.registrarServicio(new ServicioNotificaciones() {
+            @Override
+            public void enviarNotificacion(String mensaje, Usuario destinatario) {
+                hilos.add(Thread.currentThread().getName());
+                recibidosPorUsuario.computeIfAbsent(destinatario.getID(), k -> new ArrayList<>())
+                        .add(Integer.parseInt(mensaje));
+                total.incrementAndGet();
+            }
+        }, 16, Duration.ofMillis(5));
+
+        // Act
+        for (int secuencia = 0; secuencia < 200; secuencia++) {
+            for (Usuario destinatario : usuarios) {
+                paralelo.enviarNotificacion(String.valueOf(secuencia), destinatario);
+            }
+        }
+        esperarHasta(() -> total.get() == 200 * usuarios.size());
+        paralelo.cerrar();
+
+        // Assert
+        for (Usuario destinatario : usuarios) {
+            List<Integer> recibidos = recibidosPorUsuario.get(destinatario.getID());
+            assertEquals(200, recibidos.size(), "Cada usuario debe recibir todas sus notificaciones");
+            for (int i = 0; i < recibidos.size(); i++) {
+                assertEquals(i, recibidos.get(i), "Las notificaciones de un usuario deben llegar en orden");
+            }
+        }
+        assertTrue(hilos.size() > 1, "Los envíos deben repartirse entre varios hilos");
+    }
+
+    @Test
+    void testAgrupaNotificacionesIdenticasSobreUnRecurso() throws InterruptedException {
+        // Arrange
+        GatewaySimulado gateway = new GatewaySimulado(0);
+        servicio.registrarServicio(gateway, 10, Duration.ofMillis(5));
+        Libro libro = new Libro(EstadoRecurso.DISPONIBLE, "Autor", "Título", "L001");
+
+        // Act
+        for (int i = 0; i < 100; i++) {
+            servicio.enviarNotificacionPrestamo("Vence mañana", usuario, Notificacion.TipoNotificacion.VENCIMIENTO,
+                    libro, "P-1");
+        }
+        servicio.enviarNotificacionPrestamo("Vencido", usuario, Notificacion.TipoNotificacion.VENCIMIENTO,
+                libro, "P-1");
+        esperarHasta(() -> gateway.recibidas.get() == 2);
+        Thread.sleep(50);
+
+        // Assert
+        assertEquals(2, gateway.recibidas.get(), "Solo deben enviarse las notificaciones distintas");
+        assertEquals(99, servicio.getNotificacionesAgrupadas(), "Las repetidas deben contarse como agrupadas");
+    }
+
+    @Test
+    void testReintentaLosEnviosFallidosHastaEntregarlos() throws InterruptedException {
+        // Arrange
+        servicio.setPoliticaReintentos(new PoliticaReintentos(5, Duration.ofMillis(10), Duration.ofMillis(50)));
+        GatewayInestable gateway = new GatewayInestable(2);
+        servicio.registrarServicio(gateway, 10, Duration.ofMillis(5));
+
+        // Act
+        servicio.enviarNotificacion("Mensaje importante", usuario);
+        esperarHasta(() -> gateway.recibidas.get() == 1);
+
+        // Assert
+        assertEquals(3, gateway.llamadas.get(), "Debe haber dos intentos fallidos y uno exitoso");
+        assertEquals(2, servicio.obtenerReintentos(gateway), "Deben contarse los reintentos");
+        assertEquals(0, servicio.obtenerNotificacionesFallidas(gateway), "No debe haber mensajes fallidos");
+    }
+
+    @Test
+    void testLosFallidosDeUnUsuarioSeReintentanJuntosYEnOrden() throws InterruptedException {
+        // Arrange: la espera con jitter haría que cada una vuelva en otro momento
+        servicio.setPoliticaReintentos(new PoliticaReintentos(5, Duration.ofMillis(40), Duration.ofMillis(40)));
+        GatewayInestable gateway = new GatewayInestable(1);
+        servicio.registrarServicio(gateway, 10, Duration.ofMillis(50));
+        int cantidad = 8;
+
+        // Act
+        for (int i = 0; i < cantidad; i++) {
+            servicio.enviarNotificacion(String.valueOf(i), usuario);
+        }
+        esperarHasta(() -> gateway.recibidas.get() == cantidad);
+
+        // Assert
+        assertEquals(cantidad, servicio.obtenerReintentos(gateway), "Todo el lote fallido debe reintentarse");
+        for (int i = 0; i < cantidad; i++) {
+            assertEquals(String.valueOf(i), gateway.entregadas.get(i).getMensaje(),
+                    "Los reintentos de un usuario deben conservar su orden");
+        }
+    }
+
+    @Test
+    void testCanalCaidoNoDetieneLasEntregasYGuardaLosFallidos(@TempDir Path directorio) throws Exception {
+        // Arrange
+        AlmacenMensajesFallidos almacen = new AlmacenMensajesFallidos(directorio.resolve("fallidos.tsv"));
+        servicio.setAlmacenMensajesFallidos(almacen);
+        servicio.setPoliticaReintentos(new PoliticaReintentos(3, Duration.ofMillis(5), Duration.ofMillis(20)));
+        GatewayInestable caido = new GatewayInestable(Integer.MAX_VALUE);
+        GatewaySimulado sano = new GatewaySimulado(0);
+        servicio.registrarServicio(caido, 10, Duration.ofMillis(5));
+        servicio.registrarServicio(sano, 10, Duration.ofMillis(5));
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            servicio.enviarNotificacion("Mensaje " + i, usuario);
+        }
+        esperarHasta(() -> servicio.obtenerNotificacionesFallidas(caido) == 5);
+
+        // Assert
+        assertEquals(5, sano.recibidas.get(), "El canal sano debe recibir todo");
+        assertEquals(5, almacen.contarPorCanal(ConfiguracionNotificaciones.CanalNotificacion.CONSOLA),
+                "Los fallidos deben contarse por canal");
+        List<String> registros = new AlmacenMensajesFallidos(directorio.resolve("fallidos.tsv")).obtenerRegistros();
+        assertEquals(5, registros.size(), "Los fallidos deben persistir en el archivo");
+        assertTrue(registros.get(0).contains("\t3\t"), "Cada registro debe indicar los intentos realizados");
+    }
+
+    @Test
+    void testLimitesDeTasaDemoranSinDescartar() throws InterruptedException {
+        // Arrange
+        servicio.setLimiteCanal(ConfiguracionNotificaciones.CanalNotificacion.CONSOLA, 20, 5);
+        servicio.setLimitePorDestinatario(20, 5);
+        GatewaySimulado gateway = new GatewaySimulado(0);
+        servicio.registrarServicio(gateway, 10, Duration.ofMillis(5));
+
+        // Act
+        long inicio = System.nanoTime();
+        for (int i = 0; i < 15; i++) {
+            servicio.enviarNotificacion("Mensaje " + i, usuario);
+        }
+        esperarHasta(() -> gateway.recibidas.get() == 15);
+        long duracionMs = (System.nanoTime() - inicio) / 1_000_000;
+
+        // Assert
+        assertTrue(duracionMs >= 400, "A 20 por segundo, 10 notificaciones fuera de la ráfaga tardan 500 ms: " +
+                duracionMs);
+        assertTrue(servicio.getNotificacionesDiferidas() > 0, "Deben contarse las diferidas por destinatario");
+        assertEquals(15, servicio.getHistorialNotificaciones().size(), "Ninguna notificación debe descartarse");
+    }
+
+    @Test
+    void testLimitePorDestinatarioRespetaElOrdenDeCadaUsuario() throws InterruptedException {
+        // Arrange: un flujo sostenido que se mantiene por encima del límite
+        servicio.setLimitePorDestinatario(100, 1);
+        GatewaySimulado gateway = new GatewaySimulado(0);
+        servicio.registrarServicio(gateway, 1, Duration.ZERO);
+        int cantidad = 60;
+
+        // Act
+        for (int i = 0; i < cantidad; i++) {
+            servicio.enviarNotificacion(String.valueOf(i), usuario);
+            Thread.sleep(i % 3 == 0 ? 12 : 1);
+        }
+        esperarHasta(() -> gateway.recibidas.get() == cantidad);
+
+        // Assert
+        assertTrue(servicio.getNotificacionesDiferidas() > 0, "Parte de las notificaciones debe diferirse");
+        for (int i = 0; i < cantidad; i++) {
+            assertEquals(String.valueOf(i), gateway.entregadas.get(i).getMensaje(),
+                    "Las diferidas no deben ser adelantadas por las posteriores del mismo usuario");
+        }
+    }
+
+    @Test
+    void testResumenAgrupaLasInfoYNoDemoraLasUrgentes() throws InterruptedException {
+        // Arrange
+        ConfiguracionNotificaciones configuracion = servicio.getConfiguracionNotificaciones();
+        configuracion.habilitarResumen(usuario, ConfiguracionNotificaciones.CanalNotificacion.CONSOLA);
+        configuracion.setTamanioMaximoResumen(10);
+        configuracion.setIntervaloResumen(Duration.ofMillis(300));
+        GatewaySimulado gateway = new GatewaySimulado(0);
+        servicio.registrarServicio(gateway, 1, Duration.ZERO);
+
+        // Act
+        for (int i = 0; i < 25; i++) {
+            servicio.enviarNotificacion("Aviso " + i, usuario);
+        }
+        servicio.enviarNotificacionSistema("Cuenta bloqueada", usuario, Notificacion.TipoNotificacion.SISTEMA,
+                "Seguridad", Notificacion.NivelUrgencia.WARNING);
+        esperarHasta(() -> gateway.recibidas.get() == 3);
+        List<Notificacion> antesDelIntervalo = new ArrayList<>(gateway.entregadas);
+        esperarHasta(() -> gateway.recibidas.get() == 4);
+        Thread.sleep(50);
+
+        // Assert
+        assertEquals(4, gateway.llamadas.get(), "26 notificaciones deben llegar en 4 envíos");
+        assertEquals(25, servicio.obtenerNotificacionesResumidas(gateway), "Las INFO deben ir al resumen");
+        assertTrue(antesDelIntervalo.stream().anyMatch(n -> n.getMensaje().equals("Cuenta bloqueada")),
+                "La WARNING no debe esperar al intervalo del resumen");
+        NotificacionResumen ultimo = (NotificacionResumen) gateway.entregadas.get(3);
+        assertEquals(5, ultimo.getNotificaciones().size(), "El resto debe enviarse al vencer el intervalo");
+        assertTrue(ultimo.getMensaje().contains("- Aviso 24"), "El resumen debe listar cada mensaje");
+    }
+
+    @Test
+    void testAlertasUrgentesNoEsperanDetrasDeLasInfo() throws InterruptedException {
+        // Arrange
+        GatewaySimulado gateway = new GatewaySimulado(2);
+        servicio.registrarServicio(gateway, 1, Duration.ZERO);
+        for (int i = 0; i < 200; i++) {
+            servicio.enviarNotificacion("Recordatorio " + i, usuario);
+        }
+
+        // Act
+        servicio.enviarNotificacionSistema("Préstamo VENCIDO", usuario, Notificacion.TipoNotificacion.VENCIMIENTO,
+                "Préstamos", Notificacion.NivelUrgencia.ERROR);
+        esperarHasta(() -> gateway.entregadas.stream().anyMatch(n -> n.getMensaje().equals("Préstamo VENCIDO")));
+
+        // Assert
+        assertTrue(gateway.recibidas.get() < 100, "La alerta ERROR debe adelantarse a la cola de INFO: " +
+                gateway.recibidas.get());
+        assertTrue(servicio.obtenerProfundidadCarril(gateway, Notificacion.NivelUrgencia.INFO) > 0,
+                "Las INFO deben seguir esperando en su carril");
+        assertEquals(0, servicio.obtenerProfundidadCarril(gateway, Notificacion.NivelUrgencia.ERROR),
+                "El carril ERROR debe quedar vacío");
+        assertTrue(servicio.obtenerLatenciaPromedioCarril(gateway, Notificacion.NivelUrgencia.ERROR)
+                        .compareTo(servicio.obtenerLatenciaPromedioCarril(gateway, Notificacion.NivelUrgencia.INFO)) < 0,
+                "La espera de ERROR debe ser menor que la de INFO");
+    }
+
+    private void esperarHasta(BooleanSupplier condicion) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 10_000;
+        while (!condicion.getAsBoolean() && System.currentTimeMillis() < limite) {
+            Thread.sleep(5);
+        }
+        assertTrue(condicion.getAsBoolean(), "La condición no se cumplió a tiempo");
+    }
+
+    /**
+     * Gateway con una latencia fija por llamada, sea de una notificación o de un lote.
+     */
+    private static class GatewaySimulado implements ServicioNotificaciones {
+        private final long latenciaMs;
+        final AtomicInteger llamadas = new AtomicInteger();
+        final AtomicInteger recibidas = new AtomicInteger();
+        final List<Notificacion> entregadas = new CopyOnWriteArrayList<>();
+
+        GatewaySimulado(long latenciaMs) {
+            this.latenciaMs = latenciaMs;
+        }
+
+        @Override
+        public void enviarNotificacion(String mensaje, Usuario usuario) {
+            enviarLote(List.of(new Notificacion(mensaje, usuario, Notificacion.TipoNotificacion.SISTEMA)));
+        }
+
+        @Override
+        public void enviarLote(List<Notificacion> lote) {
+            llamadas.incrementAndGet();
+            try {
+                Thread.sleep(latenciaMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            entregadas.addAll(lote);
+            recibidas.addAndGet(lote.size());
+        }
+    }
+
+    /**
+     * Gateway que falla en sus primeras llamadas y después entrega normalmente.
+     */
+    private static class GatewayInestable extends GatewaySimulado {
+        private final AtomicInteger fallosRestantes;
+
+        GatewayInestable(int fallos) {
+            super(0);
+            this.fallosRestantes = new AtomicInteger(fallos);
+        }
+
+        @Override
+        public void enviarLote(List<Notificacion> lote) {
+            if (fallosRestantes.getAndDecrement() > 0) {
+                llamadas.incrementAndGet();
+                throw new IllegalStateException("Gateway no disponible");
+            }
+            super.enviarLote(lote);
+        }
+    }
+}
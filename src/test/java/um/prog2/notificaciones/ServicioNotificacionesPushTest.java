@@ -0,0 +1,205 @@
+package um.prog2.notificaciones;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import um.prog2.usuario.Usuario;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del canal PUSH con clientes SSE sobre sockets.
+ */
+public class ServicioNotificacionesPushTest {
+    private static final byte[] SECRETO = "secreto-de-prueba".getBytes(StandardCharsets.UTF_8);
+
+    private ServicioNotificacionesPush push;
+    private List<Socket> clientes;
+    private Usuario usuario;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        push = new ServicioNotificacionesPush(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16,
+                ServicioNotificacionesPush.verificadorConSecreto(SECRETO));
+        clientes = new ArrayList<>();
+        usuario = new Usuario("Test", "User", 12345, "test@example.com", "555123456");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (Socket cliente : clientes) {
+            cliente.close();
+        }
+        push.cerrar();
+    }
+
+    @Test
+    void testEntregaLasNotificacionesDelUsuarioConectado() throws Exception {
+        // Arrange
+        ServicioEnvioNotificaciones servicio = new ServicioEnvioNotificaciones();
+        servicio.setMostrarEnConsola(false);
+        servicio.inicializarPreferenciasUsuario(usuario);
+        servicio.registrarServicio(push);
+        BufferedReader eventos = leer(conectar(usuario.getID()));
+        Usuario otro = new Usuario("Otro", "User", 777, "otro@example.com", "555777777");
+        servicio.inicializarPreferenciasUsuario(otro);
+
+        // Act
+        servicio.enviarNotificacionSistema("Préstamo VENCIDO\nDevuelva el libro", usuario,
+                Notificacion.TipoNotificacion.VENCIMIENTO, "Préstamos", Notificacion.NivelUrgencia.ERROR);
+        servicio.enviarNotificacion("Sin conexión", otro);
+
+        // Assert
+        assertEquals("id: 1", esperarLinea(eventos, "id: "), "Cada evento debe tener su id");
+        assertEquals("event: error", eventos.readLine(), "El evento debe indicar el nivel");
+        assertEquals("data: Préstamo VENCIDO", eventos.readLine(), "Cada línea del mensaje va en un data");
+        assertEquals("data: Devuelva el libro", eventos.readLine(), "Cada línea del mensaje va en un data");
+        servicio.cerrar(Duration.ofSeconds(1));
+        assertEquals(1, push.getNotificacionesSinConexion(), "Sin conexión la notificación se descarta");
+    }
+
+    @Test
+    void testClientesLentosNoDemoranAlDespachadorNiALosDemas() throws Exception {
+        // Arrange: más clientes que no leen que núcleos tenga cualquier equipo de pruebas
+        int lentos = 16;
+        List<Notificacion> lote = new ArrayList<>();
+        String texto = "x".repeat(8 * 1024);
+        for (int i = 0; i < lentos; i++) {
+            Usuario lento = new Usuario("Lento", "User", 900 + i, "lento@example.com", "555999999");
+            conectar(lento.getID());
+            for (int j = 0; j < 1_000; j++) {
+                lote.add(new Notificacion(texto, lento, Notificacion.TipoNotificacion.SISTEMA));
+            }
+        }
+        BufferedReader rapido = leer(conectar(usuario.getID()));
+        esperarConexiones(lentos + 1);
+
+        // Act
+        // Si encolar esperara a los clientes, que nunca leen, no terminaría nunca
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> push.enviarLote(lote),
+                "Encolar no debe esperar a los clientes lentos");
+        push.enviarNotificacion("Para el rápido", usuario);
+
+        // Assert
+        assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> assertEquals("data: Para el rápido", esperarLinea(rapido, "data: "),
+                        "El cliente rápido debe recibir su evento"));
+        assertTrue(push.getEventosDescartados() > 0, "La cola de los clientes lentos debe descartar lo más antiguo");
+    }
+
+    @Test
+    void testCierraLaConexionDeUnClienteQueNoLeeDentroDelPlazo() throws Exception {
+        // Arrange
+        push.cerrar();
+        push = new ServicioNotificacionesPush(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 16,
+                ServicioNotificacionesPush.verificadorConSecreto(SECRETO), 200);
+        Usuario lento = new Usuario("Lento", "User", 999, "lento@example.com", "555999999");
+        conectar(lento.getID());
+        esperarConexiones(1);
+        String texto = "x".repeat(64 * 1024);
+
+        // Act: se le envía más de lo que entra en los búferes del socket
+        for (int i = 0; i < 500 && push.getConexionesLentasCerradas() == 0; i++) {
+            push.enviarNotificacion(texto, lento);
+            Thread.sleep(2);
+        }
+        esperarConexiones(0);
+
+        // Assert
+        assertEquals(1, push.getConexionesLentasCerradas(), "La conexión trabada debe cerrarse");
+        assertEquals(0, push.getConexiones(), "No deben quedar conexiones abiertas");
+    }
+
+    @Test
+    void testMantieneMuchasConexionesInactivas() throws Exception {
+        // Arrange
+        int cantidad = 1_000;
+
+        // Act
+        for (int i = 0; i < cantidad; i++) {
+            conectar(10_000 + i);
+        }
+        esperarConexiones(cantidad);
+
+        // Assert
+        assertEquals(cantidad, push.getConexiones(), "Todas las conexiones deben quedar abiertas");
+        push.enviarNotificacion("Hola", new Usuario("U", "", 10_500, "u@example.com", "5550"));
+        BufferedReader eventos = leer(clientes.get(500));
+        assertEquals("data: Hola", esperarLinea(eventos, "data: "), "Debe llegar a la conexión de su usuario");
+    }
+
+    @Test
+    void testRechazaLasConexionesSinUnTokenDelUsuario() throws Exception {
+        // Arrange
+        String ajeno = ServicioNotificacionesPush.generarToken(SECRETO, 777);
+
+        // Act
+        String sinToken = leerEstado(conectar("/eventos?usuario=" + usuario.getID(), null));
+        String conTokenAjeno = leerEstado(conectar("/eventos?usuario=" + usuario.getID(), ajeno));
+        BufferedReader porParametro = leer(conectar("/eventos?usuario=" + usuario.getID() + "&token=" +
+                ServicioNotificacionesPush.generarToken(SECRETO, usuario.getID()), null));
+        push.enviarNotificacion("Hola", usuario);
+
+        // Assert
+        assertTrue(sinToken.contains(" 401"), "Sin token debe responder 401: " + sinToken);
+        assertTrue(conTokenAjeno.contains(" 403"), "Con el token de otro usuario debe responder 403: " + conTokenAjeno);
+        assertEquals("data: Hola", esperarLinea(porParametro, "data: "), "El token también puede ir en la consulta");
+    }
+
+    private Socket conectar(int idUsuario) throws IOException {
+        return conectar("/eventos?usuario=" + idUsuario, ServicioNotificacionesPush.generarToken(SECRETO, idUsuario));
+    }
+
+    private Socket conectar(String ruta, String token) throws IOException {
+        Socket cliente = new Socket(InetAddress.getLoopbackAddress(), push.getPuerto());
+        cliente.setSoTimeout(10_000);
+        cliente.setReceiveBufferSize(4096);
+        clientes.add(cliente);
+        OutputStream salida = cliente.getOutputStream();
+        salida.write(("GET " + ruta + " HTTP/1.1\r\nHost: localhost\r\n" +
+                (token != null ? "Authorization: Bearer " + token + "\r\n" : "") +
+                "Accept: text/event-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        salida.flush();
+        return cliente;
+    }
+
+    private void esperarConexiones(int cantidad) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 10_000;
+        while (push.getConexiones() != cantidad && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static String leerEstado(Socket cliente) throws IOException {
+        return new BufferedReader(new InputStreamReader(cliente.getInputStream(), StandardCharsets.US_ASCII)).readLine();
+    }
+
+    private BufferedReader leer(Socket cliente) throws IOException {
+        BufferedReader lector = new BufferedReader(new InputStreamReader(cliente.getInputStream(), StandardCharsets.UTF_8));
+        esperarLinea(lector, ": conectado");
+        return lector;
+    }
+
+    private static String esperarLinea(BufferedReader lector, String prefijo) throws IOException {
+        String linea;
+        while ((linea = lector.readLine()) != null) {
+            if (linea.startsWith(prefijo)) {
+                return linea;
+            }
+        }
+        fail("La conexión se cerró antes de recibir " + prefijo);
+        return null;
+    }
+}
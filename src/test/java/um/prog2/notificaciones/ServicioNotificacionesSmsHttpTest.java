@@ -0,0 +1,154 @@
+package um.prog2.notificaciones;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import um.prog2.excepciones.EnvioParcialException;
+import um.prog2.usuario.Usuario;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del canal de SMS por HTTP contra un gateway simulado.
+ */
+public class ServicioNotificacionesSmsHttpTest {
+    private ServidorSmsSimulado gateway;
+    private Usuario usuario;
+
+    @BeforeEach
+    void setUp() {
+        usuario = new Usuario("Test", "User", 12345, "test@example.com", "555123456");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (gateway != null) {
+            gateway.close();
+        }
+    }
+
+    @Test
+    void testPedidosConcurrentesYMasivosEntreganTodoElLote() throws IOException {
+        // Arrange
+        gateway = new ServidorSmsSimulado(10, true);
+        int cantidad = 100;
+        ServicioNotificacionesSmsHttp secuencial = new ServicioNotificacionesSmsHttp(
+                gateway.getEndpointIndividual(), null, 1, 1, null);
+        ServicioNotificacionesSmsHttp concurrente = new ServicioNotificacionesSmsHttp(
+                gateway.getEndpointIndividual(), null, 1, 8, null);
+        ServicioNotificacionesSmsHttp masivo = new ServicioNotificacionesSmsHttp(
+                gateway.getEndpointIndividual(), gateway.getEndpointMasivo(), 25, 8, "clave");
+
+        // Act
+        long duracionSecuencial = medir(secuencial, crearLote("secuencial", cantidad));
+        long duracionConcurrente = medir(concurrente, crearLote("concurrente", cantidad));
+        long duracionMasivo = medir(masivo, crearLote("masivo", cantidad));
+
+        // Assert
+        System.out.printf("SMS HTTP: %.0f mensajes/s secuencial, %.0f concurrente, %.0f masivo%n",
+                cantidad / (duracionSecuencial / 1e9), cantidad / (duracionConcurrente / 1e9),
+                cantidad / (duracionMasivo / 1e9));
+        assertEquals(3 * cantidad, gateway.getLlegadas().size(), "Todos los mensajes deben llegar una vez");
+        assertTrue(gateway.getMaximoSimultaneos() <= 8, "No debe superarse el máximo de pedidos en vuelo");
+        assertEquals(4, masivo.getPedidos(), "El envío masivo debe usar un pedido cada 25 mensajes");
+    }
+
+    @Test
+    void testSinEndpointMasivoEnviaDeAUno() throws IOException {
+        // Arrange
+        gateway = new ServidorSmsSimulado(0, false);
+        ServicioNotificacionesSmsHttp canal = new ServicioNotificacionesSmsHttp(
+                gateway.getEndpointIndividual(), gateway.getEndpointMasivo(), 10, 4, null);
+
+        // Act
+        canal.enviarLote(crearLote("aviso", 20));
+
+        // Assert
+        assertFalse(canal.isEnvioMasivo(), "Debe dejar de usar el endpoint masivo");
+        assertEquals(20, gateway.getLlegadas().size(), "Todos los mensajes deben llegar");
+    }
+
+    @Test
+    void testPedidoQueNoSePuedeArmarNoRetieneElPermiso() {
+        // Arrange: el cliente HTTP no acepta el esquema, así que el pedido falla antes de salir
+        ServicioNotificacionesSmsHttp canal = new ServicioNotificacionesSmsHttp(
+                URI.create("ftp://localhost/sms"), null, 1, 1, null);
+
+        // Act
+        EnvioParcialException error = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> assertThrows(EnvioParcialException.class, () -> canal.enviarLote(crearLote("aviso", 3))));
+
+        // Assert
+        assertEquals(3, error.getNoEnviadas().size(), "Todas las partes deben quedar sin enviar");
+        assertEquals(3, canal.getPedidosFallidos(), "Cada pedido debe contarse como fallido");
+    }
+
+    @Test
+    void testLatenciaDeColaConFallosInyectados() throws Exception {
+        // Arrange
+        gateway = new ServidorSmsSimulado(5, true);
+        gateway.setFallarCada(4);
+        ServicioNotificacionesSmsHttp canal = new ServicioNotificacionesSmsHttp(
+                gateway.getEndpointIndividual(), gateway.getEndpointMasivo(), 10, 8, null);
+        ServicioEnvioNotificaciones servicio = new ServicioEnvioNotificaciones();
+        servicio.setMostrarEnConsola(false);
+        servicio.setPoliticaReintentos(new PoliticaReintentos(10, Duration.ofMillis(10), Duration.ofMillis(100)));
+        servicio.registrarServicio(canal, 10, Duration.ofMillis(5));
+        int cantidad = 300;
+        List<Usuario> usuarios = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            Usuario destinatario = new Usuario("Usuario", "" + i, 1000 + i, "u" + i + "@example.com", "555" + i);
+            servicio.inicializarPreferenciasUsuario(destinatario);
+            usuarios.add(destinatario);
+        }
+
+        // Act
+        long[] envios = new long[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            envios[i] = System.nanoTime();
+            servicio.enviarNotificacion("Aviso " + i, usuarios.get(i % usuarios.size()));
+        }
+        long limite = System.currentTimeMillis() + 15_000;
+        while (gateway.getLlegadas().size() < cantidad && System.currentTimeMillis() < limite) {
+            Thread.sleep(5);
+        }
+        servicio.cerrar(Duration.ZERO);
+
+        // Assert
+        Map<String, Long> llegadas = gateway.getLlegadas();
+        assertEquals(cantidad, llegadas.size(), "Todos los mensajes deben llegar una sola vez");
+        long[] latencias = new long[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            latencias[i] = (llegadas.get("Aviso " + i) - envios[i]) / 1_000_000;
+        }
+        Arrays.sort(latencias);
+        long p50 = latencias[cantidad / 2];
+        long p99 = latencias[cantidad * 99 / 100];
+        System.out.printf("SMS HTTP con 25%% de pedidos fallidos: p50 %d ms, p99 %d ms, %d reintentos%n",
+                p50, p99, servicio.obtenerReintentos(canal));
+        assertTrue(servicio.obtenerReintentos(canal) > 0, "Los pedidos fallidos deben reintentarse");
+        assertEquals(0, servicio.obtenerNotificacionesFallidas(canal), "Ningún mensaje debe agotar sus reintentos");
+    }
+
+    private long medir(ServicioNotificacionesSmsHttp canal, List<Notificacion> lote) {
+        long inicio = System.nanoTime();
+        canal.enviarLote(lote);
+        return System.nanoTime() - inicio;
+    }
+
+    private List<Notificacion> crearLote(String prefijo, int cantidad) {
+        List<Notificacion> lote = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            lote.add(new Notificacion(prefijo + " \"" + i + "\"", usuario, Notificacion.TipoNotificacion.SISTEMA));
+        }
+        return lote;
+    }
+}
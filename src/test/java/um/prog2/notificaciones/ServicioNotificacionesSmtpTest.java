@@ -0,0 +1,149 @@
+package um.prog2.notificaciones;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import um.prog2.usuario.Usuario;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Pruebas del canal SMTP contra un servidor simulado en el mismo proceso.
+ */
+public class ServicioNotificacionesSmtpTest {
+    private ServidorSmtpSimulado servidor;
+    private Usuario usuario;
+
+    @BeforeEach
+    void setUp() {
+        usuario = new Usuario("Test", "User", 12345, "test@example.com", "555123456");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (servidor != null) {
+            servidor.close();
+        }
+    }
+
+    @Test
+    void testConexionPersistenteConPipeliningSuperaAUnaConexionPorMensaje() throws IOException {
+        // Arrange
+        servidor = new ServidorSmtpSimulado(2, true);
+        int cantidad = 100;
+        List<Notificacion> lote = crearLote(cantidad);
+
+        // Act
+        long inicio = System.nanoTime();
+        for (Notificacion notificacion : lote) {
+            ServicioNotificacionesSmtp porMensaje = crearCanal(1);
+            porMensaje.enviarLote(List.of(notificacion));
+            porMensaje.cerrar();
+        }
+        long duracionPorMensaje = System.nanoTime() - inicio;
+
+        ServicioNotificacionesSmtp persistente = crearCanal(2);
+        inicio = System.nanoTime();
+        persistente.enviarLote(lote);
+        long duracionPersistente = System.nanoTime() - inicio;
+        persistente.cerrar();
+
+        // Assert
+        double porSegundoPorMensaje = cantidad / (duracionPorMensaje / 1e9);
+        double porSegundoPersistente = cantidad / (duracionPersistente / 1e9);
+        System.out.printf("SMTP: %.0f mensajes/s con una conexión por mensaje, %.0f mensajes/s con conexión " +
+                "persistente y pipelining%n", porSegundoPorMensaje, porSegundoPersistente);
+        assertEquals(2 * cantidad, servidor.getMensajes().size(), "Todos los mensajes deben llegar");
+        assertEquals(1, persistente.getConexionesAbiertas(), "El lote debe usar una sola sesión");
+        assertTrue(porSegundoPersistente > 3 * porSegundoPorMensaje,
+                "La conexión persistente debe ser mucho más rápida");
+    }
+
+    @Test
+    void testReconectaYSigueDesdeElPrimerMensajeSinConfirmar() throws IOException {
+        // Arrange
+        servidor = new ServidorSmtpSimulado(0, true);
+        servidor.setMensajesPorConexion(7);
+        ServicioNotificacionesSmtp canal = crearCanal(1);
+
+        // Act
+        canal.enviarLote(crearLote(20));
+        canal.cerrar();
+
+        // Assert
+        assertEquals(20, servidor.getMensajes().size(), "Cada mensaje debe llegar una sola vez");
+        assertEquals(20, new HashSet<>(servidor.getMensajes()).size(), "No debe haber mensajes repetidos");
+        assertEquals(2, canal.getReconexiones(), "Debe reconectarse cada vez que el servidor corta");
+    }
+
+    @Test
+    void testConexionesMuertasDelPoolNoHacenFallarElLote() throws Exception {
+        // Arrange: dos lotes simultáneos dejan dos conexiones en el pool y el servidor las corta
+        servidor = new ServidorSmtpSimulado(5, true);
+        ServicioNotificacionesSmtp canal = crearCanal(2);
+        Thread otro = new Thread(() -> canal.enviarLote(crearLote(10)));
+        otro.start();
+        canal.enviarLote(crearLote(10));
+        otro.join();
+        servidor.cortarSesiones();
+
+        // Act
+        canal.enviarLote(crearLote(5));
+        canal.cerrar();
+
+        // Assert
+        assertEquals(3, servidor.getConexiones(), "Deben abrirse las dos del pool y una sola nueva");
+        assertEquals(25, servidor.getMensajes().size(), "Todo el lote debe llegar por una conexión nueva");
+        assertEquals(1, canal.getReconexiones(), "Debe reconectarse una sola vez");
+    }
+
+    @Test
+    void testDestinatarioRechazadoNoFrenaAlRestoDelLote() throws Exception {
+        // Arrange
+        servidor = new ServidorSmtpSimulado(0, false);
+        servidor.setDestinatarioRechazado("malo@example.com");
+        ServicioNotificacionesSmtp canal = crearCanal(1);
+        ServicioEnvioNotificaciones servicio = new ServicioEnvioNotificaciones();
+        servicio.setMostrarEnConsola(false);
+        servicio.setPoliticaReintentos(new PoliticaReintentos(2, Duration.ofMillis(5), Duration.ofMillis(10)));
+        servicio.registrarServicio(canal, 10, Duration.ofMillis(20));
+        Usuario malo = new Usuario("Malo", "User", 999, "malo@example.com", "555000000");
+        servicio.inicializarPreferenciasUsuario(usuario);
+        servicio.inicializarPreferenciasUsuario(malo);
+
+        // Act
+        for (int i = 0; i < 5; i++) {
+            servicio.enviarNotificacion("Aviso " + i, i == 2 ? malo : usuario);
+        }
+        long limite = System.currentTimeMillis() + 10_000;
+        while (servicio.obtenerNotificacionesFallidas(canal) == 0 && System.currentTimeMillis() < limite) {
+            Thread.sleep(5);
+        }
+        servicio.cerrar(Duration.ZERO);
+        canal.cerrar();
+
+        // Assert
+        assertEquals(4, servidor.getMensajes().size(), "Los demás mensajes deben llegar una sola vez");
+        assertEquals(1, servicio.obtenerNotificacionesFallidas(canal), "Solo el rechazado debe ir a fallidos");
+        assertEquals(1, servicio.obtenerReintentos(canal), "Solo el rechazado debe reintentarse");
+    }
+
+    private ServicioNotificacionesSmtp crearCanal(int conexiones) {
+        return new ServicioNotificacionesSmtp("127.0.0.1", servidor.getPuerto(), "biblioteca@example.com", conexiones);
+    }
+
+    private List<Notificacion> crearLote(int cantidad) {
+        List<Notificacion> lote = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            lote.add(new Notificacion("Mensaje " + i + "\n.línea con punto", usuario,
+                    Notificacion.TipoNotificacion.SISTEMA));
+        }
+        return lote;
+    }
+}
@@ -0,0 +1,130 @@
+package um.prog2.notificaciones;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Gateway de SMS simulado para las pruebas, sobre el servidor HTTP del JDK.
+ * Cada pedido demora una latencia fija y uno de cada tantos responde 503.
+ * Registra el momento en que llega cada mensaje y la mayor cantidad de pedidos simultáneos.
+ */
+class ServidorSmsSimulado implements AutoCloseable {
+    private static final Pattern MENSAJE = Pattern.compile("\"mensaje\":\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    private final HttpServer servidor;
+    private final ExecutorService hilos;
+    private final long latenciaMs;
+    private final Map<String, Long> llegadas;
+    private final AtomicInteger pedidos;
+    private final AtomicInteger simultaneos;
+    private final AtomicInteger maximoSimultaneos;
+    private volatile int fallarCada;
+
+    /**
+     * @param latenciaMs Demora de cada pedido
+     * @param conMasivo Si existe el endpoint masivo
+     */
+    ServidorSmsSimulado(long latenciaMs, boolean conMasivo) throws IOException {
+        this.servidor = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 100);
+        this.hilos = Executors.newCachedThreadPool(tarea -> {
+            Thread hilo = new Thread(tarea, "sms-simulado");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        this.latenciaMs = latenciaMs;
+        this.llegadas = new ConcurrentHashMap<>();
+        this.pedidos = new AtomicInteger();
+        this.simultaneos = new AtomicInteger();
+        this.maximoSimultaneos = new AtomicInteger();
+        servidor.createContext("/sms", this::atender);
+        if (conMasivo) {
+            servidor.createContext("/sms/lote", this::atender);
+        } else {
+            servidor.createContext("/sms/lote", intercambio -> responder(intercambio, 404));
+        }
+        servidor.setExecutor(hilos);
+        servidor.start();
+    }
+
+    URI getEndpointIndividual() {
+        return URI.create("http://127.0.0.1:" + servidor.getAddress().getPort() + "/sms");
+    }
+
+    URI getEndpointMasivo() {
+        return URI.create("http://127.0.0.1:" + servidor.getAddress().getPort() + "/sms/lote");
+    }
+
+    /**
+     * Uno de cada n pedidos responde 503 sin registrar sus mensajes (0 para no fallar).
+     */
+    void setFallarCada(int fallarCada) {
+        this.fallarCada = fallarCada;
+    }
+
+    /**
+     * @return Momento de llegada (System.nanoTime) de cada mensaje, por texto
+     */
+    Map<String, Long> getLlegadas() {
+        return llegadas;
+    }
+
+    int getPedidos() {
+        return pedidos.get();
+    }
+
+    int getMaximoSimultaneos() {
+        return maximoSimultaneos.get();
+    }
+
+    private void atender(HttpExchange intercambio) throws IOException {
+        int actuales = simultaneos.incrementAndGet();
+        maximoSimultaneos.accumulateAndGet(actuales, Math::max);
+        try (InputStream cuerpo = intercambio.getRequestBody()) {
+            String texto = new String(cuerpo.readAllBytes(), StandardCharsets.UTF_8);
+            Thread.sleep(latenciaMs);
+            int numero = pedidos.incrementAndGet();
+            if (fallarCada > 0 && numero % fallarCada == 0) {
+                responder(intercambio, 503);
+                return;
+            }
+            Matcher mensaje = MENSAJE.matcher(texto);
+            long ahora = System.nanoTime();
+            while (mensaje.find()) {
+                if (llegadas.putIfAbsent(mensaje.group(1), ahora) != null) {
+                    throw new IllegalStateException("Mensaje repetido: " + mensaje.group(1));
+                }
+            }
+            responder(intercambio, 202);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            responder(intercambio, 500);
+        } finally {
+            simultaneos.decrementAndGet();
+        }
+    }
+
+    private static void responder(HttpExchange intercambio, int estado) throws IOException {
+        intercambio.sendResponseHeaders(estado, -1);
+        intercambio.close();
+    }
+
+    @Override
+    public void close() {
+        servidor.stop(0);
+        hilos.shutdownNow();
+    }
+}
@@ -0,0 +1,175 @@
+package um.prog2.notificaciones;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Servidor SMTP mínimo para las pruebas, en un puerto local libre.
+ * Antes de responder a cada ida y vuelta (cuando ya leyó todo lo que mandó el
+ * cliente) espera una latencia fija, como haría una red real.
+ */
+class ServidorSmtpSimulado implements AutoCloseable {
+    private final ServerSocket servidor;
+    private final long latenciaMs;
+    private final boolean pipelining;
+    private final List<String> mensajes;
+    private final AtomicInteger conexiones;
+    private final List<Socket> sockets;
+    private volatile int mensajesPorConexion;
+    private volatile String destinatarioRechazado;
+
+    /**
+     * @param latenciaMs Demora de cada ida y vuelta
+     * @param pipelining Si se anuncia PIPELINING en la respuesta a EHLO
+     */
+    ServidorSmtpSimulado(long latenciaMs, boolean pipelining) throws IOException {
+        this.servidor = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.latenciaMs = latenciaMs;
+        this.pipelining = pipelining;
+        this.mensajes = new CopyOnWriteArrayList<>();
+        this.conexiones = new AtomicInteger();
+        this.sockets = new CopyOnWriteArrayList<>();
+        this.mensajesPorConexion = Integer.MAX_VALUE;
+        Thread aceptador = new Thread(this::aceptar, "smtp-simulado");
+        aceptador.setDaemon(true);
+        aceptador.start();
+    }
+
+    int getPuerto() {
+        return servidor.getLocalPort();
+    }
+
+    List<String> getMensajes() {
+        return mensajes;
+    }
+
+    int getConexiones() {
+        return conexiones.get();
+    }
+
+    /**
+     * El servidor corta la conexión, sin avisar, después de aceptar esa cantidad de mensajes.
+     */
+    void setMensajesPorConexion(int mensajesPorConexion) {
+        this.mensajesPorConexion = mensajesPorConexion;
+    }
+
+    /**
+     * RCPT responde 550 para esa dirección.
+     */
+    void setDestinatarioRechazado(String destinatarioRechazado) {
+        this.destinatarioRechazado = destinatarioRechazado;
+    }
+
+    /**
+     * Corta, sin avisar, todas las sesiones abiertas; el servidor sigue aceptando conexiones nuevas.
+     */
+    void cortarSesiones() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+        sockets.clear();
+    }
+
+    private void aceptar() {
+        try {
+            while (!servidor.isClosed()) {
+                Socket socket = servidor.accept();
+                conexiones.incrementAndGet();
+                sockets.add(socket);
+                Thread sesion = new Thread(() -> atender(socket), "smtp-simulado-sesion");
+                sesion.setDaemon(true);
+                sesion.start();
+            }
+        } catch (IOException e) {
+            // Servidor cerrado
+        }
+    }
+
+    private void atender(Socket socket) {
+        try (socket;
+             BufferedReader entrada = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             BufferedWriter salida = new BufferedWriter(
+                     new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            responder(entrada, salida, "220 simulado ESMTP");
+            int aceptados = 0;
+            boolean destinatarioValido = false;
+            String linea;
+            while ((linea = entrada.readLine()) != null) {
+                String comando = linea.length() >= 4 ? linea.substring(0, 4).toUpperCase() : linea.toUpperCase();
+                switch (comando) {
+                    case "EHLO":
+                        responder(entrada, salida, pipelining ? "250-simulado\r\n250 PIPELINING" : "250 simulado");
+                        break;
+                    case "MAIL":
+                        destinatarioValido = false;
+                        responder(entrada, salida, "250 OK");
+                        break;
+                    case "RCPT":
+                        destinatarioValido = !linea.contains("<" + destinatarioRechazado + ">");
+                        responder(entrada, salida, destinatarioValido ? "250 OK" : "550 Usuario desconocido");
+                        break;
+                    case "DATA":
+                        if (!destinatarioValido) {
+                            responder(entrada, salida, "554 Sin destinatarios válidos");
+                            break;
+                        }
+                        responder(entrada, salida, "354 Fin con <CRLF>.<CRLF>");
+                        StringBuilder mensaje = new StringBuilder();
+                        String lineaMensaje;
+                        while ((lineaMensaje = entrada.readLine()) != null && !lineaMensaje.equals(".")) {
+                            mensaje.append(lineaMensaje).append('\n');
+                        }
+                        if (++aceptados > mensajesPorConexion) {
+                            return;
+                        }
+                        mensajes.add(mensaje.toString());
+                        responder(entrada, salida, "250 Aceptado");
+                        break;
+                    case "QUIT":
+                        responder(entrada, salida, "221 Adiós");
+                        return;
+                    default:
+                        responder(entrada, salida, "250 OK");
+                }
+            }
+        } catch (IOException e) {
+            // El cliente cortó la conexión
+        }
+    }
+
+    /**
+     * Agrega la respuesta y, si el cliente no mandó nada más todavía, la envía tras la latencia.
+     */
+    private void responder(BufferedReader entrada, BufferedWriter salida, String respuesta) throws IOException {
+        salida.write(respuesta);
+        salida.write("\r\n");
+        if (!entrada.ready()) {
+            try {
+                Thread.sleep(latenciaMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            salida.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        servidor.close();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+}
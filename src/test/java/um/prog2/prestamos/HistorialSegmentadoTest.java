@@ -0,0 +1,62 @@
+package um.prog2.prestamos;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistorialSegmentadoTest {
+
+    @Test
+    void testInstantaneaNoVeAgregadosPosteriores() {
+        // Arrange
+        HistorialSegmentado<Integer> historial = new HistorialSegmentado<>();
+        for (int i = 0; i < 1500; i++) {
+            historial.agregar(i);
+        }
+
+        // Act
+        HistorialSegmentado.Instantanea<Integer> instantanea = historial.instantanea();
+        for (int i = 1500; i < 5000; i++) {
+            historial.agregar(i);
+        }
+
+        // Assert
+        assertEquals(1500, instantanea.tamanio(), "La instantánea debe conservar su tamaño");
+        assertEquals(5000, historial.tamanio(), "El historial debe seguir creciendo");
+        List<Integer> elementos = instantanea.aLista();
+        for (int i = 0; i < elementos.size(); i++) {
+            assertEquals(i, elementos.get(i), "Los elementos deben mantener su orden");
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> instantanea.obtener(1500),
+                "No se deben ver elementos agregados después de la instantánea");
+    }
+
+    @Test
+    void testLecturasConcurrentesConAgregados() throws InterruptedException {
+        // Arrange
+        HistorialSegmentado<Integer> historial = new HistorialSegmentado<>();
+        Thread escritor = new Thread(() -> {
+            for (int i = 0; i < 100_000; i++) {
+                historial.agregar(i);
+            }
+        });
+
+        // Act
+        escritor.start();
+        while (escritor.isAlive()) {
+            HistorialSegmentado.Instantanea<Integer> instantanea = historial.instantanea();
+            int esperado = 0;
+            for (Integer elemento : instantanea) {
+                // Assert
+                assertEquals(esperado++, elemento, "Una instantánea debe ser consistente");
+            }
+            assertEquals(instantanea.tamanio(), esperado, "Se deben recorrer todos los elementos");
+        }
+        escritor.join();
+
+        // Assert
+        assertEquals(100_000, historial.instantanea().tamanio(), "Deben estar todos los elementos");
+    }
+}
@@ -0,0 +1,69 @@
+package um.prog2.reportes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContadorSpaceSavingTest {
+
+    @Test
+    void testCuentasExactasDentroDeCapacidad() {
+        // Arrange
+        ContadorSpaceSaving<String> contador = new ContadorSpaceSaving<>(10);
+
+        // Act
+        for (int i = 0; i < 5; i++) contador.registrar("A");
+        for (int i = 0; i < 3; i++) contador.registrar("B");
+        contador.registrar("C");
+
+        // Assert
+        assertEquals(5, contador.estimar("A"), "A debe tener 5 ocurrencias");
+        assertEquals(3, contador.estimar("B"), "B debe tener 3 ocurrencias");
+        assertEquals(0, contador.error("A"), "Sin desalojos no debe haber error");
+        assertEquals(9, contador.getTotal(), "El total debe ser 9");
+
+        List<String> orden = new ArrayList<>(contador.obtenerTop(2).keySet());
+        assertEquals(List.of("A", "B"), orden, "El top 2 debe ser A y B en ese orden");
+    }
+
+    @Test
+    void testElementosFrecuentesSobrevivenConMemoriaFija() {
+        // Arrange
+        ContadorSpaceSaving<String> contador = new ContadorSpaceSaving<>(8);
+
+        // Act: dos elementos frecuentes mezclados con muchos elementos únicos
+        for (int i = 0; i < 1000; i++) {
+            contador.registrar("frecuente1");
+            if (i % 2 == 0) {
+                contador.registrar("frecuente2");
+            }
+            contador.registrar("unico-" + i);
+        }
+
+        // Assert
+        Map<String, Long> top = contador.obtenerTop(2);
+        assertTrue(top.containsKey("frecuente1"), "frecuente1 debe estar en el top");
+        assertTrue(top.containsKey("frecuente2"), "frecuente2 debe estar en el top");
+        long estimado = contador.estimar("frecuente1");
+        assertTrue(estimado >= 1000, "La estimación nunca debe subestimar");
+        assertTrue(estimado - contador.error("frecuente1") <= 1000, "La cota inferior no debe superar la cuenta real");
+    }
+
+    @Test
+    void testTopKSeleccionaMayoresEnOrden() {
+        // Arrange
+        Map<String, Integer> contador = Map.of("A", 4, "B", 9, "C", 1, "D", 7);
+
+        // Act
+        Map<String, Integer> top = TopK.seleccionar(contador, 3);
+
+        // Assert
+        assertEquals(List.of("B", "D", "A"), new ArrayList<>(top.keySet()), "Debe devolver los 3 mayores en orden descendente");
+        assertTrue(TopK.seleccionar(contador, 0).isEmpty(), "Con límite 0 el resultado debe estar vacío");
+        assertEquals(4, TopK.seleccionar(contador, Integer.MAX_VALUE).size(), "Un límite mayor al tamaño devuelve todo");
+    }
+}
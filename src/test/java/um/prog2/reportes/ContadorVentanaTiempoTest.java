@@ -0,0 +1,49 @@
+package um.prog2.reportes;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ContadorVentanaTiempoTest {
+
+    private static final Instant AHORA = Instant.parse("2025-03-10T12:30:00Z");
+
+    @Test
+    void testVentanaDeUnaHoraSoloCuentaEventosRecientes() {
+        // Arrange
+        ContadorVentanaTiempo<String> contador = new ContadorVentanaTiempo<>();
+        contador.registrar("A", AHORA.minusSeconds(30));
+        contador.registrar("A", AHORA.minus(Duration.ofMinutes(45)));
+        contador.registrar("B", AHORA.minus(Duration.ofHours(3)));
+
+        // Act
+        Map<String, Integer> ultimaHora = contador.contar(Duration.ofHours(1), AHORA);
+        Map<String, Integer> ultimoDia = contador.contar(Duration.ofDays(1), AHORA);
+
+        // Assert
+        assertEquals(2, ultimaHora.get("A"), "A debe tener 2 eventos en la última hora");
+        assertFalse(ultimaHora.containsKey("B"), "B no debe aparecer en la última hora");
+        assertEquals(2, ultimoDia.get("A"), "A debe tener 2 eventos en el último día");
+        assertEquals(1, ultimoDia.get("B"), "B debe tener 1 evento en el último día");
+    }
+
+    @Test
+    void testCubetasVencidasSeReciclan() {
+        // Arrange
+        ContadorVentanaTiempo<String> contador = new ContadorVentanaTiempo<>();
+        contador.registrar("A", AHORA.minus(Duration.ofDays(40)));
+        contador.registrar("A", AHORA.minus(Duration.ofDays(10)));
+
+        // Act
+        Map<String, Integer> ultimos30Dias = contador.contar(Duration.ofDays(30), AHORA);
+
+        // Assert
+        assertEquals(1, ultimos30Dias.get("A"), "Solo el evento dentro de los 30 días debe contarse");
+        assertThrows(IllegalArgumentException.class, () -> contador.contar(Duration.ofDays(31), AHORA),
+                "Una ventana mayor a 30 días no está soportada");
+    }
+}
@@ -0,0 +1,113 @@
+package um.prog2.reportes;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExportadorStreamingTest {
+
+    @TempDir
+    Path directorio;
+
+    @Test
+    void testExportarCsvConEscapes() throws IOException {
+        // Arrange
+        Path destino = directorio.resolve("datos.csv");
+
+        // Act
+        try (ExportadorStreaming exportador = new ExportadorStreaming(destino, ExportadorStreaming.Formato.CSV,
+                "id", "titulo")) {
+            exportador.escribirFila(1, "Cien años de soledad");
+            exportador.escribirFila(2, "Título, con \"comillas\"");
+        }
+
+        // Assert
+        List<String> lineas = Files.readAllLines(destino, StandardCharsets.UTF_8);
+        assertEquals(List.of("id,titulo", "1,Cien años de soledad", "2,\"Título, con \"\"comillas\"\"\""), lineas);
+    }
+
+    @Test
+    void testExportarJsonLines() throws IOException {
+        // Arrange
+        Path destino = directorio.resolve("datos.jsonl");
+
+        // Act
+        try (ExportadorStreaming exportador = new ExportadorStreaming(destino, ExportadorStreaming.Formato.JSON_LINES,
+                "id", "titulo", "activo")) {
+            exportador.escribirFila(7, "Línea\ncon \"salto\"", true);
+            exportador.escribirFila(8, null, false);
+        }
+
+        // Assert
+        List<String> lineas = Files.readAllLines(destino, StandardCharsets.UTF_8);
+        assertEquals(List.of(
+                "{\"id\":7,\"titulo\":\"Línea\\ncon \\\"salto\\\"\",\"activo\":true}",
+                "{\"id\":8,\"titulo\":null,\"activo\":false}"), lineas);
+    }
+
+    @Test
+    void testNumerosNoFinitosSeEscribenComoNullEnJsonLines() throws IOException {
+        // Arrange
+        Path destino = directorio.resolve("no-finitos.jsonl");
+
+        // Act
+        try (ExportadorStreaming exportador = new ExportadorStreaming(destino, ExportadorStreaming.Formato.JSON_LINES,
+                "promedio", "maximo", "minimo", "tasa")) {
+            exportador.escribirFila(Double.NaN, Double.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, 0.5);
+        }
+
+        // Assert
+        List<String> lineas = Files.readAllLines(destino, StandardCharsets.UTF_8);
+        assertEquals(List.of("{\"promedio\":null,\"maximo\":null,\"minimo\":null,\"tasa\":0.5}"), lineas,
+                "NaN e Infinity no son JSON válido y deben escribirse como null");
+    }
+
+    @Test
+    void testGrandesVolumenesSuperanElBuffer() throws IOException {
+        // Arrange
+        Path destino = directorio.resolve("grande.csv");
+        int filas = 50000;
+
+        // Act
+        long escritas;
+        try (ExportadorStreaming exportador = new ExportadorStreaming(destino, ExportadorStreaming.Formato.CSV,
+                "n", "texto")) {
+            for (int i = 0; i < filas; i++) {
+                exportador.escribirFila(i, "fila número " + i);
+            }
+            escritas = exportador.getFilasEscritas();
+        }
+
+        // Assert
+        assertEquals(filas, escritas, "Deben escribirse todas las filas");
+        List<String> lineas = Files.readAllLines(destino, StandardCharsets.UTF_8);
+        assertEquals(filas + 1, lineas.size(), "El archivo debe tener el encabezado más todas las filas");
+        assertEquals("49999,fila número 49999", lineas.get(filas), "La última fila debe estar completa");
+    }
+
+    @Test
+    void testInterrupcionCancelaExportacion() throws IOException {
+        // Arrange
+        Path destino = directorio.resolve("cancelado.csv");
+
+        try (ExportadorStreaming exportador = new ExportadorStreaming(destino, ExportadorStreaming.Formato.CSV, "n")) {
+            // Act
+            Thread.currentThread().interrupt();
+            try {
+                // Assert
+                assertThrows(InterruptedIOException.class, () -> exportador.escribirFila(1),
+                        "Con el hilo interrumpido la exportación debe detenerse");
+            } finally {
+                Thread.interrupted();
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package um.prog2.reportes;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HistogramaLogaritmicoTest {
+
+    @Test
+    void testPercentilesConErrorRelativoAcotado() {
+        // Arrange
+        HistogramaLogaritmico histograma = new HistogramaLogaritmico();
+
+        // Act: valores 1..100000
+        for (long v = 1; v <= 100000; v++) {
+            histograma.registrar(v);
+        }
+
+        // Assert
+        assertEquals(100000, histograma.getCantidad(), "Debe registrar todos los valores");
+        assertCercano(50000, histograma.percentil(50));
+        assertCercano(90000, histograma.percentil(90));
+        assertCercano(99000, histograma.percentil(99));
+    }
+
+    @Test
+    void testValoresChicosSonExactos() {
+        // Arrange
+        HistogramaLogaritmico histograma = new HistogramaLogaritmico();
+
+        // Act
+        histograma.registrar(3);
+        histograma.registrar(7);
+        histograma.registrar(-5);
+
+        // Assert
+        assertEquals(0, histograma.percentil(0), "El valor negativo debe registrarse como 0");
+        assertEquals(3, histograma.percentil(50), "La mediana debe ser 3");
+        assertEquals(7, histograma.percentil(100), "El máximo debe ser 7");
+        assertEquals(0, new HistogramaLogaritmico().percentil(99), "Un histograma vacío devuelve 0");
+    }
+
+    @Test
+    void testCubetasContiguas() {
+        // Assert: cada valor cae en una cubeta cuyo valor representativo está cerca
+        for (long v = 0; v < 1_000_000; v += 997) {
+            int indice = HistogramaLogaritmico.indiceDe(v);
+            assertTrue(HistogramaLogaritmico.indiceDe(v + 1) - indice <= 1, "Las cubetas deben ser contiguas");
+            assertTrue(Math.abs(HistogramaLogaritmico.valorRepresentativo(indice) - v)
+                    <= v / HistogramaLogaritmico.SUBCUBETAS, "El error relativo debe estar acotado");
+        }
+        assertTrue(HistogramaLogaritmico.indiceDe(Long.MAX_VALUE) >= 0, "El valor máximo debe tener cubeta");
+    }
+
+    private void assertCercano(long esperado, long obtenido) {
+        assertTrue(Math.abs(obtenido - esperado) <= esperado / HistogramaLogaritmico.SUBCUBETAS,
+                "Se esperaba un valor cercano a " + esperado + " pero fue " + obtenido);
+    }
+}
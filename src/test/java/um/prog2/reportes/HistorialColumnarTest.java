@@ -0,0 +1,165 @@
+package um.prog2.reportes;
+
+import org.junit.jupiter.api.Test;
+import um.prog2.Enums.CategoriaRecurso;
+import um.prog2.Enums.EstadoRecurso;
+import um.prog2.interfaces.RecursoDigital;
+import um.prog2.prestamos.Prestamo;
+import um.prog2.recursoDigital.Libro;
+import um.prog2.usuario.Usuario;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class HistorialColumnarTest {
+
+    @Test
+    void testAgregarYRecorrerColumnas() {
+        // Arrange
+        HistorialColumnar historial = new HistorialColumnar();
+        Usuario usuario = new Usuario("Juan", "Pérez", 1, "juan@example.com", "123456789");
+        RecursoDigital libro1 = new Libro(EstadoRecurso.DISPONIBLE, "Autor1", "Título1", "L001", CategoriaRecurso.FANTASIA);
+        RecursoDigital libro2 = new Libro(EstadoRecurso.DISPONIBLE, "Autor2", "Título2", "L002", CategoriaRecurso.FANTASIA);
+
+        Prestamo devuelto = new Prestamo("p1", usuario, libro1, 7);
+        devuelto.devolver();
+
+        // Act
+        historial.agregar(devuelto);
+        historial.agregar(new Prestamo("p2", usuario, libro1, 7));
+        historial.agregar(new Prestamo("p3", usuario, libro2, 7));
+        HistorialColumnar.Vista vista = historial.vista();
+
+        // Assert
+        assertEquals(3, vista.tamanio(), "La vista debe tener 3 filas");
+        assertEquals(2, vista.cantidadRecursos(), "Debe haber 2 recursos en el diccionario");
+        assertEquals(vista.inicio(0) + 7 * 86400, vista.vencimiento(0), "El vencimiento debe ser 7 días después del inicio");
+        assertNotEquals(HistorialColumnar.SIN_DEVOLUCION, vista.devolucion(0), "El préstamo devuelto debe tener fecha de devolución");
+        assertEquals(HistorialColumnar.SIN_DEVOLUCION, vista.devolucion(1), "El préstamo activo no debe tener fecha de devolución");
+
+        Map<RecursoDigital, Integer> top = vista.topRecursos(1);
+        assertEquals(List.of(libro1), new ArrayList<>(top.keySet()), "El libro1 debe ser el más prestado");
+        assertEquals(2, top.get(libro1), "El libro1 debe tener 2 préstamos");
+    }
+
+    @Test
+    void testVistaNoVeFilasPosterioresYSobreviveAlCrecimiento() {
+        // Arrange
+        HistorialColumnar historial = new HistorialColumnar();
+        Usuario usuario = new Usuario("María", "López", 2, "maria@example.com", "987654321");
+        RecursoDigital libro = new Libro(EstadoRecurso.DISPONIBLE, "Autor", "Título", "L001", CategoriaRecurso.HISTORIA);
+        historial.agregar(new Prestamo("p0", usuario, libro, 7));
+        HistorialColumnar.Vista anterior = historial.vista();
+
+        // Act: forzar varias duplicaciones de capacidad
+        for (int i = 1; i <= 5000; i++) {
+            historial.agregar(new Prestamo("p" + i, usuario, libro, 7));
+        }
+
+        // Assert
+        assertEquals(1, anterior.tamanio(), "La vista anterior no debe ver las filas nuevas");
+        assertEquals(1, anterior.contarPorUsuario()[0], "La vista anterior debe contar solo su fila");
+        assertEquals(5001, historial.vista().contarPorRecurso()[0], "La vista nueva debe ver todas las filas");
+    }
+
+    @Test
+    void testVistaNoVeRecursosPosterioresYNoCopiaLosDiccionarios() {
+        // Arrange
+        HistorialColumnar historial = new HistorialColumnar();
+        Usuario usuario = new Usuario("Ana", "Gómez", 3, "ana@example.com", "111222333");
+        RecursoDigital primero = new Libro(EstadoRecurso.DISPONIBLE, "Autor", "Título", "L0", CategoriaRecurso.HISTORIA);
+        historial.agregar(new Prestamo("p0", usuario, primero, 7));
+        HistorialColumnar.Vista anterior = historial.vista();
+
+        // Act: más recursos distintos que la capacidad inicial del diccionario
+        for (int i = 1; i <= 3000; i++) {
+            RecursoDigital libro = new Libro(EstadoRecurso.DISPONIBLE, "Autor", "Título", "L" + i, CategoriaRecurso.HISTORIA);
+            historial.agregar(new Prestamo("p" + i, usuario, libro, 7));
+        }
+        HistorialColumnar.Vista nueva = historial.vista();
+
+        // Assert
+        assertSame(nueva, historial.vista(), "Sin agregados, tomar la vista no debe copiar nada");
+        assertEquals(1, anterior.cantidadRecursos(), "La vista anterior no debe ver los recursos nuevos");
+        assertEquals(1, anterior.contarPorRecurso().length, "La vista anterior debe contar solo sus recursos");
+        assertSame(primero, anterior.resolverRecurso(0), "La vista anterior debe resolver sus recursos");
+        assertEquals(3001, nueva.cantidadRecursos(), "La vista nueva debe ver todos los recursos");
+        assertEquals("L3000", nueva.resolverRecurso(3000).getIdentificador(), "Los recursos nuevos deben resolverse");
+    }
+
+    @Test
+    void testMedirMemoriaYRecorridoFrenteALaListaDeObjetos() {
+        // Arrange
+        assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+                "La JVM no informa la memoria asignada por hilo");
+        com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(hilos.isThreadAllocatedMemoryEnabled(), "La medición de memoria asignada está deshabilitada");
+        int cantidad = 200_000;
+        RecursoDigital[] libros = new RecursoDigital[2000];
+        for (int i = 0; i < libros.length; i++) {
+            libros[i] = new Libro(EstadoRecurso.DISPONIBLE, "Autor", "Título", "L" + i, CategoriaRecurso.FANTASIA);
+        }
+        Usuario[] usuarios = new Usuario[1000];
+        for (int i = 0; i < usuarios.length; i++) {
+            usuarios[i] = new Usuario("Nombre", "Apellido", i, "u" + i + "@example.com", "123456789");
+        }
+        String[] ids = new String[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            ids[i] = "p" + i;
+        }
+        List<Prestamo> prestamos = new ArrayList<>(cantidad);
+        long id = Thread.currentThread().threadId();
+
+        // Act: memoria de los préstamos como objetos, sin contar el texto de su id
+        long antes = hilos.getThreadAllocatedBytes(id);
+        for (int i = 0; i < cantidad; i++) {
+            Prestamo prestamo = new Prestamo(ids[i], usuarios[i % usuarios.length], libros[(i * 7) % libros.length], 14);
+            prestamo.devolver();
+            prestamos.add(prestamo);
+        }
+        // Se suma la referencia que guarda la lista por cada préstamo
+        long bytesPorObjeto = (hilos.getThreadAllocatedBytes(id) - antes) / cantidad + 4;
+
+        HistorialColumnar historial = new HistorialColumnar();
+        for (Prestamo prestamo : prestamos) {
+            historial.agregar(prestamo);
+        }
+        HistorialColumnar.Vista vista = historial.vista();
+
+        // Act: recorrido para contar préstamos por recurso, con varias vueltas para calentar
+        Map<RecursoDigital, Integer> porObjeto = null;
+        int[] porColumna = null;
+        long mejorObjetos = Long.MAX_VALUE;
+        long mejorColumnas = Long.MAX_VALUE;
+        for (int vuelta = 0; vuelta < 5; vuelta++) {
+            long inicio = System.nanoTime();
+            porObjeto = new HashMap<>();
+            for (Prestamo prestamo : prestamos) {
+                porObjeto.merge(prestamo.getRecurso(), 1, Integer::sum);
+            }
+            mejorObjetos = Math.min(mejorObjetos, System.nanoTime() - inicio);
+
+            inicio = System.nanoTime();
+            porColumna = new int[vista.cantidadRecursos()];
+            vista.contarPorRecurso(0, vista.tamanio(), null, porColumna);
+            mejorColumnas = Math.min(mejorColumnas, System.nanoTime() - inicio);
+        }
+
+        // Assert: solo se verifica el resultado; las medidas se informan
+        System.out.printf("[REPORTES] %d préstamos: %d bytes asignados/préstamo como objetos, %d bytes/préstamo en columnas " +
+                        "(%d reservados); recorrido %.1f M filas/s como objetos, %.1f M filas/s en columnas%n",
+                cantidad, bytesPorObjeto, HistorialColumnar.BYTES_POR_FILA,
+                historial.bytesReservados() / cantidad,
+                cantidad * 1e3 / mejorObjetos, cantidad * 1e3 / mejorColumnas);
+        for (int indice = 0; indice < porColumna.length; indice++) {
+            assertEquals(porObjeto.get(vista.resolverRecurso(indice)), porColumna[indice],
+                    "Ambos recorridos deben contar lo mismo para cada recurso");
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package um.prog2.reportes;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HyperLogLogTest {
+
+    @Test
+    void testEstimacionDentroDelError() {
+        // Arrange
+        HyperLogLog hll = new HyperLogLog(12);
+
+        // Act: 50000 elementos distintos, cada uno registrado dos veces
+        for (int i = 0; i < 50000; i++) {
+            hll.agregar(i);
+            hll.agregar(i);
+        }
+
+        // Assert
+        long estimacion = hll.estimar();
+        assertTrue(Math.abs(estimacion - 50000) < 50000 * 0.05,
+                "La estimación debe estar dentro del 5% del valor real, fue " + estimacion);
+    }
+
+    @Test
+    void testCardinalidadChicaEsPrecisa() {
+        // Arrange
+        HyperLogLog hll = new HyperLogLog(10);
+
+        // Act
+        for (int i = 1; i <= 3; i++) {
+            hll.agregar(i);
+        }
+
+        // Assert
+        assertEquals(3, hll.estimar(), "Con pocos elementos la estimación debe ser exacta");
+        assertEquals(0, new HyperLogLog(10).estimar(), "Un estimador vacío debe estimar 0");
+    }
+
+    @Test
+    void testCombinarEstimaLaUnion() {
+        // Arrange
+        HyperLogLog a = new HyperLogLog(12);
+        HyperLogLog b = new HyperLogLog(12);
+        for (int i = 0; i < 20000; i++) {
+            a.agregar(i);
+        }
+        for (int i = 10000; i < 30000; i++) {
+            b.agregar(i);
+        }
+
+        // Act
+        a.combinar(b);
+
+        // Assert
+        long estimacion = a.estimar();
+        assertTrue(Math.abs(estimacion - 30000) < 30000 * 0.05,
+                "La unión debe estimar unos 30000 elementos, fue " + estimacion);
+        assertThrows(IllegalArgumentException.class, () -> a.combinar(new HyperLogLog(10)),
+                "No se deben combinar estimadores de distinta precisión");
+    }
+
+    @Test
+    void testFormaDispersaEstimaIgualQueLaDensaYPasaADensa() {
+        // Arrange
+        HyperLogLog disperso = new HyperLogLog(10);
+        HyperLogLog otro = new HyperLogLog(10);
+        for (int i = 0; i < 40; i++) {
+            disperso.agregar(i);
+        }
+        for (int i = 20; i < 2000; i++) {
+            otro.agregar(i);
+        }
+
+        // Act
+        HyperLogLog denso = HyperLogLog.desdeBytes(disperso.aBytes());
+        HyperLogLog union = disperso.copiar();
+        union.combinar(otro);
+        HyperLogLog unionDensa = otro.copiar();
+        unionDensa.combinar(disperso);
+
+        // Assert
+        assertTrue(disperso.esDisperso(), "Con pocos elementos debe seguir disperso");
+        assertFalse(denso.esDisperso(), "Al deserializar debe quedar denso");
+        assertEquals(denso.estimar(), disperso.estimar(), "Las dos formas deben estimar lo mismo");
+        assertFalse(otro.esDisperso(), "Con muchos elementos debe pasar a la forma densa");
+        assertFalse(union.esDisperso(), "Combinar con uno denso debe dejarlo denso");
+        assertEquals(unionDensa.estimar(), union.estimar(), "La unión no debe depender del orden ni de la forma");
+    }
+
+    @Test
+    void testSerializacion() {
+        // Arrange
+        HyperLogLog original = new HyperLogLog(8);
+        for (int i = 0; i < 1000; i++) {
+            original.agregar(i);
+        }
+
+        // Act
+        byte[] datos = original.aBytes();
+        HyperLogLog copia = HyperLogLog.desdeBytes(datos);
+
+        // Assert
+        assertEquals(257, datos.length, "Debe ocupar un byte de precisión más un byte por registro");
+        assertEquals(original.estimar(), copia.estimar(), "La copia debe estimar lo mismo que el original");
+    }
+}
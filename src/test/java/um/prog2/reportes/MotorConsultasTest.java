@@ -0,0 +1,170 @@
+package um.prog2.reportes;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import um.prog2.Enums.CategoriaRecurso;
+import um.prog2.Enums.EstadoRecurso;
+import um.prog2.interfaces.RecursoDigital;
+import um.prog2.prestamos.Prestamo;
+import um.prog2.recursoDigital.AudioLibro;
+import um.prog2.recursoDigital.Libro;
+import um.prog2.usuario.Usuario;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MotorConsultasTest {
+
+    private HistorialColumnar historial;
+    private MotorConsultas motor;
+    private Usuario usuario1;
+    private Usuario usuario2;
+    private Libro libroFantasia;
+    private Libro libroHistoria;
+    private AudioLibro audioFantasia;
+
+    @BeforeEach
+    void setUp() {
+        historial = new HistorialColumnar();
+        motor = new MotorConsultas(recurso -> recurso instanceof Libro
+                ? ((Libro) recurso).getCategoria()
+                : ((AudioLibro) recurso).getCategoria());
+
+        usuario1 = new Usuario("Juan", "Pérez", 1, "juan@example.com", "123456789");
+        usuario2 = new Usuario("María", "López", 2, "maria@example.com", "987654321");
+        libroFantasia = new Libro(EstadoRecurso.DISPONIBLE, "Autor1", "Título1", "L001", CategoriaRecurso.FANTASIA);
+        libroHistoria = new Libro(EstadoRecurso.DISPONIBLE, "Autor2", "Título2", "L002", CategoriaRecurso.HISTORIA);
+        audioFantasia = new AudioLibro("A001", "Título3", "Autor3", "Narrador", 120, "Español", "ISBN-3",
+                CategoriaRecurso.FANTASIA, EstadoRecurso.DISPONIBLE);
+
+        agregar(usuario1, libroFantasia);
+        agregar(usuario2, libroFantasia);
+        agregar(usuario1, libroHistoria);
+        agregar(usuario1, audioFantasia);
+    }
+
+    private void agregar(Usuario usuario, RecursoDigital recurso) {
+        Prestamo prestamo = new Prestamo("p", usuario, recurso, 7);
+        prestamo.devolver();
+        historial.agregar(prestamo);
+    }
+
+    @Test
+    void testCantidadPorCategoriaYTipo() {
+        // Arrange
+        ConsultaPrestamos consulta = new ConsultaPrestamos(ConsultaPrestamos.Agregacion.CANTIDAD,
+                ConsultaPrestamos.Agrupacion.CATEGORIA, ConsultaPrestamos.Agrupacion.TIPO_RECURSO);
+        AtomicInteger progreso = new AtomicInteger();
+
+        // Act
+        Map<List<Object>, Long> resultado = motor.ejecutar(consulta, historial.vista(), progreso);
+
+        // Assert
+        assertEquals(3, resultado.size(), "Debe haber 3 grupos");
+        assertEquals(2L, resultado.get(List.of(CategoriaRecurso.FANTASIA, "Libro")), "FANTASIA/Libro debe tener 2 préstamos");
+        assertEquals(1L, resultado.get(List.of(CategoriaRecurso.FANTASIA, "AudioLibro")), "FANTASIA/AudioLibro debe tener 1 préstamo");
+        assertEquals(1L, resultado.get(List.of(CategoriaRecurso.HISTORIA, "Libro")), "HISTORIA/Libro debe tener 1 préstamo");
+        assertEquals(List.of(CategoriaRecurso.FANTASIA, "Libro"), resultado.keySet().iterator().next(),
+                "El grupo con más préstamos debe ir primero");
+        assertEquals(100, progreso.get(), "El progreso debe terminar en 100");
+    }
+
+    @Test
+    void testFiltrosYDistintos() {
+        // Arrange
+        ConsultaPrestamos consulta = new ConsultaPrestamos(ConsultaPrestamos.Agregacion.USUARIOS_DISTINTOS,
+                ConsultaPrestamos.Agrupacion.RECURSO)
+                .filtrarCategoria(CategoriaRecurso.FANTASIA)
+                .filtrarTipoRecurso("Libro");
+
+        // Act
+        Map<List<Object>, Long> resultado = motor.ejecutar(consulta, historial.vista(), null);
+
+        // Assert
+        assertEquals(Map.of(List.of(libroFantasia), 2L), resultado, "Solo el libro de fantasía, con 2 lectores distintos");
+    }
+
+    @Test
+    void testFiltroPorUsuarioYRangoYDiaDeLaSemana() {
+        // Arrange
+        LocalDateTime ahora = LocalDateTime.now();
+        ConsultaPrestamos consulta = new ConsultaPrestamos(ConsultaPrestamos.Agregacion.CANTIDAD,
+                ConsultaPrestamos.Agrupacion.DIA_SEMANA)
+                .filtrarUsuario(1)
+                .filtrarRango(ahora.minusDays(1), ahora.plusDays(1));
+        ConsultaPrestamos fueraDeRango = new ConsultaPrestamos(ConsultaPrestamos.Agregacion.CANTIDAD)
+                .filtrarRango(null, ahora.minusDays(1));
+
+        // Act
+        Map<List<Object>, Long> resultado = motor.ejecutar(consulta, historial.vista(), null);
+
+        // Assert
+        assertEquals(1, resultado.size(), "Todos los préstamos son del mismo día");
+        assertEquals(3L, resultado.values().iterator().next(), "El usuario 1 tiene 3 préstamos");
+        assertTrue(motor.ejecutar(fueraDeRango, historial.vista(), null).isEmpty(),
+                "No debe haber préstamos antes del rango");
+    }
+
+    @Test
+    void testRecorridoEnVariosBloques() {
+        // Arrange
+        int filas = MotorConsultas.FILAS_POR_BLOQUE * 2 + 10;
+        for (int i = 4; i < filas; i++) {
+            agregar(i % 2 == 0 ? usuario1 : usuario2, libroHistoria);
+        }
+        ConsultaPrestamos consulta = new ConsultaPrestamos(ConsultaPrestamos.Agregacion.CANTIDAD);
+
+        // Act
+        Map<List<Object>, Long> resultado = motor.ejecutar(consulta, historial.vista(), null);
+
+        // Assert
+        assertEquals((long) filas, resultado.get(List.of()), "Sin agrupaciones se obtiene el total de filas");
+    }
+
+    @Test
+    void testClavesQueNoEntranEnUnLongNoSeMezclan() {
+        // Arrange: cinco agrupaciones por año suman una cardinalidad de 10000^5, más de lo que entra en un long
+        ConsultaPrestamos.Agrupacion anio = ConsultaPrestamos.Agrupacion.ANIO;
+        ConsultaPrestamos consulta = new ConsultaPrestamos(ConsultaPrestamos.Agregacion.CANTIDAD,
+                anio, anio, anio, anio, anio, ConsultaPrestamos.Agrupacion.RECURSO);
+        int actual = LocalDate.now().getYear();
+
+        // Act
+        Map<List<Object>, Long> resultado = motor.ejecutar(consulta, historial.vista(), null);
+
+        // Assert
+        assertEquals(3, resultado.size(), "Cada recurso debe quedar en su propio grupo");
+        assertEquals(2L, resultado.get(List.of(actual, actual, actual, actual, actual, libroFantasia)),
+                "El libro de fantasía debe tener 2 préstamos");
+        assertEquals(1L, resultado.get(List.of(actual, actual, actual, actual, actual, audioFantasia)),
+                "El audiolibro debe tener 1 préstamo");
+    }
+
+    @Test
+    void testConsultaSinAgregacionSeRechazaAlCrearla() {
+        // Act & Assert
+        assertThrows(NullPointerException.class,
+                () -> new ConsultaPrestamos(null, ConsultaPrestamos.Agrupacion.CATEGORIA),
+                "Una consulta sin agregación no debe poder crearse");
+    }
+
+    @Test
+    void testModificarLaConsultaDespuesDeCopiarlaNoAfectaLaCopia() {
+        // Arrange
+        ConsultaPrestamos consulta = new ConsultaPrestamos(ConsultaPrestamos.Agregacion.CANTIDAD,
+                ConsultaPrestamos.Agrupacion.CATEGORIA);
+        ConsultaPrestamos copia = consulta.copiar();
+
+        // Act
+        consulta.filtrarCategoria(CategoriaRecurso.HISTORIA);
+
+        // Assert
+        assertTrue(copia.getCategorias().isEmpty(), "La copia no debe ver el filtro agregado después");
+        assertEquals(2, motor.ejecutar(copia, historial.vista(), null).size(), "La copia debe agrupar todas las categorías");
+    }
+}
@@ -0,0 +1,82 @@
+package um.prog2.reportes;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalTime;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PlanificadorReportesTest {
+
+    private PlanificadorReportes planificador;
+
+    @BeforeEach
+    void setUp() {
+        // Sin límite de carga para que el test no dependa de la máquina
+        planificador = new PlanificadorReportes(1.0, Double.MAX_VALUE);
+    }
+
+    @AfterEach
+    void tearDown() {
+        planificador.cerrar();
+    }
+
+    @Test
+    void testRecalculaPeriodicamente() throws InterruptedException {
+        // Arrange
+        AtomicInteger ejecuciones = new AtomicInteger();
+        assertNull(planificador.obtenerResultado("reporte"), "Antes del primer cálculo no hay resultado");
+
+        // Act
+        planificador.registrar("reporte", Duration.ofMillis(20), Duration.ZERO,
+                ejecuciones::incrementAndGet, null);
+        esperarHasta(() -> ejecuciones.get() >= 3);
+
+        // Assert
+        ResultadoPrecalculado<Integer> resultado = planificador.obtenerResultado("reporte");
+        assertNotNull(resultado, "Debe haber un resultado precalculado");
+        assertTrue(resultado.getValor() >= 1, "El resultado debe venir del generador");
+        assertFalse(resultado.getEdad().isNegative(), "La edad del resultado no puede ser negativa");
+    }
+
+    @Test
+    void testErrorNoDetieneLasActualizaciones() throws InterruptedException {
+        // Arrange
+        AtomicInteger ejecuciones = new AtomicInteger();
+
+        // Act
+        planificador.registrar("reporte", Duration.ofMillis(10), Duration.ZERO, () -> {
+            if (ejecuciones.incrementAndGet() == 1) {
+                throw new IllegalStateException("Falla simulada");
+            }
+            return "ok";
+        }, null);
+        esperarHasta(() -> planificador.obtenerResultado("reporte") != null);
+
+        // Assert
+        assertEquals("ok", planificador.<String>obtenerResultado("reporte").getValor(),
+                "Tras un error se debe volver a calcular");
+    }
+
+    @Test
+    void testRetrasoHastaHoraDelDia() {
+        // Act
+        Duration retraso = PlanificadorReportes.retrasoHasta(LocalTime.of(3, 0));
+
+        // Assert
+        assertFalse(retraso.isNegative(), "El retraso no puede ser negativo");
+        assertTrue(retraso.compareTo(Duration.ofDays(1)) <= 0, "El retraso debe ser de a lo sumo un día");
+    }
+
+    private void esperarHasta(java.util.function.BooleanSupplier condicion) throws InterruptedException {
+        long limite = System.currentTimeMillis() + 5000;
+        while (!condicion.getAsBoolean() && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+        assertTrue(condicion.getAsBoolean(), "La condición no se cumplió a tiempo");
+    }
+}
@@ -3,14 +3,20 @@ package um.prog2.reportes;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import um.prog2.Enums.CategoriaRecurso;
 import um.prog2.Enums.EstadoRecurso;
 import um.prog2.interfaces.RecursoDigital;
+import um.prog2.prestamos.HistorialSegmentado;
 import um.prog2.prestamos.Prestamo;
 import um.prog2.prestamos.SistemaPrestamos;
 import um.prog2.recursoDigital.Libro;
 import um.prog2.usuario.Usuario;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
@@ -164,6 +170,234 @@ class SistemaReportesTest {
                 "El progreso debe ser -1 después de limpiar");
     }
 
+    @Test
+    void testRankingAproximadoSeActualizaConCadaPrestamo() {
+        // Act
+        sistemaReportes.alPrestar(new Prestamo("p10", usuario1, libro3, 14));
+        sistemaReportes.alPrestar(new Prestamo("p11", usuario2, libro3, 14));
+        sistemaReportes.alPrestar(new Prestamo("p12", usuario1, libro2, 14));
+
+        // Assert
+        Map<RecursoDigital, Long> recursosTop = sistemaReportes.obtenerRecursosMasPrestadosAproximado(1);
+        assertEquals(1, recursosTop.size(), "Debe respetar el límite");
+        assertEquals(2L, recursosTop.get(libro3), "El libro3 debe tener 2 préstamos");
+
+        Map<Usuario, Long> usuariosTop = sistemaReportes.obtenerUsuariosMasActivosAproximado(10);
+        assertEquals(2L, usuariosTop.get(usuario1), "El usuario1 debe tener 2 préstamos");
+        assertEquals(1L, usuariosTop.get(usuario2), "El usuario2 debe tener 1 préstamo");
+    }
+
+    @Test
+    void testReportesPorVentanaDeTiempo() {
+        // Act
+        sistemaReportes.alPrestar(new Prestamo("p20", usuario1, libro1, 14));
+        sistemaReportes.alPrestar(new Prestamo("p21", usuario2, libro1, 14));
+        sistemaReportes.alPrestar(new Prestamo("p22", usuario2, libro2, 14));
+
+        // Assert
+        Map<RecursoDigital, Integer> ultimoDia = sistemaReportes.obtenerRecursosMasPrestadosEnVentana(
+                SistemaReportes.VENTANA_ULTIMO_DIA, 10);
+        assertEquals(2, ultimoDia.get(libro1), "El libro1 debe tener 2 préstamos en el último día");
+        assertEquals(1, ultimoDia.get(libro2), "El libro2 debe tener 1 préstamo en el último día");
+
+        Map<CategoriaRecurso, Integer> semana = sistemaReportes.obtenerEstadisticasPorCategoriaEnVentana(
+                SistemaReportes.VENTANA_ULTIMA_SEMANA);
+        assertEquals(2, semana.get(CategoriaRecurso.CIENCIA_FICCION), "CIENCIA_FICCION debe tener 2 préstamos en la semana");
+        assertEquals(1, semana.get(CategoriaRecurso.FANTASIA), "FANTASIA debe tener 1 préstamo en la semana");
+    }
+
+    @Test
+    void testSolicitudesConcurrentesCompartenGeneracion() throws ExecutionException, InterruptedException {
+        // Act
+        Future<Map<RecursoDigital, Integer>> primera = sistemaReportes.iniciarReporteRecursosMasPrestados(10);
+        Future<Map<RecursoDigital, Integer>> segunda = sistemaReportes.iniciarReporteRecursosMasPrestados(10);
+        Future<Map<RecursoDigital, Integer>> otroLimite = sistemaReportes.iniciarReporteRecursosMasPrestados(1);
+
+        // Assert
+        assertSame(primera, segunda, "Solicitudes con los mismos parámetros deben compartir la generación");
+        assertNotSame(primera, otroLimite, "Un límite distinto debe generar otro reporte");
+        assertEquals(primera.get(), segunda.get(), "Ambas solicitudes deben obtener el mismo resultado");
+        assertSame(primera, sistemaReportes.iniciarReporteRecursosMasPrestados(10),
+                "Sin cambios en los datos se debe devolver el resultado cacheado");
+    }
+
+    @Test
+    void testGeneracionesConDistintosParametrosLlevanSuPropioResultado() throws ExecutionException, InterruptedException {
+        // Act
+        Future<Map<RecursoDigital, Integer>> diez = sistemaReportes.iniciarReporteRecursosMasPrestados(10);
+        Future<Map<RecursoDigital, Integer>> uno = sistemaReportes.iniciarReporteRecursosMasPrestados(1);
+        Map<RecursoDigital, Integer> resultadoDiez = diez.get();
+        Map<RecursoDigital, Integer> resultadoUno = uno.get();
+
+        // Assert
+        assertEquals(2, resultadoDiez.size(), "El reporte con límite 10 debe tener 2 recursos");
+        assertEquals(1, resultadoUno.size(), "El reporte con límite 1 debe tener 1 recurso");
+        Map<RecursoDigital, Integer> ultimo = sistemaReportes.obtenerResultadoReporte(
+                SistemaReportes.REPORTE_RECURSOS_MAS_PRESTADOS);
+        assertEquals(resultadoUno, ultimo, "Por tipo se informa la última generación pedida");
+        assertEquals(100, sistemaReportes.obtenerProgresoReporte(SistemaReportes.REPORTE_RECURSOS_MAS_PRESTADOS),
+                "El progreso de la última generación debe ser 100");
+
+        // Volver a pedir el límite 10 lo reutiliza y pasa a ser el informado por tipo
+        assertSame(diez, sistemaReportes.iniciarReporteRecursosMasPrestados(10), "Debe reutilizarse la generación");
+        assertEquals(resultadoDiez, sistemaReportes.obtenerResultadoReporte(SistemaReportes.REPORTE_RECURSOS_MAS_PRESTADOS),
+                "Por tipo se informa la generación pedida más recientemente");
+    }
+
+    @Test
+    void testCambioDeDatosInvalidaCache() throws ExecutionException, InterruptedException {
+        // Arrange
+        Future<Map<RecursoDigital, Integer>> anterior = sistemaReportes.iniciarReporteRecursosMasPrestados(10);
+        anterior.get();
+        long versionAnterior = sistemaReportes.obtenerVersionDatos();
+
+        // Act
+        sistemaReportes.alDevolver(new Prestamo("p30", usuario1, libro3, 14));
+        Future<Map<RecursoDigital, Integer>> nuevo = sistemaReportes.iniciarReporteRecursosMasPrestados(10);
+
+        // Assert
+        assertTrue(sistemaReportes.obtenerVersionDatos() > versionAnterior, "La versión de datos debe aumentar");
+        assertNotSame(anterior, nuevo, "Tras un cambio en los datos se debe generar un nuevo reporte");
+        assertNotNull(nuevo.get(), "El nuevo reporte debe completarse");
+    }
+
+    @Test
+    void testIniciarReporteLectoresUnicos() throws ExecutionException, InterruptedException {
+        // Arrange: usuario1 lee libro1 dos veces, usuario2 lee libro1 y libro3
+        sistemaReportes.alPrestar(new Prestamo("p40", usuario1, libro1, 14));
+        sistemaReportes.alPrestar(new Prestamo("p41", usuario1, libro1, 14));
+        sistemaReportes.alPrestar(new Prestamo("p42", usuario2, libro1, 14));
+        sistemaReportes.alPrestar(new Prestamo("p43", usuario2, libro3, 14));
+
+        // Act
+        ReporteLectoresUnicos reporte = sistemaReportes.iniciarReporteLectoresUnicos().get();
+
+        // Assert
+        assertEquals(2L, reporte.getPorRecurso().get(libro1), "El libro1 debe tener 2 lectores únicos");
+        assertEquals(1L, reporte.getPorRecurso().get(libro3), "El libro3 debe tener 1 lector único");
+        assertEquals(2L, reporte.getPorCategoria().get(CategoriaRecurso.CIENCIA_FICCION),
+                "CIENCIA_FICCION debe tener 2 lectores únicos");
+        assertEquals(100, sistemaReportes.obtenerProgresoReporte(SistemaReportes.REPORTE_LECTORES_UNICOS),
+                "El progreso debe ser 100 al terminar");
+    }
+
+    @Test
+    void testPercentilesDeDuracionSeActualizanConCadaDevolucion() {
+        // Arrange
+        Prestamo prestamo = new Prestamo("p50", usuario1, libro2, 14);
+        prestamo.devolver();
+
+        // Act
+        sistemaReportes.alDevolver(prestamo);
+
+        // Assert
+        Map<CategoriaRecurso, ResumenPercentiles> porCategoria = sistemaReportes.obtenerPercentilesDuracionPorCategoria();
+        assertEquals(1, porCategoria.size(), "Solo debe haber datos para la categoría del préstamo devuelto");
+        assertEquals(1, porCategoria.get(CategoriaRecurso.FANTASIA).getCantidad(), "FANTASIA debe tener 1 devolución");
+        assertEquals(1, sistemaReportes.obtenerPercentilesDuracionPorTipo().get("Libro").getCantidad(),
+                "Libro debe tener 1 devolución");
+        assertTrue(sistemaReportes.obtenerPercentilesAtrasoPorCategoria().isEmpty(),
+                "Una devolución a tiempo no debe registrar atraso");
+    }
+
+    @Test
+    void testIniciarConsultaAgrupada() throws ExecutionException, InterruptedException {
+        // Arrange
+        for (Prestamo prestamo : List.of(new Prestamo("p60", usuario1, libro1, 14),
+                new Prestamo("p61", usuario2, libro3, 14), new Prestamo("p62", usuario2, libro2, 14))) {
+            prestamo.devolver();
+            sistemaReportes.alDevolver(prestamo);
+        }
+        ConsultaPrestamos consulta = new ConsultaPrestamos(ConsultaPrestamos.Agregacion.CANTIDAD,
+                ConsultaPrestamos.Agrupacion.CATEGORIA);
+
+        // Act
+        Map<List<Object>, Long> resultado = sistemaReportes.iniciarConsulta(consulta).get();
+
+        // Assert
+        // El historial previo del sistema de préstamos aporta 2 de CIENCIA_FICCION y 1 de FANTASIA
+        assertEquals(4L, resultado.get(List.of(CategoriaRecurso.CIENCIA_FICCION)), "CIENCIA_FICCION debe tener 4 préstamos");
+        assertEquals(2L, resultado.get(List.of(CategoriaRecurso.FANTASIA)), "FANTASIA debe tener 2 préstamos");
+        assertEquals(100, sistemaReportes.obtenerProgresoReporte(SistemaReportes.REPORTE_CONSULTA),
+                "El progreso debe ser 100 al terminar");
+    }
+
+    @Test
+    void testExportarHistorialYReporte(@TempDir Path directorio) throws Exception {
+        // Arrange
+        Prestamo prestamo = new Prestamo("p70", usuario1, libro1, 14);
+        prestamo.devolver();
+        sistemaReportes.alDevolver(prestamo);
+        Path historial = directorio.resolve("prestamos.jsonl");
+        Path reporte = directorio.resolve("reporte.csv");
+
+        // Act
+        long filasHistorial = sistemaReportes.iniciarExportacionHistorialPrestamos(historial,
+                ExportadorStreaming.Formato.JSON_LINES).get();
+        Map<RecursoDigital, Integer> masPrestados = sistemaReportes.iniciarReporteRecursosMasPrestados(10).get();
+        long filasReporte = sistemaReportes.iniciarExportacionReporte(masPrestados, reporte,
+                ExportadorStreaming.Formato.CSV).get();
+
+        // Assert
+        // Los 3 préstamos del historial previo más el devuelto en la prueba
+        assertEquals(4, filasHistorial, "Deben exportarse 4 préstamos");
+        String linea = Files.readAllLines(historial, StandardCharsets.UTF_8).get(3);
+        assertTrue(linea.contains("\"usuario_id\":1") && linea.contains("\"recurso_id\":\"L001\""),
+                "La línea debe contener el usuario y el recurso");
+        assertEquals(2, filasReporte, "Deben exportarse los 2 recursos del reporte");
+        assertEquals("L001,3", Files.readAllLines(reporte, StandardCharsets.UTF_8).get(1), "El más prestado va primero");
+        assertEquals(100, sistemaReportes.obtenerProgresoReporte(SistemaReportes.REPORTE_EXPORTACION),
+                "El progreso debe ser 100 al terminar");
+    }
+
+    @Test
+    void testExportacionFallidaNoAfectaAOtraEnCurso(@TempDir Path directorio) throws Exception {
+        // Arrange: un directorio como destino hace fallar la primera exportación
+        Map<String, Integer> resultado = Map.of("a", 1, "b", 2);
+
+        // Act
+        Future<Long> fallida = sistemaReportes.iniciarExportacionReporte(resultado, directorio,
+                ExportadorStreaming.Formato.CSV);
+        Future<Long> correcta = sistemaReportes.iniciarExportacionReporte(resultado, directorio.resolve("ok.csv"),
+                ExportadorStreaming.Formato.CSV);
+
+        // Assert
+        assertThrows(ExecutionException.class, fallida::get, "La exportación a un directorio debe fallar");
+        assertEquals(2L, correcta.get(), "La otra exportación debe completarse igual");
+        assertEquals(100, sistemaReportes.obtenerProgresoReporte(SistemaReportes.REPORTE_EXPORTACION),
+                "Debe informarse el progreso de la última exportación iniciada");
+    }
+
+    @Test
+    void testReporteProgramadoQuedaDisponibleAlInstante() throws Exception {
+        // Act: el mismo reporte programado con dos límites
+        sistemaReportes.programarReporteRecursosMasPrestados(10, Duration.ofMinutes(10), Duration.ZERO);
+        sistemaReportes.programarReporteRecursosMasPrestados(1, Duration.ofMinutes(10), Duration.ZERO);
+        long limite = System.currentTimeMillis() + 5000;
+        while ((sistemaReportes.obtenerResultadoPrecalculado(SistemaReportes.REPORTE_RECURSOS_MAS_PRESTADOS, 10) == null
+                || sistemaReportes.obtenerResultadoPrecalculado(SistemaReportes.REPORTE_RECURSOS_MAS_PRESTADOS, 1) == null)
+                && System.currentTimeMillis() < limite) {
+            Thread.sleep(10);
+        }
+
+        // Assert
+        ResultadoPrecalculado<Map<RecursoDigital, Integer>> precalculado =
+                sistemaReportes.obtenerResultadoPrecalculado(SistemaReportes.REPORTE_RECURSOS_MAS_PRESTADOS, 10);
+        ResultadoPrecalculado<Map<RecursoDigital, Integer>> precalculadoUno =
+                sistemaReportes.obtenerResultadoPrecalculado(SistemaReportes.REPORTE_RECURSOS_MAS_PRESTADOS, 1);
+        assertNotNull(precalculado, "El reporte programado debe calcularse en segundo plano");
+        assertEquals(2, precalculado.getValor().size(), "Con límite 10 deben estar los 2 recursos");
+        assertEquals(2, precalculado.getValor().get(libro1), "El libro1 debe tener 2 préstamos");
+        assertNotNull(precalculadoUno, "Cada límite programado debe tener su resultado");
+        assertEquals(1, precalculadoUno.getValor().size(), "Con límite 1 debe estar solo el más prestado");
+        assertEquals(-1, sistemaReportes.obtenerProgresoReporte(SistemaReportes.REPORTE_RECURSOS_MAS_PRESTADOS),
+                "Los cálculos programados no deben ocupar el progreso de las generaciones pedidas");
+
+        Future<Map<RecursoDigital, Integer>> futureReporte = sistemaReportes.iniciarReporteRecursosMasPrestados(10);
+        assertTrue(futureReporte.isDone(), "El reporte precalculado debe servirse de inmediato");
+        assertEquals(precalculado.getValor(), futureReporte.get(), "Debe devolverse el resultado precalculado");
+    }
+
     // Clase interna para simular SistemaPrestamos
     private class MockSistemaPrestamos extends SistemaPrestamos {
         public MockSistemaPrestamos() {
@@ -171,19 +405,16 @@ class SistemaReportesTest {
         }
 
         @Override
-        public List<Prestamo> obtenerHistorialPrestamos(Usuario usuario) {
+        public HistorialSegmentado.Instantanea<Prestamo> obtenerInstantaneaHistorial() {
             List<Prestamo> prestamos = new ArrayList<>();
 
-            if (usuario.equals(usuario1)) {
-                // Usuario1 tiene 2 préstamos: libro1 y libro2
-                prestamos.add(new Prestamo("p1", usuario1, libro1, 14));
-                prestamos.add(new Prestamo("p2", usuario1, libro2, 14));
-            } else if (usuario.equals(usuario2)) {
-                // Usuario2 tiene 1 préstamo: libro1
-                prestamos.add(new Prestamo("p3", usuario2, libro1, 14));
-            }
+            // Usuario1 tiene 2 préstamos: libro1 y libro2
+            prestamos.add(new Prestamo("p1", usuario1, libro1, 14));
+            prestamos.add(new Prestamo("p2", usuario1, libro2, 14));
+            // Usuario2 tiene 1 préstamo: libro1
+            prestamos.add(new Prestamo("p3", usuario2, libro1, 14));
 
-            return prestamos;
+            return HistorialSegmentado.Instantanea.de(prestamos);
         }
     }
 }